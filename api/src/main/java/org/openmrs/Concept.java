@@ -127,6 +127,12 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	 */
 	private Map<Locale, List<ConceptName>> compatibleCache;
 	
+	/**
+	 * An index of the names by locale, language and country. Built on-the-fly by
+	 * {@link #getNameIndex()} and dropped whenever a name is added or removed.
+	 */
+	private transient volatile NameIndex nameIndex;
+	
 	/** default constructor */
 	public Concept() {
 		names = new HashSet<ConceptName>();
@@ -548,7 +554,7 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	 * @should return name in broader locale incase none is found in specific one
 	 */
 	public ConceptName getName() {
-		if (getNames().size() == 0) {
+		if (!hasNames()) {
 			if (log.isDebugEnabled()) {
 				log.debug("there are no names defined for: " + conceptId);
 			}
@@ -692,7 +698,7 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	public ConceptName getName(Locale locale, boolean exact) {
 		
 		// fail early if this concept has no names defined
-		if (getNames().size() == 0) {
+		if (!hasNames()) {
 			if (log.isDebugEnabled()) {
 				log.debug("there are no names defined for: " + conceptId);
 			}
@@ -746,6 +752,7 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	 * @return preferred name for the locale, or null if no preferred name is specified
 	 * @should return the concept name explicitly marked as locale preferred
 	 * @should return the fully specified name if no name is explicitly marked as locale preferred
+	 * @should not return a name that was removed from the concept
 	 */
 	public ConceptName getPreferredName(Locale forLocale) {
 		
@@ -753,34 +760,31 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 			log.debug("Getting preferred conceptName for locale: " + forLocale);
 		}
 		// fail early if this concept has no names defined
-		if (getNames(forLocale).size() == 0) {
+		NameIndex index = getNameIndex();
+		if (!index.hasNames(forLocale)) {
 			if (log.isDebugEnabled()) {
 				log.debug("there are no names defined for concept with id: " + conceptId + " in the  locale: " + forLocale);
 			}
 			return null;
-		} else if (forLocale == null) {
-			log.warn("Locale cannot be null");
-			return null;
 		}
 		
-		for (ConceptName nameInLocale : getNames(forLocale)) {
-			if (ObjectUtils.nullSafeEquals(nameInLocale.isLocalePreferred(), true)) {
+		for (ConceptName nameInLocale : index.byLocale(forLocale)) {
+			if (!nameInLocale.isVoided() && ObjectUtils.nullSafeEquals(nameInLocale.isLocalePreferred(), true)) {
 				return nameInLocale;
 			}
 		}
 		
 		// look for partially locale match - any language matches takes precedence over country matches.
-		ConceptName bestMatch = null;
+		for (ConceptName nameInLanguage : index.byLanguage(forLocale)) {
+			if (!nameInLanguage.isVoided() && ObjectUtils.nullSafeEquals(nameInLanguage.isLocalePreferred(), true)) {
+				return nameInLanguage;
+			}
+		}
 		
-		for (ConceptName nameInLocale : getPartiallyCompatibleNames(forLocale)) {
-			if (ObjectUtils.nullSafeEquals(nameInLocale.isLocalePreferred(), true)) {
-				Locale nameLocale = nameInLocale.getLocale();
-				if (forLocale.getLanguage().equals(nameLocale.getLanguage())) {
-					return nameInLocale;
-				} else {
-					bestMatch = nameInLocale;
-				}
-				
+		ConceptName bestMatch = null;
+		for (ConceptName nameInCountry : index.byCountry(forLocale)) {
+			if (!nameInCountry.isVoided() && ObjectUtils.nullSafeEquals(nameInCountry.isLocalePreferred(), true)) {
+				bestMatch = nameInCountry;
 			}
 		}
 		
@@ -805,25 +809,29 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	 * @param locale locale from which to look up the fully specified name
 	 * @return the name explicitly marked as fully specified for the locale
 	 * @should return the name marked as fully specified for the given locale
+	 * @should look up a name in the locale it was moved to
 	 */
 	public ConceptName getFullySpecifiedName(Locale locale) {
-		if (locale != null && getNames(locale).size() > 0) {
+		NameIndex index = getNameIndex();
+		if (locale != null && index.hasNames(locale)) {
 			//get the first fully specified name, since every concept must have a fully specified name,
 			//then, this loop will have to return a name
-			for (ConceptName conceptName : getNames(locale)) {
-				if (ObjectUtils.nullSafeEquals(conceptName.isFullySpecifiedName(), true)) {
+			for (ConceptName conceptName : index.byLocale(locale)) {
+				if (!conceptName.isVoided() && ObjectUtils.nullSafeEquals(conceptName.isFullySpecifiedName(), true)) {
 					return conceptName;
 				}
 			}
 			
 			// look for partially locale match - any language matches takes precedence over country matches.
+			for (ConceptName conceptName : index.byLanguage(locale)) {
+				if (!conceptName.isVoided() && ObjectUtils.nullSafeEquals(conceptName.isFullySpecifiedName(), true)) {
+					return conceptName;
+				}
+			}
+			
 			ConceptName bestMatch = null;
-			for (ConceptName conceptName : getPartiallyCompatibleNames(locale)) {
-				if (ObjectUtils.nullSafeEquals(conceptName.isFullySpecifiedName(), true)) {
-					Locale nameLocale = conceptName.getLocale();
-					if (locale.getLanguage().equals(nameLocale.getLanguage())) {
-						return conceptName;
-					}
+			for (ConceptName conceptName : index.byCountry(locale)) {
+				if (!conceptName.isVoided() && ObjectUtils.nullSafeEquals(conceptName.isFullySpecifiedName(), true)) {
 					bestMatch = conceptName;
 				}
 			}
@@ -843,29 +851,8 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	 */
 	public Collection<ConceptName> getNames(Locale locale) {
 		Collection<ConceptName> localeNames = new Vector<ConceptName>();
-		for (ConceptName possibleName : getNames()) {
-			if (possibleName.getLocale().equals(locale)) {
-				localeNames.add(possibleName);
-			}
-		}
-		return localeNames;
-	}
-	
-	/**
-	 * Returns all names available for locale langueage "or" country. <br/>
-	 * <br/>
-	 * 
-	 * @param locale locale for which names should be returned
-	 * @return Collection of ConceptNames with the given locale langueage or country
-	 */
-	private Collection<ConceptName> getPartiallyCompatibleNames(Locale locale) {
-		Collection<ConceptName> localeNames = new Vector<ConceptName>();
-		String language = locale.getLanguage();
-		String country = locale.getCountry();
-		for (ConceptName possibleName : getNames()) {
-			Locale possibleLocale = possibleName.getLocale();
-			if (language.equals(possibleLocale.getLanguage())
-			        || (StringUtils.isNotBlank(country) && country.equals(possibleLocale.getCountry()))) {
+		for (ConceptName possibleName : getNameIndex().byLocale(locale)) {
+			if (!possibleName.isVoided()) {
 				localeNames.add(possibleName);
 			}
 		}
@@ -894,8 +881,9 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 		
 		if (compatibleNames == null) {
 			compatibleNames = new Vector<ConceptName>();
-			for (ConceptName possibleName : getNames()) {
-				if (LocaleUtility.areCompatible(possibleName.getLocale(), desiredLocale)) {
+			// compatible locales always share the language
+			for (ConceptName possibleName : getNameIndex().byLanguage(desiredLocale)) {
+				if (!possibleName.isVoided() && LocaleUtility.areCompatible(possibleName.getLocale(), desiredLocale)) {
 					compatibleNames.add(possibleName);
 				}
 			}
@@ -1031,18 +1019,24 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	 */
 	public ConceptName getShortNameInLocale(Locale locale) {
 		ConceptName bestMatch = null;
-		if (locale != null && getShortNames().size() > 0) {
-			for (ConceptName shortName : getShortNames()) {
-				Locale nameLocale = shortName.getLocale();
-				if (nameLocale.equals(locale)) {
-					return shortName;
+		if (locale != null) {
+			NameIndex index = getNameIndex();
+			for (ConceptName name : index.byLocale(locale)) {
+				if (!name.isVoided() && name.isShort()) {
+					return name;
+				}
+			}
+			// test for partially locale match - any language matches takes precedence over country matches.
+			for (ConceptName name : index.byLanguage(locale)) {
+				if (!name.isVoided() && name.isShort()) {
+					bestMatch = name;
 				}
-				// test for partially locale match - any language matches takes precedence over country matches.
-				if (OpenmrsUtil.nullSafeEquals(locale.getLanguage(), nameLocale.getLanguage())) {
-					bestMatch = shortName;
-				} else if (bestMatch == null && StringUtils.isNotBlank(locale.getCountry())
-				        && locale.getCountry().equals(nameLocale.getCountry())) {
-					bestMatch = shortName;
+			}
+			if (bestMatch == null) {
+				for (ConceptName name : index.byCountry(locale)) {
+					if (!name.isVoided() && name.isShort()) {
+						return name;
+					}
 				}
 			}
 		}
@@ -1117,7 +1111,7 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 		ConceptName shortestNameForConcept = null;
 		
 		if (locale != null) {
-			for (ConceptName possibleName : getNames()) {
+			for (ConceptName possibleName : exact ? getNames(locale) : getNames()) {
 				if (possibleName.getLocale().equals(locale)
 				        && ((shortestNameForLocale == null) || (possibleName.getName().length() < shortestNameForLocale
 				                .getName().length()))) {
@@ -1180,11 +1174,9 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	public Collection<ConceptName> getIndexTermsForLocale(Locale locale) {
 		
 		Vector<ConceptName> indexTermsForLocale = new Vector<ConceptName>();
-		if (getIndexTerms().size() > 0) {
-			for (ConceptName name : getIndexTerms()) {
-				if (name.getLocale().equals(locale)) {
-					indexTermsForLocale.add(name);
-				}
+		for (ConceptName name : getNameIndex().byLocale(locale)) {
+			if (!name.isVoided() && name.isIndexTerm()) {
+				indexTermsForLocale.add(name);
 			}
 		}
 		
@@ -1229,6 +1221,7 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	@ElementList
 	public void setNames(Collection<ConceptName> names) {
 		this.names = names;
+		clearNameCaches();
 	}
 	
 	/**
@@ -1270,9 +1263,7 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 					}
 				}
 				names.add(conceptName);
-				if (compatibleCache != null) {
-					compatibleCache.clear(); // clear the locale cache, forcing it to be rebuilt
-				}
+				clearNameCaches();
 			}
 		}
 	}
@@ -1284,13 +1275,55 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 	 * @return true if the entity was removed, false otherwise
 	 */
 	public boolean removeName(ConceptName conceptName) {
-		if (names != null) {
-			return names.remove(conceptName);
+		if (names != null && names.remove(conceptName)) {
+			clearNameCaches();
+			return true;
 		} else {
 			return false;
 		}
 	}
 	
+	/**
+	 * Drops the locale caches of the names, forcing them to be rebuilt. Called when a name is added
+	 * or removed, or a name of this concept moves to another locale.
+	 */
+	void clearNameCaches() {
+		nameIndex = null;
+		if (compatibleCache != null) {
+			compatibleCache.clear();
+		}
+	}
+	
+	/**
+	 * @return true if this concept has at least one non voided name
+	 */
+	private boolean hasNames() {
+		if (names != null) {
+			for (ConceptName name : names) {
+				if (!name.isVoided()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the index of the names by locale, building it if it is missing. The index is also rebuilt
+	 * if the names collection changed size behind the back of this concept, e.g. when it was
+	 * modified through {@link #getNames(boolean)}.
+	 * 
+	 * @return the name index
+	 */
+	private NameIndex getNameIndex() {
+		NameIndex index = nameIndex;
+		if (index == null || index.size != (names == null ? 0 : names.size())) {
+			index = new NameIndex(names);
+			nameIndex = index;
+		}
+		return index;
+	}
+	
 	/**
 	 * Finds the description of the concept using the current locale in Context.getLocale(). Returns
 	 * null if none found.
@@ -1499,8 +1532,8 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 		
 		List<ConceptName> syns = new Vector<ConceptName>();
 		ConceptName preferredConceptName = null;
-		for (ConceptName possibleSynonymInLoc : getSynonyms()) {
-			if (locale.equals(possibleSynonymInLoc.getLocale())) {
+		for (ConceptName possibleSynonymInLoc : getNameIndex().byLocale(locale)) {
+			if (!possibleSynonymInLoc.isVoided() && possibleSynonymInLoc.isSynonym()) {
 				if (possibleSynonymInLoc.isPreferred()) {
 					preferredConceptName = possibleSynonymInLoc;
 				} else {
@@ -1853,4 +1886,95 @@ public class Concept extends BaseOpenmrsObject implements Auditable, Retireable,
 		conceptSets.add(conceptSet);
 	}
 	
+	/**
+	 * The names of a concept grouped by locale, language and country, so that name lookups only
+	 * look at the names of the requested locale. Voided names are indexed too, it is up to the
+	 * callers to skip them since a name can be voided without the concept being told.
+	 */
+	private static class NameIndex {
+		
+		private final int size;
+		
+		private final Map<Locale, List<ConceptName>> byLocale = new HashMap<Locale, List<ConceptName>>();
+		
+		private final Map<String, List<ConceptName>> byLanguage = new HashMap<String, List<ConceptName>>();
+		
+		private final Map<String, List<ConceptName>> byCountry = new HashMap<String, List<ConceptName>>();
+		
+		public NameIndex(Collection<ConceptName> names) {
+			size = names == null ? 0 : names.size();
+			if (names != null) {
+				for (ConceptName name : names) {
+					Locale locale = name.getLocale();
+					if (locale != null) {
+						add(byLocale, locale, name);
+						add(byLanguage, locale.getLanguage(), name);
+						if (StringUtils.isNotBlank(locale.getCountry())) {
+							add(byCountry, locale.getCountry(), name);
+						}
+					}
+				}
+			}
+		}
+		
+		private static <K> void add(Map<K, List<ConceptName>> map, K key, ConceptName name) {
+			List<ConceptName> list = map.get(key);
+			if (list == null) {
+				list = new ArrayList<ConceptName>(2);
+				map.put(key, list);
+			}
+			list.add(name);
+		}
+		
+		/**
+		 * @return true if there is a non voided name in exactly the given locale
+		 */
+		public boolean hasNames(Locale locale) {
+			for (ConceptName name : byLocale(locale)) {
+				if (!name.isVoided()) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * @return the names in exactly the given locale
+		 */
+		public List<ConceptName> byLocale(Locale locale) {
+			return nullToEmpty(locale == null ? null : byLocale.get(locale));
+		}
+		
+		/**
+		 * @return the names in any locale with the language of the given locale
+		 */
+		public List<ConceptName> byLanguage(Locale locale) {
+			return nullToEmpty(locale == null ? null : byLanguage.get(locale.getLanguage()));
+		}
+		
+		/**
+		 * @return the names in a locale with another language but the country of the given locale,
+		 *         empty if the given locale has no country
+		 */
+		public List<ConceptName> byCountry(Locale locale) {
+			if (locale == null || StringUtils.isBlank(locale.getCountry())) {
+				return Collections.emptyList();
+			}
+			List<ConceptName> names = new ArrayList<ConceptName>();
+			for (ConceptName name : nullToEmpty(byCountry.get(locale.getCountry()))) {
+				if (!locale.getLanguage().equals(name.getLocale().getLanguage())) {
+					names.add(name);
+				}
+			}
+			return names;
+		}
+		
+		private static List<ConceptName> nullToEmpty(List<ConceptName> names) {
+			if (names == null) {
+				return Collections.emptyList();
+			}
+			return names;
+		}
+	}
+	
 }
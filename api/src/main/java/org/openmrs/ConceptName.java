@@ -193,7 +193,11 @@ public class ConceptName extends BaseOpenmrsObject implements Auditable, Voidabl
 	
 	@Element
 	public void setLocale(Locale locale) {
+		boolean moved = this.locale != null && !this.locale.equals(locale);
 		this.locale = locale;
+		if (moved && concept != null) {
+			concept.clearNameCaches();
+		}
 	}
 	
 	/**
@@ -117,6 +117,9 @@ public class Obs extends BaseOpenmrsData implements java.io.Serializable {
 	
 	protected String valueComplex;
 	
+	// the storage key of valueComplex, only kept to be saved in its own column to find obs by it
+	private String complexDataKey;
+	
 	// ComplexData is not persisted in the database.
 	protected transient ComplexData complexData;
 	
@@ -885,6 +888,24 @@ public class Obs extends BaseOpenmrsData implements java.io.Serializable {
 	 */
 	public void setValueComplex(String valueComplex) {
 		this.valueComplex = valueComplex;
+		this.complexDataKey = getComplexDataKey();
+	}
+	
+	/**
+	 * Gets the key under which the ComplexData is stored, the part of the valueComplex after the
+	 * last bar '|' character or the entire valueComplex if there is no bar.
+	 * 
+	 * @return the storage key of the ComplexData
+	 * @since 1.12
+	 * @should return the part of valueComplex after the last bar
+	 * @should return the entire valueComplex if it has no bar
+	 */
+	public String getComplexDataKey() {
+		if (valueComplex == null) {
+			return null;
+		}
+		String[] names = valueComplex.split("\\|");
+		return names.length < 2 ? names[0] : names[names.length - 1];
 	}
 	
 	/**
@@ -0,0 +1,43 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read-only service method whose result can be reused for the rest of the current unit of
+ * work (between {@link org.openmrs.api.context.Context#openSession()} and
+ * {@link org.openmrs.api.context.Context#closeSession()}) when it is called again with equal
+ * arguments. Repeat calls are answered by the {@link org.openmrs.aop.MemoizationAdvice} without
+ * going through the rest of the service advice, the transaction or the service implementation.<br/>
+ * <br/>
+ * Only use it on methods that return a single persistent object and whose arguments implement
+ * equals, for example:
+ * 
+ * <pre>
+ *    &#064;Memoized
+ *    &#064;Authorized(PrivilegeConstants.GET_LOCATIONS)
+ *    public Location getLocation(Integer locationId);
+ * </pre>
+ * 
+ * Authorization is still checked on every call.
+ * 
+ * @see org.openmrs.aop.MemoizationAdvice
+ * @since 1.12
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Memoized {
+}
@@ -17,17 +17,24 @@ import org.openmrs.User;
 import org.openmrs.annotation.Logging;
 import org.openmrs.api.context.Context;
 import org.openmrs.util.OpenmrsUtil;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class provides the log4j aop around advice for our service layer. This advice is placed on
  * all services and daos via the spring application context. See
- * /metadata/api/spring/applicationContext.xml
+ * /metadata/api/spring/applicationContext.xml<br/>
+ * <br/>
+ * Whether a method is a "setter" and its {@link Logging} annotation are looked up once per method
+ * and cached until the application context is refreshed.
  */
-public class LoggingAdvice implements MethodInterceptor {
+public class LoggingAdvice implements MethodInterceptor, ApplicationListener<ContextRefreshedEvent> {
 	
 	/**
 	 * Logger for this class. Uses the name "org.openmrs.api" so that it seems to fit into the
@@ -41,6 +48,8 @@ public class LoggingAdvice implements MethodInterceptor {
 	private static final String[] SETTER_METHOD_PREFIXES = { "save", "create", "update", "void", "unvoid", "retire",
 	        "unretire", "delete", "purge" };
 	
+	private final Map<Method, MethodInfo> methodInfos = new ConcurrentHashMap<Method, MethodInfo>();
+	
 	/**
 	 * This method prints out debug statements for getters and info statements for everything else
 	 * ("setters"). If debugging is turned on, execution time for each method is printed as well.
@@ -51,26 +60,28 @@ public class LoggingAdvice implements MethodInterceptor {
 	 */
 	public Object invoke(MethodInvocation invocation) throws Throwable {
 		
+		// nothing would be logged, so don't look at the method at all
+		if (!log.isInfoEnabled() && !log.isDebugEnabled()) {
+			return invocation.proceed();
+		}
+		
 		Method method = invocation.getMethod();
 		String name = method.getName();
+		MethodInfo methodInfo = getMethodInfo(method);
 		
 		// decide what type of logging we're doing with the current method and loglevel
-		boolean isSetterTypeOfMethod = OpenmrsUtil.stringStartsWith(name, SETTER_METHOD_PREFIXES);
-		boolean logGetter = !isSetterTypeOfMethod && log.isDebugEnabled();
-		boolean logSetter = isSetterTypeOfMethod && log.isInfoEnabled();
+		boolean logGetter = !methodInfo.setter && !methodInfo.ignored && log.isDebugEnabled();
+		boolean logSetter = methodInfo.setter && !methodInfo.ignored && log.isInfoEnabled();
+		
+		if (!logGetter && !logSetter) {
+			return invocation.proceed();
+		}
 		
 		// used for the execution time calculations
 		long startTime = System.currentTimeMillis();
 		
 		// check if this method has the logging annotation on it
-		Logging loggingAnnotation = null;
-		if (logGetter || logSetter) {
-			loggingAnnotation = method.getAnnotation(Logging.class);
-			if (loggingAnnotation != null && loggingAnnotation.ignore()) {
-				logGetter = false;
-				logSetter = false;
-			}
-		}
+		Logging loggingAnnotation = methodInfo.loggingAnnotation;
 		
 		if (logGetter || logSetter) {
 			StringBuilder output = new StringBuilder();
@@ -158,4 +169,42 @@ public class LoggingAdvice implements MethodInterceptor {
 		}
 		
 	}
+	
+	/**
+	 * Clears the cached method information, so that services of modules that were just started or
+	 * stopped are looked at again
+	 * 
+	 * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		methodInfos.clear();
+	}
+	
+	private MethodInfo getMethodInfo(Method method) {
+		MethodInfo methodInfo = methodInfos.get(method);
+		if (methodInfo == null) {
+			methodInfo = new MethodInfo(method);
+			methodInfos.put(method, methodInfo);
+		}
+		return methodInfo;
+	}
+	
+	/**
+	 * What is needed to log calls to one method
+	 */
+	private static final class MethodInfo {
+		
+		private final boolean setter;
+		
+		private final Logging loggingAnnotation;
+		
+		private final boolean ignored;
+		
+		private MethodInfo(Method method) {
+			setter = OpenmrsUtil.stringStartsWith(method.getName(), SETTER_METHOD_PREFIXES);
+			loggingAnnotation = method.getAnnotation(Logging.class);
+			ignored = loggingAnnotation != null && loggingAnnotation.ignore();
+		}
+	}
 }
@@ -0,0 +1,191 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.aop;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.annotation.Memoized;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttributeSource;
+
+/**
+ * This class provides the AOP around advice that remembers the results of service methods
+ * annotated with {@link Memoized} for the current unit of work. It sits right after the
+ * authorization advice, so a repeat call with equal arguments returns the remembered object
+ * without going through the other service advice, the transaction interceptor or the service.<br/>
+ * <br/>
+ * Remembered results are dropped when:
+ * <ul>
+ * <li>the unit of work is opened, closed or cleared through {@link Context}</li>
+ * <li>any advised service method that is not read only is called</li>
+ * <li>the remembered object is no longer in the current hibernate session</li>
+ * </ul>
+ * Only persistent objects are remembered; null results and anything else are always fetched again.
+ * 
+ * @since 1.12
+ */
+public class MemoizationAdvice implements MethodInterceptor {
+	
+	private static final Log log = LogFactory.getLog(MemoizationAdvice.class);
+	
+	private static final ThreadLocal<Map<Key, Object>> memo = new ThreadLocal<Map<Key, Object>>();
+	
+	/**
+	 * Whether each advised method is memoized, read only or neither
+	 */
+	private final Map<Method, Kind> kinds = new ConcurrentHashMap<Method, Kind>();
+	
+	private SessionFactory sessionFactory;
+	
+	private TransactionAttributeSource transactionAttributeSource;
+	
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+	
+	public void setTransactionAttributeSource(TransactionAttributeSource transactionAttributeSource) {
+		this.transactionAttributeSource = transactionAttributeSource;
+	}
+	
+	/**
+	 * Forgets all results remembered on the current thread
+	 */
+	public static void clear() {
+		memo.remove();
+	}
+	
+	/**
+	 * @see org.aopalliance.intercept.MethodInterceptor#invoke(org.aopalliance.intercept.MethodInvocation)
+	 * @should return the remembered result for a repeat call
+	 * @should not remember results for different arguments
+	 * @should forget remembered results when a non read only method is called
+	 * @should forget remembered results when the session is cleared
+	 * @should not remember null results
+	 */
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Kind kind = getKind(invocation);
+		if (kind == Kind.WRITE) {
+			clear();
+			return invocation.proceed();
+		}
+		if (kind == Kind.READ || !Context.isSessionOpen()) {
+			return invocation.proceed();
+		}
+		
+		Map<Key, Object> results = memo.get();
+		if (results == null) {
+			results = new HashMap<Key, Object>();
+			memo.set(results);
+		}
+		
+		Key key = new Key(invocation.getMethod(), invocation.getArguments());
+		Object result = results.get(key);
+		if (result != null) {
+			if (isInSession(result)) {
+				if (log.isTraceEnabled()) {
+					log.trace("Returning remembered result of " + invocation.getMethod().getName());
+				}
+				return result;
+			}
+			results.remove(key);
+		}
+		
+		result = invocation.proceed();
+		if (result instanceof OpenmrsObject && isInSession(result)) {
+			results.put(key, result);
+		}
+		return result;
+	}
+	
+	private Kind getKind(MethodInvocation invocation) {
+		Method method = invocation.getMethod();
+		Kind kind = kinds.get(method);
+		if (kind == null) {
+			if (AnnotationUtils.findAnnotation(method, Memoized.class) != null) {
+				kind = Kind.MEMOIZED;
+			} else {
+				kind = isReadOnly(method, invocation.getThis()) ? Kind.READ : Kind.WRITE;
+			}
+			kinds.put(method, kind);
+		}
+		return kind;
+	}
+	
+	private boolean isReadOnly(Method method, Object target) {
+		if (transactionAttributeSource == null || target == null) {
+			return false;
+		}
+		TransactionAttribute attribute = transactionAttributeSource.getTransactionAttribute(method, AopUtils
+		        .getTargetClass(target));
+		return attribute != null && attribute.isReadOnly();
+	}
+	
+	private boolean isInSession(Object result) {
+		if (sessionFactory == null) {
+			return false;
+		}
+		try {
+			return sessionFactory.getCurrentSession().contains(result);
+		}
+		catch (HibernateException e) {
+			return false;
+		}
+	}
+	
+	private enum Kind {
+		MEMOIZED, READ, WRITE
+	}
+	
+	/**
+	 * A method together with the arguments it was called with
+	 */
+	private static final class Key {
+		
+		private final Method method;
+		
+		private final Object[] arguments;
+		
+		private final int hashCode;
+		
+		private Key(Method method, Object[] arguments) {
+			this.method = method;
+			this.arguments = arguments == null ? new Object[0] : arguments.clone();
+			this.hashCode = 31 * method.hashCode() + Arrays.hashCode(this.arguments);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return method.equals(other.method) && Arrays.equals(arguments, other.arguments);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
@@ -9,14 +9,20 @@
  */
 package org.openmrs.aop;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openmrs.OpenmrsObject;
 import org.openmrs.Retireable;
@@ -38,6 +44,8 @@ import org.openmrs.util.HandlerUtil;
 import org.openmrs.util.Reflect;
 import org.openmrs.validator.ValidateUtil;
 import org.springframework.aop.MethodBeforeAdvice;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.util.StringUtils;
 
 /**
@@ -69,29 +77,49 @@ import org.springframework.util.StringUtils;
  * would then be run twice because both handlers are registered. Be sure to add the
  * {@link org.openmrs.annotation.Handler} annotation (like
  * "@Handler(supports=YourPojoThatHasUniqueSaveNeeds.class)") to your class so that it is picked up
- * by Spring automatically.
+ * by Spring automatically.<br/>
+ * <br/>
+ * What to do for each service method and which child collections to walk for each class are worked
+ * out once and cached, so calls to other methods (like getters) return without looking at the
+ * method name again. The caches are cleared whenever the application context is refreshed.
  *
  * @see RequiredDataHandler
  * @see SaveHandler
  * @see VoidHandler
  * @since 1.5
  */
-public class RequiredDataAdvice implements MethodBeforeAdvice {
+public class RequiredDataAdvice implements MethodBeforeAdvice, ApplicationListener<ContextRefreshedEvent> {
+	
+	/**
+	 * The handler to run for a service method, worked out from its name
+	 */
+	private enum Action {
+		SAVE, VOID, UNVOID, RETIRE, UNRETIRE, NONE
+	}
+	
+	private static final Map<Method, MethodPlan> methodPlans = new ConcurrentHashMap<Method, MethodPlan>();
+	
+	private static final Map<Class<?>, List<ChildCollection>> childCollections = new ConcurrentHashMap<Class<?>, List<ChildCollection>>();
 	
 	/**
 	 * @see org.springframework.aop.MethodBeforeAdvice#before(java.lang.reflect.Method,
 	 *      java.lang.Object[], java.lang.Object)
 	 * @should not fail on update method with no arguments
+	 * @should not call handlers on methods that are not save, void or retire methods
 	 */
 	@SuppressWarnings("unchecked")
 	public void before(Method method, Object[] args, Object target) throws Throwable {
-		String methodName = method.getName();
-		
 		// skip out early if there are no arguments
 		if (args == null || args.length == 0) {
 			return;
 		}
 		
+		// skip out early on getters and everything else that needs no handlers
+		MethodPlan plan = getMethodPlan(method);
+		if (plan.action == Action.NONE) {
+			return;
+		}
+		
 		Object mainArgument = args[0];
 		
 		// fail early on a null parameter
@@ -99,18 +127,12 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 			return;
 		}
 		
-		// the "create" is there to cover old deprecated methods since AOP doesn't occur
-		// on method calls within a class, only on calls to methods from external classes to methods
-		// "update" is not an option here because there are multiple methods that start with "update" but is
-		// not updating the primary argument. eg: ConceptService.updateConceptWord(Concept)
-		if (methodName.startsWith("save") || methodName.startsWith("create")) {
+		if (plan.action == Action.SAVE) {
 			
 			// if the first argument is an OpenmrsObject, handle it now
-			Reflect reflect = new Reflect(OpenmrsObject.class);
-			
-			if (reflect.isSuperClass(mainArgument)) {
+			if (mainArgument instanceof OpenmrsObject) {
 				// fail early if the method name is not like saveXyz(Xyz)
-				if (!methodNameEndsWithClassName(method, mainArgument.getClass())) {
+				if (!plan.endsWithClassName(mainArgument.getClass())) {
 					return;
 				}
 				
@@ -150,28 +172,28 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		} else {
 			// fail early if the method name is not like retirePatient or retireConcept when dealing
 			// with Patients or Concepts as the first argument
-			if (!methodNameEndsWithClassName(method, mainArgument.getClass())) {
+			if (!plan.endsWithClassName(mainArgument.getClass())) {
 				return;
 			}
 			
-			if (methodName.startsWith("void")) {
+			if (plan.action == Action.VOID) {
 				Voidable voidable = (Voidable) args[0];
 				Date dateVoided = voidable.getDateVoided() == null ? new Date() : voidable.getDateVoided();
 				String voidReason = (String) args[1];
 				recursivelyHandle(VoidHandler.class, voidable, Context.getAuthenticatedUser(), dateVoided, voidReason, null);
 				
-			} else if (methodName.startsWith("unvoid")) {
+			} else if (plan.action == Action.UNVOID) {
 				Voidable voidable = (Voidable) args[0];
 				Date originalDateVoided = voidable.getDateVoided();
 				User originalVoidingUser = voidable.getVoidedBy();
 				recursivelyHandle(UnvoidHandler.class, voidable, originalVoidingUser, originalDateVoided, null, null);
 				
-			} else if (methodName.startsWith("retire")) {
+			} else if (plan.action == Action.RETIRE) {
 				Retireable retirable = (Retireable) args[0];
 				String retireReason = (String) args[1];
 				recursivelyHandle(RetireHandler.class, retirable, retireReason);
 				
-			} else if (methodName.startsWith("unretire")) {
+			} else if (plan.action == Action.UNRETIRE) {
 				Retireable retirable = (Retireable) args[0];
 				Date originalDateRetired = retirable.getDateRetired();
 				recursivelyHandle(UnretireHandler.class, retirable, Context.getAuthenticatedUser(), originalDateRetired,
@@ -180,6 +202,34 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		}
 	}
 	
+	/**
+	 * Clears the cached method and class plans, so that services and classes of modules that were
+	 * just started or stopped are looked at again
+	 * 
+	 * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		clearCaches();
+	}
+	
+	/**
+	 * Clears the cached method and class plans
+	 */
+	public static void clearCaches() {
+		methodPlans.clear();
+		childCollections.clear();
+	}
+	
+	private static MethodPlan getMethodPlan(Method method) {
+		MethodPlan plan = methodPlans.get(method);
+		if (plan == null) {
+			plan = new MethodPlan(method);
+			methodPlans.put(method, plan);
+		}
+		return plan;
+	}
+	
 	/**
 	 * Convenience method to change the given method to make sure it ends with
 	 * the given class name. <br/>
@@ -193,7 +243,7 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 	 * @return true if method's name ends with the mainArgumentClasses simple
 	 *         name
 	 */
-	private boolean methodNameEndsWithClassName(Method method, Class<?> mainArgumentClass) {
+	private static boolean methodNameEndsWithClassName(Method method, Class<?> mainArgumentClass) {
 		if (method.getName().endsWith(mainArgumentClass.getSimpleName())) {
 			return true;
 		} else {
@@ -250,7 +300,7 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		Class<? extends OpenmrsObject> openmrsObjectClass = openmrsObject.getClass();
 		
 		if (alreadyHandled == null) {
-			alreadyHandled = new ArrayList<OpenmrsObject>();
+			alreadyHandled = new HandledObjects();
 		}
 		
 		// fetch all handlers for the object being saved
@@ -262,21 +312,13 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		}
 		alreadyHandled.add(openmrsObject);
 		
-		Reflect reflect = new Reflect(OpenmrsObject.class);
-		List<Field> allInheritedFields = reflect.getInheritedFields(openmrsObjectClass);
-		
 		// loop over all child collections of OpenmrsObjects and recursively save on those
-		for (Field field : allInheritedFields) {
-			
-			// skip field if it's declared independent
-			if (field.isAnnotationPresent(Independent.class)) {
-				continue;
-			}
+		for (ChildCollection child : getChildCollections(openmrsObjectClass)) {
 			
-			if (reflect.isCollectionField(field) && !isHandlerMarkedAsDisabled(handlerType, field)) {
+			if (!child.isHandlerDisabled(handlerType)) {
 				
 				// the collection we'll be looping over
-				Collection<OpenmrsObject> childCollection = getChildCollection(openmrsObject, field);
+				Collection<OpenmrsObject> childCollection = child.get(openmrsObject);
 				
 				if (childCollection != null) {
 					for (Object collectionElement : childCollection) {
@@ -291,6 +333,29 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		
 	}
 	
+	/**
+	 * Gets the plan for walking the child collections of the given class: one entry for each
+	 * inherited field that is a collection of OpenmrsObjects and is not declared
+	 * {@link Independent}
+	 * 
+	 * @param openmrsObjectClass the class to look at
+	 * @return the cached list of child collections
+	 */
+	private static List<ChildCollection> getChildCollections(Class<? extends OpenmrsObject> openmrsObjectClass) {
+		List<ChildCollection> children = childCollections.get(openmrsObjectClass);
+		if (children == null) {
+			children = new ArrayList<ChildCollection>();
+			Reflect reflect = new Reflect(OpenmrsObject.class);
+			for (Field field : reflect.getInheritedFields(openmrsObjectClass)) {
+				if (!field.isAnnotationPresent(Independent.class) && reflect.isCollectionField(field)) {
+					children.add(new ChildCollection(openmrsObjectClass, field));
+				}
+			}
+			childCollections.put(openmrsObjectClass, children);
+		}
+		return children;
+	}
+	
 	/**
 	 * This method gets a child attribute off of an OpenmrsObject. It usually uses the getter for
 	 * the attribute, but can use the direct field (even if its private) if told to by the
@@ -313,11 +378,11 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 			// checks if direct access is allowed
 			if (field.isAnnotationPresent(AllowDirectAccess.class)) {
 				
-				boolean previousFieldAccessibility = field.isAccessible();
-				field.setAccessible(true);
-				Collection<OpenmrsObject> childCollection = (Collection<OpenmrsObject>) field.get(openmrsObject);
-				field.setAccessible(previousFieldAccessibility);
-				return childCollection;
+				// the field is left accessible, since fields can be shared between threads
+				if (!field.isAccessible()) {
+					field.setAccessible(true);
+				}
+				return (Collection<OpenmrsObject>) field.get(openmrsObject);
 				
 			} else {
 				// access the field via its getter method
@@ -389,4 +454,151 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		
 		return false;
 	}
+	/**
+	 * What to do for one service method
+	 */
+	private static final class MethodPlan {
+		
+		private final Method method;
+		
+		private final Action action;
+		
+		/**
+		 * Whether the method name ends with the name of a class of the main argument, per class
+		 */
+		private final Map<Class<?>, Boolean> endsWithClassName = new ConcurrentHashMap<Class<?>, Boolean>();
+		
+		private MethodPlan(Method method) {
+			this.method = method;
+			this.action = getAction(method.getName());
+		}
+		
+		private static Action getAction(String methodName) {
+			// the "create" is there to cover old deprecated methods since AOP doesn't occur
+			// on method calls within a class, only on calls to methods from external classes to methods
+			// "update" is not an option here because there are multiple methods that start with "update" but is
+			// not updating the primary argument. eg: ConceptService.updateConceptWord(Concept)
+			if (methodName.startsWith("save") || methodName.startsWith("create")) {
+				return Action.SAVE;
+			} else if (methodName.startsWith("void")) {
+				return Action.VOID;
+			} else if (methodName.startsWith("unvoid")) {
+				return Action.UNVOID;
+			} else if (methodName.startsWith("retire")) {
+				return Action.RETIRE;
+			} else if (methodName.startsWith("unretire")) {
+				return Action.UNRETIRE;
+			}
+			return Action.NONE;
+		}
+		
+		private boolean endsWithClassName(Class<?> mainArgumentClass) {
+			Boolean endsWith = endsWithClassName.get(mainArgumentClass);
+			if (endsWith == null) {
+				endsWith = methodNameEndsWithClassName(method, mainArgumentClass);
+				endsWithClassName.put(mainArgumentClass, endsWith);
+			}
+			return endsWith;
+		}
+	}
+	
+	/**
+	 * One child collection field of a class, with a method handle that reads it the same way as
+	 * {@link RequiredDataAdvice#getChildCollection(OpenmrsObject, Field)} and the handler types that
+	 * are disabled on it
+	 */
+	private static final class ChildCollection {
+		
+		private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+		
+		private final Field field;
+		
+		private final Class<?>[] disabledHandlerTypes;
+		
+		/**
+		 * Null if the collection can't be read through a method handle, in which case
+		 * {@link RequiredDataAdvice#getChildCollection(OpenmrsObject, Field)} is used to fail the
+		 * same way it always has
+		 */
+		private final MethodHandle accessor;
+		
+		private ChildCollection(Class<?> openmrsObjectClass, Field field) {
+			this.field = field;
+			DisableHandlers disableHandlers = field.getAnnotation(DisableHandlers.class);
+			this.disabledHandlerTypes = disableHandlers == null ? new Class<?>[0] : disableHandlers.handlerTypes();
+			this.accessor = getAccessor(openmrsObjectClass, field);
+		}
+		
+		private static MethodHandle getAccessor(Class<?> openmrsObjectClass, Field field) {
+			try {
+				MethodHandle handle;
+				if (field.isAnnotationPresent(AllowDirectAccess.class)) {
+					field.setAccessible(true);
+					handle = MethodHandles.lookup().unreflectGetter(field);
+				} else {
+					String getterName = "get" + StringUtils.capitalize(field.getName());
+					handle = MethodHandles.lookup().unreflect(openmrsObjectClass.getMethod(getterName, (Class<?>[]) null));
+				}
+				return handle.asType(ACCESSOR_TYPE);
+			}
+			catch (NoSuchMethodException e) {
+				return null;
+			}
+			catch (IllegalAccessException e) {
+				return null;
+			}
+			catch (SecurityException e) {
+				return null;
+			}
+		}
+		
+		private boolean isHandlerDisabled(Class<?> handlerType) {
+			for (Class<?> h : disabledHandlerTypes) {
+				if (h.isAssignableFrom(handlerType)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private Collection<OpenmrsObject> get(OpenmrsObject openmrsObject) {
+			if (accessor == null) {
+				return getChildCollection(openmrsObject, field);
+			}
+			try {
+				return (Collection<OpenmrsObject>) (Object) accessor.invokeExact((Object) openmrsObject);
+			}
+			catch (Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				throw new APIException("unable.getter.method", new Object[] { "run",
+				        "get" + StringUtils.capitalize(field.getName()), field.getName(), openmrsObject.getClass() }, e);
+			}
+		}
+	}
+	
+	/**
+	 * The objects handled so far while walking one object tree, with a hash set behind
+	 * {@link #contains(Object)} so that large trees like encounters with many obs aren't searched
+	 * from the start for every child
+	 */
+	private static final class HandledObjects extends ArrayList<OpenmrsObject> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Set<Object> handled = new HashSet<Object>();
+		
+		@Override
+		public boolean add(OpenmrsObject openmrsObject) {
+			handled.add(openmrsObject);
+			return super.add(openmrsObject);
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			return handled.contains(o);
+		}
+	}
 }
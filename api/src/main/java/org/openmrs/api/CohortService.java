@@ -9,6 +9,7 @@
  */
 package org.openmrs.api;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.openmrs.Cohort;
@@ -180,7 +181,8 @@ public interface CohortService extends OpenmrsService {
 	
 	/**
 	 * Adds a new patient to a Cohort. If the patient is not already in the Cohort, then they are
-	 * added, and the Cohort is saved, marking it as changed.
+	 * added, and the Cohort is saved, marking it as changed. The members of a saved Cohort are not
+	 * loaded to add the patient.
 	 * 
 	 * @param cohort the cohort to receive the given patient
 	 * @param patient the patient to insert into the cohort
@@ -189,13 +191,15 @@ public interface CohortService extends OpenmrsService {
 	 * @should add a patient and save the cohort
 	 * @should add a patient and insert the cohort to database
 	 * @should not fail if cohort already contains patient
+	 * @should add a patient without loading the members of the cohort
 	 */
 	@Authorized( { PrivilegeConstants.EDIT_COHORTS })
 	public Cohort addPatientToCohort(Cohort cohort, Patient patient) throws APIException;
 	
 	/**
 	 * Removes a patient from a Cohort. If the patient is in the Cohort, then they are removed, and
-	 * the Cohort is saved, marking it as changed.
+	 * the Cohort is saved, marking it as changed. The members of a saved Cohort are not loaded to
+	 * remove the patient.
 	 * 
 	 * @param cohort the cohort containing the given patient
 	 * @param patient the patient to remove from the given cohort
@@ -203,10 +207,42 @@ public interface CohortService extends OpenmrsService {
 	 * @throws APIException
 	 * @should not fail if cohort doesn't contain patient
 	 * @should save cohort after removing patient
+	 * @should remove a patient without loading the members of the cohort
 	 */
 	@Authorized( { PrivilegeConstants.EDIT_COHORTS })
 	public Cohort removePatientFromCohort(Cohort cohort, Patient patient) throws APIException;
 	
+	/**
+	 * Adds patients to a Cohort. Patients that are in the Cohort already are skipped. The members
+	 * of a saved Cohort are not loaded, so this can be used to fill large Cohorts.
+	 * 
+	 * @param cohort the cohort to receive the given patients
+	 * @param patientIds the ids of the patients to add
+	 * @return the number of patients added
+	 * @throws APIException
+	 * @should add the patients that are not in the cohort
+	 * @should add the patients to a new cohort
+	 * @since 1.12
+	 */
+	@Authorized( { PrivilegeConstants.EDIT_COHORTS })
+	public int addPatientsToCohort(Cohort cohort, Collection<Integer> patientIds) throws APIException;
+	
+	/**
+	 * Gets the ids of the members of a Cohort a page at a time, in ascending order, without
+	 * loading all the members of the Cohort
+	 * 
+	 * @param cohort the cohort
+	 * @param previousPatientId the last patient id of the previous page, or null for the first page
+	 * @param maxResults the maximum number of ids to return
+	 * @return the member ids following the previous patient id
+	 * @throws APIException
+	 * @should return the member ids in pages
+	 * @since 1.12
+	 */
+	@Authorized( { PrivilegeConstants.VIEW_PATIENT_COHORTS })
+	public List<Integer> getCohortMemberIds(Cohort cohort, Integer previousPatientId, int maxResults)
+	        throws APIException;
+	
 	/**
 	 * Get Cohort by its UUID
 	 * 
@@ -36,6 +36,7 @@ import org.openmrs.ConceptSource;
 import org.openmrs.ConceptStopWord;
 import org.openmrs.Drug;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.annotation.Memoized;
 import org.openmrs.api.db.ConceptDAO;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -116,6 +117,7 @@ public interface ConceptService extends OpenmrsService {
 	 * @should find object given valid uuid
 	 * @should return null if no object found with given uuid
 	 */
+	@Memoized
 	@Authorized(PrivilegeConstants.GET_CONCEPTS)
 	public Concept getConceptByUuid(String uuid);
 	
@@ -272,6 +274,7 @@ public interface ConceptService extends OpenmrsService {
 	 * @return the matching Concept object
 	 * @throws APIException
 	 */
+	@Memoized
 	@Authorized(PrivilegeConstants.GET_CONCEPTS)
 	public Concept getConcept(Integer conceptId) throws APIException;
 	
@@ -1120,6 +1123,22 @@ public interface ConceptService extends OpenmrsService {
 	@Authorized(PrivilegeConstants.GET_CONCEPTS)
 	public Iterator<Concept> conceptIterator();
 	
+	/**
+	 * Returns an iterator for all concepts, including retired and expired, that fetches the
+	 * concepts in batches of ascending concept ids. The names, descriptions, answers and set
+	 * members of each batch are prefetched together and the session is cleared between batches,
+	 * which keeps memory constant when walking large dictionaries. This should only be used for
+	 * read only operations since unsaved changes in the session are discarded.
+	 * 
+	 * @param batchSize the number of concepts to fetch at a time
+	 * @return the Iterator
+	 * @should start with the smallest concept id
+	 * @should iterate over all concepts
+	 * @should fail if batch size is less than one
+	 */
+	@Authorized(PrivilegeConstants.GET_CONCEPTS)
+	public Iterator<Concept> conceptIterator(int batchSize);
+	
 	/**
 	 * Looks up a concept via {@link ConceptMap} This will return the {@link Concept} which contains
 	 * a {@link ConceptMap} entry whose <code>sourceCode</code> is equal to the passed
@@ -26,6 +26,7 @@ import org.openmrs.User;
 import org.openmrs.Visit;
 import org.openmrs.VisitType;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.annotation.Memoized;
 import org.openmrs.api.db.EncounterDAO;
 import org.openmrs.api.handler.EncounterVisitHandler;
 import org.openmrs.util.PrivilegeConstants;
@@ -73,6 +74,23 @@ public interface EncounterService extends OpenmrsService {
 	@Authorized( { PrivilegeConstants.ADD_ENCOUNTERS, PrivilegeConstants.EDIT_ENCOUNTERS })
 	public Encounter saveEncounter(Encounter encounter) throws APIException;
 	
+	/**
+	 * Saves an encounter like {@link #saveEncounter(Encounter)}, but keeps the history of the
+	 * observations of an existing encounter: the obs whose values changed are voided and saved as
+	 * new versions with the given change message, new obs are inserted and unchanged obs are not
+	 * written at all.
+	 * 
+	 * @param encounter to be saved
+	 * @param changeMessage explains why the obs of the encounter are being changed
+	 * @return the saved encounter
+	 * @throws APIException
+	 * @since 1.12
+	 * @should only create new versions of the obs whose values changed
+	 * @should insert the new obs of the encounter
+	 */
+	@Authorized( { PrivilegeConstants.ADD_ENCOUNTERS, PrivilegeConstants.EDIT_ENCOUNTERS })
+	public Encounter saveEncounter(Encounter encounter, String changeMessage) throws APIException;
+	
 	/**
 	 * Get encounter by internal identifier
 	 * 
@@ -276,6 +294,7 @@ public interface EncounterService extends OpenmrsService {
 	 * @throws APIException
 	 * @should throw error if given null parameter
 	 */
+	@Memoized
 	@Authorized( { PrivilegeConstants.GET_ENCOUNTER_TYPES })
 	public EncounterType getEncounterType(Integer encounterTypeId) throws APIException;
 	
@@ -287,6 +306,7 @@ public interface EncounterService extends OpenmrsService {
 	 * @should find object given valid uuid
 	 * @should return null if no object found with given uuid
 	 */
+	@Memoized
 	@Authorized( { PrivilegeConstants.GET_ENCOUNTER_TYPES })
 	public EncounterType getEncounterTypeByUuid(String uuid) throws APIException;
 	
@@ -18,6 +18,7 @@ import org.openmrs.LocationAttribute;
 import org.openmrs.LocationAttributeType;
 import org.openmrs.LocationTag;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.annotation.Memoized;
 import org.openmrs.api.db.LocationDAO;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.PrivilegeConstants;
@@ -69,6 +70,7 @@ public interface LocationService extends OpenmrsService {
 	 * @return Location object that has location.locationId = <code>locationId</code> passed in.
 	 * @should return null when no location match given location id
 	 */
+	@Memoized
 	@Authorized( { PrivilegeConstants.GET_LOCATIONS })
 	public Location getLocation(Integer locationId) throws APIException;
 	
@@ -101,6 +103,7 @@ public interface LocationService extends OpenmrsService {
 	 * @should find object given valid uuid
 	 * @should return null if no object found with given uuid
 	 */
+	@Memoized
 	@Authorized( { PrivilegeConstants.GET_LOCATIONS })
 	public Location getLocationByUuid(String uuid) throws APIException;
 	
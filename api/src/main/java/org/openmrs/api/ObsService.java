@@ -25,6 +25,8 @@ import org.openmrs.Person;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.db.ObsDAO;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
+import org.openmrs.obs.ObsTimeline;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsConstants.PERSON_TYPE;
 import org.openmrs.util.PrivilegeConstants;
@@ -151,7 +153,9 @@ public interface ObsService extends OpenmrsService {
 	 * save, the obsId on the given <code>obs</code> object will be updated to reflect the auto
 	 * numbering from the database. The obsId on the returned obs will also have this number. If
 	 * there is already an obsId on the given <code>obs</code> object, the given obs will be voided
-	 * and a new row in the database will be created that has a new obs id.
+	 * and a new row in the database will be created that has a new obs id. An existing obs whose own
+	 * values did not change is not versioned, only its group members that changed are, and the
+	 * same obs is returned.
 	 * 
 	 * @param obs the Obs to save to the database
 	 * @param changeMessage String explaining why <code>obs</code> is being changed. If
@@ -170,6 +174,8 @@ public interface ObsService extends OpenmrsService {
 	 * @should cascade update to new child obs groups
 	 * @should link original and updated obs
 	 * @should set void reason message to changeMessage
+	 * @should not create a new version of an unchanged obs
+	 * @should only create new versions of the changed members of an unchanged obs group
 	 */
 	@Authorized( { PrivilegeConstants.ADD_OBS, PrivilegeConstants.EDIT_OBS })
 	public Obs saveObs(Obs obs, String changeMessage) throws APIException;
@@ -550,6 +556,73 @@ public interface ObsService extends OpenmrsService {
 	@Authorized(PrivilegeConstants.VIEW_OBS)
 	public List<Obs> getObservationsByPersonAndConcept(Person who, Concept question) throws APIException;
 	
+	/**
+	 * Gets the non voided observations of a person as a compact timeline of concept, obs datetime
+	 * and value rows, in ascending order of obs datetime. This reads much less than
+	 * {@link #getObservationsByPersonAndConcept(Person, Concept)} and is meant for flowsheets and
+	 * graphs.
+	 * 
+	 * @param who the person
+	 * @param questions the question concepts to include, or null for all of them
+	 * @param fromDate the earliest obs datetime to include, or null
+	 * @param toDate the obs datetime to include obs before, or null
+	 * @return the timeline of the person
+	 * @throws APIException
+	 * @since 1.12
+	 * @should return the non voided obs of the person in time order
+	 * @should only return obs of the given concepts
+	 * @should only return obs within the date range
+	 * @should return an empty timeline for a person without obs
+	 */
+	@Authorized(PrivilegeConstants.VIEW_OBS)
+	public ObsTimeline getObsTimeline(Person who, List<Concept> questions, Date fromDate, Date toDate)
+	        throws APIException;
+	
+	/**
+	 * Passes the observations matching the given criteria to the callback one at a time, reading
+	 * them with a forward only cursor instead of loading them all into a list. The observations
+	 * and the objects loaded by the callback are evicted from the session after each batch, so any
+	 * number of them can be processed in constant memory. They should therefore not be used
+	 * afterwards without reloading them, the objects the caller loaded before stay in the session.
+	 * 
+	 * @param questions the question concepts to include, or null for all of them
+	 * @param locations the locations to include, or null for all of them
+	 * @param personTypes the types of persons to include, or null for all of them
+	 * @param sortList the fields to order by, as in
+	 *            {@link #getObservations(List, List, List, List, List, List, List, Integer, Integer, Date, Date, boolean)}
+	 * @param fromDate the earliest obs datetime to include, or null
+	 * @param toDate the latest obs datetime to include, or null
+	 * @param includeVoided whether to include voided observations
+	 * @param callback called with each observation
+	 * @return the number of observations passed to the callback
+	 * @throws APIException
+	 * @since 1.12
+	 * @should pass the matching observations to the callback in order
+	 * @should stop when the callback returns false
+	 * @should keep the objects loaded before in the session
+	 */
+	@Authorized(PrivilegeConstants.VIEW_OBS)
+	public int processObservations(List<Concept> questions, List<Location> locations, List<PERSON_TYPE> personTypes,
+	        List<String> sortList, Date fromDate, Date toDate, boolean includeVoided, ObsCallback callback)
+	        throws APIException;
+	
+	/**
+	 * Interface used to process observations one at a time. Implement this interface and pass it
+	 * to {@link ObsService#processObservations(List, List, List, List, Date, Date, boolean, ObsCallback)}
+	 * 
+	 * @since 1.12
+	 */
+	public interface ObsCallback {
+		
+		/**
+		 * This method is called for each observation, in order.
+		 * 
+		 * @param obs the observation
+		 * @return true to continue with the next observation, false to stop
+		 */
+		public boolean process(Obs obs);
+	}
+	
 	/**
 	 * @deprecated use
 	 *             {@link #getObservations(List, List, List, List, List, List, List, Integer, Integer, Date, Date, boolean)}
@@ -758,4 +831,22 @@ public interface ObsService extends OpenmrsService {
 	@Authorized(PrivilegeConstants.VIEW_OBS)
 	public Integer getObservationCount(List<ConceptName> conceptNames, boolean includeVoided);
 	
+	/**
+	 * Copies the files of all complex obs, including voided ones, into the given storage and points
+	 * the obs at the new keys. Files are read through the storage currently in use, see
+	 * {@link org.openmrs.obs.handler.AbstractHandler#getStorage()}, so this should be run before
+	 * the global property {@link org.openmrs.util.OpenmrsConstants#GP_COMPLEX_OBS_STORAGE_BEAN_ID}
+	 * is changed. Obs sharing a value complex are updated with a single statement and obs that are
+	 * already stored under the same key are left untouched. The original files are not deleted.
+	 * 
+	 * @param storage the storage to move the complex data to
+	 * @return the number of updated obs
+	 * @since 1.12
+	 * @should copy complex data into the given storage and update the obs
+	 * @should skip obs whose file does not exist
+	 * @should keep deduplicated content that is still used after purging an obs
+	 */
+	@Authorized(PrivilegeConstants.EDIT_OBS)
+	public int migrateComplexData(ComplexObsStorage storage) throws APIException;
+	
 }
@@ -12,6 +12,7 @@ package org.openmrs.api;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.openmrs.Concept;
@@ -25,9 +26,11 @@ import org.openmrs.activelist.Problem;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.db.PatientDAO;
 import org.openmrs.comparator.PatientIdentifierTypeDefaultComparator;
+import org.openmrs.patient.DuplicatePatientCandidate;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.person.PersonMergeLogData;
 import org.openmrs.serialization.SerializationException;
+import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.PrivilegeConstants;
 import org.openmrs.validator.PatientIdentifierValidator;
 
@@ -629,10 +632,86 @@ public interface PatientService extends OpenmrsService {
 	 * @throws APIException
 	 * @should fetch patients that exactly match on all given attributes
 	 * @should not return patients that exactly match on some but not all given attributes
+	 * @should match text attributes regardless of case and surrounding spaces
 	 */
 	@Authorized( { PrivilegeConstants.VIEW_PATIENTS })
 	public List<Patient> getDuplicatePatientsByAttributes(List<String> attributes) throws APIException;
 	
+	/**
+	 * Looks for patients that are likely to be the same person, comparing patients that share a
+	 * birthdate, an identifier or a similar sounding family name, and saves the pairs scoring at
+	 * least the {@link OpenmrsConstants#GP_DUPLICATE_PATIENT_MATCH_THRESHOLD} as duplicate
+	 * candidates for review. Pairs that were saved before, including voided ones, are not saved
+	 * again.
+	 * 
+	 * @param incremental if true only patients created or changed since the last run are compared
+	 *            with the others
+	 * @return the number of new duplicate candidates
+	 * @throws APIException
+	 * @since 1.12
+	 * @should save patients that share identifiers, names and birthdate as candidates
+	 * @should not save the same pair twice
+	 * @should only compare patients changed since the last run if incremental
+	 * @should find the accented family names of unchanged patients if incremental
+	 */
+	@Authorized( { PrivilegeConstants.EDIT_PATIENTS })
+	public int detectDuplicatePatients(boolean incremental) throws APIException;
+	
+	/**
+	 * Gets the duplicate candidates ordered by descending score
+	 * 
+	 * @param patient if not null only the candidates involving this patient are returned
+	 * @param includeVoided whether to include candidates that were dismissed
+	 * @param start the index of the first candidate to return, may be null
+	 * @param length the maximum number of candidates to return, may be null
+	 * @return the candidates
+	 * @throws APIException
+	 * @since 1.12
+	 * @should return the candidates of the given patient
+	 */
+	@Authorized( { PrivilegeConstants.VIEW_PATIENTS })
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Patient patient, boolean includeVoided,
+	        Integer start, Integer length) throws APIException;
+	
+	/**
+	 * Gets a duplicate candidate by its id
+	 * 
+	 * @param duplicatePatientCandidateId the id
+	 * @return the candidate or null
+	 * @throws APIException
+	 * @since 1.12
+	 */
+	@Authorized( { PrivilegeConstants.VIEW_PATIENTS })
+	public DuplicatePatientCandidate getDuplicatePatientCandidate(Integer duplicatePatientCandidateId)
+	        throws APIException;
+	
+	/**
+	 * Saves a duplicate candidate
+	 * 
+	 * @param candidate the candidate to save
+	 * @return the saved candidate
+	 * @throws APIException
+	 * @since 1.12
+	 */
+	@Authorized( { PrivilegeConstants.EDIT_PATIENTS })
+	public DuplicatePatientCandidate saveDuplicatePatientCandidate(DuplicatePatientCandidate candidate)
+	        throws APIException;
+	
+	/**
+	 * Dismisses a duplicate candidate that turned out not to be a duplicate, it is kept so that the
+	 * pair is not suggested again
+	 * 
+	 * @param candidate the candidate to void
+	 * @param reason the reason
+	 * @return the voided candidate
+	 * @throws APIException
+	 * @since 1.12
+	 * @should void the candidate
+	 */
+	@Authorized( { PrivilegeConstants.EDIT_PATIENTS })
+	public DuplicatePatientCandidate voidDuplicatePatientCandidate(DuplicatePatientCandidate candidate, String reason)
+	        throws APIException;
+	
 	/**
 	 * Convenience method to join two patients' information into one record.
 	 * <ol>
@@ -707,6 +786,46 @@ public interface PatientService extends OpenmrsService {
 	 */
 	public void mergePatients(Patient preferred, List<Patient> notPreferred) throws APIException, SerializationException;
 	
+	/**
+	 * Merges many pairs of patients, as done by {@link #mergePatients(Patient, Patient)} for each
+	 * pair. The patients are looked up by id and the session is cleared every few merges so that
+	 * large batches do not pile up in memory, objects loaded by the caller should therefore not be
+	 * used afterwards without reloading them.
+	 * 
+	 * @param notPreferredToPreferred maps the id of each patient to merge away to the id of the
+	 *            patient to keep
+	 * @param callback notified after each merge, may be null
+	 * @return the number of merged pairs
+	 * @throws APIException
+	 * @throws SerializationException
+	 * @since 1.12
+	 * @should merge each not preferred patient into its preferred patient
+	 * @should report the progress after each merge
+	 * @should fail if a preferred patient is merged away in the same batch
+	 */
+	@Authorized( { PrivilegeConstants.EDIT_PATIENTS })
+	public int mergePatients(Map<Integer, Integer> notPreferredToPreferred, MergeCallback callback) throws APIException,
+	        SerializationException;
+	
+	/**
+	 * Interface used to report the progress of a batch merge. Implement this interface and pass it
+	 * to {@link PatientService#mergePatients(Map, MergeCallback)}
+	 * 
+	 * @since 1.12
+	 */
+	public interface MergeCallback {
+		
+		/**
+		 * This method is called after each pair of patients is merged.
+		 * 
+		 * @param preferred the patient that was kept
+		 * @param notPreferred the patient that was merged away
+		 * @param numMerged the number of pairs merged so far
+		 * @param numToMerge the total number of pairs in the batch
+		 */
+		public void merged(Patient preferred, Patient notPreferred, int numMerged, int numToMerge);
+	}
+	
 	/**
 	 * @deprecated as of 1.10 and moved to exit from care module. This method is no longer supported
 	 *             because previously the patient's active orders would get discontinued in the
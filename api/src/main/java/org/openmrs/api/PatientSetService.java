@@ -37,6 +37,10 @@ import org.openmrs.Relationship;
 import org.openmrs.RelationshipType;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.PatientSetDAO;
+import org.openmrs.cohort.CohortQuery;
+import org.openmrs.cohort.CohortQueryPlan;
+import org.openmrs.cohort.PatientColumn;
+import org.openmrs.cohort.PatientColumns;
 
 public interface PatientSetService extends OpenmrsService {
 	
@@ -571,4 +575,51 @@ public interface PatientSetService extends OpenmrsService {
 	 */
 	public Cohort getPatients(Integer start, Integer size);
 	
+	/**
+	 * Finds the patients matching a combination of criteria. Criteria are combined in the database
+	 * where possible, so this is usually faster than evaluating each criterion and combining the
+	 * cohorts with {@link Cohort#intersect(Cohort, Cohort)}, {@link Cohort#union(Cohort, Cohort)}
+	 * and {@link #getInverseOfCohort(Cohort)}.
+	 * 
+	 * @param query the criteria to match
+	 * @return a Cohort with the matching non voided patients
+	 * @since 1.12
+	 * @should match the intersection of the criteria for and
+	 * @should match the union of the criteria for or
+	 * @should match the inverse of the criterion for not
+	 * @should combine criteria that are evaluated separately
+	 */
+	public Cohort evaluateCohortQuery(CohortQuery query);
+	
+	/**
+	 * Gets the plan {@link #evaluateCohortQuery(CohortQuery)} would use for a query, without
+	 * running it
+	 * 
+	 * @param query the criteria to match
+	 * @return the plan for the query
+	 * @since 1.12
+	 * @should combine sql criteria into a single query
+	 */
+	public CohortQueryPlan explainCohortQuery(CohortQuery query);
+	
+	/**
+	 * Fetches values for each patient of a cohort, such as their gender, a name or an identifier,
+	 * into one array per column. The values are fetched for a chunk of patients at a time with
+	 * one query per column, without loading the patients, so this is suited to exporting the data
+	 * of large cohorts. Use this rather than {@link #getCharacteristics(Cohort)} and
+	 * {@link #getPatientAttributes(Cohort, String, String, boolean)} for large cohorts.
+	 * 
+	 * @param patients the patients
+	 * @param columns the values to fetch
+	 * @return the values of each column in the order of the patient ids, null where a patient has
+	 *         no value
+	 * @since 1.12
+	 * @should fetch property values of the patients
+	 * @should fetch the preferred value if a patient has several
+	 * @should fetch person attribute values
+	 * @should fetch identifiers of the given type
+	 * @should fetch the values of cohorts larger than a chunk
+	 */
+	public PatientColumns getPatientColumns(Cohort patients, List<PatientColumn> columns);
+	
 }
@@ -19,6 +19,7 @@ import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.annotation.Logging;
+import org.openmrs.annotation.Memoized;
 import org.openmrs.api.context.UserContext;
 import org.openmrs.util.PersonByNameComparator;
 import org.openmrs.util.PrivilegeConstants;
@@ -95,6 +96,7 @@ public interface UserService extends OpenmrsService {
 	 * @throws APIException
 	 * @should fetch user with given userId
 	 */
+	@Memoized
 	@Authorized( { PrivilegeConstants.VIEW_USERS })
 	public User getUser(Integer userId) throws APIException;
 	
@@ -108,6 +110,7 @@ public interface UserService extends OpenmrsService {
 	 * @should find object given valid uuid
 	 * @should return null if no object found with given uuid
 	 */
+	@Memoized
 	@Authorized( { PrivilegeConstants.VIEW_USERS })
 	public User getUserByUuid(String uuid) throws APIException;
 	
@@ -374,9 +374,27 @@ public interface VisitService extends OpenmrsService {
 	 * types specified by the {@link OpenmrsConstants#GP_VISIT_TYPES_TO_AUTO_CLOSE} global property.
 	 * If startDatetime is null, the default will be end of the current day.
 	 * 
+	 * The visits are stopped in chunks by {@link #stopVisits(Collection, Date)}. If this method is
+	 * called outside of a transaction, e.g. by a scheduled task, each chunk is committed on its own.
+	 * 
 	 * @param maximumStartDate Visits started on or before this date time value will get stopped
 	 * @should close all unvoided active visit matching the specified visit types
 	 */
 	@Authorized(PrivilegeConstants.EDIT_VISITS)
 	public void stopVisits(Date maximumStartDate);
+	
+	/**
+	 * Stops the given visits that are still active. The visits are saved through the session, which
+	 * is flushed and cleared afterwards, so that interceptors see every change without the session
+	 * growing.
+	 * 
+	 * @param visitIds the ids of the visits to stop, at most a thousand
+	 * @param stopDate the stop date time to set
+	 * @return the number of visits that were stopped
+	 * @since 1.12
+	 * @should stop the given active visits
+	 * @should not change visits that are already stopped
+	 */
+	@Authorized(PrivilegeConstants.EDIT_VISITS)
+	public int stopVisits(Collection<Integer> visitIds, Date stopDate);
 }
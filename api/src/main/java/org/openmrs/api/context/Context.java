@@ -31,6 +31,7 @@ import org.openmrs.GlobalProperty;
 import org.openmrs.Privilege;
 import org.openmrs.Role;
 import org.openmrs.User;
+import org.openmrs.aop.MemoizationAdvice;
 import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.APIException;
 import org.openmrs.api.ActiveListService;
@@ -729,6 +730,7 @@ public class Context {
 		log.trace("opening session");
 		setUserContext(new UserContext()); // must be cleared out in
 		// closeSession()
+		MemoizationAdvice.clear();
 		getContextDAO().openSession();
 	}
 	
@@ -740,6 +742,7 @@ public class Context {
 		log.trace("closing session");
 		clearUserContext(); // because we set a UserContext on the current
 		// thread in openSession()
+		MemoizationAdvice.clear();
 		getContextDAO().closeSession();
 	}
 	
@@ -772,6 +775,7 @@ public class Context {
 	 */
 	public static void clearSession() {
 		log.trace("clearing session");
+		MemoizationAdvice.clear();
 		getContextDAO().clearSession();
 	}
 	
@@ -897,6 +901,9 @@ public class Context {
 	 * closing
 	 */
 	public static void shutdown() {
+		log.debug("Stopping the database backfills");
+		DatabaseUpdater.stopBackfills();
+		
 		log.debug("Shutting down the scheduler");
 		try {
 			// Needs to be shutdown before Hibernate
@@ -906,6 +913,14 @@ public class Context {
 			log.warn("Error while shutting down scheduler service", e);
 		}
 		
+		log.debug("Shutting down the message queue");
+		try {
+			getServiceContext().getMessageService().onShutdown();
+		}
+		catch (Exception e) {
+			log.warn("Error while shutting down message service", e);
+		}
+		
 		log.debug("Shutting down the modules");
 		try {
 			ModuleUtil.shutdown();
@@ -1096,7 +1111,7 @@ public class Context {
 			Context.removeProxyPrivilege(PrivilegeConstants.MANAGE_GLOBAL_PROPERTIES);
 			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_GLOBAL_PROPERTIES);
 		}
-
+		
 		// setting default validation rule
 		AdministrationService as = Context.getAdministrationService();
 		Boolean disableValidation = Boolean.valueOf(as.getGlobalProperty(OpenmrsConstants.GP_DISABLE_VALIDATION, "false"));
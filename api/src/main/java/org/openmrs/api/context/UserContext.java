@@ -82,6 +82,22 @@ public class UserContext implements Serializable {
 	public UserContext() {
 	}
 	
+	/**
+	 * Creates a context authenticated as the same user as the given context, with the same locale
+	 * and location, for work done on behalf of that user on another thread. Proxy privileges are not
+	 * copied.
+	 * 
+	 * @param userContext the context to copy
+	 * @since 1.12
+	 * @should copy the user, locale and location
+	 * @should not share proxy privileges with the given context
+	 */
+	public UserContext(UserContext userContext) {
+		this.user = userContext.user;
+		this.locale = userContext.locale;
+		this.locationId = userContext.locationId;
+	}
+	
 	/**
 	 * Authenticate the user to this UserContext.
 	 *
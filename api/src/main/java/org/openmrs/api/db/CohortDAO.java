@@ -9,6 +9,7 @@
  */
 package org.openmrs.api.db;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.openmrs.Cohort;
@@ -57,6 +58,52 @@ public interface CohortDAO {
 	 */
 	public List<Cohort> getCohortsContainingPatientId(Integer patientId) throws DAOException;
 	
+	/**
+	 * Adds a patient to a saved cohort. Unless the members of the cohort have been loaded already,
+	 * only the membership row is written and the members are not loaded.
+	 * 
+	 * @param cohort the cohort, which must have an id
+	 * @param patientId the patient to add
+	 * @return true if the patient was added, false if the patient was a member already
+	 * @throws DAOException
+	 */
+	public boolean addCohortMember(Cohort cohort, Integer patientId) throws DAOException;
+	
+	/**
+	 * Removes a patient from a saved cohort without loading its members, unless they have been
+	 * loaded already
+	 * 
+	 * @param cohort the cohort, which must have an id
+	 * @param patientId the patient to remove
+	 * @return true if the patient was removed, false if the patient was not a member
+	 * @throws DAOException
+	 */
+	public boolean removeCohortMember(Cohort cohort, Integer patientId) throws DAOException;
+	
+	/**
+	 * Adds patients to a saved cohort with batched inserts, skipping those that are members
+	 * already
+	 * 
+	 * @param cohort the cohort, which must have an id
+	 * @param patientIds the patients to add
+	 * @return the number of patients added
+	 * @throws DAOException
+	 */
+	public int addCohortMembers(Cohort cohort, Collection<Integer> patientIds) throws DAOException;
+	
+	/**
+	 * Gets a page of the members of a cohort in ascending order, so that large cohorts can be
+	 * processed without loading all of their members
+	 * 
+	 * @param cohort the cohort
+	 * @param previousPatientId the last patient id of the previous page, or null for the first page
+	 * @param maxResults the maximum number of ids to return
+	 * @return the patient ids following the previous patient id
+	 * @throws DAOException
+	 */
+	public List<Integer> getCohortMemberIds(Cohort cohort, Integer previousPatientId, int maxResults)
+	        throws DAOException;
+	
 	/**
 	 * Saves a Cohort to the database
 	 * 
@@ -325,6 +325,22 @@ public interface ConceptDAO {
 	 */
 	public Iterator<Concept> conceptIterator();
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#conceptIterator(int)
+	 */
+	public Iterator<Concept> conceptIterator(int batchSize);
+	
+	/**
+	 * Gets up to <code>batchSize</code> concepts, in ascending order of concept id, starting at the
+	 * given concept id. The names, descriptions, answers and set members of the returned concepts
+	 * are fetched with one query per collection for the whole batch.
+	 * 
+	 * @param fromConceptId the smallest concept id to include
+	 * @param batchSize the maximum number of concepts to return
+	 * @return the list of concepts, empty if there are no more concepts
+	 */
+	public List<Concept> getConceptBatch(Integer fromConceptId, int batchSize);
+	
 	/**
 	 * @see org.openmrs.api.ConceptService@getConceptsByMapping(java.lang.String, java.lang.String)
 	 */
@@ -20,6 +20,7 @@ import org.openmrs.MimeType;
 import org.openmrs.Obs;
 import org.openmrs.Person;
 import org.openmrs.api.ObsService;
+import org.openmrs.obs.ObsTimeline;
 import org.openmrs.util.OpenmrsConstants.PERSON_TYPE;
 
 /**
@@ -102,4 +103,69 @@ public interface ObsDAO {
 	 */
 	public Obs getObsByUuid(String uuid);
 	
+	/**
+	 * Counts the obs, including voided ones, whose value complex refers to the given storage key
+	 * 
+	 * @param key the key saved after the "|" in the value complex
+	 * @return the number of obs referring to the key
+	 * @since 1.12
+	 */
+	public Long getObsCountByComplexDataKey(String key) throws DAOException;
+	
+	/**
+	 * Gets the distinct non empty value complex strings of all obs, including voided ones
+	 * 
+	 * @return the distinct value complex strings
+	 * @since 1.12
+	 */
+	public List<String> getDistinctValueComplexes() throws DAOException;
+	
+	/**
+	 * Replaces the value complex and complex data key of all obs having the given value complex
+	 * with a single bulk update that bypasses the save handlers
+	 * 
+	 * @param oldValueComplex the value complex to replace
+	 * @param newValueComplex the new value complex
+	 * @return the number of updated obs
+	 * @since 1.12
+	 */
+	public int updateValueComplex(String oldValueComplex, String newValueComplex) throws DAOException;
+	
+	/**
+	 * Checks whether the given obs has changes that are not saved yet, that is whether any of its
+	 * own values differ from the ones it was loaded with. Changes to its group members are not
+	 * considered.
+	 * 
+	 * @param obs the obs to check
+	 * @return true if the obs has unsaved changes or is not attached to the current session
+	 * @since 1.12
+	 */
+	public boolean isDirty(Obs obs) throws DAOException;
+	
+	/**
+	 * Reloads the saved values of the given obs and of its saved group members into the same
+	 * instances, discarding their unsaved changes
+	 * 
+	 * @param obs the obs to revert
+	 * @return false if the obs is not attached to the current session and could not be reverted
+	 * @since 1.12
+	 */
+	public boolean revertObs(Obs obs) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.ObsService#getObsTimeline(Person, List, Date, Date)
+	 * @since 1.12
+	 */
+	public ObsTimeline getObsTimeline(Person who, List<Concept> questions, Date fromDate, Date toDate)
+	        throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.ObsService#processObservations(List, List, List, List, Date, Date,
+	 *      boolean, ObsService.ObsCallback)
+	 * @since 1.12
+	 */
+	public int processObservations(List<Concept> questions, List<Location> locations, List<PERSON_TYPE> personTypes,
+	        List<String> sortList, Date fromDate, Date toDate, boolean includeVoided, ObsService.ObsCallback callback)
+	        throws DAOException;
+	
 }
@@ -9,13 +9,17 @@
  */
 package org.openmrs.api.db;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.Person;
 import org.openmrs.api.PatientService;
+import org.openmrs.patient.DuplicatePatientCandidate;
 
 /**
  * Database methods for the PatientService
@@ -326,4 +330,170 @@ public interface PatientDAO {
 	 */
 	public Long getCountOfPatients(String query, boolean includeVoided);
 	
+	/**
+	 * Gets the ids of non voided patients in ascending order, used to walk through all patients in
+	 * batches
+	 * 
+	 * @param afterPatientId only ids greater than this are returned, may be null to start at the
+	 *            beginning
+	 * @param maxResults the maximum number of ids to return
+	 * @return the patient ids
+	 * @since 1.12
+	 */
+	public List<Integer> getPatientIds(Integer afterPatientId, int maxResults) throws DAOException;
+	
+	/**
+	 * Gets the ids of non voided patients whose demographics, names or identifiers were created or
+	 * changed after the given date
+	 * 
+	 * @param date the date
+	 * @return the patient ids
+	 * @since 1.12
+	 */
+	public List<Integer> getPatientIdsChangedSince(Date date) throws DAOException;
+	
+	/**
+	 * Gets the gender and birthdate of the given patients as rows of patient id, gender and
+	 * birthdate
+	 * 
+	 * @param patientIds the patient ids
+	 * @return the rows
+	 * @since 1.12
+	 */
+	public List<Object[]> getPatientDemographics(Collection<Integer> patientIds) throws DAOException;
+	
+	/**
+	 * Gets the non voided names of the given patients as rows of patient id, given name and family
+	 * name
+	 * 
+	 * @param patientIds the patient ids
+	 * @return the rows
+	 * @since 1.12
+	 */
+	public List<Object[]> getPatientNameValues(Collection<Integer> patientIds) throws DAOException;
+	
+	/**
+	 * Gets the non voided identifiers of the given patients as rows of patient id and identifier
+	 * 
+	 * @param patientIds the patient ids
+	 * @return the rows
+	 * @since 1.12
+	 */
+	public List<Object[]> getPatientIdentifierValues(Collection<Integer> patientIds) throws DAOException;
+	
+	/**
+	 * Gets the ids of non voided patients born in the given period
+	 * 
+	 * @param fromDate the start of the period, inclusive
+	 * @param toDate the end of the period, exclusive
+	 * @return the patient ids
+	 * @since 1.12
+	 */
+	public List<Integer> getPatientIdsByBirthdate(Date fromDate, Date toDate) throws DAOException;
+	
+	/**
+	 * Gets the ids of non voided patients born in the given period with a family name starting
+	 * with one of the given letters
+	 * 
+	 * @param initials the upper case first letters of the family name, leading spaces and the
+	 *            case of the name are ignored
+	 * @param fromDate the start of the period, inclusive
+	 * @param toDate the end of the period, exclusive
+	 * @return the patient ids
+	 * @since 1.12
+	 */
+	public List<Integer> getPatientIdsByFamilyNameInitials(Collection<String> initials, Date fromDate, Date toDate)
+	        throws DAOException;
+	
+	/**
+	 * Gets the ids of non voided patients with one of the given identifiers
+	 * 
+	 * @param identifiers the identifiers in upper case
+	 * @return the patient ids
+	 * @since 1.12
+	 */
+	public List<Integer> getPatientIdsByIdentifiers(Collection<String> identifiers) throws DAOException;
+	
+	/**
+	 * Gets the pairs of patient ids of the duplicate candidates, including voided ones, involving
+	 * any of the given patients
+	 * 
+	 * @param patientIds the patient ids
+	 * @return rows of patient id and duplicate patient id
+	 * @since 1.12
+	 */
+	public List<Object[]> getDuplicatePatientCandidatePairs(Collection<Integer> patientIds) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.PatientService#saveDuplicatePatientCandidate(DuplicatePatientCandidate)
+	 * @since 1.12
+	 */
+	public DuplicatePatientCandidate saveDuplicatePatientCandidate(DuplicatePatientCandidate candidate)
+	        throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.PatientService#getDuplicatePatientCandidate(Integer)
+	 * @since 1.12
+	 */
+	public DuplicatePatientCandidate getDuplicatePatientCandidate(Integer duplicatePatientCandidateId)
+	        throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.PatientService#getDuplicatePatientCandidates(Patient, boolean, Integer,
+	 *      Integer)
+	 * @since 1.12
+	 */
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Patient patient, boolean includeVoided,
+	        Integer start, Integer length) throws DAOException;
+	
+	/**
+	 * Counts the orders of the given patient that are not voided, flushing pending changes first
+	 * 
+	 * @param patient the patient
+	 * @return the number of unvoided orders
+	 * @since 1.12
+	 */
+	public Long getUnvoidedOrderCount(Patient patient) throws DAOException;
+	
+	/**
+	 * Gets the uuids of all visits of the given patient, including voided ones
+	 * 
+	 * @param patient the patient
+	 * @return the visit uuids
+	 * @since 1.12
+	 */
+	public List<String> getVisitUuidsByPatient(Patient patient) throws DAOException;
+	
+	/**
+	 * Gets the uuids of all encounters of the given patient, including voided ones
+	 * 
+	 * @param patient the patient
+	 * @return the encounter uuids
+	 * @since 1.12
+	 */
+	public List<String> getEncounterUuidsByPatient(Patient patient) throws DAOException;
+	
+	/**
+	 * Gets the uuids of the non voided observations of the given person that do not belong to an
+	 * encounter
+	 * 
+	 * @param person the person
+	 * @return the obs uuids
+	 * @since 1.12
+	 */
+	public List<String> getIndependentObsUuidsByPerson(Person person) throws DAOException;
+	
+	/**
+	 * Moves the visits, encounters, orders and observations of one patient to another with bulk
+	 * updates. The observations contained in encounters are moved along with their encounters,
+	 * voided observations outside of encounters stay with the original patient. Entities already
+	 * loaded in the session are refreshed so that they see their new patient.
+	 * 
+	 * @param from the patient to take the data from
+	 * @param to the patient to give the data to
+	 * @return the number of rows that were updated
+	 * @since 1.12
+	 */
+	public int moveClinicalData(Patient from, Patient to) throws DAOException;
+	
 }
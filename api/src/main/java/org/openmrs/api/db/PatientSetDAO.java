@@ -37,6 +37,10 @@ import org.openmrs.RelationshipType;
 import org.openmrs.api.PatientSetService;
 import org.openmrs.api.PatientSetService.PatientLocationMethod;
 import org.openmrs.api.PatientSetService.TimeModifier;
+import org.openmrs.cohort.CohortQuery;
+import org.openmrs.cohort.CohortQueryPlan;
+import org.openmrs.cohort.PatientColumn;
+import org.openmrs.cohort.PatientColumns;
 
 public interface PatientSetDAO {
 	
@@ -150,4 +154,19 @@ public interface PatientSetDAO {
 	
 	public Cohort getPatients(Integer start, Integer size);
 	
+	/**
+	 * @since 1.12
+	 */
+	public CohortQueryPlan planCohortQuery(CohortQuery query);
+	
+	/**
+	 * @since 1.12
+	 */
+	public Cohort evaluateCohortQueryPlan(CohortQueryPlan plan);
+	
+	/**
+	 * @since 1.12
+	 */
+	public PatientColumns getPatientColumns(Cohort patients, List<PatientColumn> columns) throws DAOException;
+	
 }
@@ -156,4 +156,30 @@ public interface VisitDAO {
 	 */
 	public Visit getNextVisit(Visit previousVisit, Collection<VisitType> visitTypes, Date maximumStartDate);
 	
+	/**
+	 * Gets the ids of the next active visits which match the specified visit types, in ascending
+	 * order
+	 * 
+	 * @param previousVisitId only visits with a greater id are returned, can be null
+	 * @param visitTypes a collection of visit types to match against
+	 * @param maximumStartDate the visits should have been created before or at this date time
+	 * @param maxResults the maximum number of ids to return
+	 * @return the visit ids
+	 * @since 1.12
+	 * @should return the ids of unvoided active visits matching the specified types and startDate
+	 * @should return at most the given number of ids
+	 */
+	public List<Integer> getNextVisitIds(Integer previousVisitId, Collection<VisitType> visitTypes,
+	        Date maximumStartDate, int maxResults);
+	
+	/**
+	 * Gets the visits with the given ids
+	 * 
+	 * @param visitIds the ids of the visits, at most a thousand
+	 * @return the visits, in ascending order of their ids
+	 * @since 1.12
+	 * @should return the visits with the given ids
+	 */
+	public List<Visit> getVisitsByIds(Collection<Integer> visitIds);
+	
 }
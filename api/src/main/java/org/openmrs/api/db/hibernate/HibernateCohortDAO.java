@@ -9,12 +9,18 @@
  */
 package org.openmrs.api.db.hibernate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
 import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
@@ -34,6 +40,11 @@ public class HibernateCohortDAO implements CohortDAO {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	/**
+	 * The number of membership rows written by one insert statement
+	 */
+	private static final int INSERT_BATCH_SIZE = 500;
+	
 	private SessionFactory sessionFactory;
 	
 	/**
@@ -57,8 +68,9 @@ public class HibernateCohortDAO implements CohortDAO {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<Cohort> getCohortsContainingPatientId(Integer patientId) throws DAOException {
+		// a join on the membership table can use its patient_id index, unlike a subquery per cohort
 		Query query = sessionFactory.getCurrentSession().createQuery(
-		    "from Cohort c where :patientId in elements(c.memberIds) and c.voided = false order by name");
+		    "select c from Cohort c join c.memberIds m where m = :patientId and c.voided = false order by c.name");
 		query.setInteger("patientId", patientId);
 		return (List<Cohort>) query.list();
 	}
@@ -126,4 +138,110 @@ public class HibernateCohortDAO implements CohortDAO {
 		return cohort;
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.CohortDAO#addCohortMember(org.openmrs.Cohort, java.lang.Integer)
+	 */
+	public boolean addCohortMember(Cohort cohort, Integer patientId) throws DAOException {
+		if (Hibernate.isInitialized(cohort.getMemberIds())) {
+			// keep the loaded members in step, hibernate only writes the added row when flushing
+			return cohort.getMemberIds().add(patientId);
+		}
+		
+		if (isCohortMember(cohort, patientId)) {
+			return false;
+		}
+		// declaring the table keeps hibernate from evicting every second level cache region
+		sessionFactory.getCurrentSession().createSQLQuery(
+		    "insert into cohort_member (cohort_id, patient_id) values (:cohortId, :patientId)").addSynchronizedQuerySpace(
+		    "cohort_member").setInteger("cohortId", cohort.getCohortId()).setInteger("patientId", patientId)
+		        .executeUpdate();
+		return true;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.CohortDAO#removeCohortMember(org.openmrs.Cohort, java.lang.Integer)
+	 */
+	public boolean removeCohortMember(Cohort cohort, Integer patientId) throws DAOException {
+		if (Hibernate.isInitialized(cohort.getMemberIds())) {
+			return cohort.getMemberIds().remove(patientId);
+		}
+		
+		return sessionFactory.getCurrentSession().createSQLQuery(
+		    "delete from cohort_member where cohort_id = :cohortId and patient_id = :patientId").addSynchronizedQuerySpace(
+		    "cohort_member").setInteger("cohortId", cohort.getCohortId()).setInteger("patientId", patientId)
+		        .executeUpdate() > 0;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.CohortDAO#addCohortMembers(org.openmrs.Cohort, java.util.Collection)
+	 */
+	public int addCohortMembers(Cohort cohort, Collection<Integer> patientIds) throws DAOException {
+		if (Hibernate.isInitialized(cohort.getMemberIds())) {
+			int sizeBefore = cohort.getMemberIds().size();
+			cohort.getMemberIds().addAll(patientIds);
+			return cohort.getMemberIds().size() - sizeBefore;
+		}
+		
+		Session session = sessionFactory.getCurrentSession();
+		int added = 0;
+		List<Integer> batch = new ArrayList<Integer>(INSERT_BATCH_SIZE);
+		for (Integer patientId : new TreeSet<Integer>(patientIds)) {
+			batch.add(patientId);
+			if (batch.size() == INSERT_BATCH_SIZE) {
+				added += insertCohortMembers(session, cohort, batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			added += insertCohortMembers(session, cohort, batch);
+		}
+		return added;
+	}
+	
+	/**
+	 * Inserts the given patients that are not members of the cohort yet with one statement
+	 */
+	@SuppressWarnings("unchecked")
+	private int insertCohortMembers(Session session, Cohort cohort, List<Integer> patientIds) {
+		Set<Integer> newMembers = new TreeSet<Integer>(patientIds);
+		newMembers.removeAll(session.createSQLQuery(
+		    "select patient_id from cohort_member where cohort_id = :cohortId and patient_id in (:patientIds)").setInteger(
+		    "cohortId", cohort.getCohortId()).setParameterList("patientIds", patientIds).list());
+		if (newMembers.isEmpty()) {
+			return 0;
+		}
+		
+		StringBuilder sql = new StringBuilder("insert into cohort_member (cohort_id, patient_id) values ");
+		for (int i = 0; i < newMembers.size(); i++) {
+			sql.append(i == 0 ? "" : ", ").append("(:cohortId, :patient").append(i).append(")");
+		}
+		Query query = session.createSQLQuery(sql.toString()).addSynchronizedQuerySpace("cohort_member").setInteger(
+		    "cohortId", cohort.getCohortId());
+		int i = 0;
+		for (Integer patientId : newMembers) {
+			query.setInteger("patient" + i++, patientId);
+		}
+		return query.executeUpdate();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.CohortDAO#getCohortMemberIds(org.openmrs.Cohort, java.lang.Integer, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Integer> getCohortMemberIds(Cohort cohort, Integer previousPatientId, int maxResults)
+	        throws DAOException {
+		Query query = sessionFactory.getCurrentSession().createQuery(
+		    "select m from Cohort c join c.memberIds m where c.cohortId = :cohortId and m > :previous order by m");
+		query.setInteger("cohortId", cohort.getCohortId());
+		query.setInteger("previous", (previousPatientId != null) ? previousPatientId : 0);
+		query.setMaxResults(maxResults);
+		return query.list();
+	}
+	
+	private boolean isCohortMember(Cohort cohort, Integer patientId) {
+		return sessionFactory.getCurrentSession().createSQLQuery(
+		    "select 1 from cohort_member where cohort_id = :cohortId and patient_id = :patientId").setInteger("cohortId",
+		    cohort.getCohortId()).setInteger("patientId", patientId).list().size() > 0;
+	}
+	
 }
@@ -0,0 +1,479 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.EncounterType;
+import org.openmrs.Form;
+import org.openmrs.Location;
+import org.openmrs.Program;
+import org.openmrs.ProgramWorkflowState;
+import org.openmrs.api.PatientSetService;
+import org.openmrs.api.PatientSetService.Modifier;
+import org.openmrs.api.PatientSetService.TimeModifier;
+import org.openmrs.api.context.Context;
+import org.openmrs.cohort.CohortQuery;
+import org.openmrs.cohort.CohortQueryPlan;
+import org.openmrs.cohort.CohortQueryPlan.Operator;
+import org.openmrs.cohort.CohortQueryPlan.Strategy;
+
+/**
+ * Turns a {@link CohortQuery} into a {@link CohortQueryPlan}. Criteria that have an SQL form are
+ * combined into as few statements as possible by nesting them as <code>patient_id in (...)</code>
+ * and <code>patient_id not in (...)</code> subqueries. Criteria without an SQL form, and cohorts
+ * with too many members to pass as parameters, are evaluated separately and combined with the rest
+ * in memory.<br/>
+ * <br/>
+ * The SQL of each criterion is also used by the matching search method of
+ * {@link HibernatePatientSetDAO}, with an empty parameter prefix.
+ * 
+ * @since 1.12
+ */
+public class HibernateCohortQueryPlanner {
+	
+	/**
+	 * Cohorts with up to this many members are passed to the database as a parameter list
+	 */
+	public static final int MAX_INLINE_MEMBERS = 1000;
+	
+	/**
+	 * Used to give the parameters of each criterion in a statement a unique prefix
+	 */
+	private int criteria = 0;
+	
+	/**
+	 * @param query the query to plan
+	 * @return the plan for running the query
+	 * @should combine sql criteria into one statement
+	 * @should evaluate criteria without sql separately
+	 * @should pass small cohorts as parameters
+	 * @should limit the encounter count to the maximum count
+	 */
+	public CohortQueryPlan plan(CohortQuery query) {
+		if (query instanceof CohortQuery.And) {
+			return combine(Operator.AND, ((CohortQuery.And) query).getQueries());
+		} else if (query instanceof CohortQuery.Or) {
+			return combine(Operator.OR, ((CohortQuery.Or) query).getQueries());
+		} else if (query instanceof CohortQuery.Not) {
+			CohortQueryPlan child = plan(((CohortQuery.Not) query).getQuery());
+			if (child.getStrategy() == Strategy.SQL) {
+				Map<String, Object> parameters = new LinkedHashMap<String, Object>(child.getParameters());
+				String sql = "select p.patient_id from patient p where p.voided = false and p.patient_id not in ("
+				        + child.getSql() + ")";
+				return CohortQueryPlan.sql(sql, parameters, "NOT(" + child.getDescription() + ")");
+			}
+			List<CohortQueryPlan> children = new ArrayList<CohortQueryPlan>();
+			children.add(child);
+			return CohortQueryPlan.memory(Operator.NOT, children);
+		} else if (query instanceof CohortQuery.Members) {
+			Cohort cohort = ((CohortQuery.Members) query).getCohort();
+			if (cohort.isEmpty() || cohort.size() > MAX_INLINE_MEMBERS) {
+				return CohortQueryPlan.separate(query);
+			}
+			String p = nextPrefix();
+			Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+			parameters.put(p + "memberIds", new ArrayList<Integer>(cohort.getMemberIds()));
+			return CohortQueryPlan.sql("select p.patient_id from patient p where p.patient_id in (:" + p + "memberIds)",
+			    parameters, query.toString());
+		} else if (query instanceof CohortQuery.InProgram) {
+			CohortQuery.InProgram q = (CohortQuery.InProgram) query;
+			return programAndState(nextPrefix(), q.getProgram(), q.getStateList(), q.getFromDate(), q.getToDate(), q
+			        .toString());
+		} else if (query instanceof CohortQuery.HavingEncounters) {
+			CohortQuery.HavingEncounters q = (CohortQuery.HavingEncounters) query;
+			return havingEncounters(nextPrefix(), q.getEncounterTypeList(), q.getLocation(), q.getForm(), q.getFromDate(),
+			    q.getToDate(), q.getMinCount(), q.getMaxCount(), q.toString());
+		} else if (query instanceof CohortQuery.HavingObs) {
+			CohortQuery.HavingObs q = (CohortQuery.HavingObs) query;
+			CohortQueryPlan obs = havingObs(nextPrefix(), q.getConceptId(), q.getTimeModifier(), q.getModifier(), q
+			        .getValue(), q.getFromDate(), q.getToDate(), q.toString());
+			if (q.getTimeModifier() == TimeModifier.NO) {
+				String sql = "select p.patient_id from patient p where p.voided = false and p.patient_id not in ("
+				        + obs.getSql() + ")";
+				return CohortQueryPlan.sql(sql, obs.getParameters(), obs.getDescription());
+			}
+			return obs;
+		}
+		return CohortQueryPlan.separate(query);
+	}
+	
+	/**
+	 * Plans an AND or OR: the children with an SQL form become one statement, which is combined in
+	 * memory with the children that don't have one
+	 */
+	private CohortQueryPlan combine(Operator operator, List<CohortQuery> queries) {
+		List<CohortQueryPlan> sqlPlans = new ArrayList<CohortQueryPlan>();
+		List<CohortQueryPlan> otherPlans = new ArrayList<CohortQueryPlan>();
+		for (CohortQuery query : queries) {
+			CohortQueryPlan plan = plan(query);
+			if (plan.getStrategy() == Strategy.SQL) {
+				sqlPlans.add(plan);
+			} else {
+				otherPlans.add(plan);
+			}
+		}
+		
+		if (sqlPlans.size() > 1) {
+			String joiner = operator == Operator.AND ? " and " : " or ";
+			StringBuilder sql = new StringBuilder("select p.patient_id from patient p where p.voided = false and (");
+			Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+			List<String> descriptions = new ArrayList<String>();
+			for (ListIterator<CohortQueryPlan> i = sqlPlans.listIterator(); i.hasNext();) {
+				CohortQueryPlan plan = i.next();
+				sql.append(i.previousIndex() == 0 ? "" : joiner);
+				sql.append("p.patient_id in (").append(plan.getSql()).append(")");
+				parameters.putAll(plan.getParameters());
+				descriptions.add(plan.getDescription());
+			}
+			sql.append(")");
+			CohortQueryPlan combined = CohortQueryPlan.sql(sql.toString(), parameters, operator + descriptions.toString());
+			sqlPlans.clear();
+			sqlPlans.add(combined);
+		}
+		
+		if (otherPlans.isEmpty() && sqlPlans.size() == 1) {
+			return sqlPlans.get(0);
+		}
+		List<CohortQueryPlan> children = new ArrayList<CohortQueryPlan>(sqlPlans);
+		children.addAll(otherPlans);
+		return CohortQueryPlan.memory(operator, children);
+	}
+	
+	private String nextPrefix() {
+		return "c" + (++criteria) + "_";
+	}
+	
+	/**
+	 * @param p the prefix of the parameter names
+	 * @see HibernatePatientSetDAO#getPatientsByProgramAndState(Program, List, Date, Date)
+	 */
+	static CohortQueryPlan programAndState(String p, Program program, List<ProgramWorkflowState> stateList,
+	        Date fromDate, Date toDate, String description) {
+		Integer programId = program == null ? null : program.getProgramId();
+		List<Integer> stateIds = null;
+		if (stateList != null && stateList.size() > 0) {
+			stateIds = new ArrayList<Integer>();
+			for (ProgramWorkflowState state : stateList) {
+				stateIds.add(state.getProgramWorkflowStateId());
+			}
+		}
+		
+		List<String> clauses = new ArrayList<String>();
+		clauses.add("pp.voided = false");
+		if (programId != null) {
+			clauses.add("pp.program_id = :" + p + "programId");
+		}
+		if (stateIds != null) {
+			clauses.add("ps.state in (:" + p + "stateIds)");
+			clauses.add("ps.voided = false");
+		}
+		if (fromDate != null) {
+			clauses.add("(pp.date_completed is null or pp.date_completed >= :" + p + "fromDate)");
+			if (stateIds != null) {
+				clauses.add("(ps.end_date is null or ps.end_date >= :" + p + "fromDate)");
+			}
+		}
+		if (toDate != null) {
+			clauses.add("(pp.date_enrolled is null or pp.date_enrolled <= :" + p + "toDate)");
+			if (stateIds != null) {
+				clauses.add("(ps.start_date is null or ps.start_date <= :" + p + "toDate)");
+			}
+		}
+		
+		StringBuilder sql = new StringBuilder();
+		sql.append("select pp.patient_id ");
+		sql.append("from patient_program pp ");
+		sql.append("inner join patient p on pp.patient_id = p.patient_id and p.voided = false ");
+		if (stateIds != null) {
+			sql.append("inner join patient_state ps on pp.patient_program_id = ps.patient_program_id ");
+		}
+		for (ListIterator<String> i = clauses.listIterator(); i.hasNext();) {
+			sql.append(i.nextIndex() == 0 ? " where " : " and ");
+			sql.append(i.next());
+		}
+		sql.append(" group by pp.patient_id");
+		
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		if (programId != null) {
+			parameters.put(p + "programId", programId);
+		}
+		if (stateIds != null) {
+			parameters.put(p + "stateIds", stateIds);
+		}
+		if (fromDate != null) {
+			parameters.put(p + "fromDate", date(fromDate));
+		}
+		if (toDate != null) {
+			parameters.put(p + "toDate", date(toDate));
+		}
+		return CohortQueryPlan.sql(sql.toString(), parameters, description);
+	}
+	
+	/**
+	 * @param p the prefix of the parameter names
+	 * @see HibernatePatientSetDAO#getPatientsHavingEncounters(List, Location, Form, Date, Date,
+	 *      Integer, Integer)
+	 */
+	static CohortQueryPlan havingEncounters(String p, List<EncounterType> encounterTypeList, Location location,
+	        Form form, Date fromDate, Date toDate, Integer minCount, Integer maxCount, String description) {
+		List<Integer> encTypeIds = null;
+		if (encounterTypeList != null && encounterTypeList.size() > 0) {
+			encTypeIds = new ArrayList<Integer>();
+			for (EncounterType t : encounterTypeList) {
+				encTypeIds.add(t.getEncounterTypeId());
+			}
+		}
+		Integer locationId = location == null ? null : location.getLocationId();
+		Integer formId = form == null ? null : form.getFormId();
+		List<String> whereClauses = new ArrayList<String>();
+		whereClauses.add("e.voided = false");
+		if (encTypeIds != null) {
+			whereClauses.add("e.encounter_type in (:" + p + "encTypeIds)");
+		}
+		if (locationId != null) {
+			whereClauses.add("e.location_id = :" + p + "locationId");
+		}
+		if (formId != null) {
+			whereClauses.add("e.form_id = :" + p + "formId");
+		}
+		if (fromDate != null) {
+			whereClauses.add("e.encounter_datetime >= :" + p + "fromDate");
+		}
+		if (toDate != null) {
+			whereClauses.add("e.encounter_datetime <= :" + p + "toDate");
+		}
+		List<String> havingClauses = new ArrayList<String>();
+		if (minCount != null) {
+			havingClauses.add("count(*) >= :" + p + "minCount");
+		}
+		if (maxCount != null) {
+			havingClauses.add("count(*) <= :" + p + "maxCount");
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(" select e.patient_id from encounter e ");
+		sb.append(" inner join patient p on e.patient_id = p.patient_id and p.voided = false ");
+		for (ListIterator<String> i = whereClauses.listIterator(); i.hasNext();) {
+			sb.append(i.nextIndex() == 0 ? " where " : " and ");
+			sb.append(i.next());
+		}
+		sb.append(" group by e.patient_id ");
+		for (ListIterator<String> i = havingClauses.listIterator(); i.hasNext();) {
+			sb.append(i.nextIndex() == 0 ? " having " : " and ");
+			sb.append(i.next());
+		}
+		
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		if (encTypeIds != null) {
+			parameters.put(p + "encTypeIds", encTypeIds);
+		}
+		if (locationId != null) {
+			parameters.put(p + "locationId", locationId);
+		}
+		if (formId != null) {
+			parameters.put(p + "formId", formId);
+		}
+		if (fromDate != null) {
+			parameters.put(p + "fromDate", date(fromDate));
+		}
+		if (toDate != null) {
+			parameters.put(p + "toDate", date(toDate));
+		}
+		if (minCount != null) {
+			parameters.put(p + "minCount", minCount);
+		}
+		if (maxCount != null) {
+			parameters.put(p + "maxCount", maxCount);
+		}
+		return CohortQueryPlan.sql(sb.toString(), parameters, description);
+	}
+	
+	/**
+	 * Builds the statement for patients having matching obs. For {@link TimeModifier#NO} this is
+	 * the statement for {@link TimeModifier#ANY}, the caller has to invert it.
+	 * 
+	 * @param p the prefix of the parameter names
+	 * @see HibernatePatientSetDAO#getPatientsHavingObs(Integer, TimeModifier, Modifier, Object, Date,
+	 *      Date)
+	 */
+	static CohortQueryPlan havingObs(String p, Integer conceptId, PatientSetService.TimeModifier timeModifier,
+	        PatientSetService.Modifier modifier, Object value, Date fromDate, Date toDate, String description) {
+		if (conceptId == null && value == null) {
+			throw new IllegalArgumentException("Can't have conceptId == null and value == null");
+		}
+		if (conceptId == null && (timeModifier != TimeModifier.ANY && timeModifier != TimeModifier.NO)) {
+			throw new IllegalArgumentException("If conceptId == null, timeModifier must be ANY or NO");
+		}
+		if (conceptId == null && modifier != Modifier.EQUAL) {
+			throw new IllegalArgumentException("If conceptId == null, modifier must be EQUAL");
+		}
+		Concept concept = null;
+		if (conceptId != null) {
+			concept = Context.getConceptService().getConcept(conceptId);
+		}
+		Number numericValue = null;
+		String stringValue = null;
+		Concept codedValue = null;
+		Date dateValue = null;
+		String valueSql = null;
+		if (value != null) {
+			if (concept == null) {
+				if (value instanceof Concept) {
+					codedValue = (Concept) value;
+				} else {
+					codedValue = Context.getConceptService().getConceptByName(value.toString());
+				}
+				valueSql = "o.value_coded";
+			} else if (concept.getDatatype().isNumeric()) {
+				if (value instanceof Number) {
+					numericValue = (Number) value;
+				} else {
+					numericValue = new Double(value.toString());
+				}
+				valueSql = "o.value_numeric";
+			} else if (concept.getDatatype().isText()) {
+				stringValue = value.toString();
+				valueSql = "o.value_text";
+				if (modifier == null) {
+					modifier = Modifier.EQUAL;
+				}
+			} else if (concept.getDatatype().isCoded()) {
+				if (value instanceof Concept) {
+					codedValue = (Concept) value;
+				} else {
+					codedValue = Context.getConceptService().getConceptByName(value.toString());
+				}
+				valueSql = "o.value_coded";
+			} else if (concept.getDatatype().isDate()) {
+				if (value instanceof Date) {
+					dateValue = (Date) value;
+				} else {
+					try {
+						dateValue = Context.getDateFormat().parse(value.toString());
+					}
+					catch (ParseException ex) {
+						throw new IllegalArgumentException("Cannot interpret " + dateValue + " as a date in the format "
+						        + Context.getDateFormat());
+					}
+				}
+				valueSql = "o.value_datetime";
+			} else if (concept.getDatatype().isBoolean()) {
+				if (value instanceof Concept) {
+					codedValue = (Concept) value;
+				} else {
+					boolean asBoolean = false;
+					if (value instanceof Boolean) {
+						asBoolean = ((Boolean) value).booleanValue();
+					} else {
+						asBoolean = Boolean.valueOf(value.toString());
+					}
+					codedValue = asBoolean ? Context.getConceptService().getTrueConcept() : Context.getConceptService()
+					        .getFalseConcept();
+				}
+				valueSql = "o.value_coded";
+			}
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		boolean useValue = value != null;
+		boolean doSqlAggregation = timeModifier == TimeModifier.MIN || timeModifier == TimeModifier.MAX
+		        || timeModifier == TimeModifier.AVG;
+		
+		String dateSql = "";
+		String dateSqlForSubquery = "";
+		if (fromDate != null) {
+			dateSql += " and o.obs_datetime >= :" + p + "fromDate ";
+			dateSqlForSubquery += " and obs_datetime >= :" + p + "fromDate ";
+		}
+		if (toDate != null) {
+			dateSql += " and o.obs_datetime <= :" + p + "toDate ";
+			dateSqlForSubquery += " and obs_datetime <= :" + p + "toDate ";
+		}
+		
+		if (timeModifier == TimeModifier.ANY || timeModifier == TimeModifier.NO) {
+			sb.append("select o.person_id from obs o "
+			        + "inner join patient p on o.person_id = p.patient_id and p.voided = false " + "where o.voided = false ");
+			if (conceptId != null) {
+				sb.append("and concept_id = :" + p + "concept_id ");
+			}
+			sb.append(dateSql);
+			
+		} else if (timeModifier == TimeModifier.FIRST || timeModifier == TimeModifier.LAST) {
+			boolean isFirst = timeModifier == PatientSetService.TimeModifier.FIRST;
+			sb.append("select o.person_id " + "from obs o inner join (" + "    select person_id, "
+			        + (isFirst ? "min" : "max") + "(obs_datetime) as obs_datetime" + "    from obs"
+			        + "    where voided = false and concept_id = :" + p + "concept_id " + dateSqlForSubquery
+			        + "    group by person_id"
+			        + ") subq on o.person_id = subq.person_id and o.obs_datetime = subq.obs_datetime "
+			        + " inner join patient p on o.person_id = p.patient_id and p.voided = false "
+			        + "where o.voided = false and o.concept_id = :" + p + "concept_id ");
+			
+		} else if (doSqlAggregation) {
+			String sqlAggregator = timeModifier.toString();
+			valueSql = sqlAggregator + "(" + valueSql + ")";
+			sb.append("select o.person_id " + "from obs o "
+			        + "inner join patient p on o.person_id = p.patient_id and p.voided = false "
+			        + "where o.voided = false and concept_id = :" + p + "concept_id " + dateSql + "group by o.person_id ");
+			
+		} else {
+			throw new IllegalArgumentException("TimeModifier '" + timeModifier + "' not recognized");
+		}
+		
+		if (useValue) {
+			sb.append(doSqlAggregation ? " having " : " and ");
+			sb.append(valueSql + " ");
+			sb.append(modifier.getSqlRepresentation() + " :" + p + "value");
+		}
+		if (!doSqlAggregation) {
+			sb.append(" group by o.person_id ");
+		}
+		
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		if (conceptId != null) {
+			parameters.put(p + "concept_id", conceptId);
+		}
+		if (useValue) {
+			if (numericValue != null) {
+				parameters.put(p + "value", numericValue.doubleValue());
+			} else if (codedValue != null) {
+				parameters.put(p + "value", codedValue.getConceptId());
+			} else if (stringValue != null) {
+				parameters.put(p + "value", stringValue);
+			} else if (dateValue != null) {
+				parameters.put(p + "value", date(dateValue));
+			} else {
+				throw new IllegalArgumentException(
+				        "useValue is true, but numeric, coded, string, boolean, and date values are all null");
+			}
+		}
+		if (fromDate != null) {
+			parameters.put(p + "fromDate", date(fromDate));
+		}
+		if (toDate != null) {
+			parameters.put(p + "toDate", date(toDate));
+		}
+		return CohortQueryPlan.sql(sb.toString(), parameters, description);
+	}
+	
+	/**
+	 * Dates are passed without their time, like {@link org.hibernate.Query#setDate(String, Date)}
+	 */
+	private static java.sql.Date date(Date date) {
+		return new java.sql.Date(date.getTime());
+	}
+}
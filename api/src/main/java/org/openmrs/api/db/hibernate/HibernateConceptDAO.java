@@ -19,6 +19,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Vector;
 
@@ -970,6 +971,111 @@ public class HibernateConceptDAO implements ConceptDAO {
 		
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.ConceptDAO#conceptIterator(int)
+	 */
+	public Iterator<Concept> conceptIterator(int batchSize) {
+		return new BatchedConceptIterator(batchSize);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ConceptDAO#getConceptBatch(java.lang.Integer, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Concept> getConceptBatch(Integer fromConceptId, int batchSize) {
+		List<Integer> conceptIds = sessionFactory.getCurrentSession().createQuery(
+		    "select c.conceptId from Concept c where c.conceptId >= :fromConceptId order by c.conceptId").setInteger(
+		    "fromConceptId", fromConceptId).setMaxResults(batchSize).list();
+		if (conceptIds.isEmpty()) {
+			return new ArrayList<Concept>();
+		}
+		
+		Integer firstConceptId = conceptIds.get(0);
+		Integer lastConceptId = conceptIds.get(conceptIds.size() - 1);
+		
+		// load the concepts of the id range together with their names, class and datatype
+		List<Concept> concepts = sessionFactory.getCurrentSession().createQuery(
+		    "select distinct c from Concept c left join fetch c.conceptClass left join fetch c.datatype "
+		            + "left join fetch c.names where c.conceptId between :first and :last order by c.conceptId")
+		        .setInteger("first", firstConceptId).setInteger("last", lastConceptId).list();
+		
+		// each of these queries initializes one more collection of the concepts already in the session
+		String[] prefetchQueries = {
+		        "select distinct c from Concept c left join fetch c.descriptions where c.conceptId between :first and :last",
+		        "select distinct c from Concept c left join fetch c.answers a left join fetch a.answerConcept ac "
+		                + "left join fetch ac.names left join fetch a.answerDrug "
+		                + "where c.conceptId between :first and :last",
+		        "select distinct c from Concept c left join fetch c.conceptSets s left join fetch s.concept sc "
+		                + "left join fetch sc.names where c.conceptId between :first and :last" };
+		for (String prefetchQuery : prefetchQueries) {
+			sessionFactory.getCurrentSession().createQuery(prefetchQuery).setInteger("first", firstConceptId).setInteger(
+			    "last", lastConceptId).list();
+		}
+		
+		return concepts;
+	}
+	
+	/**
+	 * An iterator that loops over all concepts in the dictionary, loading them in batches of
+	 * ascending concept ids. The hibernate session is cleared each time a new batch is fetched, so
+	 * callers must not hold unsaved changes in the session while iterating.
+	 */
+	private class BatchedConceptIterator implements Iterator<Concept> {
+		
+		private final int batchSize;
+		
+		private List<Concept> batch;
+		
+		private int position = 0;
+		
+		public BatchedConceptIterator(int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException("The batch size must be greater than zero");
+			}
+			this.batchSize = batchSize;
+			Integer firstConceptId = getMinConceptId();
+			batch = (firstConceptId == null) ? new ArrayList<Concept>() : getConceptBatch(firstConceptId, batchSize);
+		}
+		
+		/**
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			if (position < batch.size()) {
+				return true;
+			}
+			// a short batch means that there are no more concepts to fetch
+			if (batch.size() < batchSize) {
+				return false;
+			}
+			
+			Integer nextConceptId = batch.get(batch.size() - 1).getConceptId() + 1;
+			sessionFactory.getCurrentSession().clear();
+			batch = getConceptBatch(nextConceptId, batchSize);
+			position = 0;
+			
+			return !batch.isEmpty();
+		}
+		
+		/**
+		 * @see java.util.Iterator#next()
+		 */
+		public Concept next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return batch.get(position++);
+		}
+		
+		/**
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+	}
+	
 	/**
 	 * @see org.openmrs.api.db.ConceptDAO#getConceptsByMapping(java.lang.String, java.lang.String)
 	 */
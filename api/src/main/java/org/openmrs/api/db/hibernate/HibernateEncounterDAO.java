@@ -312,7 +312,8 @@ public class HibernateEncounterDAO implements EncounterDAO {
 		
 		// only include this where clause if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(IdSetRestrictions.in(sessionFactory.getCurrentSession(), "patient.personId", patients
+			        .getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -9,14 +9,23 @@
  */
 package org.openmrs.api.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
@@ -24,6 +33,11 @@ import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.openmrs.Concept;
 import org.openmrs.ConceptName;
 import org.openmrs.Encounter;
@@ -33,8 +47,10 @@ import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.Person;
 import org.openmrs.User;
+import org.openmrs.api.ObsService.ObsCallback;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.ObsDAO;
+import org.openmrs.obs.ObsTimeline;
 import org.openmrs.util.OpenmrsConstants.PERSON_TYPE;
 
 /**
@@ -48,8 +64,16 @@ public class HibernateObsDAO implements ObsDAO {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	/**
+	 * The number of obs fetched at a time and processed before the session is cleared by
+	 * {@link #processObservations(List, List, List, List, Date, Date, boolean, ObsCallback)}
+	 */
+	private static final int PROCESS_BATCH_SIZE = 1000;
+	
 	protected SessionFactory sessionFactory;
 	
+	private int processBatchSize = PROCESS_BATCH_SIZE;
+	
 	/**
 	 * Set session factory that allows us to connect to the database that Hibernate knows about.
 	 *
@@ -59,6 +83,22 @@ public class HibernateObsDAO implements ObsDAO {
 		this.sessionFactory = sessionFactory;
 	}
 	
+	/**
+	 * @return the number of obs processed between evictions in
+	 *         {@link #processObservations(List, List, List, List, Date, Date, boolean, ObsCallback)}
+	 */
+	public int getProcessBatchSize() {
+		return processBatchSize;
+	}
+	
+	/**
+	 * @param processBatchSize the number of obs processed between evictions in
+	 *            {@link #processObservations(List, List, List, List, Date, Date, boolean, ObsCallback)}
+	 */
+	public void setProcessBatchSize(int processBatchSize) {
+		this.processBatchSize = processBatchSize;
+	}
+	
 	/**
 	 * @see org.openmrs.api.ObsService#deleteObs(org.openmrs.Obs)
 	 */
@@ -193,7 +233,11 @@ public class HibernateObsDAO implements ObsDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class, "obs");
 		
 		if (CollectionUtils.isNotEmpty(whom)) {
-			criteria.add(Restrictions.in("person", whom));
+			List<Integer> personIds = new ArrayList<Integer>(whom.size());
+			for (Person person : whom) {
+				personIds.add(person.getPersonId());
+			}
+			criteria.add(IdSetRestrictions.in(sessionFactory.getCurrentSession(), "person.personId", personIds));
 		}
 		
 		if (CollectionUtils.isNotEmpty(encounters)) {
@@ -303,4 +347,154 @@ public class HibernateObsDAO implements ObsDAO {
 		    uuid).uniqueResult();
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#getObsCountByComplexDataKey(java.lang.String)
+	 */
+	public Long getObsCountByComplexDataKey(String key) throws DAOException {
+		return (Long) sessionFactory.getCurrentSession().createQuery(
+		    "select count(*) from Obs o where o.complexDataKey = :key").setString("key", key).uniqueResult();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#getDistinctValueComplexes()
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> getDistinctValueComplexes() throws DAOException {
+		return sessionFactory.getCurrentSession().createQuery(
+		    "select distinct o.valueComplex from Obs o where o.valueComplex is not null and o.valueComplex <> ''").list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#updateValueComplex(java.lang.String, java.lang.String)
+	 */
+	public int updateValueComplex(String oldValueComplex, String newValueComplex) throws DAOException {
+		Obs obs = new Obs();
+		obs.setValueComplex(newValueComplex);
+		return sessionFactory.getCurrentSession().createQuery(
+		    "update Obs set valueComplex = :newValue, complexDataKey = :newKey where valueComplex = :oldValue")
+		        .setString("newValue", newValueComplex).setString("newKey", obs.getComplexDataKey()).setString(
+		            "oldValue", oldValueComplex).executeUpdate();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#isDirty(org.openmrs.Obs)
+	 */
+	public boolean isDirty(Obs obs) throws DAOException {
+		SessionImplementor session = (SessionImplementor) sessionFactory.getCurrentSession();
+		EntityEntry entry = session.getPersistenceContext().getEntry(obs);
+		if (entry == null || entry.getLoadedState() == null) {
+			return true;
+		}
+		EntityPersister persister = entry.getPersister();
+		int[] dirtyProperties = persister.findDirty(persister.getPropertyValues(obs), entry.getLoadedState(), obs,
+		    session);
+		return dirtyProperties != null && dirtyProperties.length > 0;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#revertObs(org.openmrs.Obs)
+	 */
+	public boolean revertObs(Obs obs) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		if (!session.contains(obs)) {
+			return false;
+		}
+		// cascades to the group members
+		session.refresh(obs);
+		return true;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#getObsTimeline(org.openmrs.Person, java.util.List,
+	 *      java.util.Date, java.util.Date)
+	 */
+	@SuppressWarnings("unchecked")
+	public ObsTimeline getObsTimeline(Person who, List<Concept> questions, Date fromDate, Date toDate)
+	        throws DAOException {
+		// a range scan of the obs_person_concept_datetime index that reads no obs entities
+		StringBuilder hql = new StringBuilder("select o.obsId, o.concept.conceptId, o.obsDatetime, o.valueNumeric, "
+		        + "coded.conceptId, o.valueDatetime, o.valueText from Obs o left join o.valueCoded coded "
+		        + "where o.person.personId = :personId and o.voided = false");
+		if (questions != null) {
+			hql.append(" and o.concept in (:questions)");
+		}
+		if (fromDate != null) {
+			hql.append(" and o.obsDatetime >= :fromDate");
+		}
+		if (toDate != null) {
+			hql.append(" and o.obsDatetime < :toDate");
+		}
+		hql.append(" order by o.obsDatetime, o.obsId");
+		
+		Query query = sessionFactory.getCurrentSession().createQuery(hql.toString());
+		query.setInteger("personId", who.getPersonId());
+		if (questions != null) {
+			query.setParameterList("questions", questions);
+		}
+		if (fromDate != null) {
+			query.setTimestamp("fromDate", fromDate);
+		}
+		if (toDate != null) {
+			query.setTimestamp("toDate", toDate);
+		}
+		
+		List<Object[]> rows = query.list();
+		ObsTimeline timeline = new ObsTimeline(rows.size());
+		for (int i = 0; i < rows.size(); i++) {
+			Object[] row = rows.get(i);
+			timeline.setRow(i, (Integer) row[0], (Integer) row[1], (Date) row[2], (Double) row[3], (Integer) row[4],
+			    (Date) row[5], (String) row[6]);
+		}
+		return timeline;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.ObsDAO#processObservations(java.util.List, java.util.List,
+	 *      java.util.List, java.util.List, java.util.Date, java.util.Date, boolean,
+	 *      org.openmrs.api.ObsService.ObsCallback)
+	 */
+	public int processObservations(List<Concept> questions, List<Location> locations, List<PERSON_TYPE> personTypes,
+	        List<String> sortList, Date fromDate, Date toDate, boolean includeVoided, ObsCallback callback)
+	        throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		Criteria criteria = createGetObservationsCriteria(null, null, questions, null, personTypes, locations, sortList,
+		    null, null, fromDate, toDate, null, includeVoided, null);
+		criteria.setCacheMode(CacheMode.IGNORE);
+		
+		// the session may be the one of the request, the objects the caller loaded have to stay in it
+		PersistenceContext persistenceContext = ((SessionImplementor) session).getPersistenceContext();
+		Set<EntityKey> callerKeys = new HashMap<EntityKey, Object>(persistenceContext.getEntitiesByKey()).keySet();
+		
+		int count = 0;
+		ScrollableResults results = criteria.setFetchSize(processBatchSize).scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (results.next()) {
+				count++;
+				if (!callback.process((Obs) results.get(0))) {
+					break;
+				}
+				if (count % processBatchSize == 0) {
+					// free the memory of the processed obs and whatever the callback loaded
+					evictAllExcept(session, persistenceContext, callerKeys);
+				}
+			}
+		}
+		finally {
+			results.close();
+		}
+		return count;
+	}
+	
+	/**
+	 * Evicts the entities in the session except the ones with the given keys
+	 */
+	private void evictAllExcept(Session session, PersistenceContext persistenceContext, Set<EntityKey> keptKeys) {
+		Map<EntityKey, Object> entities = new HashMap<EntityKey, Object>(persistenceContext.getEntitiesByKey());
+		for (Map.Entry<EntityKey, Object> entity : entities.entrySet()) {
+			if (!keptKeys.contains(entity.getKey()) && session.contains(entity.getValue())) {
+				session.evict(entity.getValue());
+			}
+		}
+	}
+	
 }
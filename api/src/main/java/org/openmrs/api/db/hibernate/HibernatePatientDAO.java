@@ -11,33 +11,48 @@ package org.openmrs.api.db.hibernate;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.type.Type;
+import org.openmrs.Encounter;
 import org.openmrs.Location;
+import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
 import org.openmrs.PatientIdentifierType.UniquenessBehavior;
 import org.openmrs.Person;
 import org.openmrs.PersonName;
+import org.openmrs.Visit;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.PatientDAO;
+import org.openmrs.patient.DuplicatePatientCandidate;
 
 /**
  * Hibernate specific database methods for the PatientService
@@ -50,6 +65,8 @@ public class HibernatePatientDAO implements PatientDAO {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	private static final int MAX_IN_CLAUSE_SIZE = 1000;
+	
 	/**
 	 * Hibernate session factory
 	 */
@@ -438,6 +455,12 @@ public class HibernatePatientDAO implements PatientDAO {
 	}
 	
 	/**
+	 * Lists every patient once for each combination of its names and identifiers, sorted by the
+	 * given attributes, so that patients sharing all of them end up next to each other. This is a
+	 * single pass over the rows instead of joining the patients with each other. Text attributes
+	 * are trimmed and upper cased in the query, so they match regardless of case and surrounding
+	 * spaces like they do under a case insensitive collation.
+	 * 
 	 * @see org.openmrs.api.db.PatientDAO#getDuplicatePatientsByAttributes(java.util.List)
 	 */
 	@SuppressWarnings("unchecked")
@@ -445,85 +468,112 @@ public class HibernatePatientDAO implements PatientDAO {
 		List<Patient> patients = new Vector<Patient>();
 		
 		if (attributes.size() > 0) {
-			String select = "select distinct p1 from Patient p1, Patient p2";
-			String where = " where p1 <> p2 ";
-			String orderBy = " order by ";
-			
-			Class patient = Patient.class;
-			Set<String> patientFieldNames = new HashSet<String>(patient.getDeclaredFields().length);
-			for (Field f : patient.getDeclaredFields()) {
-				patientFieldNames.add(f.getName());
-				log.debug(f.getName());
-			}
-			
-			Class person = Person.class;
-			Set<String> personFieldNames = new HashSet<String>(person.getDeclaredFields().length);
-			for (Field f : person.getDeclaredFields()) {
-				personFieldNames.add(f.getName());
-				log.debug(f.getName());
-			}
-			
-			Class personName = PersonName.class;
-			Set<String> personNameFieldNames = new HashSet<String>(personName.getDeclaredFields().length);
-			for (Field f : personName.getDeclaredFields()) {
-				personNameFieldNames.add(f.getName());
-				log.debug(f.getName());
-			}
-			
-			Class identifier = PatientIdentifier.class;
-			Set<String> identifierFieldNames = new HashSet<String>(identifier.getDeclaredFields().length);
-			for (Field f : identifier.getDeclaredFields()) {
-				identifierFieldNames.add(f.getName());
-				log.debug(f.getName());
-			}
-			
-			if (!attributes.contains("includeVoided")) {
-				where += "and p1.voided = false and p2.voided = false ";
-			}
+			Set<String> patientFieldNames = getFieldNames(Patient.class);
+			Set<String> personFieldNames = getFieldNames(Person.class);
+			Set<String> personNameFieldNames = getFieldNames(PersonName.class);
+			Set<String> identifierFieldNames = getFieldNames(PatientIdentifier.class);
 			
+			List<String> columns = new ArrayList<String>();
+			String from = " from Patient p";
 			for (String s : attributes) {
-				if (patientFieldNames.contains(s)) {
-					where += " and p1." + s + " = p2." + s;
-					orderBy += "p1." + s + ", ";
-				} else if (personFieldNames.contains(s)) {
-					if (!select.contains("Person ")) {
-						select += ", Person person1, Person person2";
-						where += " and p1.patientId = person1.personId and p2.patientId = person2.personId ";
-					}
-					where += " and person1." + s + " = person2." + s;
-					orderBy += "person1." + s + ", ";
+				if (patientFieldNames.contains(s) || personFieldNames.contains(s)) {
+					columns.add(getComparedColumn("p", Patient.class, s));
 				} else if (personNameFieldNames.contains(s)) {
-					if (!select.contains("PersonName")) {
-						select += ", PersonName pn1, PersonName pn2";
-						where += " and p1 = pn1.person and p2 = pn2.person ";
+					if (!from.contains("p.names")) {
+						from += " inner join p.names pn";
 					}
-					where += " and pn1." + s + " = pn2." + s;
-					orderBy += "pn1." + s + ", ";
+					columns.add(getComparedColumn("pn", PersonName.class, s));
 				} else if (identifierFieldNames.contains(s)) {
-					if (!select.contains("PatientIdentifier")) {
-						select += ", PatientIdentifier pi1, PatientIdentifier pi2";
-						where += " and p1 = pi1.patient and p2 = pi2.patient ";
+					if (!from.contains("p.identifiers")) {
+						from += " inner join p.identifiers pi";
 					}
-					where += " and pi1." + s + " = pi2." + s;
-					orderBy += "pi1." + s + ", ";
-				} else {
+					columns.add(getComparedColumn("pi", PatientIdentifier.class, s));
+				} else if (!"includeVoided".equals(s)) {
 					log.warn("Unidentified attribute: " + s);
 				}
 			}
 			
-			int index = orderBy.lastIndexOf(", ");
-			orderBy = orderBy.substring(0, index);
+			if (columns.isEmpty()) {
+				return patients;
+			}
 			
-			select = select + where + orderBy;
+			String where = attributes.contains("includeVoided") ? "" : " where p.voided = false";
+			String orderBy = " order by " + StringUtils.join(columns, ", ") + ", p.patientId";
+			String hql = "select p.patientId, " + StringUtils.join(columns, ", ") + from + where + orderBy;
 			
-			Query query = sessionFactory.getCurrentSession().createQuery(select);
+			Set<Integer> duplicateIds = new LinkedHashSet<Integer>();
+			Set<Integer> group = new LinkedHashSet<Integer>();
+			Object[] groupValues = null;
+			ScrollableResults results = sessionFactory.getCurrentSession().createQuery(hql).setFetchSize(1000).scroll(
+			    ScrollMode.FORWARD_ONLY);
+			try {
+				while (results.next()) {
+					Object[] row = results.get();
+					Object[] values = Arrays.copyOfRange(row, 1, row.length);
+					if (ArrayUtils.contains(values, null)) {
+						// null never equals anything in the database either
+						continue;
+					}
+					if (groupValues == null || !Arrays.equals(values, groupValues)) {
+						if (group.size() > 1) {
+							duplicateIds.addAll(group);
+						}
+						group.clear();
+						groupValues = values;
+					}
+					group.add((Integer) row[0]);
+				}
+				if (group.size() > 1) {
+					duplicateIds.addAll(group);
+				}
+			}
+			finally {
+				results.close();
+			}
 			
-			patients = query.list();
+			List<Integer> ids = new ArrayList<Integer>(duplicateIds);
+			Map<Integer, Patient> patientsById = new HashMap<Integer, Patient>();
+			for (int i = 0; i < ids.size(); i += MAX_IN_CLAUSE_SIZE) {
+				List<Integer> batch = ids.subList(i, Math.min(ids.size(), i + MAX_IN_CLAUSE_SIZE));
+				for (Patient patient : (List<Patient>) sessionFactory.getCurrentSession().createQuery(
+				    "from Patient p where p.patientId in (:ids)").setParameterList("ids", batch).list()) {
+					patientsById.put(patient.getPatientId(), patient);
+				}
+			}
+			for (Integer id : ids) {
+				patients.add(patientsById.get(id));
+			}
 		}
 		
 		return patients;
 	}
 	
+	/**
+	 * @return the property as compared by {@link #getDuplicatePatientsByAttributes(List)}, trimmed
+	 *         and upper cased if it is text
+	 */
+	private String getComparedColumn(String alias, Class<?> entityClass, String property) {
+		String column = alias + "." + property;
+		try {
+			Type type = sessionFactory.getClassMetadata(entityClass).getPropertyType(property);
+			if (String.class.equals(type.getReturnedClass())) {
+				return "upper(trim(" + column + "))";
+			}
+		}
+		catch (HibernateException e) {
+			// not a mapped property, the query will say so
+		}
+		return column;
+	}
+	
+	private Set<String> getFieldNames(Class<?> clazz) {
+		Set<String> fieldNames = new HashSet<String>(clazz.getDeclaredFields().length);
+		for (Field f : clazz.getDeclaredFields()) {
+			fieldNames.add(f.getName());
+		}
+		return fieldNames;
+	}
+	
 	/**
 	 * @see org.openmrs.api.db.PatientDAO#getPatientByUuid(java.lang.String)
 	 */
@@ -669,4 +719,282 @@ public class HibernatePatientDAO implements PatientDAO {
 		//
 		return (long) criteria.list().size();
 	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientIds(java.lang.Integer, int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getPatientIds(Integer afterPatientId, int maxResults) throws DAOException {
+		Query query = sessionFactory.getCurrentSession().createQuery(
+		    "select p.patientId from Patient p where p.voided = false and p.patientId > :afterPatientId"
+		            + " order by p.patientId");
+		query.setInteger("afterPatientId", afterPatientId == null ? Integer.MIN_VALUE : afterPatientId);
+		query.setMaxResults(maxResults);
+		return query.list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientIdsChangedSince(java.util.Date)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getPatientIdsChangedSince(Date date) throws DAOException {
+		String hql = "select p.patientId from Patient p where p.voided = false and ("
+		        + "p.dateCreated > :date or p.dateChanged > :date or p.personDateCreated > :date"
+		        + " or p.personDateChanged > :date"
+		        + " or exists (from PersonName pn where pn.person = p and (pn.dateCreated > :date"
+		        + " or pn.dateChanged > :date or pn.dateVoided > :date))"
+		        + " or exists (from PatientIdentifier pi where pi.patient = p and (pi.dateCreated > :date"
+		        + " or pi.dateChanged > :date or pi.dateVoided > :date))) order by p.patientId";
+		return sessionFactory.getCurrentSession().createQuery(hql).setTimestamp("date", date).list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientDemographics(java.util.Collection)
+	 */
+	@Override
+	public List<Object[]> getPatientDemographics(Collection<Integer> patientIds) throws DAOException {
+		return listByIds("select p.patientId, p.gender, p.birthdate from Patient p where p.patientId in (:ids)",
+		    patientIds);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientNameValues(java.util.Collection)
+	 */
+	@Override
+	public List<Object[]> getPatientNameValues(Collection<Integer> patientIds) throws DAOException {
+		return listByIds("select pn.person.personId, pn.givenName, pn.familyName from PersonName pn"
+		        + " where pn.voided = false and pn.person.personId in (:ids)", patientIds);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientIdentifierValues(java.util.Collection)
+	 */
+	@Override
+	public List<Object[]> getPatientIdentifierValues(Collection<Integer> patientIds) throws DAOException {
+		return listByIds("select pi.patient.patientId, pi.identifier from PatientIdentifier pi"
+		        + " where pi.voided = false and pi.patient.patientId in (:ids)", patientIds);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientIdsByBirthdate(java.util.Date, java.util.Date)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getPatientIdsByBirthdate(Date fromDate, Date toDate) throws DAOException {
+		return sessionFactory.getCurrentSession().createQuery(
+		    "select p.patientId from Patient p where p.voided = false and p.birthdate >= :fromDate"
+		            + " and p.birthdate < :toDate").setTimestamp("fromDate", fromDate).setTimestamp("toDate", toDate)
+		        .list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientIdsByFamilyNameInitials(java.util.Collection,
+	 *      java.util.Date, java.util.Date)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getPatientIdsByFamilyNameInitials(Collection<String> initials, Date fromDate, Date toDate)
+	        throws DAOException {
+		if (initials.isEmpty()) {
+			return new ArrayList<Integer>();
+		}
+		return sessionFactory.getCurrentSession().createQuery(
+		    "select distinct p.patientId from Patient p, PersonName pn where pn.person = p and p.voided = false"
+		            + " and pn.voided = false and substring(upper(trim(pn.familyName)), 1, 1) in (:initials)"
+		            + " and p.birthdate >= :fromDate and p.birthdate < :toDate").setParameterList("initials", initials)
+		        .setTimestamp("fromDate", fromDate).setTimestamp("toDate", toDate).list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getPatientIdsByIdentifiers(java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getPatientIdsByIdentifiers(Collection<String> identifiers) throws DAOException {
+		List<Integer> patientIds = new ArrayList<Integer>();
+		List<String> values = new ArrayList<String>(identifiers);
+		for (int i = 0; i < values.size(); i += MAX_IN_CLAUSE_SIZE) {
+			patientIds.addAll(sessionFactory.getCurrentSession().createQuery(
+			    "select distinct pi.patient.patientId from PatientIdentifier pi where pi.voided = false"
+			            + " and pi.patient.voided = false and upper(pi.identifier) in (:identifiers)").setParameterList(
+			    "identifiers", values.subList(i, Math.min(values.size(), i + MAX_IN_CLAUSE_SIZE))).list());
+		}
+		return patientIds;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getDuplicatePatientCandidatePairs(java.util.Collection)
+	 */
+	@Override
+	public List<Object[]> getDuplicatePatientCandidatePairs(Collection<Integer> patientIds) throws DAOException {
+		List<Object[]> pairs = listByIds("select c.patient.patientId, c.duplicate.patientId"
+		        + " from DuplicatePatientCandidate c where c.patient.patientId in (:ids)", patientIds);
+		pairs.addAll(listByIds("select c.patient.patientId, c.duplicate.patientId"
+		        + " from DuplicatePatientCandidate c where c.duplicate.patientId in (:ids)", patientIds));
+		return pairs;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#saveDuplicatePatientCandidate(org.openmrs.patient.DuplicatePatientCandidate)
+	 */
+	@Override
+	public DuplicatePatientCandidate saveDuplicatePatientCandidate(DuplicatePatientCandidate candidate)
+	        throws DAOException {
+		sessionFactory.getCurrentSession().saveOrUpdate(candidate);
+		return candidate;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getDuplicatePatientCandidate(java.lang.Integer)
+	 */
+	@Override
+	public DuplicatePatientCandidate getDuplicatePatientCandidate(Integer duplicatePatientCandidateId)
+	        throws DAOException {
+		return (DuplicatePatientCandidate) sessionFactory.getCurrentSession().get(DuplicatePatientCandidate.class,
+		    duplicatePatientCandidateId);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getDuplicatePatientCandidates(org.openmrs.Patient, boolean,
+	 *      java.lang.Integer, java.lang.Integer)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Patient patient, boolean includeVoided,
+	        Integer start, Integer length) throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DuplicatePatientCandidate.class);
+		if (patient != null) {
+			criteria.add(Restrictions.or(Restrictions.eq("patient", patient), Restrictions.eq("duplicate", patient)));
+		}
+		if (!includeVoided) {
+			criteria.add(Restrictions.eq("voided", false));
+		}
+		criteria.addOrder(Order.desc("score"));
+		criteria.addOrder(Order.asc("duplicatePatientCandidateId"));
+		if (start != null) {
+			criteria.setFirstResult(start);
+		}
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
+		}
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getUnvoidedOrderCount(org.openmrs.Patient)
+	 */
+	@Override
+	public Long getUnvoidedOrderCount(Patient patient) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		return (Long) session.createQuery(
+		    "select count(o.orderId) from Order o where o.patient = :patient and o.voided = false").setParameter(
+		    "patient", patient).uniqueResult();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getVisitUuidsByPatient(org.openmrs.Patient)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getVisitUuidsByPatient(Patient patient) throws DAOException {
+		return sessionFactory.getCurrentSession().createQuery("select v.uuid from Visit v where v.patient = :patient")
+		        .setParameter("patient", patient).list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getEncounterUuidsByPatient(org.openmrs.Patient)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getEncounterUuidsByPatient(Patient patient) throws DAOException {
+		return sessionFactory.getCurrentSession().createQuery("select e.uuid from Encounter e where e.patient = :patient")
+		        .setParameter("patient", patient).list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getIndependentObsUuidsByPerson(org.openmrs.Person)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getIndependentObsUuidsByPerson(Person person) throws DAOException {
+		return sessionFactory.getCurrentSession().createQuery(
+		    "select o.uuid from Obs o where o.person = :person and o.encounter is null and o.voided = false")
+		        .setParameter("person", person).list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#moveClinicalData(org.openmrs.Patient, org.openmrs.Patient)
+	 */
+	@Override
+	public int moveClinicalData(Patient from, Patient to) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		// the bulk updates bypass the session, so pending changes have to reach the database first
+		session.flush();
+		
+		Date now = new Date();
+		int updated = 0;
+		for (String entity : new String[] { "Visit", "Encounter" }) {
+			updated += session.createQuery(
+			    "update " + entity + " set patient = :to, changedBy = :user, dateChanged = :now where patient = :from")
+			        .setParameter("to", to).setParameter("from", from).setParameter("user", Context.getAuthenticatedUser())
+			        .setParameter("now", now).executeUpdate();
+		}
+		updated += session.createQuery(
+		    "update Obs set person = :to where person = :from and (encounter is not null or voided = false)")
+		        .setParameter("to", to).setParameter("from", from).executeUpdate();
+		// orders are mapped with joined subclasses, which hql would update through temporary tables
+		updated += session.createSQLQuery("update orders set patient_id = :to where patient_id = :from")
+		        .addSynchronizedEntityClass(org.openmrs.Order.class).setParameter("to", to.getPatientId()).setParameter(
+		            "from", from.getPatientId()).executeUpdate();
+		
+		refreshMovedEntities(session, from);
+		return updated;
+	}
+	
+	/**
+	 * Reloads the visits, encounters, observations and orders in the session that still point at
+	 * the given patient after a bulk update
+	 */
+	private void refreshMovedEntities(Session session, Patient from) {
+		Integer fromId = from.getPatientId();
+		// copied since loading the owners can add entities to the session
+		List<EntityKey> entityKeys = new ArrayList<EntityKey>();
+		for (Object key : session.getStatistics().getEntityKeys()) {
+			entityKeys.add((EntityKey) key);
+		}
+		for (EntityKey entityKey : entityKeys) {
+			Object entity = session.get(entityKey.getEntityName(), entityKey.getIdentifier());
+			Person owner = null;
+			if (entity instanceof Visit) {
+				owner = ((Visit) entity).getPatient();
+			} else if (entity instanceof Encounter) {
+				owner = ((Encounter) entity).getPatient();
+			} else if (entity instanceof Obs) {
+				owner = ((Obs) entity).getPerson();
+			} else if (entity instanceof org.openmrs.Order) {
+				owner = ((org.openmrs.Order) entity).getPatient();
+			}
+			if (owner != null && fromId.equals(owner.getPersonId()) && session.contains(entity)) {
+				session.refresh(entity);
+			}
+		}
+	}
+	
+	/**
+	 * Runs the given query with an ids parameter in batches that databases accept in an in clause
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Object[]> listByIds(String hql, Collection<Integer> ids) {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		List<Integer> idList = new ArrayList<Integer>(ids);
+		for (int i = 0; i < idList.size(); i += MAX_IN_CLAUSE_SIZE) {
+			rows.addAll(sessionFactory.getCurrentSession().createQuery(hql).setParameterList("ids",
+			    idList.subList(i, Math.min(idList.size(), i + MAX_IN_CLAUSE_SIZE))).list());
+		}
+		return rows;
+	}
+	
 }
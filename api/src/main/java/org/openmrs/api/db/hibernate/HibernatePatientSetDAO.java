@@ -12,9 +12,10 @@ package org.openmrs.api.db.hibernate;
 import java.io.StringWriter;
 import java.lang.reflect.Field;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
@@ -25,6 +26,7 @@ import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -43,6 +45,7 @@ import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
 import org.hibernate.Query;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
@@ -81,6 +84,11 @@ import org.openmrs.api.PatientSetService.TimeModifier;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.PatientSetDAO;
+import org.openmrs.cohort.CohortQuery;
+import org.openmrs.cohort.CohortQueryPlan;
+import org.openmrs.cohort.CohortQueryPlan.Operator;
+import org.openmrs.cohort.PatientColumn;
+import org.openmrs.cohort.PatientColumns;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -451,6 +459,102 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		return new Cohort("All patients", "", ids);
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.PatientSetDAO#planCohortQuery(org.openmrs.cohort.CohortQuery)
+	 */
+	public CohortQueryPlan planCohortQuery(CohortQuery query) {
+		return new HibernateCohortQueryPlanner().plan(query);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientSetDAO#evaluateCohortQueryPlan(org.openmrs.cohort.CohortQueryPlan)
+	 */
+	public Cohort evaluateCohortQueryPlan(CohortQueryPlan plan) {
+		return toCohort(evaluate(plan));
+	}
+	
+	/**
+	 * Evaluates a step of a plan, the members of the resulting cohort are the set bits
+	 */
+	private BitSet evaluate(CohortQueryPlan plan) {
+		switch (plan.getStrategy()) {
+			case SQL:
+				return toBitSet(evaluateSql(plan).getMemberIds());
+			case SEPARATE:
+				return toBitSet(evaluateSeparately(plan.getQuery()).getMemberIds());
+			default:
+				List<CohortQueryPlan> children = plan.getChildren();
+				if (plan.getOperator() == Operator.NOT) {
+					BitSet ret = toBitSet(getAllPatients().getMemberIds());
+					ret.andNot(evaluate(children.get(0)));
+					return ret;
+				}
+				BitSet ret = evaluate(children.get(0));
+				for (int i = 1; i < children.size(); i++) {
+					if (plan.getOperator() == Operator.AND) {
+						if (ret.isEmpty()) {
+							break;
+						}
+						ret.and(evaluate(children.get(i)));
+					} else {
+						ret.or(evaluate(children.get(i)));
+					}
+				}
+				return ret;
+		}
+	}
+	
+	/**
+	 * Runs an {@link CohortQueryPlan.Strategy#SQL} step of a plan
+	 */
+	@SuppressWarnings("unchecked")
+	private Cohort evaluateSql(CohortQueryPlan plan) {
+		log.debug("query: " + plan.getSql());
+		
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(plan.getSql());
+		query.setCacheMode(CacheMode.IGNORE);
+		for (Map.Entry<String, Object> parameter : plan.getParameters().entrySet()) {
+			if (parameter.getValue() instanceof Collection) {
+				query.setParameterList(parameter.getKey(), (Collection<?>) parameter.getValue());
+			} else {
+				query.setParameter(parameter.getKey(), parameter.getValue());
+			}
+		}
+		return new Cohort(query.list());
+	}
+	
+	/**
+	 * Evaluates a criterion that can't be part of an sql statement
+	 */
+	private Cohort evaluateSeparately(CohortQuery query) {
+		if (query instanceof CohortQuery.Members) {
+			Cohort ret = new Cohort(((CohortQuery.Members) query).getCohort().getMemberIds());
+			ret.getMemberIds().retainAll(getAllPatients().getMemberIds());
+			return ret;
+		} else if (query instanceof CohortQuery.HavingDrugOrder) {
+			CohortQuery.HavingDrugOrder q = (CohortQuery.HavingDrugOrder) query;
+			return getPatientsHavingDrugOrder(q.getDrugList(), q.getDrugConceptList(), q.getStartDateFrom(), q
+			        .getStartDateTo(), q.getStopDateFrom(), q.getStopDateTo(), q.getDiscontinued(), q.getOrderReason());
+		}
+		throw new IllegalArgumentException("Cannot evaluate " + query);
+	}
+	
+	private static BitSet toBitSet(Collection<Integer> ids) {
+		BitSet ret = new BitSet();
+		for (Integer id : ids) {
+			ret.set(id);
+		}
+		return ret;
+	}
+	
+	private static Cohort toCohort(BitSet bits) {
+		Set<Integer> ids = new TreeSet<Integer>();
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			ids.add(i);
+		}
+		return new Cohort(ids);
+	}
+	
 	/**
 	 * given program, workflow, and state, within a given date range
 	 * 
@@ -465,66 +569,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 	 */
 	public Cohort getPatientsByProgramAndState(Program program, List<ProgramWorkflowState> stateList, Date fromDate,
 	        Date toDate) {
-		Integer programId = program == null ? null : program.getProgramId();
-		List<Integer> stateIds = null;
-		if (stateList != null && stateList.size() > 0) {
-			stateIds = new ArrayList<Integer>();
-			for (ProgramWorkflowState state : stateList) {
-				stateIds.add(state.getProgramWorkflowStateId());
-			}
-		}
-		
-		List<String> clauses = new ArrayList<String>();
-		clauses.add("pp.voided = false");
-		if (programId != null) {
-			clauses.add("pp.program_id = :programId");
-		}
-		if (stateIds != null) {
-			clauses.add("ps.state in (:stateIds)");
-			clauses.add("ps.voided = false");
-		}
-		if (fromDate != null) {
-			clauses.add("(pp.date_completed is null or pp.date_completed >= :fromDate)");
-			if (stateIds != null) {
-				clauses.add("(ps.end_date is null or ps.end_date >= :fromDate)");
-			}
-		}
-		if (toDate != null) {
-			clauses.add("(pp.date_enrolled is null or pp.date_enrolled <= :toDate)");
-			if (stateIds != null) {
-				clauses.add("(ps.start_date is null or ps.start_date <= :toDate)");
-			}
-		}
-		
-		StringBuilder sql = new StringBuilder();
-		sql.append("select pp.patient_id ");
-		sql.append("from patient_program pp ");
-		sql.append("inner join patient p on pp.patient_id = p.patient_id and p.voided = false ");
-		if (stateIds != null) {
-			sql.append("inner join patient_state ps on pp.patient_program_id = ps.patient_program_id ");
-		}
-		for (ListIterator<String> i = clauses.listIterator(); i.hasNext();) {
-			sql.append(i.nextIndex() == 0 ? " where " : " and ");
-			sql.append(i.next());
-		}
-		sql.append(" group by pp.patient_id");
-		log.debug("query: " + sql);
-		
-		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql.toString());
-		if (programId != null) {
-			query.setInteger("programId", programId);
-		}
-		if (stateIds != null) {
-			query.setParameterList("stateIds", stateIds);
-		}
-		if (fromDate != null) {
-			query.setDate("fromDate", fromDate);
-		}
-		if (toDate != null) {
-			query.setDate("toDate", toDate);
-		}
-		
-		return new Cohort(query.list());
+		return evaluateSql(HibernateCohortQueryPlanner.programAndState("", program, stateList, fromDate, toDate, null));
 	}
 	
 	/**
@@ -560,178 +605,13 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 	
 	public Cohort getPatientsHavingObs(Integer conceptId, PatientSetService.TimeModifier timeModifier,
 	        PatientSetService.Modifier modifier, Object value, Date fromDate, Date toDate) {
-		if (conceptId == null && value == null) {
-			throw new IllegalArgumentException("Can't have conceptId == null and value == null");
-		}
-		if (conceptId == null && (timeModifier != TimeModifier.ANY && timeModifier != TimeModifier.NO)) {
-			throw new IllegalArgumentException("If conceptId == null, timeModifier must be ANY or NO");
-		}
-		if (conceptId == null && modifier != Modifier.EQUAL) {
-			throw new IllegalArgumentException("If conceptId == null, modifier must be EQUAL");
-		}
-		Concept concept = null;
-		if (conceptId != null) {
-			concept = Context.getConceptService().getConcept(conceptId);
-		}
-		Number numericValue = null;
-		String stringValue = null;
-		Concept codedValue = null;
-		Date dateValue = null;
-		String valueSql = null;
-		if (value != null) {
-			if (concept == null) {
-				if (value instanceof Concept) {
-					codedValue = (Concept) value;
-				} else {
-					codedValue = Context.getConceptService().getConceptByName(value.toString());
-				}
-				valueSql = "o.value_coded";
-			} else if (concept.getDatatype().isNumeric()) {
-				if (value instanceof Number) {
-					numericValue = (Number) value;
-				} else {
-					numericValue = new Double(value.toString());
-				}
-				valueSql = "o.value_numeric";
-			} else if (concept.getDatatype().isText()) {
-				stringValue = value.toString();
-				valueSql = "o.value_text";
-				if (modifier == null) {
-					modifier = Modifier.EQUAL;
-				}
-			} else if (concept.getDatatype().isCoded()) {
-				if (value instanceof Concept) {
-					codedValue = (Concept) value;
-				} else {
-					codedValue = Context.getConceptService().getConceptByName(value.toString());
-				}
-				valueSql = "o.value_coded";
-			} else if (concept.getDatatype().isDate()) {
-				if (value instanceof Date) {
-					dateValue = (Date) value;
-				} else {
-					try {
-						dateValue = Context.getDateFormat().parse(value.toString());
-					}
-					catch (ParseException ex) {
-						throw new IllegalArgumentException("Cannot interpret " + dateValue + " as a date in the format "
-						        + Context.getDateFormat());
-					}
-				}
-				valueSql = "o.value_datetime";
-			} else if (concept.getDatatype().isBoolean()) {
-				if (value instanceof Concept) {
-					codedValue = (Concept) value;
-				} else {
-					boolean asBoolean = false;
-					if (value instanceof Boolean) {
-						asBoolean = ((Boolean) value).booleanValue();
-					} else {
-						asBoolean = Boolean.valueOf(value.toString());
-					}
-					codedValue = asBoolean ? Context.getConceptService().getTrueConcept() : Context.getConceptService()
-					        .getFalseConcept();
-				}
-				valueSql = "o.value_coded";
-			}
-		}
-		
-		StringBuilder sb = new StringBuilder();
-		boolean useValue = value != null;
-		boolean doSqlAggregation = timeModifier == TimeModifier.MIN || timeModifier == TimeModifier.MAX
-		        || timeModifier == TimeModifier.AVG;
-		boolean doInvert = false;
-		
-		String dateSql = "";
-		String dateSqlForSubquery = "";
-		if (fromDate != null) {
-			dateSql += " and o.obs_datetime >= :fromDate ";
-			dateSqlForSubquery += " and obs_datetime >= :fromDate ";
-		}
-		if (toDate != null) {
-			dateSql += " and o.obs_datetime <= :toDate ";
-			dateSqlForSubquery += " and obs_datetime <= :toDate ";
-		}
-		
-		if (timeModifier == TimeModifier.ANY || timeModifier == TimeModifier.NO) {
-			if (timeModifier == TimeModifier.NO) {
-				doInvert = true;
-			}
-			sb
-			        .append("select o.person_id from obs o "
-			                + "inner join patient p on o.person_id = p.patient_id and p.voided = false "
-			                + "where o.voided = false ");
-			if (conceptId != null) {
-				sb.append("and concept_id = :concept_id ");
-			}
-			sb.append(dateSql);
-			
-		} else if (timeModifier == TimeModifier.FIRST || timeModifier == TimeModifier.LAST) {
-			boolean isFirst = timeModifier == PatientSetService.TimeModifier.FIRST;
-			sb.append("select o.person_id " + "from obs o inner join (" + "    select person_id, "
-			        + (isFirst ? "min" : "max") + "(obs_datetime) as obs_datetime" + "    from obs"
-			        + "    where voided = false and concept_id = :concept_id " + dateSqlForSubquery
-			        + "    group by person_id"
-			        + ") subq on o.person_id = subq.person_id and o.obs_datetime = subq.obs_datetime "
-			        + " inner join patient p on o.person_id = p.patient_id and p.voided = false "
-			        + "where o.voided = false and o.concept_id = :concept_id ");
-			
-		} else if (doSqlAggregation) {
-			String sqlAggregator = timeModifier.toString();
-			valueSql = sqlAggregator + "(" + valueSql + ")";
-			sb.append("select o.person_id " + "from obs o "
-			        + "inner join patient p on o.person_id = p.patient_id and p.voided = false "
-			        + "where o.voided = false and concept_id = :concept_id " + dateSql + "group by o.person_id ");
-			
-		} else {
-			throw new IllegalArgumentException("TimeModifier '" + timeModifier + "' not recognized");
-		}
-		
-		if (useValue) {
-			sb.append(doSqlAggregation ? " having " : " and ");
-			sb.append(valueSql + " ");
-			sb.append(modifier.getSqlRepresentation() + " :value");
-		}
-		if (!doSqlAggregation) {
-			sb.append(" group by o.person_id ");
-		}
-		
-		log.debug("query: " + sb);
-		Query query = sessionFactory.getCurrentSession().createSQLQuery(sb.toString());
-		query.setCacheMode(CacheMode.IGNORE);
-		
-		if (conceptId != null) {
-			query.setInteger("concept_id", conceptId);
-		}
-		if (useValue) {
-			if (numericValue != null) {
-				query.setDouble("value", numericValue.doubleValue());
-			} else if (codedValue != null) {
-				query.setInteger("value", codedValue.getConceptId());
-			} else if (stringValue != null) {
-				query.setString("value", stringValue);
-			} else if (dateValue != null) {
-				query.setDate("value", dateValue);
-			} else {
-				throw new IllegalArgumentException(
-				        "useValue is true, but numeric, coded, string, boolean, and date values are all null");
-			}
-		}
-		if (fromDate != null) {
-			query.setDate("fromDate", fromDate);
-		}
-		if (toDate != null) {
-			query.setDate("toDate", toDate);
-		}
-		
-		Cohort ret;
-		if (doInvert) {
-			ret = getAllPatients();
-			ret.getMemberIds().removeAll(query.list());
-		} else {
-			ret = new Cohort(query.list());
+		Cohort ret = evaluateSql(HibernateCohortQueryPlanner.havingObs("", conceptId, timeModifier, modifier, value,
+		    fromDate, toDate, null));
+		if (timeModifier == TimeModifier.NO) {
+			Cohort all = getAllPatients();
+			all.getMemberIds().removeAll(ret.getMemberIds());
+			ret = all;
 		}
-		
 		return ret;
 	}
 	
@@ -749,77 +629,8 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 	 */
 	public Cohort getPatientsHavingEncounters(List<EncounterType> encounterTypeList, Location location, Form form,
 	        Date fromDate, Date toDate, Integer minCount, Integer maxCount) {
-		List<Integer> encTypeIds = null;
-		if (encounterTypeList != null && encounterTypeList.size() > 0) {
-			encTypeIds = new ArrayList<Integer>();
-			for (EncounterType t : encounterTypeList) {
-				encTypeIds.add(t.getEncounterTypeId());
-			}
-		}
-		Integer locationId = location == null ? null : location.getLocationId();
-		Integer formId = form == null ? null : form.getFormId();
-		List<String> whereClauses = new ArrayList<String>();
-		whereClauses.add("e.voided = false");
-		if (encTypeIds != null) {
-			whereClauses.add("e.encounter_type in (:encTypeIds)");
-		}
-		if (locationId != null) {
-			whereClauses.add("e.location_id = :locationId");
-		}
-		if (formId != null) {
-			whereClauses.add("e.form_id = :formId");
-		}
-		if (fromDate != null) {
-			whereClauses.add("e.encounter_datetime >= :fromDate");
-		}
-		if (toDate != null) {
-			whereClauses.add("e.encounter_datetime <= :toDate");
-		}
-		List<String> havingClauses = new ArrayList<String>();
-		if (minCount != null) {
-			havingClauses.add("count(*) >= :minCount");
-		}
-		if (maxCount != null) {
-			havingClauses.add("count(*) >= :maxCount");
-		}
-		StringBuilder sb = new StringBuilder();
-		sb.append(" select e.patient_id from encounter e ");
-		sb.append(" inner join patient p on e.patient_id = p.patient_id and p.voided = false ");
-		for (ListIterator<String> i = whereClauses.listIterator(); i.hasNext();) {
-			sb.append(i.nextIndex() == 0 ? " where " : " and ");
-			sb.append(i.next());
-		}
-		sb.append(" group by e.patient_id ");
-		for (ListIterator<String> i = havingClauses.listIterator(); i.hasNext();) {
-			sb.append(i.nextIndex() == 0 ? " having " : " and ");
-			sb.append(i.next());
-		}
-		log.debug("query: " + sb);
-		
-		Query query = sessionFactory.getCurrentSession().createSQLQuery(sb.toString());
-		if (encTypeIds != null) {
-			query.setParameterList("encTypeIds", encTypeIds);
-		}
-		if (locationId != null) {
-			query.setInteger("locationId", locationId);
-		}
-		if (formId != null) {
-			query.setInteger("formId", formId);
-		}
-		if (fromDate != null) {
-			query.setDate("fromDate", fromDate);
-		}
-		if (toDate != null) {
-			query.setDate("toDate", toDate);
-		}
-		if (minCount != null) {
-			query.setInteger("minCount", minCount);
-		}
-		if (maxCount != null) {
-			query.setInteger("maxCount", maxCount);
-		}
-		
-		return new Cohort(query.list());
+		return evaluateSql(HibernateCohortQueryPlanner.havingEncounters("", encounterTypeList, location, form, fromDate,
+		    toDate, minCount, maxCount, null));
 	}
 	
 	/**
@@ -1012,6 +823,11 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 	
 	private static final long MS_PER_YEAR = 365L * 24 * 60 * 60 * 1000L;
 	
+	/**
+	 * The number of patients whose column values are fetched with one query
+	 */
+	private static final int COLUMN_CHUNK_SIZE = 1000;
+	
 	@SuppressWarnings("unchecked")
 	public Map<Integer, String> getShortPatientDescriptions(Collection<Integer> patientIds) throws DAOException {
 		Map<Integer, String> ret = new HashMap<Integer, String>();
@@ -1044,36 +860,100 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		return ret;
 	}
 	
-	@SuppressWarnings("unchecked")
 	public Map<Integer, Map<String, Object>> getCharacteristics(Cohort patients) throws DAOException {
 		Map<Integer, Map<String, Object>> ret = new HashMap<Integer, Map<String, Object>>();
-		Collection<Integer> ids = patients.getMemberIds();
-		Query query = sessionFactory.getCurrentSession().createQuery(
-		    "select patient.personId, patient.gender, patient.birthdate from Patient patient where patient.voided = false");
-		query.setCacheMode(CacheMode.IGNORE);
-		
-		List<Object[]> temp = query.list();
+		PatientColumns columns = getPatientColumns(patients, Arrays.asList(PatientColumn.property("Patient", "gender"),
+		    PatientColumn.property("Patient", "birthdate")));
+		Object[] genders = columns.getColumn("Patient.gender");
+		Object[] birthdates = columns.getColumn("Patient.birthdate");
 		
 		long now = System.currentTimeMillis();
-		for (Object[] results : temp) {
-			Integer patientId = (Integer) results[0];
-			if (!ids.contains(patientId)) {
+		for (int row = 0; row < columns.size(); row++) {
+			// voided patients have no values
+			if (!columns.hasValue(row, 0)) {
 				continue;
 			}
 			Map<String, Object> holder = new HashMap<String, Object>();
-			holder.put("gender", results[1]);
-			Date bd = (Date) results[2];
+			holder.put("gender", genders[row]);
+			Date bd = (Date) birthdates[row];
 			if (bd != null) {
 				int age = (int) ((now - bd.getTime()) / MS_PER_YEAR);
 				holder.put("age_years", age);
 				holder.put("birthdate", bd);
 			}
-			ret.put(patientId, holder);
+			ret.put(columns.getPatientId(row), holder);
 		}
 		
 		return ret;
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.PatientSetDAO#getPatientColumns(org.openmrs.Cohort, java.util.List)
+	 */
+	public PatientColumns getPatientColumns(Cohort patients, List<PatientColumn> columns) throws DAOException {
+		int[] patientIds = new int[patients.getMemberIds().size()];
+		int i = 0;
+		for (Integer patientId : new TreeSet<Integer>(patients.getMemberIds())) {
+			patientIds[i++] = patientId;
+		}
+		
+		PatientColumns ret = new PatientColumns(columns, patientIds);
+		for (int from = 0; from < patientIds.length; from += COLUMN_CHUNK_SIZE) {
+			int to = Math.min(from + COLUMN_CHUNK_SIZE, patientIds.length);
+			List<Integer> chunk = new ArrayList<Integer>(to - from);
+			for (int row = from; row < to; row++) {
+				chunk.add(patientIds[row]);
+			}
+			for (int column = 0; column < columns.size(); column++) {
+				for (Object[] value : getColumnValues(columns.get(column), chunk)) {
+					int row = ret.getRow((Integer) value[0]);
+					// the values are ordered so that the one to use comes first
+					if (row >= 0 && !ret.hasValue(row, column)) {
+						ret.setValue(row, column, value[1]);
+					}
+				}
+			}
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Gets the patient ids and values of a column for some patients
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Object[]> getColumnValues(PatientColumn column, List<Integer> patientIds) {
+		switch (column.getSource()) {
+			case PROPERTY:
+				String className = "org.openmrs." + column.getClassName();
+				Criteria criteria = createPropertyCriteria(className, column.getProperty());
+				criteria.add(Restrictions.in(getPersonIdProperty(className), patientIds));
+				return criteria.list();
+			case PERSON_ATTRIBUTE:
+				Query query = sessionFactory.getCurrentSession().createQuery(
+				    "select attr.person.personId, attr.value from PersonAttribute attr "
+				            + "where attr.attributeType.name = :typeName and attr.voided = false "
+				            + "and attr.person.personId in (:patientIds) order by attr.dateCreated desc");
+				query.setCacheMode(CacheMode.IGNORE);
+				query.setString("typeName", column.getAttributeTypeName());
+				query.setParameterList("patientIds", patientIds);
+				return query.list();
+			case IDENTIFIER:
+				Criteria identifiers = sessionFactory.getCurrentSession().createCriteria(PatientIdentifier.class);
+				identifiers.setCacheMode(CacheMode.IGNORE);
+				identifiers.setProjection(Projections.projectionList().add(Projections.property("patient.personId")).add(
+				    Projections.property("identifier")));
+				identifiers.add(Restrictions.eq("identifierType", column.getIdentifierType()));
+				identifiers.add(Restrictions.eq("voided", false));
+				identifiers.add(Restrictions.in("patient.personId", patientIds));
+				identifiers.addOrder(org.hibernate.criterion.Order.desc("preferred"));
+				identifiers.addOrder(org.hibernate.criterion.Order.desc("dateCreated"));
+				return identifiers.list();
+			default:
+				throw new IllegalArgumentException("Unknown column source: " + column.getSource());
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	/**
 	 * fromDate and toDate are both inclusive
@@ -1109,7 +989,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// only add this where clause if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("person.personId", patients.getMemberIds()));
+			criteria.add(inCohort("person.personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1203,7 +1083,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// only restrict on patient ids if some were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("obs.personId", patients.getMemberIds()));
+			criteria.add(inCohort("obs.personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("obs.concept", c));
@@ -1301,7 +1181,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// this "where clause" is only necessary if patients were passed in
 		if (patients != null && patients.size() > 0) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1341,7 +1221,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// this "where clause" is only necessary if patients were passed in
 		if (patients != null && patients.size() > 0) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1368,7 +1248,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// this "where clause" is only necessary if patients were specified
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1411,7 +1291,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// only include this where clause if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1442,7 +1322,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// this "where clause" is only needed if patients were specified
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1474,7 +1354,51 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		className = "org.openmrs." + className;
 		
-		// default query
+		Criteria criteria = createPropertyCriteria(className, property);
+		if (patients != null) {
+			criteria.add(inCohort(getPersonIdProperty(className), patients.getMemberIds()));
+		}
+		
+		List<Object[]> rows = criteria.list();
+		
+		// set up the return map
+		if (returnAll) {
+			for (Object[] row : rows) {
+				Integer ptId = (Integer) row[0];
+				Object columnValue = row[1];
+				if (!ret.containsKey(ptId)) {
+					Object[] arr = { columnValue };
+					ret.put(ptId, arr);
+				} else {
+					Object[] oldArr = (Object[]) ret.get(ptId);
+					Object[] newArr = new Object[oldArr.length + 1];
+					System.arraycopy(oldArr, 0, newArr, 0, oldArr.length);
+					newArr[oldArr.length] = columnValue;
+					ret.put(ptId, newArr);
+				}
+			}
+		} else {
+			for (Object[] row : rows) {
+				Integer ptId = (Integer) row[0];
+				Object columnValue = row[1];
+				if (!ret.containsKey(ptId)) {
+					ret.put(ptId, columnValue);
+				}
+			}
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Creates a criteria selecting the person id and the given property of the non voided rows of
+	 * a class, ordered so that the preferred and most recent row comes first
+	 * 
+	 * @param className the fully qualified name of Person, Patient or a class with a person or
+	 *            patient property
+	 * @param property the property to select
+	 */
+	private Criteria createPropertyCriteria(String className, String property) {
 		Criteria criteria = null;
 		
 		// make 'patient.**' reference 'patient' like alias instead of object
@@ -1496,10 +1420,6 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			projectionList.add(Projections.property("person.personId"));
 			projectionList.add(Projections.property(property));
 			
-			if (patients != null) {
-				criteria.add(Restrictions.in("person.personId", patients.getMemberIds()));
-			}
-			
 			// do not include voided person rows
 			if ("org.openmrs.Person".equals(className)) {
 				// the voided column on the person table is mapped to the person object
@@ -1515,10 +1435,6 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			projectionList.add(Projections.property("patient.personId"));
 			projectionList.add(Projections.property(property));
 			
-			if (patients != null) {
-				criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
-			}
-			
 			// do not include voided patients
 			criteria.add(Restrictions.eq("voided", false));
 		}
@@ -1542,35 +1458,24 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		}
 		
 		criteria.addOrder(org.hibernate.criterion.Order.desc("dateCreated"));
-		List<Object[]> rows = criteria.list();
-		
-		// set up the return map
-		if (returnAll) {
-			for (Object[] row : rows) {
-				Integer ptId = (Integer) row[0];
-				Object columnValue = row[1];
-				if (!ret.containsKey(ptId)) {
-					Object[] arr = { columnValue };
-					ret.put(ptId, arr);
-				} else {
-					Object[] oldArr = (Object[]) ret.get(ptId);
-					Object[] newArr = new Object[oldArr.length + 1];
-					System.arraycopy(oldArr, 0, newArr, 0, oldArr.length);
-					newArr[oldArr.length] = columnValue;
-					ret.put(ptId, newArr);
-				}
-			}
-		} else {
-			for (Object[] row : rows) {
-				Integer ptId = (Integer) row[0];
-				Object columnValue = row[1];
-				if (!ret.containsKey(ptId)) {
-					ret.put(ptId, columnValue);
-				}
-			}
-		}
-		
-		return ret;
+		return criteria;
+	}
+	
+	/**
+	 * @return a restriction of the property to the ids, which joins against a temporary table if
+	 *         there are many ids
+	 * @see IdSetRestrictions#in(org.hibernate.Session, String, Collection)
+	 */
+	private Criterion inCohort(String propertyName, Collection<Integer> ids) {
+		return IdSetRestrictions.in(sessionFactory.getCurrentSession(), propertyName, ids);
+	}
+	
+	/**
+	 * @return the property holding the person id in a criteria from
+	 *         {@link #createPropertyCriteria(String, String)}
+	 */
+	private String getPersonIdProperty(String className) {
+		return className.contains("Person") ? "person.personId" : "patient.personId";
 	}
 	
 	/**
@@ -1746,7 +1651,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		if (!patientIds.isEmpty()) {
 			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Patient.class);
 			criteria.setCacheMode(CacheMode.IGNORE);
-			criteria.add(Restrictions.in("patientId", patientIds));
+			criteria.add(inCohort("patientId", patientIds));
 			criteria.add(Restrictions.eq("voided", false));
 			log.debug("criteria: " + criteria);
 			List<Patient> temp = criteria.list();
@@ -1832,7 +1737,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			
 			// only include this where clause if patients were passed in
 			if (ps != null) {
-				criteria.createCriteria("patientProgram").add(Restrictions.in("patient.personId", ps.getMemberIds()));
+				criteria.createCriteria("patientProgram").add(inCohort("patient.personId", ps.getMemberIds()));
 			}
 			
 			//criteria.add(Restrictions.eq("state.programWorkflow", wf));
@@ -1869,7 +1774,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// this "where clause" is only necessary if patients were passed in
 		if (ps != null) {
-			criteria.add(Restrictions.in("patient.personId", ps.getMemberIds()));
+			criteria.add(inCohort("patient.personId", ps.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("program", program));
@@ -1903,7 +1808,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// this "where clause" is only necessary if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		//criteria.add(Restrictions.in("encounter.patient.personId", ids));
@@ -1944,7 +1849,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// only include this where clause if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		if (drugConcepts != null) {
@@ -1984,9 +1889,9 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.add(Restrictions.eq("voided", false));
 		if (patients != null) {
 			if (forwards) {
-				criteria.add(Restrictions.in("personA.personId", patients.getMemberIds()));
+				criteria.add(inCohort("personA.personId", patients.getMemberIds()));
 			} else {
-				criteria.add(Restrictions.in("personB.personId", patients.getMemberIds()));
+				criteria.add(inCohort("personB.personId", patients.getMemberIds()));
 			}
 		}
 		log.debug("criteria: " + criteria);
@@ -2017,7 +1922,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// this "where clause" is only useful if patients were passed in
 		if (patients != null) {
-			criteria.createCriteria("personB").add(Restrictions.in("personId", patients.getMemberIds()));
+			criteria.createCriteria("personB").add(inCohort("personId", patients.getMemberIds()));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -2192,7 +2097,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		// Add patient restriction if necessary
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			criteria.add(inCohort("patient.personId", patients.getMemberIds()));
 		}
 		
 		// all identifiers must be non-voided
@@ -188,28 +188,16 @@ public class HibernateProgramWorkflowDAO implements ProgramWorkflowDAO {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<PatientProgram> getPatientPrograms(Cohort cohort, Collection<Program> programs) {
-		String hql = "from PatientProgram ";
-		if (cohort != null || programs != null) {
-			hql += "where ";
-		}
-		if (cohort != null) {
-			hql += "patient.patientId in (:patientIds) ";
-		}
-		if (programs != null) {
-			if (cohort != null) {
-				hql += "and ";
-			}
-			hql += " program in (:programs)";
-		}
-		hql += " order by patient.patientId, dateEnrolled";
-		Query query = sessionFactory.getCurrentSession().createQuery(hql);
+		Criteria crit = sessionFactory.getCurrentSession().createCriteria(PatientProgram.class);
 		if (cohort != null) {
-			query.setParameterList("patientIds", cohort.getMemberIds());
+			crit.add(IdSetRestrictions.in(sessionFactory.getCurrentSession(), "patient.personId", cohort.getMemberIds()));
 		}
 		if (programs != null) {
-			query.setParameterList("programs", programs);
+			crit.add(Restrictions.in("program", programs));
 		}
-		return query.list();
+		crit.addOrder(Order.asc("patient.personId"));
+		crit.addOrder(Order.asc("dateEnrolled"));
+		return crit.list();
 	}
 	
 	/**
@@ -9,6 +9,7 @@
  */
 package org.openmrs.api.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -20,6 +21,7 @@ import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Concept;
 import org.openmrs.Location;
@@ -296,4 +298,40 @@ public class HibernateVisitDAO implements VisitDAO {
 		
 		return (Visit) criteria.uniqueResult();
 	}
+	
+	/**
+	 * @see org.openmrs.api.db.VisitDAO#getNextVisitIds(Integer, Collection, Date, int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getNextVisitIds(Integer previousVisitId, Collection<VisitType> visitTypes,
+	        Date maximumStartDate, int maxResults) {
+		Criteria criteria = getCurrentSession().createCriteria(Visit.class);
+		criteria.setProjection(Projections.property("visitId"));
+		criteria.add(Restrictions.eq("voided", false)).add(
+		    Restrictions.gt("visitId", (previousVisitId != null) ? previousVisitId : 0)).addOrder(Order.asc("visitId"))
+		        .add(Restrictions.isNull("stopDatetime")).setMaxResults(maxResults);
+		if (maximumStartDate != null) {
+			criteria.add(Restrictions.le("startDatetime", maximumStartDate));
+		}
+		
+		if (CollectionUtils.isNotEmpty(visitTypes)) {
+			criteria.add(Restrictions.in("visitType", visitTypes));
+		}
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.VisitDAO#getVisitsByIds(Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Visit> getVisitsByIds(Collection<Integer> visitIds) {
+		if (visitIds.isEmpty()) {
+			return new ArrayList<Visit>();
+		}
+		return getCurrentSession().createCriteria(Visit.class).add(Restrictions.in("visitId", visitIds)).addOrder(
+		    Order.asc("visitId")).list();
+	}
 }
@@ -0,0 +1,275 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.criterion.CriteriaQuery;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.TypedValue;
+import org.hibernate.jdbc.Work;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Restricts a criteria query to a set of ids, such as the members of a cohort, in a way that
+ * works for sets of any size. Sets with more ids than the
+ * {@link OpenmrsConstants#GP_COHORT_TEMPORARY_TABLE_THRESHOLD} global property are inserted into
+ * a temporary table that the query selects from, so the statement stays short and the database
+ * can reuse its plan. Smaller sets are listed in the query, split into several lists if needed,
+ * as some databases limit the length of a list.<br/>
+ * <br/>
+ * The temporary table belongs to the database connection of the session and holds one set at a
+ * time, so a criterion from {@link #in(Session, String, Collection)} has to be used before the
+ * next one is created in the same session. It is only used on databases whose temporary tables
+ * are private to the connection and can be created with "if not exists" (e.g. MySQL and H2), as
+ * the table may already exist from an earlier set or may have been dropped by a commit; other
+ * databases always get the ids listed in the query.
+ * 
+ * @since 1.12
+ */
+public class IdSetRestrictions implements GlobalPropertyListener {
+	
+	private static final Log log = LogFactory.getLog(IdSetRestrictions.class);
+	
+	/**
+	 * The name of the temporary table, before {@link Dialect#generateTemporaryTableName(String)}
+	 */
+	static final String TABLE_NAME = "temp_id_set";
+	
+	/**
+	 * The most ids listed in a single in (...) expression
+	 */
+	private static final int MAX_LIST_SIZE = 1000;
+	
+	/**
+	 * The number of ids inserted into the temporary table by one statement
+	 */
+	private static final int INSERT_BATCH_SIZE = 500;
+	
+	private static final int DEFAULT_THRESHOLD = 1000;
+	
+	private static volatile Integer thresholdCache = null;
+	
+	/**
+	 * @param session the session the criteria query runs in
+	 * @param propertyName the property holding the id, e.g. patient.personId or person
+	 * @param ids the ids to restrict the property to
+	 * @return a criterion matching rows whose property is one of the ids
+	 * @should list small sets of ids in the query
+	 * @should match the ids through a temporary table above the threshold
+	 * @should match every id of a set larger than a list
+	 */
+	public static Criterion in(Session session, String propertyName, Collection<Integer> ids) {
+		int threshold = getThreshold();
+		if (threshold >= 0 && ids.size() > threshold) {
+			Dialect dialect = HibernateUtil.getDialect(session.getSessionFactory());
+			if (supportsIdTable(dialect)) {
+				String tableName = dialect.generateTemporaryTableName(TABLE_NAME);
+				fillTable(session, dialect, tableName, ids);
+				return new InIdTable(propertyName, tableName);
+			}
+		}
+		
+		if (ids.size() <= MAX_LIST_SIZE) {
+			return Restrictions.in(propertyName, ids);
+		}
+		Disjunction lists = Restrictions.disjunction();
+		List<Integer> list = new ArrayList<Integer>(MAX_LIST_SIZE);
+		for (Iterator<Integer> i = ids.iterator(); i.hasNext();) {
+			list.add(i.next());
+			if (list.size() == MAX_LIST_SIZE || !i.hasNext()) {
+				lists.add(Restrictions.in(propertyName, list));
+				list = new ArrayList<Integer>(MAX_LIST_SIZE);
+			}
+		}
+		return lists;
+	}
+	
+	/**
+	 * @return true if the dialect creates connection private temporary tables that may already
+	 *         exist without failing, which rules out e.g. PostgreSQL, where a second create in the
+	 *         same transaction aborts it, and SQL Server, whose create string makes a shared table
+	 * @should only support dialects that create private temporary tables if not exists
+	 */
+	static boolean supportsIdTable(Dialect dialect) {
+		return dialect.supportsTemporaryTables()
+		        && dialect.getCreateTemporaryTableString().toLowerCase().contains("if not exists");
+	}
+	
+	/**
+	 * Replaces the content of the temporary table with the given ids, creating the table if needed
+	 */
+	private static void fillTable(Session session, final Dialect dialect, final String tableName,
+	        Collection<Integer> ids) {
+		TreeSet<Integer> distinctIds = new TreeSet<Integer>();
+		for (Integer id : ids) {
+			if (id != null) {
+				distinctIds.add(id);
+			}
+		}
+		final List<Integer> sortedIds = new ArrayList<Integer>(distinctIds);
+		if (log.isDebugEnabled()) {
+			log.debug("Inserting " + sortedIds.size() + " ids into " + tableName);
+		}
+		
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				Statement statement = connection.createStatement();
+				try {
+					// created every time as a commit may have dropped it, e.g. on H2
+					statement.execute(dialect.getCreateTemporaryTableString() + " " + tableName
+					        + " (id integer not null primary key) " + dialect.getCreateTemporaryTablePostfix());
+					statement.executeUpdate("delete from " + tableName);
+				}
+				finally {
+					statement.close();
+				}
+				
+				PreparedStatement batchInsert = null;
+				try {
+					for (int from = 0; from < sortedIds.size(); from += INSERT_BATCH_SIZE) {
+						int to = Math.min(from + INSERT_BATCH_SIZE, sortedIds.size());
+						PreparedStatement insert;
+						if (to - from == INSERT_BATCH_SIZE) {
+							if (batchInsert == null) {
+								batchInsert = connection.prepareStatement(getInsertSql(tableName, INSERT_BATCH_SIZE));
+							}
+							insert = batchInsert;
+						} else {
+							insert = connection.prepareStatement(getInsertSql(tableName, to - from));
+						}
+						try {
+							for (int i = from; i < to; i++) {
+								insert.setInt(i - from + 1, sortedIds.get(i));
+							}
+							insert.executeUpdate();
+						}
+						finally {
+							if (insert != batchInsert) {
+								insert.close();
+							}
+						}
+					}
+				}
+				finally {
+					if (batchInsert != null) {
+						batchInsert.close();
+					}
+				}
+			}
+		});
+	}
+	
+	private static String getInsertSql(String tableName, int rows) {
+		StringBuilder sql = new StringBuilder("insert into " + tableName + " (id) values ");
+		for (int i = 0; i < rows; i++) {
+			sql.append(i == 0 ? "(?)" : ", (?)");
+		}
+		return sql.toString();
+	}
+	
+	/**
+	 * @return the number of ids above which a temporary table is used, negative if it never is
+	 */
+	private static int getThreshold() {
+		Integer threshold = thresholdCache;
+		if (threshold == null) {
+			threshold = DEFAULT_THRESHOLD;
+			String value = Context.getAdministrationService().getGlobalProperty(
+			    OpenmrsConstants.GP_COHORT_TEMPORARY_TABLE_THRESHOLD);
+			if (value != null) {
+				try {
+					threshold = Integer.valueOf(value.trim());
+				}
+				catch (NumberFormatException e) {
+					log.warn("Invalid value for " + OpenmrsConstants.GP_COHORT_TEMPORARY_TABLE_THRESHOLD + ": " + value);
+				}
+			}
+			thresholdCache = threshold;
+		}
+		return threshold;
+	}
+	
+	/**
+	 * @see org.openmrs.api.GlobalPropertyListener#supportsPropertyName(java.lang.String)
+	 */
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return OpenmrsConstants.GP_COHORT_TEMPORARY_TABLE_THRESHOLD.equals(propertyName);
+	}
+	
+	/**
+	 * @see org.openmrs.api.GlobalPropertyListener#globalPropertyChanged(org.openmrs.GlobalProperty)
+	 */
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		thresholdCache = null;
+	}
+	
+	/**
+	 * @see org.openmrs.api.GlobalPropertyListener#globalPropertyDeleted(java.lang.String)
+	 */
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		thresholdCache = null;
+	}
+	
+	/**
+	 * Matches the rows whose property is one of the ids in the temporary table
+	 */
+	private static class InIdTable implements Criterion {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final String propertyName;
+		
+		private final String tableName;
+		
+		public InIdTable(String propertyName, String tableName) {
+			this.propertyName = propertyName;
+			this.tableName = tableName;
+		}
+		
+		@Override
+		public String toSqlString(Criteria criteria, CriteriaQuery criteriaQuery) {
+			return criteriaQuery.findColumns(propertyName, criteria)[0] + " in (select id from " + tableName + ")";
+		}
+		
+		@Override
+		public TypedValue[] getTypedValues(Criteria criteria, CriteriaQuery criteriaQuery) {
+			return new TypedValue[0];
+		}
+		
+		@Override
+		public String toString() {
+			return propertyName + " in " + tableName;
+		}
+	}
+}
@@ -9,6 +9,7 @@
  */
 package org.openmrs.api.impl;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -109,8 +110,14 @@ public class CohortServiceImpl extends BaseOpenmrsService implements CohortServi
 	 *      org.openmrs.Patient)
 	 */
 	public Cohort addPatientToCohort(Cohort cohort, Patient patient) {
-		if (!cohort.contains(patient)) {
-			cohort.getMemberIds().add(patient.getPatientId());
+		boolean added;
+		if (cohort.getCohortId() == null) {
+			added = cohort.getMemberIds().add(patient.getPatientId());
+		} else {
+			// only writes the membership row, the members of a large cohort are not loaded
+			added = dao.addCohortMember(cohort, patient.getPatientId());
+		}
+		if (added) {
 			Context.getCohortService().saveCohort(cohort);
 		}
 		return cohort;
@@ -121,13 +128,46 @@ public class CohortServiceImpl extends BaseOpenmrsService implements CohortServi
 	 *      org.openmrs.Patient)
 	 */
 	public Cohort removePatientFromCohort(Cohort cohort, Patient patient) {
-		if (cohort.contains(patient)) {
-			cohort.getMemberIds().remove(patient.getPatientId());
+		boolean removed;
+		if (cohort.getCohortId() == null) {
+			removed = cohort.getMemberIds().remove(patient.getPatientId());
+		} else {
+			removed = dao.removeCohortMember(cohort, patient.getPatientId());
+		}
+		if (removed) {
 			Context.getCohortService().saveCohort(cohort);
 		}
 		return cohort;
 	}
 	
+	/**
+	 * @see org.openmrs.api.CohortService#addPatientsToCohort(org.openmrs.Cohort,
+	 *      java.util.Collection)
+	 */
+	public int addPatientsToCohort(Cohort cohort, Collection<Integer> patientIds) {
+		int added;
+		if (cohort.getCohortId() == null) {
+			int sizeBefore = cohort.getMemberIds().size();
+			cohort.getMemberIds().addAll(patientIds);
+			added = cohort.getMemberIds().size() - sizeBefore;
+		} else {
+			added = dao.addCohortMembers(cohort, patientIds);
+		}
+		if (added > 0) {
+			Context.getCohortService().saveCohort(cohort);
+		}
+		return added;
+	}
+	
+	/**
+	 * @see org.openmrs.api.CohortService#getCohortMemberIds(org.openmrs.Cohort, java.lang.Integer,
+	 *      int)
+	 */
+	@Transactional(readOnly = true)
+	public List<Integer> getCohortMemberIds(Cohort cohort, Integer previousPatientId, int maxResults) {
+		return dao.getCohortMemberIds(cohort, previousPatientId, maxResults);
+	}
+	
 	/**
 	 * @see org.openmrs.api.CohortService#updateCohort(org.openmrs.Cohort)
 	 * @deprecated
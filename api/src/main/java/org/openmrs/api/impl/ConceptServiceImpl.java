@@ -1201,6 +1201,14 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		return dao.conceptIterator();
 	}
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#conceptIterator(int)
+	 */
+	@Transactional(readOnly = true)
+	public Iterator<Concept> conceptIterator(int batchSize) {
+		return dao.conceptIterator(batchSize);
+	}
+	
 	/**
 	 * @see org.openmrs.api.ConceptService#getConceptByUuid(java.lang.String)
 	 */
@@ -194,6 +194,37 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 		return encounter;
 	}
 	
+	/**
+	 * @see org.openmrs.api.EncounterService#saveEncounter(org.openmrs.Encounter, java.lang.String)
+	 */
+	@Override
+	public Encounter saveEncounter(Encounter encounter, String changeMessage) throws APIException {
+		if (encounter.getEncounterId() != null) {
+			ObsService os = Context.getObsService();
+			for (Obs obs : encounter.getObsAtTopLevel(false)) {
+				if (obs.getObsId() != null) {
+					// only the obs and group members that changed get new versions
+					Obs saved = os.saveObs(obs, changeMessage);
+					if (saved != obs) {
+						// the original was evicted from the session and voided through a fresh copy
+						removeObsAndMembers(encounter, obs);
+						encounter.addObs(saved);
+					}
+				}
+			}
+		}
+		return Context.getEncounterService().saveEncounter(encounter);
+	}
+	
+	private void removeObsAndMembers(Encounter encounter, Obs obs) {
+		encounter.removeObs(obs);
+		if (obs.hasGroupMembers(true)) {
+			for (Obs member : obs.getGroupMembers(true)) {
+				removeObsAndMembers(encounter, member);
+			}
+		}
+	}
+	
 	/**
 	 * @see org.openmrs.api.EncounterService#getEncounter(java.lang.Integer)
 	 */
@@ -9,8 +9,14 @@
  */
 package org.openmrs.api.impl;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +24,8 @@ import java.util.Set;
 import java.util.Vector;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.openmrs.Cohort;
 import org.openmrs.Concept;
 import org.openmrs.ConceptName;
@@ -35,7 +43,11 @@ import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.ObsDAO;
 import org.openmrs.api.handler.SaveHandler;
+import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
+import org.openmrs.obs.ObsTimeline;
+import org.openmrs.obs.handler.AbstractHandler;
 import org.openmrs.util.OpenmrsClassLoader;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsConstants.PERSON_TYPE;
@@ -51,6 +63,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 	
+	private static final Log log = LogFactory.getLog(ObsServiceImpl.class);
+	
 	/**
 	 * The data access object for the obs service
 	 */
@@ -118,47 +132,109 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 				obs.setPerson(encounter.getPatient());
 			}
 			
-			// get a copy of the passed in obs and save it to the
-			// database. This allows us to create a new row and new obs_id
-			// this method doesn't copy the obs_id
-			Obs newObs = Obs.newInstance(obs);
-			
-			// unset any voided properties on the new obs
-			newObs.setVoided(false);
-			newObs.setVoidReason(null);
-			newObs.setDateVoided(null);
-			newObs.setVoidedBy(null);
-			// unset the creation stats
-			newObs.setCreator(null);
-			newObs.setDateCreated(null);
-			newObs.setPreviousVersion(obs);
-			
-			RequiredDataAdvice.recursivelyHandle(SaveHandler.class, newObs, changeMessage);
+			if (!dao.isDirty(obs)) {
+				// nothing changed on the obs itself, so only its members that changed get new rows
+				saveChangedGroupMembers(obs, changeMessage);
+				return obs;
+			}
 			
-			// save the new row to the database with the changes that
-			// have been made to it
-			dao.saveObs(newObs);
+			return saveNewVersion(obs, changeMessage, false);
+		}
+	}
+	
+	/**
+	 * Saves a copy of the given obs with its changes as a new row and voids the original
+	 * 
+	 * @param obs the changed obs
+	 * @param changeMessage the reason for the change
+	 * @param revert whether to void the given instance after reverting its changes, rather than a
+	 *            clean copy loaded from the database, so that it can stay in its obs group
+	 * @return the new version of the obs
+	 */
+	private Obs saveNewVersion(Obs obs, String changeMessage, boolean revert) {
+		// get a copy of the passed in obs and save it to the
+		// database. This allows us to create a new row and new obs_id
+		// this method doesn't copy the obs_id
+		Obs newObs = Obs.newInstance(obs);
+		
+		// unset any voided properties on the new obs
+		newObs.setVoided(false);
+		newObs.setVoidReason(null);
+		newObs.setDateVoided(null);
+		newObs.setVoidedBy(null);
+		// unset the creation stats
+		newObs.setCreator(null);
+		newObs.setDateCreated(null);
+		newObs.setPreviousVersion(obs);
+		
+		RequiredDataAdvice.recursivelyHandle(SaveHandler.class, newObs, changeMessage);
+		
+		// save the new row to the database with the changes that
+		// have been made to it
+		dao.saveObs(newObs);
+		
+		// void out the original observation to keep it around for
+		// historical purposes
+		try {
+			Context.addProxyPrivilege(PrivilegeConstants.DELETE_OBS);
 			
-			// void out the original observation to keep it around for
-			// historical purposes
-			try {
-				Context.addProxyPrivilege(PrivilegeConstants.DELETE_OBS);
-				
-				// fetch a clean copy of this obs from the database so that
-				// we don't write the changes to the database when we save
-				// the fact that the obs is now voided
+			// fetch a clean copy of this obs from the database, or reload its saved
+			// values, so that we don't write the changes to the database when we
+			// save the fact that the obs is now voided
+			if (revert) {
+				// the members that were not saved yet were moved to the new obs as they are
+				removeUnsavedGroupMembers(obs);
+			}
+			if (!revert || !dao.revertObs(obs)) {
 				Context.evictFromSession(obs);
 				obs = Context.getObsService().getObs(obs.getObsId());
-				
-				// calling this via the service so that AOP hooks are called
-				Context.getObsService().voidObs(obs, changeMessage);
-				
-			}
-			finally {
-				Context.removeProxyPrivilege(PrivilegeConstants.DELETE_OBS);
 			}
 			
-			return newObs;
+			// calling this via the service so that AOP hooks are called
+			Context.getObsService().voidObs(obs, changeMessage);
+			
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.DELETE_OBS);
+		}
+		
+		return newObs;
+	}
+	
+	/**
+	 * Saves the new members of the given unchanged obs group and new versions of the members that
+	 * changed, leaving the unchanged members alone
+	 */
+	private void saveChangedGroupMembers(Obs obsGroup, String changeMessage) {
+		if (!obsGroup.hasGroupMembers(true)) {
+			return;
+		}
+		for (Obs member : new ArrayList<Obs>(obsGroup.getGroupMembers(true))) {
+			if (member.getObsId() == null || member.isVoided()) {
+				// new members are inserted and voided ones are updated in place
+				dao.saveObs(member);
+			} else if (dao.isDirty(member)) {
+				obsGroup.addGroupMember(saveNewVersion(member, changeMessage, true));
+			} else {
+				saveChangedGroupMembers(member, changeMessage);
+			}
+		}
+	}
+	
+	/**
+	 * Takes the members that were never saved out of the given obs group and its saved members
+	 */
+	private void removeUnsavedGroupMembers(Obs obsGroup) {
+		if (!obsGroup.hasGroupMembers(true)) {
+			return;
+		}
+		for (Iterator<Obs> i = obsGroup.getGroupMembers(true).iterator(); i.hasNext();) {
+			Obs member = i.next();
+			if (member.getObsId() == null) {
+				i.remove();
+			} else {
+				removeUnsavedGroupMembers(member);
+			}
 		}
 	}
 	
@@ -618,6 +694,32 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 		    null, false);
 	}
 	
+	/**
+	 * @see org.openmrs.api.ObsService#getObsTimeline(org.openmrs.Person, java.util.List,
+	 *      java.util.Date, java.util.Date)
+	 */
+	@Transactional(readOnly = true)
+	public ObsTimeline getObsTimeline(Person who, List<Concept> questions, Date fromDate, Date toDate)
+	        throws APIException {
+		if (who == null || who.getPersonId() == null || (questions != null && questions.isEmpty())) {
+			return new ObsTimeline(0);
+		}
+		return dao.getObsTimeline(who, questions, fromDate, toDate);
+	}
+	
+	/**
+	 * @see org.openmrs.api.ObsService#processObservations(java.util.List, java.util.List,
+	 *      java.util.List, java.util.List, java.util.Date, java.util.Date, boolean,
+	 *      org.openmrs.api.ObsService.ObsCallback)
+	 */
+	@Transactional(readOnly = true)
+	public int processObservations(List<Concept> questions, List<Location> locations, List<PERSON_TYPE> personTypes,
+	        List<String> sortList, Date fromDate, Date toDate, boolean includeVoided, ObsCallback callback)
+	        throws APIException {
+		return dao.processObservations(questions, locations, personTypes, sortList, fromDate, toDate, includeVoided,
+		    callback);
+	}
+	
 	/**
 	 * @see org.openmrs.api.ObsService#getLastNObservations(java.lang.Integer, org.openmrs.Person,
 	 *      org.openmrs.Concept, boolean includeVoided)
@@ -923,4 +1025,46 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 		handlers.remove(key);
 	}
 	
+	/**
+	 * @see org.openmrs.api.ObsService#migrateComplexData(org.openmrs.obs.ComplexObsStorage)
+	 */
+	public int migrateComplexData(ComplexObsStorage storage) throws APIException {
+		ComplexObsStorage currentStorage = AbstractHandler.getStorage();
+		int updated = 0;
+		for (String valueComplex : dao.getDistinctValueComplexes()) {
+			int separator = valueComplex.lastIndexOf('|');
+			String key = valueComplex.substring(separator + 1);
+			File source = currentStorage.getFile(key);
+			if (!source.isFile()) {
+				log.warn("Skipping complex data " + valueComplex + " since " + source.getAbsolutePath() + " does not exist");
+				continue;
+			}
+			
+			String newKey;
+			File tempFile = null;
+			try {
+				tempFile = storage.createTempFile();
+				Files.copy(source.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				Obs obs = new Obs();
+				obs.setComplexData(new ComplexData(source.getName(), null));
+				newKey = storage.store(tempFile, obs);
+			}
+			catch (IOException e) {
+				throw new APIException("Obs.error.trying.write.complex", null, e);
+			}
+			finally {
+				if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+					tempFile.deleteOnExit();
+				}
+			}
+			
+			if (!newKey.equals(key)) {
+				String title = separator < 0 ? source.getName() : valueComplex.substring(0, separator);
+				updated += dao.updateValueComplex(valueComplex, title + "|" + newKey);
+			}
+		}
+		
+		return updated;
+	}
+	
 }
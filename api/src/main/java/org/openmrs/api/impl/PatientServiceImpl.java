@@ -9,6 +9,8 @@
  */
 package org.openmrs.api.impl;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -25,10 +27,8 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
-import org.openmrs.Encounter;
 import org.openmrs.Location;
 import org.openmrs.Obs;
-import org.openmrs.Order;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
@@ -39,25 +39,24 @@ import org.openmrs.PersonAttribute;
 import org.openmrs.PersonName;
 import org.openmrs.Relationship;
 import org.openmrs.User;
-import org.openmrs.Visit;
 import org.openmrs.activelist.Allergy;
 import org.openmrs.activelist.Problem;
 import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.BlankIdentifierException;
 import org.openmrs.api.DuplicateIdentifierException;
-import org.openmrs.api.EncounterService;
 import org.openmrs.api.InsufficientIdentifiersException;
 import org.openmrs.api.MissingRequiredIdentifierException;
-import org.openmrs.api.ObsService;
 import org.openmrs.api.PatientIdentifierException;
 import org.openmrs.api.PatientIdentifierTypeLockedException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.PersonService;
 import org.openmrs.api.ProgramWorkflowService;
 import org.openmrs.api.UserService;
-import org.openmrs.api.VisitService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.PatientDAO;
+import org.openmrs.patient.DuplicatePatientCandidate;
+import org.openmrs.patient.DuplicatePatientDetector;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.patient.impl.LuhnIdentifierValidator;
 import org.openmrs.person.PersonMergeLog;
@@ -85,6 +84,17 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 	
 	private PatientDAO dao;
 	
+	/**
+	 * The format of the {@link OpenmrsConstants#GP_DUPLICATE_PATIENT_LAST_RUN} global property
+	 */
+	private static final String DUPLICATE_DETECTION_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+	
+	/**
+	 * The number of pairs merged by {@link #mergePatients(Map, MergeCallback)} between session
+	 * clears
+	 */
+	private static final int MERGE_BATCH_SIZE = 20;
+	
 	/**
 	 * PatientIdentifierValidators registered through spring's applicationContext-service.xml
 	 */
@@ -762,6 +772,93 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		return dao.getDuplicatePatientsByAttributes(attributes);
 	}
 	
+	/**
+	 * @see org.openmrs.api.PatientService#detectDuplicatePatients(boolean)
+	 */
+	@Override
+	public int detectDuplicatePatients(boolean incremental) throws APIException {
+		AdministrationService as = Context.getAdministrationService();
+		SimpleDateFormat format = new SimpleDateFormat(DUPLICATE_DETECTION_DATE_FORMAT);
+		
+		Date changedSince = null;
+		String lastRun = as.getGlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_LAST_RUN);
+		if (incremental && StringUtils.isNotBlank(lastRun)) {
+			try {
+				changedSince = format.parse(lastRun.trim());
+			}
+			catch (ParseException e) {
+				log.warn("Invalid value for " + OpenmrsConstants.GP_DUPLICATE_PATIENT_LAST_RUN + ", comparing all patients");
+			}
+		}
+		
+		double threshold = 0.6;
+		int maxBlockSize = 500;
+		try {
+			threshold = Double.parseDouble(as.getGlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_MATCH_THRESHOLD,
+			    String.valueOf(threshold)).trim());
+			maxBlockSize = Integer.parseInt(as.getGlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_MAX_BLOCK_SIZE,
+			    String.valueOf(maxBlockSize)).trim());
+		}
+		catch (NumberFormatException e) {
+			log.warn("Invalid duplicate detection settings, using a threshold of " + threshold + " and blocks of "
+			        + maxBlockSize);
+		}
+		
+		Date started = new Date();
+		int created = new DuplicatePatientDetector(dao, threshold, maxBlockSize).detect(changedSince);
+		
+		try {
+			Context.addProxyPrivilege(PrivilegeConstants.MANAGE_GLOBAL_PROPERTIES);
+			as.setGlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_LAST_RUN, format.format(started));
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.MANAGE_GLOBAL_PROPERTIES);
+		}
+		
+		return created;
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientService#getDuplicatePatientCandidates(org.openmrs.Patient, boolean,
+	 *      java.lang.Integer, java.lang.Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Patient patient, boolean includeVoided,
+	        Integer start, Integer length) throws APIException {
+		return dao.getDuplicatePatientCandidates(patient, includeVoided, start, length);
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientService#getDuplicatePatientCandidate(java.lang.Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public DuplicatePatientCandidate getDuplicatePatientCandidate(Integer duplicatePatientCandidateId)
+	        throws APIException {
+		return dao.getDuplicatePatientCandidate(duplicatePatientCandidateId);
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientService#saveDuplicatePatientCandidate(org.openmrs.patient.DuplicatePatientCandidate)
+	 */
+	@Override
+	public DuplicatePatientCandidate saveDuplicatePatientCandidate(DuplicatePatientCandidate candidate)
+	        throws APIException {
+		return dao.saveDuplicatePatientCandidate(candidate);
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientService#voidDuplicatePatientCandidate(org.openmrs.patient.DuplicatePatientCandidate,
+	 *      java.lang.String)
+	 */
+	@Override
+	public DuplicatePatientCandidate voidDuplicatePatientCandidate(DuplicatePatientCandidate candidate, String reason)
+	        throws APIException {
+		// the voided fields are set by the void handlers
+		return dao.saveDuplicatePatientCandidate(candidate);
+	}
+	
 	/**
 	 * generate a relationship hash for use in mergePatients; follows the convention:
 	 * [relationshipType][A|B][relativeId]
@@ -794,18 +891,13 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 			log.debug("Merge operation cancelled: Cannot merge user" + preferred.getPatientId() + " to self");
 			throw new APIException("Patient.merge.cancelled", new Object[] { preferred.getPatientId() });
 		}
-		List<Order> orders = Context.getOrderService().getAllOrdersByPatient(notPreferred);
-		for (Order order : orders) {
-			if (!order.isVoided()) {
-				throw new APIException("Patient.cannot.merge", (Object[]) null);
-			}
+		if (dao.getUnvoidedOrderCount(notPreferred) > 0) {
+			throw new APIException("Patient.cannot.merge", (Object[]) null);
 		}
 		PersonMergeLogData mergedData = new PersonMergeLogData();
-		mergeVisits(preferred, notPreferred, mergedData);
-		mergeEncounters(preferred, notPreferred, mergedData);
+		mergeClinicalData(preferred, notPreferred, mergedData);
 		mergeProgramEnrolments(preferred, notPreferred, mergedData);
 		mergeRelationships(preferred, notPreferred, mergedData);
-		mergeObservationsNotContainedInEncounters(preferred, notPreferred, mergedData);
 		mergeIdentifiers(preferred, notPreferred, mergedData);
 		
 		mergeNames(preferred, notPreferred, mergedData);
@@ -852,31 +944,23 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		}
 	}
 	
-	private void mergeVisits(Patient preferred, Patient notPreferred, PersonMergeLogData mergedData) {
-		// move all visits, including voided ones (encounters will be handled below)
-		//TODO: this should be a copy, not a move
-		
-		VisitService visitService = Context.getVisitService();
-		
-		for (Visit visit : visitService.getVisitsByPatient(notPreferred, true, true)) {
-			if (log.isDebugEnabled()) {
-				log.debug("Merging visit " + visit.getVisitId() + " to " + preferred.getPatientId());
-			}
-			visit.setPatient(preferred);
-			Visit persisted = visitService.saveVisit(visit);
-			mergedData.addMovedVisit(persisted.getUuid());
-		}
-	}
-	
-	private void mergeEncounters(Patient preferred, Patient notPreferred, PersonMergeLogData mergedData) {
-		// change all encounters. This will cascade to obs and orders contained in those encounters
+	private void mergeClinicalData(Patient preferred, Patient notPreferred, PersonMergeLogData mergedData) {
+		// move all visits and encounters, including voided ones, along with the obs and orders
+		// contained in the encounters, and all non voided obs that weren't contained in encounters.
+		// This is done with bulk updates, the uuids are only fetched for the audit
 		// TODO: this should be a copy, not a move
-		EncounterService es = Context.getEncounterService();
-		for (Encounter e : es.getEncounters(notPreferred, null, null, null, null, null, null, null, null, true)) {
-			e.setPatient(preferred);
-			log.debug("Merging encounter " + e.getEncounterId() + " to " + preferred.getPatientId());
-			Encounter persisted = es.saveEncounter(e);
-			mergedData.addMovedEncounter(persisted.getUuid());
+		for (String uuid : dao.getVisitUuidsByPatient(notPreferred)) {
+			mergedData.addMovedVisit(uuid);
+		}
+		for (String uuid : dao.getEncounterUuidsByPatient(notPreferred)) {
+			mergedData.addMovedEncounter(uuid);
+		}
+		for (String uuid : dao.getIndependentObsUuidsByPerson(notPreferred)) {
+			mergedData.addMovedIndependentObservation(uuid);
+		}
+		int moved = dao.moveClinicalData(notPreferred, preferred);
+		if (log.isDebugEnabled()) {
+			log.debug("Moved " + moved + " visits, encounters, obs and orders to " + preferred.getPatientId());
 		}
 	}
 	
@@ -928,20 +1012,6 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		}
 	}
 	
-	private void mergeObservationsNotContainedInEncounters(Patient preferred, Patient notPreferred,
-	        PersonMergeLogData mergedData) {
-		// move all obs that weren't contained in encounters
-		// TODO: this should be a copy, not a move
-		ObsService obsService = Context.getObsService();
-		for (Obs obs : obsService.getObservationsByPerson(notPreferred)) {
-			if (obs.getEncounter() == null && !obs.isVoided()) {
-				obs.setPerson(preferred);
-				Obs persisted = obsService.saveObs(obs, "Merged from patient #" + notPreferred.getPatientId());
-				mergedData.addMovedIndependentObservation(persisted.getUuid());
-			}
-		}
-	}
-	
 	private void mergeIdentifiers(Patient preferred, Patient notPreferred, PersonMergeLogData mergedData) {
 		// move all identifiers
 		// (must be done after all calls to services above so hbm doesn't try to save things prematurely (hacky)
@@ -978,6 +1048,11 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 	}
 	
 	private void mergeDateOfDeath(Patient preferred, Patient notPreferred, PersonMergeLogData mergedData) {
+		mergedData.setPriorDateOfDeathEstimated(preferred.getDeathdateEstimated());
+		if (preferred.getDeathdateEstimated() == null) {
+			preferred.setDeathdateEstimated(notPreferred.getDeathdateEstimated());
+		}
+		
 		mergedData.setPriorDateOfDeath(preferred.getDeathDate());
 		if (preferred.getDeathDate() == null) {
 			preferred.setDeathDate(notPreferred.getDeathDate());
@@ -1078,72 +1153,6 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 				log.debug("Merging address " + newAddress.getPersonAddressId() + " to " + preferred.getPatientId());
 			}
 		}
-		
-		// copy person attributes
-		for (PersonAttribute attr : notPreferred.getAttributes()) {
-			if (!attr.isVoided()) {
-				PersonAttribute tmpAttr = attr.copy();
-				tmpAttr.setPerson(null);
-				tmpAttr.setUuid(UUID.randomUUID().toString());
-				preferred.addAttribute(tmpAttr);
-				mergedData.addCreatedAttribute(tmpAttr.getUuid());
-			}
-		}
-		
-		// move all other patient info
-		mergedData.setPriorGender(preferred.getGender());
-		if (!"M".equals(preferred.getGender()) && !"F".equals(preferred.getGender())) {
-			preferred.setGender(notPreferred.getGender());
-		}
-		/*
-		 * if (preferred.getRace() == null || preferred.getRace().equals(""))
-		 * preferred.setRace(notPreferred.getRace());
-		 */
-
-		mergedData.setPriorDateOfBirth(preferred.getBirthdate());
-		mergedData.setPriorDateOfBirthEstimated(preferred.isBirthdateEstimated());
-		if (preferred.getBirthdate() == null || (preferred.getBirthdateEstimated() && !notPreferred.getBirthdateEstimated())) {
-			preferred.setBirthdate(notPreferred.getBirthdate());
-			preferred.setBirthdateEstimated(notPreferred.getBirthdateEstimated());
-		}
-		mergedData.setPriorDateOfDeathEstimated(preferred.getDeathdateEstimated());
-		if (preferred.getDeathdateEstimated() == null) {
-			preferred.setDeathdateEstimated(notPreferred.getDeathdateEstimated());
-		}
-		
-		mergedData.setPriorDateOfDeath(preferred.getDeathDate());
-		if (preferred.getDeathDate() == null) {
-			preferred.setDeathDate(notPreferred.getDeathDate());
-		}
-		
-		if (preferred.getCauseOfDeath() != null) {
-			mergedData.setPriorCauseOfDeath(preferred.getCauseOfDeath().getUuid());
-		}
-		if (preferred.getCauseOfDeath() == null) {
-			preferred.setCauseOfDeath(notPreferred.getCauseOfDeath());
-		}
-		
-		// void the non preferred patient
-		Context.getPatientService().voidPatient(notPreferred, "Merged with patient #" + preferred.getPatientId());
-		
-		// void the person associated with not preferred patient
-		Context.getPersonService().voidPerson(notPreferred,
-		    "The patient corresponding to this person has been voided and Merged with patient #" + preferred.getPatientId());
-		
-		// associate the Users associated with the not preferred person, to the preferred person.
-		changeUserAssociations(preferred, notPreferred, mergedData);
-		
-		// Save the newly update preferred patient
-		// This must be called _after_ voiding the nonPreferred patient so that
-		//  a "Duplicate Identifier" error doesn't pop up.
-		savePatient(preferred);
-		
-		//save the person merge log
-		PersonMergeLog personMergeLog = new PersonMergeLog();
-		personMergeLog.setWinner(preferred);
-		personMergeLog.setLoser(notPreferred);
-		personMergeLog.setPersonMergeLogData(mergedData);
-		Context.getPersonService().savePersonMergeLog(personMergeLog);
 	}
 	
 	/**
@@ -1573,6 +1582,39 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		}
 	}
 	
+	/**
+	 * @see org.openmrs.api.PatientService#mergePatients(java.util.Map,
+	 *      org.openmrs.api.PatientService.MergeCallback)
+	 */
+	@Override
+	public int mergePatients(Map<Integer, Integer> notPreferredToPreferred, MergeCallback callback) throws APIException,
+	        SerializationException {
+		// a patient that is kept in one pair must not be merged away in another
+		for (Map.Entry<Integer, Integer> pair : notPreferredToPreferred.entrySet()) {
+			if (notPreferredToPreferred.containsKey(pair.getValue())) {
+				throw new APIException("Patient.merge.chained", new Object[] { pair.getValue(), pair.getKey() });
+			}
+		}
+		
+		int numToMerge = notPreferredToPreferred.size();
+		int numMerged = 0;
+		for (Map.Entry<Integer, Integer> pair : notPreferredToPreferred.entrySet()) {
+			Patient preferred = getPatient(pair.getValue());
+			Patient notPreferred = getPatient(pair.getKey());
+			mergePatients(preferred, notPreferred);
+			numMerged++;
+			if (callback != null) {
+				callback.merged(preferred, notPreferred, numMerged, numToMerge);
+			}
+			if (numMerged % MERGE_BATCH_SIZE == 0) {
+				// write the merged patients and start over with an empty session
+				Context.flushSession();
+				Context.clearSession();
+			}
+		}
+		return numMerged;
+	}
+	
 	/**
 	 * @see org.openmrs.api.PatientService#savePatientIdentifier(org.openmrs.PatientIdentifier)
 	 */
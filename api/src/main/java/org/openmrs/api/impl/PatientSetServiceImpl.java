@@ -49,6 +49,10 @@ import org.openmrs.api.PatientSetService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.PatientSetDAO;
+import org.openmrs.cohort.CohortQuery;
+import org.openmrs.cohort.CohortQueryPlan;
+import org.openmrs.cohort.PatientColumn;
+import org.openmrs.cohort.PatientColumns;
 import org.openmrs.util.OpenmrsUtil;
 import org.openmrs.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
@@ -504,4 +508,28 @@ public class PatientSetServiceImpl extends BaseOpenmrsService implements Patient
 	public Cohort getPatients(Integer start, Integer size) {
 		return getPatientSetDAO().getPatients(start, size);
 	}
+	
+	/**
+	 * @see org.openmrs.api.PatientSetService#evaluateCohortQuery(org.openmrs.cohort.CohortQuery)
+	 */
+	@Override
+	public Cohort evaluateCohortQuery(CohortQuery query) {
+		return getPatientSetDAO().evaluateCohortQueryPlan(explainCohortQuery(query));
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientSetService#explainCohortQuery(org.openmrs.cohort.CohortQuery)
+	 */
+	@Override
+	public CohortQueryPlan explainCohortQuery(CohortQuery query) {
+		return getPatientSetDAO().planCohortQuery(query);
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientSetService#getPatientColumns(org.openmrs.Cohort, java.util.List)
+	 */
+	@Override
+	public PatientColumns getPatientColumns(Cohort patients, List<PatientColumn> columns) {
+		return getPatientSetDAO().getPatientColumns(patients, columns);
+	}
 }
@@ -18,6 +18,8 @@ import java.util.Map;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
 import org.openmrs.Location;
 import org.openmrs.Patient;
@@ -33,6 +35,7 @@ import org.openmrs.customdatatype.CustomDatatypeUtil;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.PrivilegeConstants;
 import org.openmrs.validator.ValidateUtil;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -44,6 +47,13 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class VisitServiceImpl extends BaseOpenmrsService implements VisitService {
 	
+	private static final Log log = LogFactory.getLog(VisitServiceImpl.class);
+	
+	/**
+	 * The number of visits {@link #stopVisits(Date)} stops in each chunk
+	 */
+	private static final int STOP_VISITS_BATCH_SIZE = 1000;
+	
 	private VisitDAO dao;
 	
 	/**
@@ -343,9 +353,13 @@ public class VisitServiceImpl extends BaseOpenmrsService implements VisitService
 	}
 	
 	/**
+	 * Runs without a transaction of its own, so that the chunks are committed separately when no
+	 * transaction is active
+	 * 
 	 * @see org.openmrs.api.VisitService#stopVisits(Date)
 	 */
 	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
 	public void stopVisits(Date maximumStartDate) {
 		String gpValue = Context.getAdministrationService().getGlobalProperty(OpenmrsConstants.GP_VISIT_TYPES_TO_AUTO_CLOSE);
 		VisitService vs = Context.getVisitService();
@@ -369,22 +383,35 @@ public class VisitServiceImpl extends BaseOpenmrsService implements VisitService
 			}
 			
 			if (visitTypesToStop.size() > 0) {
-				int counter = 0;
 				Date stopDate = new Date();
-				Visit nextVisit = dao.getNextVisit(null, visitTypesToStop, maximumStartDate);
-				while (nextVisit != null) {
-					nextVisit.setStopDatetime(stopDate);
-					dao.saveVisit(nextVisit);
-					if (counter++ > 50) {
-						//ensure changes are persisted to DB before reclaiming memory
-						Context.flushSession();
-						Context.clearSession();
-						counter = 0;
-					}
-					
-					nextVisit = dao.getNextVisit(nextVisit, visitTypesToStop, maximumStartDate);
+				int stopped = 0;
+				List<Integer> visitIds = dao.getNextVisitIds(null, visitTypesToStop, maximumStartDate,
+				    STOP_VISITS_BATCH_SIZE);
+				while (!visitIds.isEmpty()) {
+					stopped += vs.stopVisits(visitIds, stopDate);
+					visitIds = dao.getNextVisitIds(visitIds.get(visitIds.size() - 1), visitTypesToStop,
+					    maximumStartDate, STOP_VISITS_BATCH_SIZE);
 				}
+				log.info("Stopped " + stopped + " visits started on or before " + maximumStartDate);
+			}
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.api.VisitService#stopVisits(Collection, Date)
+	 */
+	@Override
+	public int stopVisits(Collection<Integer> visitIds, Date stopDate) {
+		int stopped = 0;
+		for (Visit visit : dao.getVisitsByIds(visitIds)) {
+			if (visit.getStopDatetime() == null) {
+				visit.setStopDatetime(stopDate);
+				dao.saveVisit(visit);
+				stopped++;
 			}
 		}
+		Context.flushSession();
+		Context.clearSession();
+		return stopped;
 	}
 }
@@ -0,0 +1,485 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.cohort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.Drug;
+import org.openmrs.EncounterType;
+import org.openmrs.Form;
+import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Program;
+import org.openmrs.ProgramWorkflowState;
+import org.openmrs.api.PatientSetService;
+import org.openmrs.api.PatientSetService.Modifier;
+import org.openmrs.api.PatientSetService.TimeModifier;
+
+/**
+ * A description of a set of patients, built from the same criteria as the search methods of
+ * {@link PatientSetService} and combined with {@link #and(CohortQuery...)},
+ * {@link #or(CohortQuery...)} and {@link #not(CohortQuery)}. Unlike calling the search methods and
+ * combining the returned cohorts, a whole query is handed to
+ * {@link PatientSetService#evaluateCohortQuery(CohortQuery)}, which runs as much of it as possible
+ * as a single statement in the database. For example:
+ * 
+ * <pre>
+ * CohortQuery query = CohortQuery.and(CohortQuery.inProgram(hivProgram, null, null, null), CohortQuery.not(CohortQuery
+ *         .havingEncounters(Arrays.asList(followUp), null, null, sixMonthsAgo, null, null, null)));
+ * Cohort lostToFollowUp = Context.getPatientSetService().evaluateCohortQuery(query);
+ * </pre>
+ * 
+ * {@link PatientSetService#explainCohortQuery(CohortQuery)} shows how a query would be run.
+ * 
+ * @since 1.12
+ */
+public abstract class CohortQuery {
+	
+	/**
+	 * @return patients that match all of the given queries
+	 */
+	public static CohortQuery and(CohortQuery... queries) {
+		return new And(Arrays.asList(queries));
+	}
+	
+	/**
+	 * @return patients that match any of the given queries
+	 */
+	public static CohortQuery or(CohortQuery... queries) {
+		return new Or(Arrays.asList(queries));
+	}
+	
+	/**
+	 * @return patients that don't match the given query
+	 */
+	public static CohortQuery not(CohortQuery query) {
+		return new Not(query);
+	}
+	
+	/**
+	 * @return the members of the given cohort
+	 */
+	public static CohortQuery members(Cohort cohort) {
+		return new Members(cohort);
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsByProgramAndState(Program, List, Date, Date)
+	 */
+	public static CohortQuery inProgram(Program program, List<ProgramWorkflowState> stateList, Date fromDate, Date toDate) {
+		return new InProgram(program, stateList, fromDate, toDate);
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsHavingEncounters(List, Location, Form, Date, Date, Integer,
+	 *      Integer)
+	 */
+	public static CohortQuery havingEncounters(List<EncounterType> encounterTypeList, Location location, Form form,
+	        Date fromDate, Date toDate, Integer minCount, Integer maxCount) {
+		return new HavingEncounters(encounterTypeList, location, form, fromDate, toDate, minCount, maxCount);
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsHavingObs(Integer, TimeModifier, Modifier, Object, Date, Date)
+	 */
+	public static CohortQuery havingObs(Integer conceptId, TimeModifier timeModifier, Modifier modifier, Object value,
+	        Date fromDate, Date toDate) {
+		return new HavingObs(conceptId, timeModifier, modifier, value, fromDate, toDate);
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsHavingDrugOrder(List, List, Date, Date, Date, Date, Boolean,
+	 *      List)
+	 */
+	public static CohortQuery havingDrugOrder(List<Drug> drugList, List<Concept> drugConceptList, Date startDateFrom,
+	        Date startDateTo, Date stopDateFrom, Date stopDateTo, Boolean discontinued, List<Concept> orderReason) {
+		return new HavingDrugOrder(drugList, drugConceptList, startDateFrom, startDateTo, stopDateFrom, stopDateTo,
+		        discontinued, orderReason);
+	}
+	
+	/**
+	 * Appends a name and a value to the description of a criterion, skipping null values
+	 */
+	static void describe(StringBuilder sb, String name, Object value) {
+		if (value == null) {
+			return;
+		}
+		if (sb.charAt(sb.length() - 1) != '(') {
+			sb.append(", ");
+		}
+		sb.append(name).append("=");
+		if (value instanceof OpenmrsObject) {
+			sb.append(((OpenmrsObject) value).getId());
+		} else if (value instanceof List) {
+			List<Object> ids = new ArrayList<Object>();
+			for (Object o : (List<?>) value) {
+				ids.add(o instanceof OpenmrsObject ? ((OpenmrsObject) o).getId() : o);
+			}
+			sb.append(ids);
+		} else {
+			sb.append(value);
+		}
+	}
+	
+	/**
+	 * Patients that match all of the queries
+	 */
+	public static final class And extends CohortQuery {
+		
+		private final List<CohortQuery> queries;
+		
+		private And(List<CohortQuery> queries) {
+			this.queries = Collections.unmodifiableList(new ArrayList<CohortQuery>(queries));
+		}
+		
+		public List<CohortQuery> getQueries() {
+			return queries;
+		}
+		
+		@Override
+		public String toString() {
+			return "AND" + queries;
+		}
+	}
+	
+	/**
+	 * Patients that match any of the queries
+	 */
+	public static final class Or extends CohortQuery {
+		
+		private final List<CohortQuery> queries;
+		
+		private Or(List<CohortQuery> queries) {
+			this.queries = Collections.unmodifiableList(new ArrayList<CohortQuery>(queries));
+		}
+		
+		public List<CohortQuery> getQueries() {
+			return queries;
+		}
+		
+		@Override
+		public String toString() {
+			return "OR" + queries;
+		}
+	}
+	
+	/**
+	 * Patients that don't match the query
+	 */
+	public static final class Not extends CohortQuery {
+		
+		private final CohortQuery query;
+		
+		private Not(CohortQuery query) {
+			this.query = query;
+		}
+		
+		public CohortQuery getQuery() {
+			return query;
+		}
+		
+		@Override
+		public String toString() {
+			return "NOT(" + query + ")";
+		}
+	}
+	
+	/**
+	 * The members of a cohort that was already worked out
+	 */
+	public static final class Members extends CohortQuery {
+		
+		private final Cohort cohort;
+		
+		private Members(Cohort cohort) {
+			this.cohort = cohort;
+		}
+		
+		public Cohort getCohort() {
+			return cohort;
+		}
+		
+		@Override
+		public String toString() {
+			return "members(" + cohort.size() + " patients)";
+		}
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsByProgramAndState(Program, List, Date, Date)
+	 */
+	public static final class InProgram extends CohortQuery {
+		
+		private final Program program;
+		
+		private final List<ProgramWorkflowState> stateList;
+		
+		private final Date fromDate;
+		
+		private final Date toDate;
+		
+		private InProgram(Program program, List<ProgramWorkflowState> stateList, Date fromDate, Date toDate) {
+			this.program = program;
+			this.stateList = stateList;
+			this.fromDate = fromDate;
+			this.toDate = toDate;
+		}
+		
+		public Program getProgram() {
+			return program;
+		}
+		
+		public List<ProgramWorkflowState> getStateList() {
+			return stateList;
+		}
+		
+		public Date getFromDate() {
+			return fromDate;
+		}
+		
+		public Date getToDate() {
+			return toDate;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("inProgram(");
+			describe(sb, "program", program);
+			describe(sb, "states", stateList);
+			describe(sb, "from", fromDate);
+			describe(sb, "to", toDate);
+			return sb.append(")").toString();
+		}
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsHavingEncounters(List, Location, Form, Date, Date, Integer,
+	 *      Integer)
+	 */
+	public static final class HavingEncounters extends CohortQuery {
+		
+		private final List<EncounterType> encounterTypeList;
+		
+		private final Location location;
+		
+		private final Form form;
+		
+		private final Date fromDate;
+		
+		private final Date toDate;
+		
+		private final Integer minCount;
+		
+		private final Integer maxCount;
+		
+		private HavingEncounters(List<EncounterType> encounterTypeList, Location location, Form form, Date fromDate,
+		    Date toDate, Integer minCount, Integer maxCount) {
+			this.encounterTypeList = encounterTypeList;
+			this.location = location;
+			this.form = form;
+			this.fromDate = fromDate;
+			this.toDate = toDate;
+			this.minCount = minCount;
+			this.maxCount = maxCount;
+		}
+		
+		public List<EncounterType> getEncounterTypeList() {
+			return encounterTypeList;
+		}
+		
+		public Location getLocation() {
+			return location;
+		}
+		
+		public Form getForm() {
+			return form;
+		}
+		
+		public Date getFromDate() {
+			return fromDate;
+		}
+		
+		public Date getToDate() {
+			return toDate;
+		}
+		
+		public Integer getMinCount() {
+			return minCount;
+		}
+		
+		public Integer getMaxCount() {
+			return maxCount;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("havingEncounters(");
+			describe(sb, "types", encounterTypeList);
+			describe(sb, "location", location);
+			describe(sb, "form", form);
+			describe(sb, "from", fromDate);
+			describe(sb, "to", toDate);
+			describe(sb, "min", minCount);
+			describe(sb, "max", maxCount);
+			return sb.append(")").toString();
+		}
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsHavingObs(Integer, TimeModifier, Modifier, Object, Date, Date)
+	 */
+	public static final class HavingObs extends CohortQuery {
+		
+		private final Integer conceptId;
+		
+		private final TimeModifier timeModifier;
+		
+		private final Modifier modifier;
+		
+		private final Object value;
+		
+		private final Date fromDate;
+		
+		private final Date toDate;
+		
+		private HavingObs(Integer conceptId, TimeModifier timeModifier, Modifier modifier, Object value, Date fromDate,
+		    Date toDate) {
+			this.conceptId = conceptId;
+			this.timeModifier = timeModifier;
+			this.modifier = modifier;
+			this.value = value;
+			this.fromDate = fromDate;
+			this.toDate = toDate;
+		}
+		
+		public Integer getConceptId() {
+			return conceptId;
+		}
+		
+		public TimeModifier getTimeModifier() {
+			return timeModifier;
+		}
+		
+		public Modifier getModifier() {
+			return modifier;
+		}
+		
+		public Object getValue() {
+			return value;
+		}
+		
+		public Date getFromDate() {
+			return fromDate;
+		}
+		
+		public Date getToDate() {
+			return toDate;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("havingObs(");
+			describe(sb, "concept", conceptId);
+			describe(sb, "time", timeModifier);
+			describe(sb, "modifier", modifier);
+			describe(sb, "value", value);
+			describe(sb, "from", fromDate);
+			describe(sb, "to", toDate);
+			return sb.append(")").toString();
+		}
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientsHavingDrugOrder(List, List, Date, Date, Date, Date, Boolean,
+	 *      List)
+	 */
+	public static final class HavingDrugOrder extends CohortQuery {
+		
+		private final List<Drug> drugList;
+		
+		private final List<Concept> drugConceptList;
+		
+		private final Date startDateFrom;
+		
+		private final Date startDateTo;
+		
+		private final Date stopDateFrom;
+		
+		private final Date stopDateTo;
+		
+		private final Boolean discontinued;
+		
+		private final List<Concept> orderReason;
+		
+		private HavingDrugOrder(List<Drug> drugList, List<Concept> drugConceptList, Date startDateFrom, Date startDateTo,
+		    Date stopDateFrom, Date stopDateTo, Boolean discontinued, List<Concept> orderReason) {
+			this.drugList = drugList;
+			this.drugConceptList = drugConceptList;
+			this.startDateFrom = startDateFrom;
+			this.startDateTo = startDateTo;
+			this.stopDateFrom = stopDateFrom;
+			this.stopDateTo = stopDateTo;
+			this.discontinued = discontinued;
+			this.orderReason = orderReason;
+		}
+		
+		public List<Drug> getDrugList() {
+			return drugList;
+		}
+		
+		public List<Concept> getDrugConceptList() {
+			return drugConceptList;
+		}
+		
+		public Date getStartDateFrom() {
+			return startDateFrom;
+		}
+		
+		public Date getStartDateTo() {
+			return startDateTo;
+		}
+		
+		public Date getStopDateFrom() {
+			return stopDateFrom;
+		}
+		
+		public Date getStopDateTo() {
+			return stopDateTo;
+		}
+		
+		public Boolean getDiscontinued() {
+			return discontinued;
+		}
+		
+		public List<Concept> getOrderReason() {
+			return orderReason;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("havingDrugOrder(");
+			describe(sb, "drugs", drugList);
+			describe(sb, "drugConcepts", drugConceptList);
+			describe(sb, "startFrom", startDateFrom);
+			describe(sb, "startTo", startDateTo);
+			describe(sb, "stopFrom", stopDateFrom);
+			describe(sb, "stopTo", stopDateTo);
+			describe(sb, "discontinued", discontinued);
+			describe(sb, "reasons", orderReason);
+			return sb.append(")").toString();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.cohort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How a {@link CohortQuery} is run. Each step of a plan either runs one SQL statement, combines the
+ * patients found by its child steps in memory, or evaluates a single criterion on its own. Use
+ * {@link #explain()} to see the chosen steps.
+ * 
+ * @see org.openmrs.api.PatientSetService#explainCohortQuery(CohortQuery)
+ * @since 1.12
+ */
+public class CohortQueryPlan {
+	
+	/**
+	 * How a step finds its patients
+	 */
+	public enum Strategy {
+		/**
+		 * One SQL statement, which may cover several criteria
+		 */
+		SQL,
+		/**
+		 * The patients of the child steps are combined in memory
+		 */
+		MEMORY,
+		/**
+		 * A criterion that can't be part of an SQL statement, evaluated by itself
+		 */
+		SEPARATE
+	}
+	
+	/**
+	 * How the patients of the child steps of a {@link Strategy#MEMORY} step are combined
+	 */
+	public enum Operator {
+		AND, OR, NOT
+	}
+	
+	private final Strategy strategy;
+	
+	private final Operator operator;
+	
+	private final String sql;
+	
+	private final Map<String, Object> parameters;
+	
+	private final CohortQuery query;
+	
+	private final List<CohortQueryPlan> children;
+	
+	private final String description;
+	
+	private CohortQueryPlan(Strategy strategy, Operator operator, String sql, Map<String, Object> parameters,
+	    CohortQuery query, List<CohortQueryPlan> children, String description) {
+		this.strategy = strategy;
+		this.operator = operator;
+		this.sql = sql;
+		this.parameters = parameters;
+		this.query = query;
+		this.children = children;
+		this.description = description;
+	}
+	
+	/**
+	 * @param sql a statement selecting one patient id column
+	 * @param parameters the values of the named parameters in the statement
+	 * @param description the criteria covered by the statement
+	 * @return a step that runs the given statement
+	 */
+	public static CohortQueryPlan sql(String sql, Map<String, Object> parameters, String description) {
+		return new CohortQueryPlan(Strategy.SQL, null, sql, Collections.unmodifiableMap(new LinkedHashMap<String, Object>(
+		        parameters)), null, Collections.<CohortQueryPlan> emptyList(), description);
+	}
+	
+	/**
+	 * @param operator how to combine the patients of the children
+	 * @param children the steps to combine
+	 * @return a step that combines the patients of the given steps in memory
+	 */
+	public static CohortQueryPlan memory(Operator operator, List<CohortQueryPlan> children) {
+		return new CohortQueryPlan(Strategy.MEMORY, operator, null, Collections.<String, Object> emptyMap(), null,
+		        Collections.unmodifiableList(new ArrayList<CohortQueryPlan>(children)), operator.toString());
+	}
+	
+	/**
+	 * @param query a criterion that can't be run as part of an SQL statement
+	 * @return a step that evaluates the given criterion by itself
+	 */
+	public static CohortQueryPlan separate(CohortQuery query) {
+		return new CohortQueryPlan(Strategy.SEPARATE, null, null, Collections.<String, Object> emptyMap(), query,
+		        Collections.<CohortQueryPlan> emptyList(), query.toString());
+	}
+	
+	public Strategy getStrategy() {
+		return strategy;
+	}
+	
+	/**
+	 * @return how the children are combined, or null if this isn't a {@link Strategy#MEMORY} step
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+	
+	/**
+	 * @return the statement, or null if this isn't a {@link Strategy#SQL} step
+	 */
+	public String getSql() {
+		return sql;
+	}
+	
+	public Map<String, Object> getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * @return the criterion, or null if this isn't a {@link Strategy#SEPARATE} step
+	 */
+	public CohortQuery getQuery() {
+		return query;
+	}
+	
+	public List<CohortQueryPlan> getChildren() {
+		return children;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	
+	/**
+	 * @return the number of steps in this plan that hit the database
+	 * @should count sql and separate steps
+	 */
+	public int getQueryCount() {
+		int count = strategy == Strategy.MEMORY ? 0 : 1;
+		for (CohortQueryPlan child : children) {
+			count += child.getQueryCount();
+		}
+		return count;
+	}
+	
+	/**
+	 * @return a readable outline of this plan, one step per line
+	 * @should show the statement of sql steps
+	 * @should indent child steps
+	 */
+	public String explain() {
+		StringBuilder sb = new StringBuilder();
+		explain(sb, 0);
+		return sb.toString();
+	}
+	
+	private void explain(StringBuilder sb, int depth) {
+		for (int i = 0; i < depth; i++) {
+			sb.append("  ");
+		}
+		sb.append(strategy).append(": ").append(description);
+		if (sql != null) {
+			sb.append("\n");
+			for (int i = 0; i <= depth; i++) {
+				sb.append("  ");
+			}
+			sb.append(sql);
+			if (!parameters.isEmpty()) {
+				sb.append(" ").append(parameters);
+			}
+		}
+		sb.append("\n");
+		for (CohortQueryPlan child : children) {
+			child.explain(sb, depth + 1);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return explain();
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.cohort;
+
+import org.openmrs.PatientIdentifierType;
+
+/**
+ * A value to fetch for each patient of a cohort with
+ * {@link org.openmrs.api.PatientSetService#getPatientColumns(org.openmrs.Cohort, java.util.List)}.
+ * If a patient has several values, e.g. several names, the preferred and most recently created
+ * one that is not voided is used.
+ * 
+ * @since 1.12
+ */
+public class PatientColumn {
+	
+	/**
+	 * Where the value of a column comes from
+	 */
+	public enum Source {
+		/**
+		 * A property of Person, Patient or of a class with a person or patient property, such as
+		 * PersonName, PersonAddress or PatientIdentifier
+		 */
+		PROPERTY,
+		/**
+		 * The value of a person attribute
+		 */
+		PERSON_ATTRIBUTE,
+		/**
+		 * An identifier of a given type
+		 */
+		IDENTIFIER
+	}
+	
+	private final String name;
+	
+	private final Source source;
+	
+	private final String className;
+	
+	private final String property;
+	
+	private final String attributeTypeName;
+	
+	private final PatientIdentifierType identifierType;
+	
+	private PatientColumn(String name, Source source, String className, String property, String attributeTypeName,
+	    PatientIdentifierType identifierType) {
+		this.name = name;
+		this.source = source;
+		this.className = className;
+		this.property = property;
+		this.attributeTypeName = attributeTypeName;
+		this.identifierType = identifierType;
+	}
+	
+	/**
+	 * @param className the simple name of the class, e.g. Person or PersonName
+	 * @param property the property of the class, e.g. gender or familyName
+	 * @return a column named className.property
+	 */
+	public static PatientColumn property(String className, String property) {
+		return new PatientColumn(className + "." + property, Source.PROPERTY, className, property, null, null);
+	}
+	
+	/**
+	 * @param attributeTypeName the name of the person attribute type
+	 * @return a column named after the attribute type holding the attribute values
+	 */
+	public static PatientColumn personAttribute(String attributeTypeName) {
+		return new PatientColumn(attributeTypeName, Source.PERSON_ATTRIBUTE, null, null, attributeTypeName, null);
+	}
+	
+	/**
+	 * @param identifierType the type of identifier
+	 * @return a column named after the identifier type holding the identifiers
+	 */
+	public static PatientColumn identifier(PatientIdentifierType identifierType) {
+		return new PatientColumn(identifierType.getName(), Source.IDENTIFIER, null, null, null, identifierType);
+	}
+	
+	/**
+	 * @return the name of the column in {@link PatientColumns}
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public Source getSource() {
+		return source;
+	}
+	
+	/**
+	 * @return the class of a {@link Source#PROPERTY} column
+	 */
+	public String getClassName() {
+		return className;
+	}
+	
+	/**
+	 * @return the property of a {@link Source#PROPERTY} column
+	 */
+	public String getProperty() {
+		return property;
+	}
+	
+	/**
+	 * @return the attribute type of a {@link Source#PERSON_ATTRIBUTE} column
+	 */
+	public String getAttributeTypeName() {
+		return attributeTypeName;
+	}
+	
+	/**
+	 * @return the identifier type of an {@link Source#IDENTIFIER} column
+	 */
+	public PatientIdentifierType getIdentifierType() {
+		return identifierType;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
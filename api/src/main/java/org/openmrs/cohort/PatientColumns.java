@@ -0,0 +1,154 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.cohort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of a cohort held column by column: one array of patient ids in ascending order and, for
+ * each {@link PatientColumn}, an array of values in the same order. This takes much less memory
+ * than a map per patient, so it can hold the data of large cohorts. For example:
+ * 
+ * <pre>
+ * PatientColumns columns = Context.getPatientSetService().getPatientColumns(cohort,
+ *     Arrays.asList(PatientColumn.property("Person", "gender"), PatientColumn.personAttribute("Race")));
+ * Object[] genders = columns.getColumn("Person.gender");
+ * for (int row = 0; row &lt; columns.size(); row++) {
+ *     export(columns.getPatientId(row), genders[row]);
+ * }
+ * </pre>
+ * 
+ * @since 1.12
+ */
+public class PatientColumns {
+	
+	private final List<PatientColumn> columns;
+	
+	private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+	
+	private final int[] patientIds;
+	
+	private final Object[][] values;
+	
+	/**
+	 * The rows that have a value for each column, to tell a null value from a missing one
+	 */
+	private final BitSet[] found;
+	
+	/**
+	 * @param columns the columns
+	 * @param patientIds the patients, in ascending order
+	 */
+	public PatientColumns(List<PatientColumn> columns, int[] patientIds) {
+		this.columns = Collections.unmodifiableList(new ArrayList<PatientColumn>(columns));
+		this.patientIds = patientIds;
+		this.values = new Object[columns.size()][];
+		this.found = new BitSet[columns.size()];
+		for (int i = 0; i < columns.size(); i++) {
+			if (columnIndexes.put(columns.get(i).getName(), i) != null) {
+				throw new IllegalArgumentException("There is more than one column named " + columns.get(i).getName());
+			}
+			values[i] = new Object[patientIds.length];
+			found[i] = new BitSet(patientIds.length);
+		}
+	}
+	
+	public List<PatientColumn> getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * @return the number of patients
+	 */
+	public int size() {
+		return patientIds.length;
+	}
+	
+	/**
+	 * @param row the row
+	 * @return the id of the patient of the row
+	 */
+	public int getPatientId(int row) {
+		return patientIds[row];
+	}
+	
+	/**
+	 * @return the patient ids in ascending order, which must not be modified
+	 */
+	public int[] getPatientIds() {
+		return patientIds;
+	}
+	
+	/**
+	 * @param patientId the patient
+	 * @return the row of the patient, or a negative number if the patient is not included
+	 * @should find the row of a patient
+	 * @should return a negative number for a patient that is not included
+	 */
+	public int getRow(int patientId) {
+		return Arrays.binarySearch(patientIds, patientId);
+	}
+	
+	/**
+	 * @param name the name of the column
+	 * @return the values of the column by row, which must not be modified
+	 */
+	public Object[] getColumn(String name) {
+		return values[getColumnIndex(name)];
+	}
+	
+	/**
+	 * @param patientId the patient
+	 * @param name the name of the column
+	 * @return the value of the column for the patient, or null if the patient has no value or is
+	 *         not included
+	 * @should return the value of a patient
+	 */
+	public Object getValue(int patientId, String name) {
+		int row = getRow(patientId);
+		return row < 0 ? null : values[getColumnIndex(name)][row];
+	}
+	
+	/**
+	 * @param row the row
+	 * @param column the index of the column
+	 * @return true if a value was found for the row, even if the value is null
+	 * @should tell null values from missing ones
+	 */
+	public boolean hasValue(int row, int column) {
+		return found[column].get(row);
+	}
+	
+	/**
+	 * Sets a value while the columns are fetched
+	 * 
+	 * @param row the row
+	 * @param column the index of the column
+	 * @param value the value
+	 */
+	public void setValue(int row, int column, Object value) {
+		values[column][row] = value;
+		found[column].set(row);
+	}
+	
+	private int getColumnIndex(String name) {
+		Integer index = columnIndexes.get(name);
+		if (index == null) {
+			throw new IllegalArgumentException("There is no column named " + name);
+		}
+		return index;
+	}
+}
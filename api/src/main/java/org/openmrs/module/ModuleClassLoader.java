@@ -38,6 +38,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
@@ -57,11 +59,16 @@ public class ModuleClassLoader extends URLClassLoader {
 	
 	static Log log = LogFactory.getLog(ModuleClassLoader.class);
 	
+	static {
+		// lock per class name instead of on the whole class loader
+		ClassLoader.registerAsParallelCapable();
+	}
+	
 	private final Module module;
 	
-	private Module[] requiredModules;
+	private volatile Module[] requiredModules;
 	
-	private Module[] awareOfModules;
+	private volatile Module[] awareOfModules;
 	
 	private Map<URI, File> libraryCache;
 	
@@ -69,7 +76,13 @@ public class ModuleClassLoader extends URLClassLoader {
 	
 	private Set<String> providedPackages = new LinkedHashSet<String>();
 	
-	private boolean disposed = false;
+	private volatile boolean disposed = false;
+	
+	/**
+	 * Names of the classes that are not in this module's own urls, by package, so that repeated
+	 * misses do not search the urls again. Cleared when the urls change.
+	 */
+	private final ConcurrentMap<String, Set<String>> missingClasses = new ConcurrentHashMap<String, Set<String>>();
 	
 	/**
 	 * Holds a list of all classes for this classloader so that they can be cleaned up.
@@ -488,6 +501,7 @@ public class ModuleClassLoader extends URLClassLoader {
 		}
 		requiredModules = collectRequiredModuleImports(getModule());
 		awareOfModules = collectAwareOfModuleImports(getModule());
+		missingClasses.clear();
 		for (Iterator<Map.Entry<URI, File>> it = libraryCache.entrySet().iterator(); it.hasNext();) {
 			if (it.next().getValue() == null) {
 				it.remove();
@@ -507,6 +521,7 @@ public class ModuleClassLoader extends URLClassLoader {
 		}
 		
 		libraryCache.clear();
+		missingClasses.clear();
 		requiredModules = null;
 		awareOfModules = null;
 		disposed = true;
@@ -575,7 +590,7 @@ public class ModuleClassLoader extends URLClassLoader {
 	 * @return Class that has been loaded
 	 * @throws ClassNotFoundException if no class found
 	 */
-	protected synchronized Class<?> loadClass(final String name, final boolean resolve, final ModuleClassLoader requestor,
+	protected Class<?> loadClass(final String name, final boolean resolve, final ModuleClassLoader requestor,
 	        Set<String> seenModules) throws ClassNotFoundException {
 		
 		if (log.isTraceEnabled()) {
@@ -607,18 +622,9 @@ public class ModuleClassLoader extends URLClassLoader {
 			throw new ClassNotFoundException(msg);
 		}
 		
-		// Check if the class has already been loaded by this class loader
-		Class<?> result = findLoadedClass(name);
-		
-		// Try loading the class with this class loader 
-		if (result == null) {
-			try {
-				result = findClass(name);
-			}
-			catch (ClassNotFoundException e) {
-				// Continue trying...
-			}
-		}
+		// Try loading the class with this class loader, only the lookup in this class loader is locked
+		// so that delegating to the imported modules below never holds a lock of another loader
+		Class<?> result = findOwnClass(name);
 		
 		// We were able to "find" a class
 		if (result != null) {
@@ -668,6 +674,43 @@ public class ModuleClassLoader extends URLClassLoader {
 		throw new ClassNotFoundException(name);
 	}
 	
+	/**
+	 * Finds the class in the urls of this class loader only, remembering the misses
+	 * 
+	 * @param name the name of the class
+	 * @return the class, or null if it is not in this module
+	 */
+	private Class<?> findOwnClass(final String name) {
+		String packageName = StringUtils.substringBeforeLast(name, ".");
+		synchronized (getClassLoadingLock(name)) {
+			// Check if the class has already been loaded by this class loader
+			Class<?> result = findLoadedClass(name);
+			if (result != null) {
+				return result;
+			}
+			
+			Set<String> missing = missingClasses.get(packageName);
+			if (missing != null && missing.contains(name)) {
+				return null;
+			}
+			
+			try {
+				return findClass(name);
+			}
+			catch (ClassNotFoundException e) {
+				if (missing == null) {
+					missing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+					Set<String> existing = missingClasses.putIfAbsent(packageName, missing);
+					if (existing != null) {
+						missing = existing;
+					}
+				}
+				missing.add(name);
+				return null;
+			}
+		}
+	}
+	
 	/**
 	 * Checking the given class's visibility in this module
 	 *
@@ -831,6 +831,7 @@ public class ModuleFactory {
 			newSet.add(moduleClassLoader);
 			providedPackages.put(providedPackage, newSet);
 		}
+		OpenmrsClassLoader.clearMissingClasses(moduleClassLoader.getProvidedPackages());
 	}
 	
 	private static void unregisterProvidedPackages(ModuleClassLoader moduleClassLoader) {
@@ -845,6 +846,7 @@ public class ModuleFactory {
 			
 			providedPackages.put(providedPackage, newSet);
 		}
+		OpenmrsClassLoader.clearMissingClasses(moduleClassLoader.getProvidedPackages());
 	}
 	
 	public static Set<ModuleClassLoader> getModuleClassLoadersForPackage(String packageName) {
@@ -11,6 +11,7 @@ package org.openmrs.notification;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.User;
 import org.openmrs.annotation.Authorized;
@@ -174,6 +175,18 @@ public interface AlertService extends OpenmrsService {
 	 */
 	public List<Alert> getAllAlerts(boolean includeExpired) throws APIException;
 	
+	/**
+	 * Counts the unread, unexpired alerts of each user with a single query, instead of loading the
+	 * alerts and their recipients
+	 * 
+	 * @return the number of unread alerts of each user that has any
+	 * @throws APIException
+	 * @since 1.12
+	 * @should count the unread alerts of each recipient
+	 * @should not count read or expired alerts
+	 */
+	public Map<User, Integer> getUnreadAlertCounts() throws APIException;
+	
 	/**
 	 * Sends an alert to all superusers
 	 * 
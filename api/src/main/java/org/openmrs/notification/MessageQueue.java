@@ -0,0 +1,314 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Sends messages in the background through a {@link MessageSender}. Messages are sent one after
+ * the other by a single daemon thread, no faster than {@link #setMaxMessagesPerMinute(int)}
+ * allows. A message that can't be sent is tried again later, waiting longer after each attempt,
+ * until {@link #setMaxAttempts(int)} is reached.<br/>
+ * <br/>
+ * The thread ends after a minute without messages to send or retries to wait for, and is started
+ * again by the next message. {@link #shutdown()} stops the thread and hands back the messages that
+ * were not sent.
+ * 
+ * @since 1.12
+ */
+public class MessageQueue {
+	
+	private static final Log log = LogFactory.getLog(MessageQueue.class);
+	
+	/**
+	 * The time to wait before trying a message again for the first time, doubled after each
+	 * attempt
+	 */
+	private static final long DEFAULT_RETRY_DELAY = 30000;
+	
+	/**
+	 * The number of seconds the idle queue thread is kept
+	 */
+	private static final long THREAD_KEEP_ALIVE = 60;
+	
+	private final MessageSender sender;
+	
+	private final Queue<QueuedMessage> queue = new ConcurrentLinkedQueue<QueuedMessage>();
+	
+	private final ScheduledThreadPoolExecutor executor;
+	
+	/**
+	 * The messages waiting to be tried again
+	 */
+	private final Set<QueuedMessage> retries = Collections.synchronizedSet(new HashSet<QueuedMessage>());
+	
+	private final AtomicBoolean sending = new AtomicBoolean(false);
+	
+	/**
+	 * The messages that are queued or waiting to be tried again
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+	
+	private final AtomicInteger sent = new AtomicInteger();
+	
+	private final AtomicInteger failed = new AtomicInteger();
+	
+	private volatile int maxMessagesPerMinute = 0;
+	
+	private volatile int maxAttempts = 3;
+	
+	private volatile long retryDelay = DEFAULT_RETRY_DELAY;
+	
+	private long lastSent = 0;
+	
+	/**
+	 * @param sender sends the queued messages
+	 */
+	public MessageQueue(MessageSender sender) {
+		this.sender = sender;
+		this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "OpenMRS message queue");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setKeepAliveTime(THREAD_KEEP_ALIVE, TimeUnit.SECONDS);
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Adds a message to the queue and returns without waiting for it to be sent
+	 * 
+	 * @param message the message to send
+	 * @should send queued messages through the sender
+	 * @should try failed messages again
+	 * @should drop messages after the maximum number of attempts
+	 * @throws IllegalStateException if the queue has been shut down
+	 */
+	public void add(Message message) {
+		if (executor.isShutdown()) {
+			throw new IllegalStateException("The message queue has been shut down");
+		}
+		pending.incrementAndGet();
+		queue.add(new QueuedMessage(message));
+		startSending();
+	}
+	
+	/**
+	 * Waits until every queued message has been sent or dropped
+	 * 
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return true if there are no more pending messages
+	 * @throws InterruptedException
+	 */
+	public boolean waitUntilEmpty(long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		while (pending.get() > 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		return pending.get() == 0;
+	}
+	
+	/**
+	 * Stops the queue thread and cancels the retries that are waiting. A message that is being sent
+	 * is given a few seconds to finish.
+	 * 
+	 * @return the messages that were queued or waiting to be tried again
+	 * @should return the messages that were not sent
+	 * @should not accept messages after it has been shut down
+	 */
+	public List<Message> shutdown() {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		List<Message> unsent = new ArrayList<Message>();
+		QueuedMessage queued;
+		while ((queued = queue.poll()) != null) {
+			unsent.add(queued.message);
+		}
+		synchronized (retries) {
+			for (QueuedMessage retry : retries) {
+				unsent.add(retry.message);
+			}
+			retries.clear();
+		}
+		pending.addAndGet(-unsent.size());
+		return unsent;
+	}
+	
+	/**
+	 * @return the number of messages that are queued or waiting to be tried again
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+	
+	/**
+	 * @return the number of messages sent so far
+	 */
+	public int getSentCount() {
+		return sent.get();
+	}
+	
+	/**
+	 * @return the number of messages dropped after too many failed attempts
+	 */
+	public int getFailedCount() {
+		return failed.get();
+	}
+	
+	/**
+	 * @param maxMessagesPerMinute the maximum number of messages to send per minute, 0 for no limit
+	 */
+	public void setMaxMessagesPerMinute(int maxMessagesPerMinute) {
+		this.maxMessagesPerMinute = maxMessagesPerMinute;
+	}
+	
+	/**
+	 * @param maxAttempts the number of times a message is tried before it is dropped
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+	
+	/**
+	 * @param retryDelay the time in milliseconds to wait before trying a message again for the
+	 *            first time, doubled after each attempt
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+	
+	private void startSending() {
+		if (sending.compareAndSet(false, true)) {
+			try {
+				executor.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						sendQueuedMessages();
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				// shut down, the message is handed back by shutdown()
+				sending.set(false);
+			}
+		}
+	}
+	
+	/**
+	 * Sends messages until the queue is empty. Runs on the queue thread only.
+	 */
+	private void sendQueuedMessages() {
+		try {
+			QueuedMessage next;
+			while (!executor.isShutdown() && (next = queue.poll()) != null) {
+				waitForRateLimit();
+				send(next);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			sending.set(false);
+		}
+		// a message may have been added after the last poll but before sending was reset
+		if (!queue.isEmpty()) {
+			startSending();
+		}
+	}
+	
+	private void waitForRateLimit() throws InterruptedException {
+		int limit = maxMessagesPerMinute;
+		if (limit > 0) {
+			long wait = lastSent + TimeUnit.MINUTES.toMillis(1) / limit - System.currentTimeMillis();
+			if (wait > 0) {
+				Thread.sleep(wait);
+			}
+		}
+	}
+	
+	private void send(final QueuedMessage queued) {
+		queued.attempts++;
+		try {
+			lastSent = System.currentTimeMillis();
+			sender.send(queued.message);
+			sent.incrementAndGet();
+			pending.decrementAndGet();
+		}
+		catch (Exception e) {
+			if (queued.attempts >= maxAttempts) {
+				log.error("Dropping message '" + queued.message.getSubject() + "' to " + queued.message.getRecipients()
+				        + " after " + queued.attempts + " attempts", e);
+				failed.incrementAndGet();
+				pending.decrementAndGet();
+			} else {
+				long delay = retryDelay << (queued.attempts - 1);
+				log.warn("Could not send message '" + queued.message.getSubject() + "', trying again in " + delay + "ms",
+				    e);
+				retries.add(queued);
+				try {
+					executor.schedule(new Runnable() {
+						
+						@Override
+						public void run() {
+							if (retries.remove(queued)) {
+								queue.add(queued);
+								startSending();
+							}
+						}
+					}, delay, TimeUnit.MILLISECONDS);
+				}
+				catch (RejectedExecutionException ex) {
+					// shut down, the message is handed back by shutdown()
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A message with the number of times it has been tried
+	 */
+	private static class QueuedMessage {
+		
+		private final Message message;
+		
+		private int attempts = 0;
+		
+		public QueuedMessage(Message message) {
+			this.message = message;
+		}
+	}
+}
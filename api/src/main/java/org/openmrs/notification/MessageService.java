@@ -15,8 +15,9 @@ import java.util.Map;
 
 import org.openmrs.Role;
 import org.openmrs.User;
+import org.openmrs.api.OpenmrsService;
 
-public interface MessageService {
+public interface MessageService extends OpenmrsService {
 	
 	// Set dependencies for message services
 	// TODO Should these be required or do we let the implementations constructor dictate the dependencies?
@@ -39,6 +40,19 @@ public interface MessageService {
 	 */
 	public void sendMessage(Message message) throws MessageException;
 	
+	/**
+	 * Adds the message to a queue that sends it in the background, so the caller doesn't wait for
+	 * the mail server. Messages that can't be sent are tried again later, see
+	 * {@link MessageQueue}.
+	 * 
+	 * @param message the message to send
+	 * @throws MessageException if the message has no recipients
+	 * @since 1.12
+	 * @should send the message through the message sender
+	 * @should fail for a message without recipients
+	 */
+	public void queueMessage(Message message) throws MessageException;
+	
 	//sends message to everyone of a certain role
 	public void sendMessage(Message message, String roleName) throws MessageException;
 	
@@ -10,6 +10,7 @@
 package org.openmrs.notification.db;
 
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.User;
 import org.openmrs.api.db.DAOException;
@@ -48,4 +49,9 @@ public interface AlertDAO {
 	 */
 	public List<Alert> getAllAlerts(boolean includeExpired);
 	
+	/**
+	 * @see org.openmrs.notification.AlertService#getUnreadAlertCounts()
+	 */
+	public Map<User, Integer> getUnreadAlertCounts() throws DAOException;
+	
 }
@@ -9,13 +9,18 @@
  */
 package org.openmrs.notification.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -36,6 +41,11 @@ public class HibernateAlertDAO implements AlertDAO {
 	 */
 	private SessionFactory sessionFactory;
 	
+	/**
+	 * The number of users {@link #getUnreadAlertCounts()} loads with each query
+	 */
+	private static final int USER_BATCH_SIZE = 500;
+	
 	public HibernateAlertDAO() {
 	}
 	
@@ -123,4 +133,33 @@ public class HibernateAlertDAO implements AlertDAO {
 		return crit.list();
 	}
 	
+	/**
+	 * @see org.openmrs.notification.db.AlertDAO#getUnreadAlertCounts()
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<User, Integer> getUnreadAlertCounts() throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		List<Object[]> rows = session.createQuery(
+		    "select r.recipientId, count(*) from AlertRecipient r where r.alertRead = false "
+		            + "and r.alert.alertRead = false and (r.alert.dateToExpire is null or r.alert.dateToExpire > :now) "
+		            + "group by r.recipientId").setParameter("now", new Date()).list();
+		
+		Map<Integer, Integer> countsById = new HashMap<Integer, Integer>();
+		for (Object[] row : rows) {
+			countsById.put((Integer) row[0], ((Number) row[1]).intValue());
+		}
+		
+		// load the users in batches rather than one at a time
+		Map<User, Integer> counts = new LinkedHashMap<User, Integer>();
+		List<Integer> userIds = new ArrayList<Integer>(countsById.keySet());
+		for (int start = 0; start < userIds.size(); start += USER_BATCH_SIZE) {
+			List<User> users = session.createQuery("from User u where u.userId in (:userIds)").setParameterList(
+			    "userIds", userIds.subList(start, Math.min(start + USER_BATCH_SIZE, userIds.size()))).list();
+			for (User user : users) {
+				counts.put(user, countsById.get(user.getUserId()));
+			}
+		}
+		return counts;
+	}
+	
 }
@@ -13,6 +13,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -232,6 +233,14 @@ public class AlertServiceImpl extends BaseOpenmrsService implements Serializable
 		return dao.getAllAlerts(includeExpired);
 	}
 	
+	/**
+	 * @see org.openmrs.notification.AlertService#getUnreadAlertCounts()
+	 */
+	@Transactional(readOnly = true)
+	public Map<User, Integer> getUnreadAlertCounts() throws APIException {
+		return dao.getUnreadAlertCounts();
+	}
+	
 	/**
 	 * @see org.openmrs.notification.AlertService#notifySuperUsers(java.lang.String, java.lang.Exception, java.lang.String[])
 	 */
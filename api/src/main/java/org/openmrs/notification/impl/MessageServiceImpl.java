@@ -14,15 +14,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Role;
 import org.openmrs.User;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.api.db.TemplateDAO;
 import org.openmrs.notification.Message;
 import org.openmrs.notification.MessageException;
 import org.openmrs.notification.MessagePreparator;
+import org.openmrs.notification.MessageQueue;
 import org.openmrs.notification.MessageSender;
 import org.openmrs.notification.MessageService;
 import org.openmrs.notification.Template;
@@ -30,7 +34,7 @@ import org.openmrs.util.OpenmrsConstants;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
-public class MessageServiceImpl implements MessageService {
+public class MessageServiceImpl extends BaseOpenmrsService implements MessageService {
 	
 	private static final Log log = LogFactory.getLog(MessageServiceImpl.class);
 	
@@ -40,6 +44,8 @@ public class MessageServiceImpl implements MessageService {
 	
 	private MessagePreparator messagePreparator; // Prepares message for delivery 
 	
+	private MessageQueue messageQueue; // Delivers queued messages in the background 
+	
 	public void setTemplateDAO(TemplateDAO dao) {
 		this.templateDAO = dao;
 	}
@@ -65,12 +71,23 @@ public class MessageServiceImpl implements MessageService {
 	}
 	
 	/**
-	 * Set the message sender.
+	 * Set the message sender. Messages queued for the previous sender are sent through the new one.
 	 *
 	 * @param messageSender
 	 */
-	public void setMessageSender(MessageSender messageSender) {
+	public synchronized void setMessageSender(MessageSender messageSender) {
 		this.messageSender = messageSender;
+		if (messageQueue != null) {
+			List<Message> unsent = messageQueue.shutdown();
+			messageQueue = null;
+			if (!unsent.isEmpty()) {
+				MessageQueue queue = getMessageQueue();
+				configure(queue);
+				for (Message message : unsent) {
+					queue.add(message);
+				}
+			}
+		}
 	}
 	
 	public MessageSender getMessageSender() {
@@ -93,6 +110,51 @@ public class MessageServiceImpl implements MessageService {
 		}
 	}
 	
+	/**
+	 * @see org.openmrs.notification.MessageService#queueMessage(org.openmrs.notification.Message)
+	 */
+	public void queueMessage(Message message) throws MessageException {
+		if (StringUtils.isBlank(message.getRecipients())) {
+			throw new MessageException("Message must contain at least one recipient");
+		}
+		MessageQueue queue = getMessageQueue();
+		configure(queue);
+		queue.add(message);
+	}
+	
+	/**
+	 * Stops the message queue thread. Messages that were not sent yet are lost.
+	 * 
+	 * @see org.openmrs.api.impl.BaseOpenmrsService#onShutdown()
+	 */
+	@Override
+	public synchronized void onShutdown() {
+		if (messageQueue != null) {
+			List<Message> unsent = messageQueue.shutdown();
+			messageQueue = null;
+			if (!unsent.isEmpty()) {
+				log.warn(unsent.size() + " queued messages were not sent before shutting down");
+			}
+		}
+	}
+	
+	private void configure(MessageQueue queue) {
+		AdministrationService as = Context.getAdministrationService();
+		queue.setMaxMessagesPerMinute(as.getGlobalPropertyValue(OpenmrsConstants.GP_MAIL_MAX_MESSAGES_PER_MINUTE, 60));
+		queue.setMaxAttempts(as.getGlobalPropertyValue(OpenmrsConstants.GP_MAIL_MAX_SEND_ATTEMPTS, 3));
+	}
+	
+	
+	/**
+	 * @return the queue sending messages through the current message sender
+	 */
+	public synchronized MessageQueue getMessageQueue() {
+		if (messageQueue == null) {
+			messageQueue = new MessageQueue(messageSender);
+		}
+		return messageQueue;
+	}
+	
 	/**
 	 * Create a message object with the given parts.
 	 *
@@ -43,6 +43,11 @@ public interface ComplexObsHandler {
 	
 	public static final String PREVIEW_VIEW = "PREVIEW_VIEW";
 	
+	/**
+	 * @since 1.12
+	 */
+	public static final String THUMBNAIL_VIEW = "THUMBNAIL_VIEW";
+	
 	public static final String URI_VIEW = "URI_VIEW";
 	
 	/**
@@ -0,0 +1,68 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openmrs.Obs;
+
+/**
+ * Decides where the files written by the file based {@link ComplexObsHandler}s are kept. Handlers
+ * write the complex data to a temporary file obtained from {@link #createTempFile()} and then hand
+ * it to {@link #store(File, Obs)}, which moves it into place and returns the key that is saved
+ * after the "|" in {@link Obs#getValueComplex()}. Keys are paths relative to the directory set by
+ * the global property {@link org.openmrs.util.OpenmrsConstants#GLOBAL_PROPERTY_COMPLEX_OBS_DIR}. <br/>
+ * <br/>
+ * The storage in use is the spring bean named by the global property
+ * {@link org.openmrs.util.OpenmrsConstants#GP_COMPLEX_OBS_STORAGE_BEAN_ID}.
+ * 
+ * @see org.openmrs.obs.handler.AbstractHandler#getStorage()
+ * @since 1.12
+ */
+public interface ComplexObsStorage {
+	
+	/**
+	 * Creates an empty temporary file on the same file system as the stored complex data, so that
+	 * it can later be moved into place atomically
+	 * 
+	 * @return the temporary file
+	 * @throws IOException
+	 */
+	public File createTempFile() throws IOException;
+	
+	/**
+	 * Moves a completely written temporary file into the storage. The temporary file no longer
+	 * exists after this call.
+	 * 
+	 * @param tempFile a file created by {@link #createTempFile()}
+	 * @param obs the obs the data belongs to, with its complex data still set
+	 * @return the key of the stored data
+	 * @throws IOException
+	 */
+	public String store(File tempFile, Obs obs) throws IOException;
+	
+	/**
+	 * Gets the file that holds the data stored under the given key
+	 * 
+	 * @param key the key returned by {@link #store(File, Obs)}
+	 * @return the file, which may not exist
+	 */
+	public File getFile(String key);
+	
+	/**
+	 * Removes the data stored under the given key, if it is not used by any other obs
+	 * 
+	 * @param key the key returned by {@link #store(File, Obs)}
+	 * @return true if the data was removed or is still needed by another obs
+	 */
+	public boolean delete(String key);
+	
+}
@@ -0,0 +1,153 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * The observations of one person held as compact rows of concept, obs datetime and value, in
+ * ascending order of obs datetime. It is read without loading any {@link org.openmrs.Obs}, so
+ * flowsheets and graphs can be drawn from it cheaply. For example:
+ * 
+ * <pre>
+ * ObsTimeline timeline = Context.getObsService().getObsTimeline(patient, Arrays.asList(weight), null, null);
+ * for (int row : timeline.getRows(weight.getConceptId())) {
+ *     plot(timeline.getObsDatetime(row), timeline.getValueNumeric(row));
+ * }
+ * </pre>
+ * 
+ * @since 1.12
+ */
+public class ObsTimeline {
+	
+	private final int[] obsIds;
+	
+	private final int[] conceptIds;
+	
+	private final long[] obsDatetimes;
+	
+	private final Double[] valueNumerics;
+	
+	private final Integer[] valueCodedIds;
+	
+	private final Date[] valueDatetimes;
+	
+	private final String[] valueTexts;
+	
+	/**
+	 * @param size the number of rows
+	 */
+	public ObsTimeline(int size) {
+		obsIds = new int[size];
+		conceptIds = new int[size];
+		obsDatetimes = new long[size];
+		valueNumerics = new Double[size];
+		valueCodedIds = new Integer[size];
+		valueDatetimes = new Date[size];
+		valueTexts = new String[size];
+	}
+	
+	/**
+	 * Sets a row while the timeline is fetched, rows have to be set in ascending order of obs
+	 * datetime
+	 * 
+	 * @param row the row
+	 * @param obsId the id of the obs
+	 * @param conceptId the id of the question concept
+	 * @param obsDatetime the obs datetime
+	 * @param valueNumeric the numeric value, or null
+	 * @param valueCodedId the id of the coded value, or null
+	 * @param valueDatetime the datetime value, or null
+	 * @param valueText the text value, or null
+	 */
+	public void setRow(int row, int obsId, int conceptId, Date obsDatetime, Double valueNumeric, Integer valueCodedId,
+	        Date valueDatetime, String valueText) {
+		obsIds[row] = obsId;
+		conceptIds[row] = conceptId;
+		obsDatetimes[row] = obsDatetime.getTime();
+		valueNumerics[row] = valueNumeric;
+		valueCodedIds[row] = valueCodedId;
+		valueDatetimes[row] = valueDatetime;
+		valueTexts[row] = valueText;
+	}
+	
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return obsIds.length;
+	}
+	
+	public int getObsId(int row) {
+		return obsIds[row];
+	}
+	
+	public int getConceptId(int row) {
+		return conceptIds[row];
+	}
+	
+	public Date getObsDatetime(int row) {
+		return new Date(obsDatetimes[row]);
+	}
+	
+	public Double getValueNumeric(int row) {
+		return valueNumerics[row];
+	}
+	
+	public Integer getValueCodedId(int row) {
+		return valueCodedIds[row];
+	}
+	
+	public Date getValueDatetime(int row) {
+		return valueDatetimes[row];
+	}
+	
+	public String getValueText(int row) {
+		return valueTexts[row];
+	}
+	
+	/**
+	 * @param conceptId the question concept
+	 * @return the rows of the concept, in ascending order of obs datetime
+	 * @should return the rows of a concept in time order
+	 * @should return no rows for a concept without obs
+	 */
+	public int[] getRows(int conceptId) {
+		int[] rows = new int[conceptIds.length];
+		int count = 0;
+		for (int row = 0; row < conceptIds.length; row++) {
+			if (conceptIds[row] == conceptId) {
+				rows[count++] = row;
+			}
+		}
+		return Arrays.copyOf(rows, count);
+	}
+	
+	/**
+	 * @param from the earliest obs datetime, inclusive
+	 * @return the first row with an obs datetime at or after the given one, or {@link #size()} if
+	 *         there is none
+	 * @should find the first row at or after a datetime
+	 */
+	public int getFirstRow(Date from) {
+		int low = 0;
+		int high = obsDatetimes.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (obsDatetimes[middle] < from.getTime()) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
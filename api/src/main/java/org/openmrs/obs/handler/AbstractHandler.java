@@ -22,6 +22,8 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 import org.openmrs.obs.ComplexData;
+import org.openmrs.obs.ComplexObsStorage;
+import org.openmrs.obs.storage.FlatFileComplexObsStorage;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
 
@@ -35,6 +37,14 @@ public class AbstractHandler {
 	
 	public static final Log log = LogFactory.getLog(AbstractHandler.class);
 	
+	private static final ComplexObsStorage DEFAULT_STORAGE = new FlatFileComplexObsStorage();
+	
+	/**
+	 * The value of the storage bean global property, "" if it is not set, cleared by
+	 * {@link ComplexObsStorageListener} when the global property changes
+	 */
+	private static volatile String storageBeanIdCache;
+	
 	protected NumberFormat nf;
 	
 	protected SimpleDateFormat longfmt;
@@ -50,6 +60,64 @@ public class AbstractHandler {
 		longfmt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 	}
 	
+	/**
+	 * Gets the storage that keeps the complex obs files, i.e. the spring bean named by the global
+	 * property {@link OpenmrsConstants#GP_COMPLEX_OBS_STORAGE_BEAN_ID} or a
+	 * {@link FlatFileComplexObsStorage} if it is not set
+	 * 
+	 * @return the storage in use
+	 * @since 1.12
+	 */
+	public static ComplexObsStorage getStorage() {
+		String beanId = storageBeanIdCache;
+		if (beanId == null) {
+			beanId = StringUtils.trimToEmpty(Context.getAdministrationService().getGlobalProperty(
+			    OpenmrsConstants.GP_COMPLEX_OBS_STORAGE_BEAN_ID));
+			storageBeanIdCache = beanId;
+		}
+		if (beanId.length() == 0) {
+			return DEFAULT_STORAGE;
+		}
+		return Context.getRegisteredComponent(beanId, ComplexObsStorage.class);
+	}
+	
+	/**
+	 * Makes {@link #getStorage()} read the global property again
+	 */
+	static void clearStorageCache() {
+		storageBeanIdCache = null;
+	}
+	
+	/**
+	 * Deletes a temporary file that could not be stored
+	 * 
+	 * @param tempFile the temporary file, may be null
+	 * @since 1.12
+	 */
+	protected void discard(File tempFile) {
+		if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+			log.warn("Unable to delete temporary file " + tempFile.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Gets the file name shown to users for data stored under the given key. Keys without
+	 * directories already name the file after the complex data, keys of other storages are only
+	 * meaningful to the storage so the title of the complex data is used instead.
+	 * 
+	 * @param obs the obs, with its complex data still set
+	 * @param key the key returned by {@link ComplexObsStorage#store(File, Obs)}
+	 * @return the file name
+	 * @since 1.12
+	 */
+	protected String getStoredFileName(Obs obs, String key) {
+		String title = obs.getComplexData() == null ? null : obs.getComplexData().getTitle();
+		if (key.indexOf('/') < 0 || StringUtils.isBlank(title)) {
+			return new File(key).getName();
+		}
+		return title;
+	}
+	
 	/**
 	 * Returns a {@link File} for the given obs complex data to be written to. The output file
 	 * location is determined off of the {@link OpenmrsConstants#GLOBAL_PROPERTY_COMPLEX_OBS_DIR}
@@ -144,7 +212,7 @@ public class AbstractHandler {
 	 */
 	public boolean purgeComplexData(Obs obs) {
 		File file = getComplexDataFile(obs);
-		if (file.exists() && file.delete()) {
+		if (getStorage().delete(getComplexDataKey(obs))) {
 			obs.setComplexData(null);
 			// obs.setValueComplex(null);
 			return true;
@@ -162,11 +230,19 @@ public class AbstractHandler {
 	 * @return File object
 	 */
 	public static File getComplexDataFile(Obs obs) {
-		String[] names = obs.getValueComplex().split("\\|");
-		String filename = names.length < 2 ? names[0] : names[names.length - 1];
-		File dir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(Context.getAdministrationService().getGlobalProperty(
-		    OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
-		return new File(dir, filename);
+		return getStorage().getFile(getComplexDataKey(obs));
+	}
+	
+	/**
+	 * Gets the storage key of the complex data of the given obs, the part of the value complex after
+	 * the last "|"
+	 * 
+	 * @param obs the obs
+	 * @return the storage key
+	 * @since 1.12
+	 */
+	public static String getComplexDataKey(Obs obs) {
+		return obs.getComplexDataKey();
 	}
 	
 	/**
@@ -23,6 +23,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.APIException;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
 import org.openmrs.util.OpenmrsUtil;
 
 /**
@@ -108,10 +109,12 @@ public class BinaryDataHandler extends AbstractHandler implements ComplexObsHand
 			return obs;
 		}
 		
+		ComplexObsStorage storage = getStorage();
+		File tempFile = null;
 		FileOutputStream fout = null;
 		try {
-			File outfile = getOutputFileToWrite(obs);
-			fout = new FileOutputStream(outfile);
+			tempFile = storage.createTempFile();
+			fout = new FileOutputStream(tempFile);
 			
 			Object data = obs.getComplexData().getData();
 			if (data instanceof byte[]) {
@@ -125,8 +128,11 @@ public class BinaryDataHandler extends AbstractHandler implements ComplexObsHand
 				}
 			}
 			
+			fout.close();
+			String key = storage.store(tempFile, obs);
+			
 			// Set the Title and URI for the valueComplex
-			obs.setValueComplex(outfile.getName() + " file |" + outfile.getName());
+			obs.setValueComplex(getStoredFileName(obs, key) + " file |" + key);
 			
 			// Remove the ComplexData from the Obs
 			obs.setComplexData(null);
@@ -142,6 +148,7 @@ public class BinaryDataHandler extends AbstractHandler implements ComplexObsHand
 			catch (Exception e) {
 				// pass
 			}
+			discard(tempFile);
 		}
 		
 		return obs;
@@ -24,6 +24,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.APIException;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
 
@@ -72,6 +73,7 @@ public class BinaryStreamHandler extends AbstractHandler implements ComplexObsHa
 				if (file.exists()) {
 					FileInputStream fileInputStream = new FileInputStream(file);
 					complexData = new ComplexData(originalFilename, fileInputStream);
+					complexData.setLength(file.length());
 				} else {
 					log.error("Unable to find file associated with complex obs " + obs.getId());
 				}
@@ -104,24 +106,30 @@ public class BinaryStreamHandler extends AbstractHandler implements ComplexObsHa
 	 * @see ComplexObsHandler#saveObs(Obs)
 	 */
 	public Obs saveObs(Obs obs) throws APIException {
+		ComplexObsStorage storage = getStorage();
+		File tempFile = null;
 		try {
 			// Write the File to the File System
 			String fileName = obs.getComplexData().getTitle();
 			InputStream in = (InputStream) obs.getComplexData().getData();
-			File outfile = getOutputFileToWrite(obs);
-			OutputStream out = new FileOutputStream(outfile, false);
+			tempFile = storage.createTempFile();
+			OutputStream out = new FileOutputStream(tempFile, false);
 			OpenmrsUtil.copyFile(in, out);
 			
-			// Store the filename in the Obs
-			obs.setComplexData(null);
-			obs.setValueComplex(fileName + "|" + outfile.getName());
-			
 			// close the stream
 			out.close();
+			
+			// Store the filename in the Obs
+			String key = storage.store(tempFile, obs);
+			obs.setComplexData(null);
+			obs.setValueComplex(fileName + "|" + key);
 		}
 		catch (Exception e) {
 			throw new APIException("Obs.error.writing.binary.data.complex", null, e);
 		}
+		finally {
+			discard(tempFile);
+		}
 		
 		return obs;
 	}
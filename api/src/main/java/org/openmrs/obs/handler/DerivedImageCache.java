@@ -0,0 +1,219 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps derived representations of complex obs, like image thumbnails, as files below a directory
+ * and removes the least recently used ones once their total size exceeds a limit. The files that
+ * already exist in the directory are picked up the first time the cache is used, ordered by their
+ * modification time, which is updated on every hit so the order survives restarts.
+ * 
+ * @since 1.12
+ */
+public class DerivedImageCache {
+	
+	private static final Log log = LogFactory.getLog(DerivedImageCache.class);
+	
+	private final File directory;
+	
+	private final long maxSize;
+	
+	/**
+	 * The sizes of the cached files by path, in access order
+	 */
+	private LinkedHashMap<String, Long> entries;
+	
+	private long size = 0;
+	
+	/**
+	 * @param directory the directory holding the derived files
+	 * @param maxSize the maximum total size of the derived files in bytes
+	 */
+	public DerivedImageCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * @return the directory holding the derived files
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * @return the total size of the cached files in bytes
+	 */
+	public synchronized long getSize() {
+		getEntries();
+		return size;
+	}
+	
+	/**
+	 * Gets the file for the given name and marks it as recently used
+	 * 
+	 * @param name the path of the derived file relative to the cache directory
+	 * @return the file, or null if it is not cached
+	 * @should return null for a name that is not cached
+	 * @should return a cached file
+	 */
+	public File get(String name) {
+		File file = new File(directory, name);
+		synchronized (this) {
+			if (getEntries().get(file.getPath()) == null) {
+				return null;
+			}
+		}
+		
+		if (!file.isFile()) {
+			remove(name);
+			return null;
+		}
+		if (!file.setLastModified(System.currentTimeMillis())) {
+			log.debug("Unable to touch " + file.getAbsolutePath());
+		}
+		return file;
+	}
+	
+	/**
+	 * Moves a completely written file into the cache under the given name, replacing a file of the
+	 * same name, and evicts the least recently used files if the cache has grown too large
+	 * 
+	 * @param name the path of the derived file relative to the cache directory
+	 * @param tempFile the file to move into the cache, which must be on the same file system
+	 * @return the cached file
+	 * @throws IOException
+	 * @should evict the least recently used files when the maximum size is exceeded
+	 */
+	public File put(String name, File tempFile) throws IOException {
+		File file = new File(directory, name);
+		File parent = file.getParentFile();
+		if (!parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create directory " + parent.getAbsolutePath());
+		}
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		
+		List<File> evicted = new ArrayList<File>();
+		synchronized (this) {
+			Long previous = getEntries().put(file.getPath(), file.length());
+			size += file.length() - (previous == null ? 0 : previous);
+			
+			Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+			while (size > maxSize && it.hasNext()) {
+				Map.Entry<String, Long> eldest = it.next();
+				if (eldest.getKey().equals(file.getPath())) {
+					continue;
+				}
+				size -= eldest.getValue();
+				evicted.add(new File(eldest.getKey()));
+				it.remove();
+			}
+		}
+		
+		for (File old : evicted) {
+			if (!old.delete() && old.exists()) {
+				log.warn("Unable to delete cached file " + old.getAbsolutePath());
+			}
+		}
+		
+		return file;
+	}
+	
+	/**
+	 * Creates an empty temporary file in the cache directory to write a derived file to
+	 * 
+	 * @return the temporary file
+	 * @throws IOException
+	 */
+	public File createTempFile() throws IOException {
+		if (!directory.exists() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Unable to create directory " + directory.getAbsolutePath());
+		}
+		return File.createTempFile("derived", ".part", directory);
+	}
+	
+	/**
+	 * Removes the file for the given name from the cache
+	 * 
+	 * @param name the path of the derived file relative to the cache directory
+	 */
+	public void remove(String name) {
+		File file = new File(directory, name);
+		synchronized (this) {
+			Long previous = getEntries().remove(file.getPath());
+			if (previous != null) {
+				size -= previous;
+			}
+		}
+		if (file.exists() && !file.delete()) {
+			log.warn("Unable to delete cached file " + file.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Gets the cache entries, reading the existing files from the directory on first use. Callers
+	 * must hold the lock on this cache.
+	 */
+	private LinkedHashMap<String, Long> getEntries() {
+		if (entries == null) {
+			entries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+			List<File> files = new ArrayList<File>();
+			collectFiles(directory, files);
+			Collections.sort(files, new Comparator<File>() {
+				
+				@Override
+				public int compare(File f1, File f2) {
+					return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+				}
+			});
+			for (File file : files) {
+				entries.put(file.getPath(), file.length());
+				size += file.length();
+			}
+		}
+		return entries;
+	}
+	
+	private void collectFiles(File dir, List<File> files) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				collectFiles(child, files);
+			} else if (!child.getName().endsWith(".part")) {
+				files.add(child);
+			}
+		}
+	}
+	
+}
@@ -9,25 +9,36 @@
  */
 package org.openmrs.obs.handler;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URLConnection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Obs;
 import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
+import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.OpenmrsUtil;
 
 /**
  * Handler for storing basic images for complex obs to the file system. The image mime type used is
@@ -41,12 +52,24 @@ import org.openmrs.obs.ComplexObsHandler;
 public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 	
 	/** Views supported by this handler */
-	private static final String[] supportedViews = { ComplexObsHandler.RAW_VIEW };
+	private static final String[] supportedViews = { ComplexObsHandler.RAW_VIEW, ComplexObsHandler.THUMBNAIL_VIEW,
+	        ComplexObsHandler.PREVIEW_VIEW };
+	
+	/**
+	 * Name of the directory, below the complex obs directory, that holds thumbnails and previews
+	 */
+	public static final String DERIVED_DIRECTORY_NAME = ".derived";
 	
 	public static final Log log = LogFactory.getLog(ImageHandler.class);
 	
 	private Set<String> extensions;
 	
+	private int thumbnailSize = 128;
+	
+	private int previewSize = 640;
+	
+	private DerivedImageCache derivedImageCache;
+	
 	/**
 	 * Constructor initializes formats for alternative file names to protect from unintentionally
 	 * overwriting existing files.
@@ -62,9 +85,14 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 	}
 	
 	/**
-	 * Currently supports all views and puts the Image file data into the ComplexData object
+	 * Currently supports the raw view, which puts the decoded image into the ComplexData object, and
+	 * the thumbnail and preview views, which put a stream of a scaled down copy of the image into
+	 * it. The scaled down copies are generated on first use and kept in a {@link DerivedImageCache}.
 	 * 
 	 * @see org.openmrs.obs.ComplexObsHandler#getObs(org.openmrs.Obs, java.lang.String)
+	 * @should return a scaled down copy of the image for the thumbnail view
+	 * @should not scale up images smaller than the view
+	 * @should return the original file if the image cannot be read
 	 */
 	public Obs getObs(Obs obs, String view) {
 		File file = getComplexDataFile(obs);
@@ -100,6 +128,26 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 			}
 			
 			obs.setComplexData(complexData);
+		} else if (ComplexObsHandler.THUMBNAIL_VIEW.equals(view) || ComplexObsHandler.PREVIEW_VIEW.equals(view)) {
+			int maxSize = ComplexObsHandler.THUMBNAIL_VIEW.equals(view) ? thumbnailSize : previewSize;
+			String format = getDerivedFormat(file.getName());
+			try {
+				File derived = getDerivedImage(obs, file, view, maxSize, format);
+				if (derived == null) {
+					log.warn("Unable to create " + view + " of file: " + file.getAbsolutePath() + ", using the original");
+					setOriginalFile(obs, file);
+				} else {
+					// the derived file is handed over as a stream so that it can be sent without decoding it
+					ComplexData complexData = new ComplexData(file.getName(), new FileInputStream(derived));
+					complexData.setMimeType("image/" + format);
+					complexData.setLength(derived.length());
+					obs.setComplexData(complexData);
+				}
+			}
+			catch (IOException e) {
+				log.warn("Unable to create " + view + " of file: " + file.getAbsolutePath() + ", using the original", e);
+				setOriginalFile(obs, file);
+			}
 		} else {
 			// No other view supported
 			// NOTE: if adding support for another view, don't forget to update supportedViews list above
@@ -109,6 +157,206 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 		return obs;
 	}
 	
+	/**
+	 * Hands over the original file as a stream, for views of images that cannot be decoded. The
+	 * complex data is left unset if the file does not exist.
+	 * 
+	 * @param obs the obs
+	 * @param file the original image file
+	 */
+	private void setOriginalFile(Obs obs, File file) {
+		try {
+			ComplexData complexData = new ComplexData(file.getName(), new FileInputStream(file));
+			complexData.setMimeType(URLConnection.guessContentTypeFromName(file.getName()));
+			complexData.setLength(file.length());
+			obs.setComplexData(complexData);
+		}
+		catch (FileNotFoundException e) {
+			log.warn("Image " + file.getAbsolutePath() + " was not found");
+		}
+	}
+	
+	/**
+	 * Gets the thumbnail or preview of the image of the given obs, generating it on first use. The
+	 * image is decoded with subsampling so that a multi-megabyte original is never decoded at full
+	 * resolution just to be scaled down.
+	 * 
+	 * @param obs the obs
+	 * @param file the original image file
+	 * @param view the view being created
+	 * @param maxSize the maximum width and height of the derived image
+	 * @param format the format to write the derived image in
+	 * @return the derived image file, or null if the original cannot be read
+	 * @throws IOException
+	 */
+	private File getDerivedImage(Obs obs, File file, String view, int maxSize, String format) throws IOException {
+		DerivedImageCache cache = getDerivedImageCache();
+		String name = view + "/" + getComplexDataKey(obs) + "." + format;
+		File derived = cache.get(name);
+		if (derived != null) {
+			return derived;
+		}
+		
+		if (!file.isFile()) {
+			log.warn("Image " + file.getAbsolutePath() + " was not found");
+			return null;
+		}
+		BufferedImage img = readScaled(file, maxSize);
+		if (img == null) {
+			log.warn("Unable to read image " + file.getAbsolutePath());
+			return null;
+		}
+		
+		File tempFile = cache.createTempFile();
+		try {
+			ImageIO.write(img, format, tempFile);
+			return cache.put(name, tempFile);
+		}
+		finally {
+			discard(tempFile);
+		}
+	}
+	
+	/**
+	 * Reads the given image scaled down to fit into a square of the given size
+	 * 
+	 * @param file the image file
+	 * @param maxSize the maximum width and height
+	 * @return the scaled image or null if it is not a supported image
+	 * @throws IOException
+	 */
+	protected BufferedImage readScaled(File file, int maxSize) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(file);
+		if (in == null) {
+			return null;
+		}
+		
+		BufferedImage img;
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				return null;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+				
+				// keep twice the resolution needed so that the final scaling can smooth the result
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = Math.max(1, longestSide / (maxSize * 2));
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				img = reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+		finally {
+			in.close();
+		}
+		
+		int longestSide = Math.max(img.getWidth(), img.getHeight());
+		if (longestSide <= maxSize) {
+			return toRgb(img, img.getWidth(), img.getHeight());
+		}
+		
+		double scale = (double) maxSize / longestSide;
+		int width = Math.max(1, (int) Math.round(img.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(img.getHeight() * scale));
+		return toRgb(img, width, height);
+	}
+	
+	/**
+	 * Draws the image into a new image of the given size with a pixel layout every image writer
+	 * supports
+	 */
+	private BufferedImage toRgb(BufferedImage img, int width, int height) {
+		int type = img.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage scaled = new BufferedImage(width, height, type);
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(img, 0, 0, width, height, null);
+		}
+		finally {
+			g.dispose();
+		}
+		return scaled;
+	}
+	
+	/**
+	 * Photos are derived as jpeg, everything else as png so that transparency is kept
+	 */
+	private String getDerivedFormat(String filename) {
+		String extension = getExtension(filename).toLowerCase();
+		return ("jpg".equals(extension) || "jpeg".equals(extension)) ? "jpeg" : "png";
+	}
+	
+	/**
+	 * Gets the cache holding the thumbnails and previews, below the complex obs directory
+	 * 
+	 * @return the cache
+	 */
+	protected synchronized DerivedImageCache getDerivedImageCache() {
+		if (derivedImageCache == null) {
+			AdministrationService as = Context.getAdministrationService();
+			File dir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(as
+			        .getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
+			long maxSize = 100;
+			try {
+				maxSize = Long.parseLong(as.getGlobalProperty(OpenmrsConstants.GP_DERIVED_IMAGE_CACHE_MAX_SIZE, "100")
+				        .trim());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for " + OpenmrsConstants.GP_DERIVED_IMAGE_CACHE_MAX_SIZE + ", using " + maxSize);
+			}
+			derivedImageCache = new DerivedImageCache(new File(dir, DERIVED_DIRECTORY_NAME), maxSize * 1024 * 1024);
+		}
+		return derivedImageCache;
+	}
+	
+	/**
+	 * Also removes the thumbnails and previews of the image once the image itself is gone
+	 * 
+	 * @see org.openmrs.obs.handler.AbstractHandler#purgeComplexData(org.openmrs.Obs)
+	 */
+	@Override
+	public boolean purgeComplexData(Obs obs) {
+		String key = getComplexDataKey(obs);
+		File file = getComplexDataFile(obs);
+		boolean purged = super.purgeComplexData(obs);
+		if (purged && !file.exists()) {
+			removeDerivedImages(key);
+		}
+		return purged;
+	}
+	
+	/**
+	 * Removes the thumbnail and preview of the image stored under the given key, which are stale
+	 * once the file of an existing obs has been replaced
+	 */
+	private void removeDerivedImages(String key) {
+		String format = getDerivedFormat(new File(key).getName());
+		getDerivedImageCache().remove(ComplexObsHandler.THUMBNAIL_VIEW + "/" + key + "." + format);
+		getDerivedImageCache().remove(ComplexObsHandler.PREVIEW_VIEW + "/" + key + "." + format);
+	}
+	
+	/**
+	 * @param thumbnailSize the maximum width and height of thumbnails in pixels
+	 */
+	public void setThumbnailSize(int thumbnailSize) {
+		this.thumbnailSize = thumbnailSize;
+	}
+	
+	/**
+	 * @param previewSize the maximum width and height of previews in pixels
+	 */
+	public void setPreviewSize(int previewSize) {
+		this.previewSize = previewSize;
+	}
+	
 	/**
 	 * @see org.openmrs.obs.ComplexObsHandler#getSupportedViews()
 	 */
@@ -143,18 +391,21 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 			throw new APIException("Obs.error.cannot.save.complex", new Object[] { obs.getObsId() });
 		}
 		
+		ComplexObsStorage storage = getStorage();
+		File tempFile = null;
 		try {
-			File outfile = getOutputFileToWrite(obs);
-			
 			String extension = getExtension(obs.getComplexData().getTitle());
 			
 			// TODO: Check this extension against the registered extensions for validity
 			
 			// Write the file to the file system.
-			ImageIO.write(img, extension, outfile);
+			tempFile = storage.createTempFile();
+			ImageIO.write(img, extension, tempFile);
+			String key = storage.store(tempFile, obs);
+			removeDerivedImages(key);
 			
 			// Set the Title and URI for the valueComplex
-			obs.setValueComplex(extension + " image |" + outfile.getName());
+			obs.setValueComplex(extension + " image |" + key);
 			
 			// Remove the ComlexData from the Obs
 			obs.setComplexData(null);
@@ -163,6 +414,9 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 		catch (IOException ioe) {
 			throw new APIException("Obs.error.trying.write.complex", null, ioe);
 		}
+		finally {
+			discard(tempFile);
+		}
 		
 		return obs;
 	}
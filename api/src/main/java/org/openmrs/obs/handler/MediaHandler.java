@@ -22,6 +22,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.APIException;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
 import org.openmrs.util.OpenmrsUtil;
 
 /**
@@ -92,24 +93,30 @@ public class MediaHandler extends AbstractHandler implements ComplexObsHandler {
 	 */
 	public Obs saveObs(Obs obs) throws APIException {
 		
+		ComplexObsStorage storage = getStorage();
+		File tempFile = null;
 		try {
 			// Write the File to the File System
 			String fileName = obs.getComplexData().getTitle();
-			File outfile = getOutputFileToWrite(obs);
-			OutputStream out = new FileOutputStream(outfile, false);
+			tempFile = storage.createTempFile();
+			OutputStream out = new FileOutputStream(tempFile, false);
 			FileInputStream mediaStream = (FileInputStream) obs.getComplexData().getData();
 			OpenmrsUtil.copyFile(mediaStream, out);
 			
-			// Store the filename in the Obs
-			obs.setComplexData(null);
-			obs.setValueComplex(fileName + "|" + outfile.getName());
-			
 			// close the stream
 			out.close();
+			
+			// Store the filename in the Obs
+			String key = storage.store(tempFile, obs);
+			obs.setComplexData(null);
+			obs.setValueComplex(fileName + "|" + key);
 		}
 		catch (IOException ioe) {
 			throw new APIException("Obs.error.trying.write.complex", null, ioe);
 		}
+		finally {
+			discard(tempFile);
+		}
 		
 		return obs;
 	}
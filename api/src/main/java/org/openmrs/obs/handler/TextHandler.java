@@ -25,6 +25,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.APIException;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
 import org.openmrs.util.OpenmrsUtil;
 
 /**
@@ -109,10 +110,12 @@ public class TextHandler extends AbstractHandler implements ComplexObsHandler {
 			log.error("Cannot save complex data where obsId=" + obs.getObsId() + " because its ComplexData is null.");
 			return obs;
 		}
+		ComplexObsStorage storage = getStorage();
+		File tempFile = null;
 		BufferedWriter fout = null;
 		try {
-			File outfile = getOutputFileToWrite(obs);
-			fout = new BufferedWriter(new FileWriter(outfile));
+			tempFile = storage.createTempFile();
+			fout = new BufferedWriter(new FileWriter(tempFile));
 			Reader tempRd = null;
 			Object data = obs.getComplexData().getData();
 			if (data instanceof char[]) {
@@ -134,8 +137,11 @@ public class TextHandler extends AbstractHandler implements ComplexObsHandler {
 				}
 			}
 			
+			fout.close();
+			String key = storage.store(tempFile, obs);
+			
 			// Set the Title and URI for the valueComplex
-			obs.setValueComplex(outfile.getName() + " file |" + outfile.getName());
+			obs.setValueComplex(getStoredFileName(obs, key) + " file |" + key);
 			
 			// Remove the ComplexData from the Obs
 			obs.setComplexData(null);
@@ -151,6 +157,7 @@ public class TextHandler extends AbstractHandler implements ComplexObsHandler {
 			catch (Exception e) {
 				// pass
 			}
+			discard(tempFile);
 		}
 		
 		return obs;
@@ -0,0 +1,96 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.api.context.Context;
+import org.openmrs.obs.ComplexObsStorage;
+import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Base class for storages that keep complex data as files below the directory set by the global
+ * property {@link OpenmrsConstants#GLOBAL_PROPERTY_COMPLEX_OBS_DIR}
+ * 
+ * @since 1.12
+ */
+public abstract class BaseFileComplexObsStorage implements ComplexObsStorage {
+	
+	/**
+	 * Name of the directory, below the complex obs directory, that holds files being written
+	 */
+	public static final String TEMP_DIRECTORY_NAME = ".tmp";
+	
+	/**
+	 * @return the directory the complex obs files are stored in
+	 */
+	public File getDirectory() {
+		return OpenmrsUtil.getDirectoryInApplicationDataDirectory(Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
+	}
+	
+	/**
+	 * @see org.openmrs.obs.ComplexObsStorage#createTempFile()
+	 */
+	public File createTempFile() throws IOException {
+		File tempDir = new File(getDirectory(), TEMP_DIRECTORY_NAME);
+		if (!tempDir.exists() && !tempDir.mkdirs() && !tempDir.isDirectory()) {
+			throw new IOException("Unable to create directory " + tempDir.getAbsolutePath());
+		}
+		return File.createTempFile("complexobs", ".part", tempDir);
+	}
+	
+	/**
+	 * @see org.openmrs.obs.ComplexObsStorage#getFile(java.lang.String)
+	 */
+	public File getFile(String key) {
+		return new File(getDirectory(), key);
+	}
+	
+	/**
+	 * Moves the source file to the target in a single step if the file system supports it, so that
+	 * readers never see a partially written file
+	 * 
+	 * @param source the file to move
+	 * @param target the destination, which is replaced if it exists
+	 * @throws IOException
+	 */
+	protected void moveIntoPlace(File source, File target) throws IOException {
+		File parent = target.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create directory " + parent.getAbsolutePath());
+		}
+		
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Gets the extension of the given filename, "raw" if it has none
+	 * 
+	 * @param filename the filename, may be null
+	 * @return the part after the last period in the filename
+	 */
+	protected String getExtension(String filename) {
+		String extension = StringUtils.substringAfterLast(StringUtils.defaultString(filename), ".");
+		return StringUtils.isNotBlank(extension) ? extension : "raw";
+	}
+	
+}
@@ -0,0 +1,129 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs.storage;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Obs;
+import org.openmrs.api.db.ObsDAO;
+
+/**
+ * Names complex obs files after the SHA-256 hash of their content and spreads them over two
+ * levels of sub directories taken from the start of the hash, e.g.
+ * <code>3f/a2/3fa2...e1.jpg</code>. Identical payloads are therefore stored only once, no
+ * directory ever holds more than a small share of the files and names never collide. Files are
+ * only removed once no obs refers to them anymore.
+ * 
+ * @since 1.12
+ */
+public class ContentAddressedComplexObsStorage extends BaseFileComplexObsStorage {
+	
+	private static final Log log = LogFactory.getLog(ContentAddressedComplexObsStorage.class);
+	
+	private static final String HASH_ALGORITHM = "SHA-256";
+	
+	private ObsDAO obsDAO;
+	
+	public void setObsDAO(ObsDAO obsDAO) {
+		this.obsDAO = obsDAO;
+	}
+	
+	/**
+	 * @see org.openmrs.obs.ComplexObsStorage#store(java.io.File, org.openmrs.Obs)
+	 * @should store identical content only once
+	 * @should shard files by the start of the hash
+	 */
+	public String store(File tempFile, Obs obs) throws IOException {
+		String title = obs.getComplexData() == null ? null : obs.getComplexData().getTitle();
+		String key = getKey(hash(tempFile), getExtension(title));
+		File target = getFile(key);
+		
+		if (target.exists() && target.length() == tempFile.length()) {
+			log.debug("Content of " + title + " is already stored as " + key);
+			if (!tempFile.delete()) {
+				tempFile.deleteOnExit();
+			}
+		} else {
+			moveIntoPlace(tempFile, target);
+		}
+		
+		return key;
+	}
+	
+	/**
+	 * @see org.openmrs.obs.ComplexObsStorage#delete(java.lang.String)
+	 * @should not delete content that is used by another obs
+	 */
+	public boolean delete(String key) {
+		// the obs being purged still references the key at this point
+		if (obsDAO != null && obsDAO.getObsCountByComplexDataKey(key) > 1) {
+			log.debug("Keeping " + key + " since it is used by other obs");
+			return true;
+		}
+		
+		File file = getFile(key);
+		return file.exists() && file.delete();
+	}
+	
+	/**
+	 * Gets the key for content with the given hash
+	 * 
+	 * @param hash the hex encoded hash of the content
+	 * @param extension the file extension to use
+	 * @return the key, the relative path of the file
+	 */
+	public String getKey(String hash, String extension) {
+		return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "." + extension;
+	}
+	
+	/**
+	 * Computes the hex encoded hash of the content of the given file
+	 * 
+	 * @param file the file to hash
+	 * @return the hash
+	 * @throws IOException
+	 */
+	public String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(HASH_ALGORITHM + " is not supported by this JVM", e);
+		}
+		
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally {
+			in.close();
+		}
+		
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+	
+}
@@ -0,0 +1,121 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.UUID;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Obs;
+
+/**
+ * Keeps all complex obs files in one directory, named after the title of the complex data. If a
+ * file with that name exists, a two-digit counter is appended to the name. This is the default
+ * storage and matches how complex obs have always been stored.
+ * 
+ * @since 1.12
+ */
+public class FlatFileComplexObsStorage extends BaseFileComplexObsStorage {
+	
+	private static final Log log = LogFactory.getLog(FlatFileComplexObsStorage.class);
+	
+	/**
+	 * The number of counter values tried before falling back to a generated unique name
+	 */
+	private static final int MAX_COUNTER = 100;
+	
+	/**
+	 * @see org.openmrs.obs.ComplexObsStorage#store(java.io.File, org.openmrs.Obs)
+	 */
+	public String store(File tempFile, Obs obs) throws IOException {
+		File outputFile = getOutputFile(obs);
+		moveIntoPlace(tempFile, outputFile);
+		return outputFile.getName();
+	}
+	
+	/**
+	 * @see org.openmrs.obs.ComplexObsStorage#delete(java.lang.String)
+	 */
+	public boolean delete(String key) {
+		File file = getFile(key);
+		return file.exists() && file.delete();
+	}
+	
+	/**
+	 * Returns the file that the complex data of the given obs should be written to. For new obs
+	 * the name is reserved by creating the file, so concurrent saves of data with the same title
+	 * never share a file.
+	 * 
+	 * @param obs the Obs with a non-null complex data on it
+	 * @return File that the complex data should be written to
+	 * @throws IOException
+	 */
+	public File getOutputFile(Obs obs) throws IOException {
+		String title = obs.getComplexData().getTitle();
+		File dir = getDirectory();
+		
+		String baseName;
+		String extension;
+		if (null == title) {
+			baseName = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date());
+			extension = null;
+		} else {
+			extension = getExtension(title);
+			baseName = title.replace("." + extension, "");
+		}
+		
+		File outputFile = new File(dir, getFilename(baseName, extension));
+		if (obs.getObsId() != null) {
+			return outputFile;
+		}
+		
+		// If the Obs does not exist, but the File does, append a two-digit
+		// count number to the filename and save it.
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(0);
+		nf.setMinimumIntegerDigits(2);
+		int i = 0;
+		while (!outputFile.createNewFile()) {
+			if (++i >= MAX_COUNTER) {
+				outputFile = new File(dir, getFilename(baseName + "_" + UUID.randomUUID(), extension));
+				log.debug("Unable to find a free counter for " + baseName + ", using " + outputFile.getName());
+				outputFile.createNewFile();
+				break;
+			}
+			outputFile = new File(dir, getFilename(baseName + "_" + nf.format(i), extension));
+		}
+		
+		return outputFile;
+	}
+	
+	/**
+	 * Gets the extension the same way as {@link org.openmrs.obs.handler.AbstractHandler}, so that
+	 * the names of new files do not change, i.e. a title without a period is its own extension
+	 * 
+	 * @see org.openmrs.obs.storage.BaseFileComplexObsStorage#getExtension(java.lang.String)
+	 */
+	@Override
+	protected String getExtension(String filename) {
+		String[] filenameParts = filename.split("\\.");
+		String extension = (filenameParts.length < 2) ? filenameParts[0] : filenameParts[filenameParts.length - 1];
+		return StringUtils.isNotEmpty(extension) ? extension : "raw";
+	}
+	
+	private String getFilename(String baseName, String extension) {
+		return extension == null ? baseName : baseName + "." + extension;
+	}
+	
+}
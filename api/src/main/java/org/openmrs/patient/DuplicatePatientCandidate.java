@@ -0,0 +1,109 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.patient;
+
+import org.openmrs.BaseOpenmrsData;
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+
+/**
+ * A pair of patients that are likely to be the same person, as found by
+ * {@link PatientService#detectDuplicatePatients(boolean)}. The pair is kept until it is reviewed,
+ * a candidate that turned out not to be a duplicate is voided so that it is not suggested again.
+ * The patient with the lower id is always {@link #getPatient()}.
+ * 
+ * @see DuplicatePatientDetector
+ * @since 1.12
+ */
+public class DuplicatePatientCandidate extends BaseOpenmrsData {
+	
+	private Integer duplicatePatientCandidateId;
+	
+	private Patient patient;
+	
+	private Patient duplicate;
+	
+	/**
+	 * How similar the patients are, from 0 to 1
+	 */
+	private Double score;
+	
+	/**
+	 * Comma separated names of the fields the patients agree on
+	 */
+	private String matchedOn;
+	
+	public DuplicatePatientCandidate() {
+	}
+	
+	public DuplicatePatientCandidate(Patient patient, Patient duplicate, Double score, String matchedOn) {
+		this.patient = patient;
+		this.duplicate = duplicate;
+		this.score = score;
+		this.matchedOn = matchedOn;
+	}
+	
+	public Integer getDuplicatePatientCandidateId() {
+		return duplicatePatientCandidateId;
+	}
+	
+	public void setDuplicatePatientCandidateId(Integer duplicatePatientCandidateId) {
+		this.duplicatePatientCandidateId = duplicatePatientCandidateId;
+	}
+	
+	public Patient getPatient() {
+		return patient;
+	}
+	
+	public void setPatient(Patient patient) {
+		this.patient = patient;
+	}
+	
+	public Patient getDuplicate() {
+		return duplicate;
+	}
+	
+	public void setDuplicate(Patient duplicate) {
+		this.duplicate = duplicate;
+	}
+	
+	public Double getScore() {
+		return score;
+	}
+	
+	public void setScore(Double score) {
+		this.score = score;
+	}
+	
+	public String getMatchedOn() {
+		return matchedOn;
+	}
+	
+	public void setMatchedOn(String matchedOn) {
+		this.matchedOn = matchedOn;
+	}
+	
+	/**
+	 * @see org.openmrs.OpenmrsObject#getId()
+	 */
+	@Override
+	public Integer getId() {
+		return getDuplicatePatientCandidateId();
+	}
+	
+	/**
+	 * @see org.openmrs.OpenmrsObject#setId(java.lang.Integer)
+	 */
+	@Override
+	public void setId(Integer id) {
+		setDuplicatePatientCandidateId(id);
+	}
+	
+}
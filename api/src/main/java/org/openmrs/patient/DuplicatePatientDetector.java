@@ -0,0 +1,654 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.patient;
+
+import java.text.Normalizer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.db.PatientDAO;
+
+/**
+ * Finds patients that are likely to be the same person without comparing every patient with every
+ * other one. Patients are grouped into blocks by keys that duplicates are expected to share:
+ * <ul>
+ * <li>gender and birthdate</li>
+ * <li>an identifier</li>
+ * <li>gender, birth year and the soundex code of a family name</li>
+ * </ul>
+ * Only patients within the same block are compared. The pairs are scored on their names,
+ * birthdate, gender and identifiers by several threads and the ones scoring at least the
+ * threshold are saved as {@link DuplicatePatientCandidate}s, unless the pair was saved before.
+ * <p>
+ * A full run reads the blocking keys of all patients into a sorted array of hashes, a run for the
+ * patients changed since a date looks up the other members of their blocks in the database.
+ * 
+ * @since 1.12
+ */
+public class DuplicatePatientDetector {
+	
+	private static final Log log = LogFactory.getLog(DuplicatePatientDetector.class);
+	
+	/**
+	 * The number of patients read from the database at a time
+	 */
+	private static final int BATCH_SIZE = 1000;
+	
+	/**
+	 * The number of pairs that are scored at a time
+	 */
+	private static final int PAIRS_PER_CHUNK = 5000;
+	
+	private static final Map<Character, Set<String>> SPELLINGS = getSpellings();
+	
+	private final PatientDAO dao;
+	
+	private final double threshold;
+	
+	private final int maxBlockSize;
+	
+	private ExecutorService executor;
+	
+	private int threads;
+	
+	/**
+	 * @param dao the patient dao
+	 * @param threshold the minimum score of the saved candidates
+	 * @param maxBlockSize blocks with more patients than this are skipped
+	 */
+	public DuplicatePatientDetector(PatientDAO dao, double threshold, int maxBlockSize) {
+		this.dao = dao;
+		this.threshold = threshold;
+		this.maxBlockSize = maxBlockSize;
+	}
+	
+	/**
+	 * Finds and saves the duplicate candidates
+	 * 
+	 * @param changedSince if not null only pairs involving patients changed after this date are
+	 *            considered
+	 * @return the number of new candidates
+	 */
+	public int detect(Date changedSince) {
+		threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		executor = Executors.newFixedThreadPool(threads);
+		try {
+			return changedSince == null ? detectAll() : detectChanged(changedSince);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private int detectAll() {
+		// each entry holds the hash of a blocking key in the upper and the patient id in the lower
+		// half, so sorting the array brings the members of each block together
+		long[] index = new long[BATCH_SIZE];
+		int size = 0;
+		Integer lastPatientId = null;
+		List<Integer> patientIds;
+		while (!(patientIds = dao.getPatientIds(lastPatientId, BATCH_SIZE)).isEmpty()) {
+			for (Record record : loadRecords(patientIds).values()) {
+				for (String key : record.getBlockingKeys()) {
+					if (size == index.length) {
+						index = Arrays.copyOf(index, size * 2);
+					}
+					index[size++] = ((long) key.hashCode() << 32) | (record.patientId & 0xffffffffL);
+				}
+			}
+			lastPatientId = patientIds.get(patientIds.size() - 1);
+		}
+		Arrays.parallelSort(index, 0, size);
+		
+		PairCollector pairs = new PairCollector(new HashMap<Integer, Record>());
+		List<Integer> block = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++) {
+			if (i > 0 && (index[i] >>> 32) != (index[i - 1] >>> 32)) {
+				addBlock(block, null, pairs);
+				block.clear();
+			}
+			block.add((int) index[i]);
+		}
+		addBlock(block, null, pairs);
+		
+		return pairs.finish();
+	}
+	
+	private int detectChanged(Date changedSince) {
+		List<Integer> changedIds = dao.getPatientIdsChangedSince(changedSince);
+		int created = 0;
+		for (int i = 0; i < changedIds.size(); i += BATCH_SIZE) {
+			Map<Integer, Record> records = loadRecords(changedIds.subList(i, Math.min(changedIds.size(), i + BATCH_SIZE)));
+			
+			Map<String, List<Integer>> blocks = new HashMap<String, List<Integer>>();
+			for (Record record : records.values()) {
+				for (String key : record.getBlockingKeys()) {
+					blocks.put(key, new ArrayList<Integer>());
+				}
+			}
+			
+			Set<Integer> partnerIds = findPartnerIds(records.values());
+			partnerIds.removeAll(records.keySet());
+			Map<Integer, Record> all = new HashMap<Integer, Record>(records);
+			all.putAll(loadRecords(partnerIds));
+			for (Record record : all.values()) {
+				for (String key : record.getBlockingKeys()) {
+					List<Integer> block = blocks.get(key);
+					if (block != null) {
+						block.add(record.patientId);
+					}
+				}
+			}
+			
+			PairCollector pairs = new PairCollector(all);
+			for (List<Integer> block : blocks.values()) {
+				addBlock(block, records.keySet(), pairs);
+			}
+			created += pairs.finish();
+		}
+		return created;
+	}
+	
+	/**
+	 * Looks up the patients that may share a blocking key with the given ones
+	 */
+	private Set<Integer> findPartnerIds(Collection<Record> records) {
+		Set<Integer> partnerIds = new HashSet<Integer>();
+		Set<Date> birthdates = new HashSet<Date>();
+		Set<String> identifiers = new HashSet<String>();
+		Map<Date, Set<Character>> initialsByYear = new HashMap<Date, Set<Character>>();
+		for (Record record : records) {
+			identifiers.addAll(record.identifiers);
+			if (record.birthdate != null) {
+				birthdates.add(truncate(record.birthdate, Calendar.DATE));
+				Date year = truncate(record.birthdate, Calendar.YEAR);
+				if (!initialsByYear.containsKey(year)) {
+					initialsByYear.put(year, new HashSet<Character>());
+				}
+				for (String code : record.getFamilyNameCodes()) {
+					initialsByYear.get(year).add(code.charAt(0));
+				}
+			}
+		}
+		
+		for (Date day : birthdates) {
+			partnerIds.addAll(dao.getPatientIdsByBirthdate(day, add(day, Calendar.DATE)));
+		}
+		if (!identifiers.isEmpty()) {
+			partnerIds.addAll(dao.getPatientIdsByIdentifiers(identifiers));
+		}
+		for (Map.Entry<Date, Set<Character>> entry : initialsByYear.entrySet()) {
+			Set<String> initials = new HashSet<String>();
+			for (Character initial : entry.getValue()) {
+				initials.addAll(SPELLINGS.get(initial));
+			}
+			partnerIds.addAll(dao.getPatientIdsByFamilyNameInitials(initials, entry.getKey(), add(entry.getKey(),
+			    Calendar.YEAR)));
+		}
+		return partnerIds;
+	}
+	
+	/**
+	 * Maps each letter from A to Z to the upper case letters that {@link #normalize(String)} turns
+	 * into it, like E to E, \u00c9, \u00c8 and so on, so that the database finds the family names
+	 * whose soundex code starts with the letter
+	 * 
+	 * @return the spellings of each letter
+	 * @should map accented letters to their base letter
+	 */
+	static Map<Character, Set<String>> getSpellings() {
+		Map<Character, Set<String>> spellings = new HashMap<Character, Set<String>>();
+		for (char letter = 'A'; letter <= 'Z'; letter++) {
+			spellings.put(letter, new HashSet<String>());
+			spellings.get(letter).add(String.valueOf(letter));
+		}
+		// the latin letters with diacritics are in the latin-1 supplement, the latin extended A and B
+		// and the latin extended additional blocks
+		for (char c = '\u00c0'; c <= '\u1eff'; c++) {
+			if (c == '\u0250') {
+				c = '\u1e00';
+			}
+			if (Character.isUpperCase(c)) {
+				String normalized = normalize(String.valueOf(c));
+				if (normalized != null && normalized.length() == 1 && spellings.containsKey(normalized.charAt(0))) {
+					spellings.get(normalized.charAt(0)).add(String.valueOf(c));
+				}
+			}
+		}
+		return spellings;
+	}
+	
+	/**
+	 * Adds the pairs of a block to the collector
+	 * 
+	 * @param block the ids of the patients in the block
+	 * @param changedIds if not null only pairs with at least one of these patients are added
+	 * @param pairs the collector
+	 */
+	private void addBlock(List<Integer> block, Set<Integer> changedIds, PairCollector pairs) {
+		if (block.size() < 2) {
+			return;
+		}
+		if (block.size() > maxBlockSize) {
+			if (log.isDebugEnabled()) {
+				log.debug("Skipping a block of " + block.size() + " patients");
+			}
+			return;
+		}
+		for (int i = 0; i < block.size(); i++) {
+			for (int j = i + 1; j < block.size(); j++) {
+				int a = block.get(i);
+				int b = block.get(j);
+				if (a != b && (changedIds == null || changedIds.contains(a) || changedIds.contains(b))) {
+					pairs.add(a, b);
+				}
+			}
+		}
+	}
+	
+	private Map<Integer, Record> loadRecords(Collection<Integer> patientIds) {
+		Map<Integer, Record> records = new HashMap<Integer, Record>();
+		if (patientIds.isEmpty()) {
+			return records;
+		}
+		for (Object[] row : dao.getPatientDemographics(patientIds)) {
+			Record record = new Record((Integer) row[0]);
+			record.gender = (String) row[1];
+			record.birthdate = (Date) row[2];
+			records.put(record.patientId, record);
+		}
+		for (Object[] row : dao.getPatientNameValues(patientIds)) {
+			Record record = records.get(row[0]);
+			if (record != null) {
+				record.addName((String) row[1], (String) row[2]);
+			}
+		}
+		for (Object[] row : dao.getPatientIdentifierValues(patientIds)) {
+			Record record = records.get(row[0]);
+			if (record != null) {
+				record.addIdentifier((String) row[1]);
+			}
+		}
+		return records;
+	}
+	
+	/**
+	 * Collects the pairs to compare and scores them in chunks, so that the number of pairs and
+	 * records kept in memory is bounded
+	 */
+	private class PairCollector {
+		
+		private final Map<Integer, Record> records;
+		
+		private Set<Long> pending = new LinkedHashSet<Long>();
+		
+		private int created = 0;
+		
+		PairCollector(Map<Integer, Record> records) {
+			this.records = records;
+		}
+		
+		void add(int a, int b) {
+			pending.add(a < b ? pair(a, b) : pair(b, a));
+			if (pending.size() >= PAIRS_PER_CHUNK) {
+				flush();
+			}
+		}
+		
+		int finish() {
+			flush();
+			return created;
+		}
+		
+		private void flush() {
+			if (pending.isEmpty()) {
+				return;
+			}
+			
+			Set<Integer> ids = new HashSet<Integer>();
+			for (long pair : pending) {
+				ids.add((int) (pair >>> 32));
+				ids.add((int) pair);
+			}
+			for (Object[] row : dao.getDuplicatePatientCandidatePairs(ids)) {
+				pending.remove(pair((Integer) row[0], (Integer) row[1]));
+			}
+			Set<Integer> missing = new HashSet<Integer>(ids);
+			missing.removeAll(records.keySet());
+			records.putAll(loadRecords(missing));
+			
+			for (Match match : score(new ArrayList<Long>(pending))) {
+				DuplicatePatientCandidate candidate = new DuplicatePatientCandidate(dao.getPatient(match.patientId), dao
+				        .getPatient(match.duplicateId), match.score, match.matchedOn);
+				candidate.setCreator(Context.getAuthenticatedUser());
+				candidate.setDateCreated(new Date());
+				dao.saveDuplicatePatientCandidate(candidate);
+				created++;
+			}
+			pending = new LinkedHashSet<Long>();
+			
+			// the records of later chunks are loaded again when needed, so that neither this map nor
+			// the session grows with the number of patients
+			records.clear();
+			Context.flushSession();
+			Context.clearSession();
+		}
+		
+		/**
+		 * Scores the pairs on several threads, returning the matches that reach the threshold
+		 */
+		private List<Match> score(final List<Long> pairs) {
+			List<Future<List<Match>>> futures = new ArrayList<Future<List<Match>>>();
+			int sliceSize = (pairs.size() + threads - 1) / threads;
+			for (int i = 0; i < pairs.size(); i += sliceSize) {
+				final List<Long> slice = pairs.subList(i, Math.min(pairs.size(), i + sliceSize));
+				futures.add(executor.submit(new Callable<List<Match>>() {
+					
+					@Override
+					public List<Match> call() {
+						List<Match> matches = new ArrayList<Match>();
+						for (long pair : slice) {
+							Record a = records.get((int) (pair >>> 32));
+							Record b = records.get((int) pair);
+							if (a != null && b != null) {
+								Match match = compare(a, b);
+								if (match.score >= threshold) {
+									matches.add(match);
+								}
+							}
+						}
+						return matches;
+					}
+				}));
+			}
+			
+			List<Match> matches = new ArrayList<Match>();
+			try {
+				for (Future<List<Match>> future : futures) {
+					matches.addAll(future.get());
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new APIException("Interrupted while scoring duplicate patients", e);
+			}
+			catch (ExecutionException e) {
+				throw new APIException("Unable to score duplicate patients", e.getCause());
+			}
+			return matches;
+		}
+	}
+	
+	/**
+	 * Scores how similar two patients are. Agreement on an identifier weighs 0.35, on the
+	 * birthdate 0.2 (0.1 for the year only), on the gender 0.1, on a family name 0.2 (0.12 if it
+	 * only sounds alike) and on a given name 0.15 (0.1 if it only sounds alike).
+	 * 
+	 * @param a a patient
+	 * @param b another patient
+	 * @return the score of the pair, from 0 to 1
+	 * @should score identical patients with one
+	 * @should score names that sound alike lower than equal names
+	 * @should not score on missing values
+	 */
+	static Match compare(Record a, Record b) {
+		double score = 0;
+		List<String> matchedOn = new ArrayList<String>();
+		
+		if (intersects(a.identifiers, b.identifiers)) {
+			score += 0.35;
+			matchedOn.add("identifier");
+		}
+		
+		if (a.birthdate != null && b.birthdate != null) {
+			if (truncate(a.birthdate, Calendar.DATE).equals(truncate(b.birthdate, Calendar.DATE))) {
+				score += 0.2;
+				matchedOn.add("birthdate");
+			} else if (truncate(a.birthdate, Calendar.YEAR).equals(truncate(b.birthdate, Calendar.YEAR))) {
+				score += 0.1;
+				matchedOn.add("birthYear");
+			}
+		}
+		
+		if (a.gender != null && a.gender.equalsIgnoreCase(b.gender)) {
+			score += 0.1;
+			matchedOn.add("gender");
+		}
+		
+		if (intersects(a.familyNames, b.familyNames)) {
+			score += 0.2;
+			matchedOn.add("familyName");
+		} else if (intersects(a.getFamilyNameCodes(), b.getFamilyNameCodes())) {
+			score += 0.12;
+			matchedOn.add("familyNamePhonetic");
+		}
+		
+		if (intersects(a.givenNames, b.givenNames)) {
+			score += 0.15;
+			matchedOn.add("givenName");
+		} else if (intersects(a.getGivenNameCodes(), b.getGivenNameCodes())) {
+			score += 0.1;
+			matchedOn.add("givenNamePhonetic");
+		}
+		
+		int low = Math.min(a.patientId, b.patientId);
+		int high = Math.max(a.patientId, b.patientId);
+		return new Match(low, high, Math.round(score * 1000) / 1000d, StringUtils.join(matchedOn, ","));
+	}
+	
+	/**
+	 * Computes the American soundex code of a name
+	 * 
+	 * @param name the name, in upper case without accents
+	 * @return the four character code, or null if the name has no letters
+	 * @should encode names that sound alike to the same code
+	 * @should return null for a name without letters
+	 */
+	public static String soundex(String name) {
+		final String codes = "01230120022455012623010202";
+		StringBuilder sb = new StringBuilder(4);
+		char last = 0;
+		for (int i = 0; i < name.length() && sb.length() < 4; i++) {
+			char c = name.charAt(i);
+			if (c < 'A' || c > 'Z') {
+				continue;
+			}
+			char code = codes.charAt(c - 'A');
+			if (sb.length() == 0) {
+				sb.append(c);
+			} else if (code != '0' && code != last) {
+				sb.append(code);
+			}
+			// h and w do not separate letters with the same code, vowels do
+			if (c != 'H' && c != 'W') {
+				last = code;
+			}
+		}
+		if (sb.length() == 0) {
+			return null;
+		}
+		while (sb.length() < 4) {
+			sb.append('0');
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Converts a name to upper case letters without accents, digits, spaces or punctuation
+	 * 
+	 * @param name the name
+	 * @return the normalized name or null if nothing is left
+	 */
+	static String normalize(String name) {
+		if (name == null) {
+			return null;
+		}
+		String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD).toUpperCase(Locale.ENGLISH);
+		StringBuilder sb = new StringBuilder(decomposed.length());
+		for (int i = 0; i < decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (Character.isLetter(c) && Character.getType(c) != Character.NON_SPACING_MARK) {
+				sb.append(c);
+			}
+		}
+		return sb.length() == 0 ? null : sb.toString();
+	}
+	
+	private static boolean intersects(Set<String> a, Set<String> b) {
+		for (String value : a) {
+			if (b.contains(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static long pair(int low, int high) {
+		return ((long) low << 32) | (high & 0xffffffffL);
+	}
+	
+	private static Date truncate(Date date, int field) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		if (field == Calendar.YEAR) {
+			cal.set(Calendar.MONTH, Calendar.JANUARY);
+			cal.set(Calendar.DAY_OF_MONTH, 1);
+		}
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTime();
+	}
+	
+	private static Date add(Date date, int field) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		cal.add(field, 1);
+		return cal.getTime();
+	}
+	
+	/**
+	 * The values of a patient that are compared
+	 */
+	static class Record {
+		
+		final int patientId;
+		
+		String gender;
+		
+		Date birthdate;
+		
+		final Set<String> givenNames = new HashSet<String>();
+		
+		final Set<String> familyNames = new HashSet<String>();
+		
+		final Set<String> identifiers = new HashSet<String>();
+		
+		Record(int patientId) {
+			this.patientId = patientId;
+		}
+		
+		void addName(String givenName, String familyName) {
+			String given = normalize(givenName);
+			if (given != null) {
+				givenNames.add(given);
+			}
+			String family = normalize(familyName);
+			if (family != null) {
+				familyNames.add(family);
+			}
+		}
+		
+		void addIdentifier(String identifier) {
+			if (StringUtils.isNotBlank(identifier)) {
+				identifiers.add(identifier.trim().toUpperCase(Locale.ENGLISH));
+			}
+		}
+		
+		Set<String> getFamilyNameCodes() {
+			return getCodes(familyNames);
+		}
+		
+		Set<String> getGivenNameCodes() {
+			return getCodes(givenNames);
+		}
+		
+		Set<String> getBlockingKeys() {
+			Set<String> keys = new HashSet<String>();
+			String g = gender == null ? "" : gender.toUpperCase(Locale.ENGLISH);
+			if (birthdate != null) {
+				String day = new SimpleDateFormat("yyyy-MM-dd").format(birthdate);
+				keys.add("B|" + g + "|" + day);
+				for (String code : getFamilyNameCodes()) {
+					keys.add("N|" + g + "|" + day.substring(0, 4) + "|" + code);
+				}
+			}
+			for (String identifier : identifiers) {
+				keys.add("I|" + identifier);
+			}
+			return keys;
+		}
+		
+		private Set<String> getCodes(Set<String> names) {
+			Set<String> codes = new HashSet<String>();
+			for (String name : names) {
+				String code = soundex(name);
+				if (code != null) {
+					codes.add(code);
+				}
+			}
+			return codes;
+		}
+	}
+	
+	/**
+	 * A scored pair of patients
+	 */
+	static class Match {
+		
+		final int patientId;
+		
+		final int duplicateId;
+		
+		final double score;
+		
+		final String matchedOn;
+		
+		Match(int patientId, int duplicateId, double score, String matchedOn) {
+			this.patientId = patientId;
+			this.duplicateId = duplicateId;
+			this.score = score;
+			this.matchedOn = matchedOn;
+		}
+	}
+	
+}
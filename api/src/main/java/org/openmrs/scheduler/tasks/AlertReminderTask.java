@@ -9,17 +9,17 @@
  */
 package org.openmrs.scheduler.tasks;
 
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.User;
 import org.openmrs.api.context.Context;
-import org.openmrs.notification.Alert;
-import org.openmrs.notification.AlertRecipient;
 import org.openmrs.notification.Message;
 import org.openmrs.notification.MessageException;
+import org.openmrs.notification.MessageService;
+import org.openmrs.util.OpenmrsConstants;
 
 /**
  * Sample implementation of task that shows how to send emails to users/roles via message service.
@@ -39,12 +39,11 @@ public class AlertReminderTask extends AbstractTask {
 				authenticate();
 			}
 			
-			// Get all unread alerts
-			// TODO Change to getAllAlerts(Boolean includeRead, Boolean includeExpired);
-			Collection<Alert> alerts = Context.getAlertService().getAllAlerts(false);
+			// Count the unread alerts of each user in the database instead of loading them
+			Map<User, Integer> unreadAlertCounts = Context.getAlertService().getUnreadAlertCounts();
 			
 			// Send alert notifications to users who have unread alerts
-			sendAlertNotifications(alerts);
+			sendAlertNotifications(unreadAlertCounts);
 			
 		}
 		catch (Exception e) {
@@ -53,49 +52,29 @@ public class AlertReminderTask extends AbstractTask {
 	}
 	
 	/**
-	 * Send alerts
+	 * Queues a reminder for each user with unread alerts, the messages are sent in the background
 	 * 
-	 * @param alerts the unread alerts
-	 * @param users the users who have not read the alerts
+	 * @param unreadAlertCounts the number of unread alerts of each user
 	 */
-	private void sendAlertNotifications(Collection<Alert> alerts) {
-		
-		try {
-			
-			// Create a new message
-			Message message = Context.getMessageService().createMessage("Alert Reminder", "You have unread alerts.");
-			
-			// Get all recipients
-			Collection<User> users = getRecipients(alerts);
-			
-			// Send a message to each person only once
-			Context.getMessageService().sendMessage(message, users);
-			
-		}
-		catch (MessageException e) {
-			log.error(e);
-		}
-	}
-	
-	/**
-	 * Get the recipients of all unread alerts.
-	 * 
-	 * @param alerts
-	 * @return
-	 */
-	private Collection<User> getRecipients(Collection<Alert> alerts) {
-		Collection<User> users = new HashSet<User>();
-		for (Alert alert : alerts) {
-			log.debug("Send email to alert recipient(s) ...");
-			if (!alert.isAlertRead() && alert.getRecipients() != null) {
-				for (AlertRecipient recipient : alert.getRecipients()) {
-					if (!recipient.isAlertRead() && recipient.getRecipient() != null) {
-						users.add(recipient.getRecipient());
-					}
-				}
+	private void sendAlertNotifications(Map<User, Integer> unreadAlertCounts) {
+		MessageService messageService = Context.getMessageService();
+		int queued = 0;
+		for (Map.Entry<User, Integer> entry : unreadAlertCounts.entrySet()) {
+			String address = entry.getKey().getUserProperty(OpenmrsConstants.USER_PROPERTY_NOTIFICATION_ADDRESS);
+			if (StringUtils.isBlank(address)) {
+				continue;
+			}
+			try {
+				Message message = messageService.createMessage(address, null, "Alert Reminder", "You have "
+				        + entry.getValue() + " unread alert" + (entry.getValue() == 1 ? "." : "s."));
+				messageService.queueMessage(message);
+				queued++;
+			}
+			catch (MessageException e) {
+				log.error("Unable to queue an alert reminder for " + entry.getKey(), e);
 			}
 		}
-		return users;
+		log.debug("Queued alert reminders for " + queued + " users");
 	}
 	
 }
@@ -0,0 +1,57 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.scheduler.tasks;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+
+/**
+ * A scheduled task that looks for likely duplicate patients and saves them for review. Only the
+ * patients changed since the previous run are compared with the others, unless the task property
+ * {@link #INCREMENTAL_PROPERTY} is set to false.
+ * 
+ * @see org.openmrs.api.PatientService#detectDuplicatePatients(boolean)
+ * @since 1.12
+ */
+public class DetectDuplicatePatientsTask extends AbstractTask {
+	
+	private static final Log log = LogFactory.getLog(DetectDuplicatePatientsTask.class);
+	
+	/**
+	 * The name of the task property that turns incremental runs off when set to false
+	 */
+	public static final String INCREMENTAL_PROPERTY = "incremental";
+	
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (!isExecuting) {
+			if (log.isDebugEnabled()) {
+				log.debug("Starting Detect Duplicate Patients Task...");
+			}
+			
+			startExecuting();
+			try {
+				String incremental = taskDefinition == null ? null : taskDefinition.getProperty(INCREMENTAL_PROPERTY);
+				int created = Context.getPatientService().detectDuplicatePatients(!"false".equalsIgnoreCase(incremental));
+				log.info("Found " + created + " new duplicate patient candidates");
+			}
+			catch (Exception e) {
+				log.error("Error while detecting duplicate patients:", e);
+			}
+			finally {
+				stopExecuting();
+			}
+		}
+	}
+}
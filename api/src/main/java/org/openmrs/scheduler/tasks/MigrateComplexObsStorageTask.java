@@ -0,0 +1,72 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.scheduler.tasks;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.obs.ComplexObsStorage;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * A scheduled task that moves the files of all complex obs into the storage named by the task
+ * property {@link #STORAGE_BEAN_ID_PROPERTY}, the content addressed storage by default, and then
+ * makes it the storage in use by setting the global property
+ * {@link OpenmrsConstants#GP_COMPLEX_OBS_STORAGE_BEAN_ID}. Running the task again picks up obs
+ * saved in the meantime, the original files are kept and can be removed once all obs have been
+ * moved.
+ * 
+ * @see org.openmrs.api.ObsService#migrateComplexData(ComplexObsStorage)
+ * @since 1.12
+ */
+public class MigrateComplexObsStorageTask extends AbstractTask {
+	
+	private static final Log log = LogFactory.getLog(MigrateComplexObsStorageTask.class);
+	
+	/**
+	 * The name of the task property holding the spring bean id of the storage to move to
+	 */
+	public static final String STORAGE_BEAN_ID_PROPERTY = "storageBeanId";
+	
+	public static final String DEFAULT_STORAGE_BEAN_ID = "contentAddressedComplexObsStorage";
+	
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (!isExecuting) {
+			if (log.isDebugEnabled()) {
+				log.debug("Starting Migrate Complex Obs Storage Task...");
+			}
+			
+			startExecuting();
+			try {
+				String beanId = taskDefinition == null ? null : taskDefinition.getProperty(STORAGE_BEAN_ID_PROPERTY);
+				if (StringUtils.isBlank(beanId)) {
+					beanId = DEFAULT_STORAGE_BEAN_ID;
+				}
+				
+				ComplexObsStorage storage = Context.getRegisteredComponent(beanId, ComplexObsStorage.class);
+				int updated = Context.getObsService().migrateComplexData(storage);
+				Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GP_COMPLEX_OBS_STORAGE_BEAN_ID,
+				    beanId);
+				log.info("Moved the complex data of " + updated + " obs to " + beanId);
+			}
+			catch (Exception e) {
+				log.error("Error while migrating complex obs storage:", e);
+			}
+			finally {
+				stopExecuting();
+			}
+		}
+	}
+}
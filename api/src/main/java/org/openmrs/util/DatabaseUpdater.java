@@ -72,6 +72,20 @@ public class DatabaseUpdater {
 	
 	private static final String CONTEXT = "core";
 	
+	/**
+	 * The liquibase context of the changesets that only backfill data. These are not run while the
+	 * database is updated, but in the background once OpenMRS has started, see
+	 * {@link #startBackfills()}. A backfill must not be needed by the changesets that follow it.
+	 *
+	 * @since 1.12
+	 */
+	public static final String BACKFILL_CONTEXT = "backfill";
+	
+	/**
+	 * The default number of milliseconds to pause between the chunks of a backfill
+	 */
+	private static final long DEFAULT_BACKFILL_PAUSE = 1000;
+	
 	public static final String DATABASE_UPDATES_LOG_FILE = "liquibaseUpdateLogs.txt";
 	
 	private static Integer authenticatedUserId;
@@ -81,6 +95,22 @@ public class DatabaseUpdater {
 	 */
 	private static volatile List<String> updateWarnings = null;
 	
+	/**
+	 * Holds the progress reported by the executing custom liquibase changeset, if any
+	 */
+	private static volatile String updateProgress = null;
+	
+	/**
+	 * The thread running the backfill changesets, if any
+	 */
+	private static Thread backfillThread = null;
+	
+	/**
+	 * The milliseconds to pause between the chunks of a backfill, set on the thread running the
+	 * backfill changesets
+	 */
+	private static final ThreadLocal<Long> backfillPause = new ThreadLocal<Long>();
+	
 	/**
 	 * Convenience method to run the changesets using Liquibase to bring the database up to a
 	 * version compatible with the code
@@ -194,10 +224,12 @@ public class DatabaseUpdater {
 			@Override
 			public void visit(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database)
 			        throws LiquibaseException {
+				updateProgress = null;
 				if (callback != null) {
 					callback.executing(changeSet, numChangeSetsToRun);
 				}
 				super.visit(changeSet, databaseChangeLog, database);
+				updateProgress = null;
 			}
 		}
 		
@@ -233,7 +265,10 @@ public class DatabaseUpdater {
 		}
 		finally {
 			try {
-				lockHandler.releaseLock();
+				// a backfill that was stopped while it paused does not hold the lock
+				if (lockHandler.hasChangeLogLock()) {
+					lockHandler.releaseLock();
+				}
 			}
 			catch (Exception e) {
 				log.error("Could not release lock", e);
@@ -274,6 +309,146 @@ public class DatabaseUpdater {
 		return changesets.size() > 0;
 	}
 	
+	/**
+	 * Ask Liquibase if there are backfill changesets in the {@link #CHANGE_LOG_FILE} that have not
+	 * been run yet
+	 *
+	 * @return true/false whether backfills are required
+	 * @since 1.12
+	 */
+	public static boolean backfillsRequired() throws Exception {
+		return backfillsRequired(CHANGE_LOG_FILE);
+	}
+	
+	static boolean backfillsRequired(String changeLogFile) throws Exception {
+		Database database = null;
+		try {
+			Liquibase liquibase = getLiquibase(changeLogFile, null);
+			database = liquibase.getDatabase();
+			for (ChangeSet changeSet : liquibase.listUnrunChangeSets(BACKFILL_CONTEXT)) {
+				if (changeSet.getContexts() != null && changeSet.getContexts().contains(BACKFILL_CONTEXT)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			try {
+				database.getConnection().close();
+			}
+			catch (Exception e) {
+				//pass
+			}
+		}
+	}
+	
+	/**
+	 * Runs the backfill changesets that have not been run yet in a background thread. Chunked
+	 * changesets run on a single connection and pause between chunks for the number of milliseconds
+	 * in the {@link OpenmrsConstants#DATABASE_BACKFILL_PAUSE_RUNTIME_PROPERTY} runtime property. The
+	 * liquibase lock is released while they pause, so that other changelogs, e.g. of modules, can be
+	 * run and a server that is killed does not leave the lock behind. A backfill that is stopped,
+	 * e.g. by a shutdown, continues where it left off the next time this method is called.
+	 *
+	 * @see #BACKFILL_CONTEXT
+	 * @see org.openmrs.util.databasechange.ChunkedCustomTaskChange
+	 * @since 1.12
+	 * @should run the backfill changesets
+	 * @should release the lock between the chunks
+	 */
+	public static void startBackfills() {
+		startBackfills(CHANGE_LOG_FILE);
+	}
+	
+	static synchronized void startBackfills(final String changeLogFile) {
+		if (backfillThread != null && backfillThread.isAlive()) {
+			return;
+		}
+		try {
+			if (!backfillsRequired(changeLogFile)) {
+				return;
+			}
+		}
+		catch (Exception e) {
+			log.error("Unable to check if database backfills are required", e);
+			return;
+		}
+		
+		final long pause = getBackfillPauseProperty();
+		backfillThread = new Thread("OpenMRS database backfill") {
+			
+			@Override
+			public void run() {
+				backfillPause.set(pause);
+				try {
+					log.info("Starting the database backfills");
+					List<String> warnings = executeChangelog(changeLogFile, BACKFILL_CONTEXT, null, null, null);
+					if (warnings != null && !warnings.isEmpty()) {
+						log.warn("The database backfills reported warnings: " + warnings);
+					}
+					log.info("Finished the database backfills");
+				}
+				catch (Exception e) {
+					if (isInterrupted()) {
+						log.info("The database backfills were stopped, they will continue on the next startup");
+					} else {
+						log.error("A database backfill failed, it will be retried on the next startup", e);
+					}
+				}
+				finally {
+					backfillPause.remove();
+					updateProgress = null;
+				}
+			}
+		};
+		backfillThread.setDaemon(true);
+		backfillThread.start();
+	}
+	
+	/**
+	 * Stops the running backfill, if any, after the chunk it is processing. Its progress is kept.
+	 *
+	 * @since 1.12
+	 * @should stop the backfill after the current chunk and keep its progress
+	 */
+	public static synchronized void stopBackfills() {
+		if (backfillThread != null) {
+			backfillThread.interrupt();
+			try {
+				backfillThread.join(60000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			backfillThread = null;
+		}
+	}
+	
+	/**
+	 * @return the milliseconds to pause between the chunks of the running backfill, or -1 if the
+	 *         calling code is not part of a backfill
+	 * @since 1.12
+	 */
+	public static long getBackfillPause() {
+		Long pause = backfillPause.get();
+		return pause == null ? -1 : pause;
+	}
+	
+	private static long getBackfillPauseProperty() {
+		String pause = Context.getRuntimeProperties().getProperty(
+		    OpenmrsConstants.DATABASE_BACKFILL_PAUSE_RUNTIME_PROPERTY);
+		if (pause != null) {
+			try {
+				return Math.max(0, Long.parseLong(pause.trim()));
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for runtime property " + OpenmrsConstants.DATABASE_BACKFILL_PAUSE_RUNTIME_PROPERTY
+				        + ": " + pause);
+			}
+		}
+		return DEFAULT_BACKFILL_PAUSE;
+	}
+	
 	/**
 	 * Ask Liquibase if it needs to do any updates
 	 *
@@ -673,6 +848,25 @@ public class DatabaseUpdater {
 		updateWarnings.addAll(warnings);
 	}
 	
+	/**
+	 * This method is called by an executing custom changeset to report how far it got, e.g. for
+	 * changesets that process large tables in chunks.
+	 *
+	 * @param progress a short description of the progress of the changeset
+	 * @since 1.12
+	 */
+	public static void reportUpdateProgress(String progress) {
+		updateProgress = progress;
+	}
+	
+	/**
+	 * @return the progress last reported by the executing changeset, or null if it reported none
+	 * @since 1.12
+	 */
+	public static String getUpdateProgress() {
+		return updateProgress;
+	}
+	
 	/**
 	 * This method writes the given text to the database updates log file located in the application
 	 * data directory.
@@ -14,7 +14,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,7 +36,7 @@ public class HandlerUtil implements ApplicationListener<ContextRefreshedEvent> {
 	
 	private static final Log log = LogFactory.getLog(HandlerUtil.class);
 	
-	private static volatile Map<Key, List<?>> cachedHandlers = new WeakHashMap<HandlerUtil.Key, List<?>>();
+	private static final Map<Key, List<?>> cachedHandlers = new ConcurrentHashMap<Key, List<?>>();
 	
 	private static class Key {
 		
@@ -90,7 +90,7 @@ public class HandlerUtil implements ApplicationListener<ContextRefreshedEvent> {
 	}
 	
 	public static void clearCachedHandlers() {
-		cachedHandlers = new WeakHashMap<HandlerUtil.Key, List<?>>();
+		cachedHandlers.clear();
 	}
 	
 	/**
@@ -150,9 +150,7 @@ public class HandlerUtil implements ApplicationListener<ContextRefreshedEvent> {
 			}
 		});
 		
-		Map<Key, List<?>> newCachedHandlers = new WeakHashMap<Key, List<?>>(cachedHandlers);
-		newCachedHandlers.put(new Key(handlerType, type), handlers);
-		cachedHandlers = newCachedHandlers;
+		cachedHandlers.put(new Key(handlerType, type), handlers);
 		
 		return handlers;
 	}
@@ -25,6 +25,7 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -33,6 +34,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sf.ehcache.CacheManager;
 
@@ -68,9 +70,20 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	 */
 	private Map<String, WeakReference<Class<?>>> cachedClasses = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
 	
+	/**
+	 * Holds the names of the classes that neither the modules nor the web container could load, by
+	 * package. A package is forgotten when a module providing it is started or stopped.
+	 */
+	private final ConcurrentMap<String, Set<String>> missingClasses = new ConcurrentHashMap<String, Set<String>>();
+	
 	// suffix of the OpenMRS required library cache folder
 	private static final String LIBCACHESUFFIX = ".openmrs-lib-cache";
 	
+	static {
+		// lock per class name instead of on the whole class loader
+		ClassLoader.registerAsParallelCapable();
+	}
+	
 	/**
 	 * Creates the instance for the OpenmrsClassLoader
 	 */
@@ -137,37 +150,20 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	 * @should not load class from cache if class loader has been disposed
 	 * @should load class from parent first
 	 * @should load class if two module class loaders have same packages
+	 * @should not ask the parent again for a class it could not find
 	 */
 	@Override
-	public synchronized Class<?> loadClass(String name, final boolean resolve) throws ClassNotFoundException {
+	public Class<?> loadClass(String name, final boolean resolve) throws ClassNotFoundException {
 		// Check if the class has already been requested from this class loader
 		Class<?> c = getCachedClass(name);
 		if (c == null) {
-			// We do not try to load classes using this.findClass on purpose.
-			// All classes are loaded by web container or by module class loaders.
-			
-			// First try loading from modules such that we allow modules to load
-			// different versions of the same libraries that may already be used
-			// by core or the web container. An example is the chartsearch module
-			// which uses different versions of lucene and solr from core
-			String packageName = StringUtils.substringBeforeLast(name, ".");
-			Set<ModuleClassLoader> moduleClassLoaders = ModuleFactory.getModuleClassLoadersForPackage(packageName);
-			for (ModuleClassLoader moduleClassLoader : moduleClassLoaders) {
-				try {
-					c = moduleClassLoader.loadClass(name);
-					break;
-				}
-				catch (ClassNotFoundException e) {
-					// Continue trying...
+			synchronized (getClassLoadingLock(name)) {
+				c = getCachedClass(name);
+				if (c == null) {
+					c = loadUncachedClass(name);
+					cacheClass(name, c);
 				}
 			}
-			
-			if (c == null) {
-				// Finally try loading from web container
-				c = getParent().loadClass(name);
-			}
-			
-			cacheClass(name, c);
 		}
 		
 		if (resolve) {
@@ -177,6 +173,63 @@ public class OpenmrsClassLoader extends URLClassLoader {
 		return c;
 	}
 	
+	private Class<?> loadUncachedClass(String name) throws ClassNotFoundException {
+		String packageName = StringUtils.substringBeforeLast(name, ".");
+		Set<String> missing = missingClasses.get(packageName);
+		if (missing != null && missing.contains(name)) {
+			throw new ClassNotFoundException(name);
+		}
+		
+		// We do not try to load classes using this.findClass on purpose.
+		// All classes are loaded by web container or by module class loaders.
+		
+		// First try loading from modules such that we allow modules to load
+		// different versions of the same libraries that may already be used
+		// by core or the web container. An example is the chartsearch module
+		// which uses different versions of lucene and solr from core
+		Set<ModuleClassLoader> moduleClassLoaders = ModuleFactory.getModuleClassLoadersForPackage(packageName);
+		for (ModuleClassLoader moduleClassLoader : moduleClassLoaders) {
+			try {
+				return moduleClassLoader.loadClass(name);
+			}
+			catch (ClassNotFoundException e) {
+				// Continue trying...
+			}
+		}
+		
+		// Finally try loading from web container
+		try {
+			return getParent().loadClass(name);
+		}
+		catch (ClassNotFoundException e) {
+			if (missing == null) {
+				missing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+				Set<String> existing = missingClasses.putIfAbsent(packageName, missing);
+				if (existing != null) {
+					missing = existing;
+				}
+			}
+			missing.add(name);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Forgets the classes that could not be found in the given packages, so that they are looked
+	 * up again. Called when the modules providing these packages are started or stopped.
+	 * 
+	 * @param packageNames the names of the packages
+	 * @should look up the class again after its package was cleared
+	 */
+	public static void clearMissingClasses(Collection<String> packageNames) {
+		OpenmrsClassLoader instance = OpenmrsClassLoaderHolder.INSTANCE;
+		if (instance != null) {
+			for (String packageName : packageNames) {
+				instance.missingClasses.remove(packageName);
+			}
+		}
+	}
+	
 	private Class<?> getCachedClass(String name) {
 		WeakReference<Class<?>> ref = cachedClasses.get(name);
 		if (ref != null) {
@@ -583,6 +636,7 @@ public class OpenmrsClassLoader extends URLClassLoader {
 		OpenmrsClassLoader.log = null;
 		
 		getInstance().cachedClasses.clear();
+		getInstance().missingClasses.clear();
 	}
 	
 	/**
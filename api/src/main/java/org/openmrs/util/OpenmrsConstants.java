@@ -218,6 +218,15 @@ public final class OpenmrsConstants {
 	 */
 	public static String AUTO_UPDATE_DATABASE_RUNTIME_PROPERTY = "auto_update_database";
 	
+	/**
+	 * The name of the runtime property that a user can set to the number of milliseconds the
+	 * database backfills should pause between chunks, so that they do not slow down the system
+	 * 
+	 * @see DatabaseUpdater#startBackfills()
+	 * @since 1.12
+	 */
+	public static final String DATABASE_BACKFILL_PAUSE_RUNTIME_PROPERTY = "database_backfill_pause";
+	
 	/**
 	 * These words are ignored in concept and patient searches
 	 * 
@@ -798,6 +807,16 @@ public final class OpenmrsConstants {
 	
 	public static final String GLOBAL_PROPERTY_GZIP_ACCEPT_COMPRESSED_REQUESTS_FOR_PATHS = "gzip.acceptCompressedRequestsForPaths";
 	
+	/**
+	 * @since 1.12
+	 */
+	public static final String GLOBAL_PROPERTY_GZIP_COMPRESSION_LEVEL = "gzip.compressionLevel";
+	
+	/**
+	 * @since 1.12
+	 */
+	public static final String GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE = "gzip.minimumSize";
+	
 	public static final String GLOBAL_PROPERTY_MEDICAL_RECORD_OBSERVATIONS = "concept.medicalRecordObservations";
 	
 	public static final String GLOBAL_PROPERTY_PROBLEM_LIST = "concept.problemList";
@@ -1105,6 +1124,67 @@ public final class OpenmrsConstants {
 	 */
 	public static final String GP_DISABLE_VALIDATION = "validation.disable";
 	
+	/**
+	 * Specifies the spring bean id of the {@link org.openmrs.obs.ComplexObsStorage} that keeps the
+	 * files of complex obs
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_COMPLEX_OBS_STORAGE_BEAN_ID = "obs.complexObsStorageBeanId";
+	
+	/**
+	 * Specifies the maximum size in megabytes of the thumbnails and previews kept for image obs
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_DERIVED_IMAGE_CACHE_MAX_SIZE = "obs.derivedImageCacheMaxSize";
+	
+	/**
+	 * Specifies the score from 0 to 1 above which two patients are saved as duplicate candidates
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_DUPLICATE_PATIENT_MATCH_THRESHOLD = "patient.duplicateDetection.matchThreshold";
+	
+	/**
+	 * Specifies the maximum number of patients sharing a blocking key that are compared with each
+	 * other, larger blocks are skipped since the key is too common to be meaningful
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_DUPLICATE_PATIENT_MAX_BLOCK_SIZE = "patient.duplicateDetection.maxBlockSize";
+	
+	/**
+	 * Holds the start time of the last duplicate patient detection run, incremental runs only
+	 * consider patients changed since then
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_DUPLICATE_PATIENT_LAST_RUN = "patient.duplicateDetection.lastRunDate";
+	
+	/**
+	 * Specifies the maximum number of queued messages sent per minute, 0 for no limit
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_MAIL_MAX_MESSAGES_PER_MINUTE = "mail.maxMessagesPerMinute";
+	
+	/**
+	 * Specifies how many times a queued message is tried before it is dropped
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_MAIL_MAX_SEND_ATTEMPTS = "mail.maxSendAttempts";
+	
+	/**
+	 * Specifies the number of patient ids above which cohort queries join against a temporary
+	 * table of the ids instead of listing them in the query, a negative value to never use a
+	 * temporary table
+	 * 
+	 * @since 1.12
+	 */
+	public static final String GP_COHORT_TEMPORARY_TABLE_THRESHOLD = "cohort.temporaryTableThreshold";
+	
 	/**
 	 * At OpenMRS startup these global properties/default values/descriptions are inserted into the
 	 * database if they do not exist yet.
@@ -1292,6 +1372,12 @@ public final class OpenmrsConstants {
 		                "false",
 		                "Set to 'true' to turn on OpenMRS's gzip filter, and have the webapp compress data before sending it to any client that supports it. Generally use this if you are running Tomcat standalone. If you are running Tomcat behind Apache, then you'd want to use Apache to do gzip compression.",
 		                BooleanDatatype.class, null));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_GZIP_COMPRESSION_LEVEL, "6",
+		        "The compression level, from 1 (fastest) to 9 (smallest), used by the gzip filter. Only takes effect on next restart"));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE, "1024",
+		        "Responses smaller than this number of bytes are not compressed by the gzip filter. Only takes effect on next restart"));
 		props
 		        .add(new GlobalProperty(GLOBAL_PROPERTY_REPORT_XML_MACROS, "",
 		                "Macros that will be applied to Report Schema XMLs when they are interpreted. This should be java.util.properties format."));
@@ -1563,6 +1649,31 @@ public final class OpenmrsConstants {
 		props.add(new GlobalProperty(GP_DISABLE_VALIDATION, "false",
 				"Disables validation of OpenMRS Objects. Only takes affect on next restart. Warning: only do this is you know what you are doing!"));
 
+		props.add(new GlobalProperty(GP_COMPLEX_OBS_STORAGE_BEAN_ID, "",
+		        "Specifies spring bean id of the storage keeping the files of complex obs, defaults to a flat directory"));
+
+		props.add(new GlobalProperty(GP_DERIVED_IMAGE_CACHE_MAX_SIZE, "100",
+		        "The maximum size in megabytes of the thumbnails and previews kept for image obs"));
+
+		props.add(new GlobalProperty(GP_DUPLICATE_PATIENT_MATCH_THRESHOLD, "0.6",
+		        "The score from 0 to 1 above which two patients are saved as possible duplicates"));
+
+		props.add(new GlobalProperty(GP_DUPLICATE_PATIENT_MAX_BLOCK_SIZE, "500",
+		        "The maximum number of patients sharing a name, birthdate or identifier that are compared with each other"));
+
+		props.add(new GlobalProperty(GP_DUPLICATE_PATIENT_LAST_RUN, "",
+		        "The start time of the last duplicate patient detection, set automatically"));
+
+		props.add(new GlobalProperty(GP_MAIL_MAX_MESSAGES_PER_MINUTE, "60",
+		        "The maximum number of queued mail messages sent per minute, 0 for no limit"));
+
+		props.add(new GlobalProperty(GP_MAIL_MAX_SEND_ATTEMPTS, "3",
+		        "The number of times a queued mail message is tried before it is dropped"));
+
+		props.add(new GlobalProperty(GP_COHORT_TEMPORARY_TABLE_THRESHOLD, "1000",
+		        "The number of patient ids above which cohort queries join against a temporary table of the ids "
+		                + "instead of listing them in the query, -1 to never use a temporary table"));
+
 		for (GlobalProperty gp : ModuleFactory.getGlobalProperties()) {
 			props.add(gp);
 		}
@@ -0,0 +1,511 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.util.databasechange;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.LockException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.lockservice.LockService;
+import liquibase.resource.ResourceAccessor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.util.DatabaseUpdater;
+
+/**
+ * Base class for custom change sets that have to touch every row of a large table. The rows are
+ * split into chunks by ranges of an integer key column and each chunk is processed and committed in
+ * its own transaction, by a pool of worker threads that each have their own database connection.<br/>
+ * <br/>
+ * The chunks that are done are recorded in the {@link #PROGRESS_TABLE} table in the same
+ * transaction as their changes, so a change set that failed or was interrupted only processes the
+ * remaining chunks when it is run again. The table is dropped once no change set has chunks left in
+ * it.<br/>
+ * <br/>
+ * Expects parameter: "chunkSize" : the number of keys in a chunk. Default: {@value #DEFAULT_CHUNK_SIZE}
+ * <br/>
+ * Expects parameter: "threads" : the number of worker threads. Default: the number of processors, at
+ * most {@value #DEFAULT_MAX_THREADS}. The chunks are processed on the liquibase connection if no
+ * other connections can be opened.<br/>
+ * <br/>
+ * When run as a backfill after startup, the chunks are processed on a single connection with a pause
+ * between them, during which the liquibase lock is released, see
+ * {@link DatabaseUpdater#startBackfills()}.
+ * 
+ * @since 1.12
+ */
+public abstract class ChunkedCustomTaskChange implements CustomTaskChange {
+	
+	private static final Log log = LogFactory.getLog(ChunkedCustomTaskChange.class);
+	
+	/**
+	 * The table in which the completed chunks are recorded
+	 */
+	public static final String PROGRESS_TABLE = "liquibase_chunk_progress";
+	
+	public static final int DEFAULT_CHUNK_SIZE = 10000;
+	
+	public static final int DEFAULT_MAX_THREADS = 4;
+	
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	
+	private int threads = Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_THREADS);
+	
+	/**
+	 * Processes the rows of a table with keys between fromKey and toKey. Implementations should
+	 * batch their updates, but must not commit or close the connection.
+	 * 
+	 * @param connection the connection to use, owned by the calling worker
+	 * @param tableName the table being processed
+	 * @param fromKey the lowest key of the chunk
+	 * @param toKey the highest key of the chunk (inclusive)
+	 * @throws SQLException
+	 * @throws CustomChangeException if a row can not be migrated
+	 */
+	protected abstract void processChunk(Connection connection, String tableName, long fromKey, long toKey)
+	        throws SQLException, CustomChangeException;
+	
+	/**
+	 * Processes all rows of the given table in chunks of the given key column, skipping the chunks
+	 * that were completed by an earlier run of this change set.
+	 * 
+	 * @param database the database liquibase is updating
+	 * @param tableName the table to process
+	 * @param keyColumn an integer column of the table, usually the primary key
+	 * @throws CustomChangeException if a chunk failed, the chunks committed before are kept
+	 * @should process every row once
+	 * @should only process the remaining chunks when run again after a failure
+	 */
+	protected void executeInChunks(Database database, String tableName, String keyColumn) throws CustomChangeException {
+		String changeId = getClass().getSimpleName() + ":" + tableName;
+		Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+		Boolean autoCommit = null;
+		try {
+			autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			
+			Queue<long[]> chunks = getRemainingChunks(connection, changeId, tableName, keyColumn);
+			// the workers must see what liquibase did so far
+			connection.commit();
+			
+			runChunks(database, connection, changeId, tableName, chunks);
+			
+			deleteProgress(connection, changeId);
+			connection.commit();
+		}
+		catch (SQLException e) {
+			throw new CustomChangeException("Unable to process table: " + tableName, e);
+		}
+		finally {
+			if (autoCommit != null) {
+				try {
+					connection.setAutoCommit(autoCommit);
+				}
+				catch (SQLException e) {
+					log.warn("Unable to reset auto commit", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether the given column holds integers, so that the table can be processed in chunks
+	 * 
+	 * @param connection the connection to use
+	 * @param tableName the table of the column
+	 * @param keyColumn the column to check
+	 * @return true if the column can be used by {@link #executeInChunks(Database, String, String)}
+	 * @throws SQLException
+	 */
+	protected boolean isIntegerColumn(Connection connection, String tableName, String keyColumn) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery("select " + keyColumn + " from " + tableName + " where 1 = 0");
+			switch (rs.getMetaData().getColumnType(1)) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+				case Types.BIGINT:
+					return true;
+				default:
+					return false;
+			}
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Opens a connection for a worker thread.
+	 * 
+	 * @return a new connection to the database being updated
+	 * @throws Exception if no connection can be opened
+	 */
+	protected Connection openWorkerConnection() throws Exception {
+		return DatabaseUpdater.getConnection();
+	}
+	
+	/**
+	 * Splits the key range of the table into chunks, leaving out the ranges recorded as done
+	 */
+	private Queue<long[]> getRemainingChunks(Connection connection, String changeId, String tableName, String keyColumn)
+	        throws SQLException {
+		Queue<long[]> chunks = new ConcurrentLinkedQueue<long[]>();
+		Statement statement = connection.createStatement();
+		long min;
+		long max;
+		try {
+			ResultSet rs = statement.executeQuery("select min(" + keyColumn + "), max(" + keyColumn + ") from "
+			        + tableName);
+			rs.next();
+			min = rs.getLong(1);
+			if (rs.wasNull()) {
+				return chunks;
+			}
+			max = rs.getLong(2);
+		}
+		finally {
+			statement.close();
+		}
+		
+		TreeMap<Long, Long> done = getCompletedChunks(connection, changeId);
+		long from = min;
+		while (from <= max) {
+			Map.Entry<Long, Long> completed = done.floorEntry(from);
+			if (completed != null && completed.getValue() >= from) {
+				from = completed.getValue() + 1;
+				continue;
+			}
+			long to = Math.min(from + chunkSize - 1, max);
+			Long nextCompleted = done.higherKey(from);
+			if (nextCompleted != null) {
+				to = Math.min(to, nextCompleted - 1);
+			}
+			chunks.add(new long[] { from, to });
+			from = to + 1;
+		}
+		
+		if (!done.isEmpty()) {
+			log.info("Resuming " + changeId + ", " + chunks.size() + " chunks left");
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Processes the chunks with the worker threads, or on the given connection if there is only one
+	 * worker or no worker connections can be opened
+	 */
+	private void runChunks(Database database, Connection connection, final String changeId, final String tableName,
+	        final Queue<long[]> chunks) throws SQLException, CustomChangeException {
+		final int total = chunks.size();
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicBoolean failed = new AtomicBoolean();
+		
+		// backfills must leave the database to the users
+		boolean backfill = DatabaseUpdater.getBackfillPause() >= 0;
+		List<Connection> workerConnections = openWorkerConnections(backfill ? 1 : Math.min(threads, total));
+		if (workerConnections.isEmpty()) {
+			processChunks(connection, changeId, tableName, chunks, completed, total, failed, database);
+			return;
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(workerConnections.size());
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (final Connection workerConnection : workerConnections) {
+				futures.add(executor.submit(new Callable<Void>() {
+					
+					@Override
+					public Void call() throws Exception {
+						workerConnection.setAutoCommit(false);
+						processChunks(workerConnection, changeId, tableName, chunks, completed, total, failed, null);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			failed.set(true);
+			Thread.currentThread().interrupt();
+			throw new CustomChangeException("Interrupted while processing table: " + tableName, e);
+		}
+		catch (ExecutionException e) {
+			failed.set(true);
+			if (e.getCause() instanceof CustomChangeException) {
+				throw (CustomChangeException) e.getCause();
+			}
+			throw new CustomChangeException("Unable to process table: " + tableName, e.getCause());
+		}
+		finally {
+			executor.shutdown();
+			for (Connection workerConnection : workerConnections) {
+				try {
+					workerConnection.close();
+				}
+				catch (SQLException e) {
+					log.warn("Unable to close worker connection", e);
+				}
+			}
+		}
+	}
+	
+	private List<Connection> openWorkerConnections(int count) {
+		List<Connection> connections = new ArrayList<Connection>();
+		if (count <= 1) {
+			return connections;
+		}
+		try {
+			for (int i = 0; i < count; i++) {
+				connections.add(openWorkerConnection());
+			}
+		}
+		catch (Exception e) {
+			log.warn("Unable to open worker connections, processing the chunks on a single connection", e);
+			for (Connection opened : connections) {
+				try {
+					opened.close();
+				}
+				catch (SQLException ex) {
+					log.debug("Unable to close worker connection", ex);
+				}
+			}
+			connections.clear();
+		}
+		return connections;
+	}
+	
+	/**
+	 * Takes chunks from the queue until it is empty or another worker failed, committing each chunk
+	 * together with its progress row. The database is given if the connection is the one liquibase
+	 * holds its lock with.
+	 */
+	private void processChunks(Connection connection, String changeId, String tableName, Queue<long[]> chunks,
+	        AtomicInteger completed, int total, AtomicBoolean failed, Database database) throws SQLException,
+	        CustomChangeException {
+		PreparedStatement progressStatement = connection.prepareStatement("insert into " + PROGRESS_TABLE
+		        + " (change_id, chunk_start, chunk_end) values (?, ?, ?)");
+		try {
+			long[] chunk;
+			while (!failed.get() && (chunk = chunks.poll()) != null) {
+				try {
+					processChunk(connection, tableName, chunk[0], chunk[1]);
+					progressStatement.setString(1, changeId);
+					progressStatement.setLong(2, chunk[0]);
+					progressStatement.setLong(3, chunk[1]);
+					progressStatement.executeUpdate();
+					connection.commit();
+				}
+				catch (SQLException e) {
+					failed.set(true);
+					connection.rollback();
+					throw e;
+				}
+				catch (CustomChangeException e) {
+					failed.set(true);
+					connection.rollback();
+					throw e;
+				}
+				reportProgress(tableName, completed.incrementAndGet(), total);
+				if (!chunks.isEmpty()) {
+					pauseIfBackfilling(database, tableName);
+				}
+			}
+		}
+		finally {
+			progressStatement.close();
+		}
+	}
+	
+	/**
+	 * Pauses a backfill, releasing the liquibase lock until the next chunk so that other changelogs
+	 * can be run in the meantime and a server that is killed while the backfill pauses does not leave
+	 * the lock behind. A backfill that is stopped does not take the lock again.
+	 */
+	private void pauseIfBackfilling(Database database, String tableName) throws CustomChangeException {
+		long pause = DatabaseUpdater.getBackfillPause();
+		if (pause < 0) {
+			return;
+		}
+		
+		LockService lockService = database == null ? null : LockService.getInstance(database);
+		try {
+			if (lockService != null) {
+				lockService.releaseLock();
+			}
+			if (pause > 0) {
+				Thread.sleep(pause);
+			} else if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedException();
+			}
+			if (lockService != null) {
+				lockService.waitForLock();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomChangeException("Stopped while processing table: " + tableName, e);
+		}
+		catch (LockException e) {
+			throw new CustomChangeException("Unable to take the liquibase lock again while processing table: "
+			        + tableName, e);
+		}
+	}
+	
+	private void reportProgress(String tableName, int completed, int total) {
+		String progress = tableName + ": " + completed + " of " + total + " chunks done";
+		DatabaseUpdater.reportUpdateProgress(progress);
+		if (log.isDebugEnabled()) {
+			log.debug(progress);
+		}
+	}
+	
+	private TreeMap<Long, Long> getCompletedChunks(Connection connection, String changeId) throws SQLException {
+		TreeMap<Long, Long> done = new TreeMap<Long, Long>();
+		if (!progressTableExists(connection)) {
+			Statement statement = connection.createStatement();
+			try {
+				statement.executeUpdate("create table " + PROGRESS_TABLE + " (change_id varchar(255) not null, "
+				        + "chunk_start bigint not null, chunk_end bigint not null, primary key (change_id, chunk_start))");
+			}
+			finally {
+				statement.close();
+			}
+			return done;
+		}
+		
+		PreparedStatement statement = connection.prepareStatement("select chunk_start, chunk_end from " + PROGRESS_TABLE
+		        + " where change_id = ?");
+		try {
+			statement.setString(1, changeId);
+			ResultSet rs = statement.executeQuery();
+			while (rs.next()) {
+				done.put(rs.getLong(1), rs.getLong(2));
+			}
+		}
+		finally {
+			statement.close();
+		}
+		return done;
+	}
+	
+	private void deleteProgress(Connection connection, String changeId) throws SQLException {
+		if (!progressTableExists(connection)) {
+			return;
+		}
+		PreparedStatement delete = connection.prepareStatement("delete from " + PROGRESS_TABLE + " where change_id = ?");
+		try {
+			delete.setString(1, changeId);
+			delete.executeUpdate();
+		}
+		finally {
+			delete.close();
+		}
+		
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery("select count(*) from " + PROGRESS_TABLE);
+			rs.next();
+			if (rs.getInt(1) == 0) {
+				statement.executeUpdate("drop table " + PROGRESS_TABLE);
+			}
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	private boolean progressTableExists(Connection connection) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		for (String name : new String[] { PROGRESS_TABLE, PROGRESS_TABLE.toUpperCase() }) {
+			ResultSet rs = metaData.getTables(null, null, name, null);
+			try {
+				if (rs.next()) {
+					return true;
+				}
+			}
+			finally {
+				rs.close();
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * This is called by liquibase to set the parameter "chunkSize" onto this change.
+	 * 
+	 * @param chunkSize the number of keys in a chunk
+	 */
+	public void setChunkSize(String chunkSize) {
+		this.chunkSize = Integer.parseInt(chunkSize.trim());
+	}
+	
+	/**
+	 * This is called by liquibase to set the parameter "threads" onto this change.
+	 * 
+	 * @param threads the number of worker threads
+	 */
+	public void setThreads(String threads) {
+		this.threads = Integer.parseInt(threads.trim());
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#setUp()
+	 */
+	@Override
+	public void setUp() throws SetupException {
+		if (chunkSize < 1 || threads < 1) {
+			throw new SetupException("chunkSize and threads must be positive");
+		}
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#setFileOpener(liquibase.resource.ResourceAccessor)
+	 */
+	@Override
+	public void setFileOpener(ResourceAccessor resourceAccessor) {
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#validate(liquibase.database.Database)
+	 */
+	@Override
+	public ValidationErrors validate(Database database) {
+		return new ValidationErrors();
+	}
+}
@@ -9,6 +9,7 @@
  */
 package org.openmrs.util.databasechange;
 
+import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -18,43 +19,34 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-import liquibase.change.custom.CustomTaskChange;
 import liquibase.database.Database;
-import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.CustomChangeException;
-import liquibase.exception.DatabaseException;
-import liquibase.exception.SetupException;
-import liquibase.exception.ValidationErrors;
-import liquibase.resource.ResourceAccessor;
 
 import org.openmrs.Order;
 
-public class CreateDiscontinueOrders implements CustomTaskChange {
+/**
+ * Creates a discontinue order for each order that was discontinued before discontinue orders
+ * existed. The orders are processed in parallel chunks, see {@link ChunkedCustomTaskChange}.
+ */
+public class CreateDiscontinueOrders extends ChunkedCustomTaskChange {
 	
 	@Override
 	public void execute(Database database) throws CustomChangeException {
-		JdbcConnection connection = (JdbcConnection) database.getConnection();
-		try {
-			List<DiscontinuedOrder> discontinuedOrders = getDiscontinuedOrders(connection);
+		executeInChunks(database, "orders", "order_id");
+	}
+	
+	@Override
+	protected void processChunk(Connection connection, String tableName, long fromKey, long toKey) throws SQLException {
+		List<DiscontinuedOrder> discontinuedOrders = getDiscontinuedOrders(connection, fromKey, toKey);
+		if (!discontinuedOrders.isEmpty()) {
 			createDiscontinueOrders(connection, discontinuedOrders);
 		}
-		catch (SQLException e) {
-			throw new CustomChangeException(e);
-		}
-		catch (DatabaseException e) {
-			throw new CustomChangeException(e);
-		}
 	}
 	
-	private void createDiscontinueOrders(JdbcConnection connection, List<DiscontinuedOrder> discontinuedOrders)
-	        throws CustomChangeException, SQLException, DatabaseException {
-		final int batchSize = 1000;
-		int index = 0;
+	private void createDiscontinueOrders(Connection connection, List<DiscontinuedOrder> discontinuedOrders)
+	        throws SQLException {
 		PreparedStatement insertStatement = null;
-		Boolean autoCommit = null;
 		try {
-			autoCommit = connection.getAutoCommit();
-			connection.setAutoCommit(false);
 			insertStatement = connection
 			        .prepareStatement("Insert into orders(previous_order_id, concept_id, patient_id, encounter_id, "
 			                + "creator, date_created, discontinued_reason, discontinued_reason_non_coded, "
@@ -77,25 +69,10 @@ public class CreateDiscontinueOrders implements CustomTaskChange {
 				insertStatement.setDate(14, discontinuedOrder.dateActivated);
 				insertStatement.setDate(15, discontinuedOrder.dateActivated);
 				insertStatement.addBatch();
-				
-				if (index % batchSize == 0) {
-					insertStatement.executeBatch();
-				}
-				index++;
 			}
 			insertStatement.executeBatch();
-			connection.commit();
-		}
-		catch (DatabaseException e) {
-			handleError(connection, e);
-		}
-		catch (SQLException e) {
-			handleError(connection, e);
 		}
 		finally {
-			if (autoCommit != null) {
-				connection.setAutoCommit(autoCommit);
-			}
 			if (insertStatement != null) {
 				insertStatement.close();
 			}
@@ -110,20 +87,17 @@ public class CreateDiscontinueOrders implements CustomTaskChange {
 		}
 	}
 	
-	private void handleError(JdbcConnection connection, Exception e) throws DatabaseException, CustomChangeException {
-		connection.rollback();
-		throw new CustomChangeException(e);
-	}
-	
-	private List<DiscontinuedOrder> getDiscontinuedOrders(JdbcConnection connection) throws CustomChangeException,
-	        SQLException {
+	private List<DiscontinuedOrder> getDiscontinuedOrders(Connection connection, long fromOrderId, long toOrderId)
+	        throws SQLException {
 		List<DiscontinuedOrder> dcOrders = new ArrayList<DiscontinuedOrder>();
 		PreparedStatement statement = null;
 		try {
 			statement = connection.prepareStatement("select order_id, concept_id, patient_id, encounter_id, date_stopped, "
 			        + "discontinued_by, discontinued_reason, discontinued_reason_non_coded, order_type_id "
-			        + "from orders where discontinued = ?");
+			        + "from orders where discontinued = ? and order_id between ? and ?");
 			statement.setBoolean(1, true);
+			statement.setLong(2, fromOrderId);
+			statement.setLong(3, toOrderId);
 			ResultSet rs = statement.executeQuery();
 			while (rs.next()) {
 				dcOrders.add(new DiscontinuedOrder(rs.getInt("order_id"), rs.getInt("concept_id"), rs.getInt("patient_id"),
@@ -132,12 +106,6 @@ public class CreateDiscontinueOrders implements CustomTaskChange {
 				                .getInt("order_type_id")));
 			}
 		}
-		catch (SQLException e) {
-			throw new CustomChangeException(e);
-		}
-		catch (DatabaseException e) {
-			throw new CustomChangeException(e);
-		}
 		finally {
 			if (statement != null) {
 				statement.close();
@@ -151,19 +119,6 @@ public class CreateDiscontinueOrders implements CustomTaskChange {
 		return "Finished creating discontinue orders for discontinued orders";
 	}
 	
-	@Override
-	public void setUp() throws SetupException {
-	}
-	
-	@Override
-	public void setFileOpener(ResourceAccessor resourceAccessor) {
-	}
-	
-	@Override
-	public ValidationErrors validate(Database database) {
-		return null;
-	}
-	
 	private static class DiscontinuedOrder {
 		
 		public int orderId;
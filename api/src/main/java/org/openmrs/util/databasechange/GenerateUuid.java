@@ -9,22 +9,19 @@
  */
 package org.openmrs.util.databasechange;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
-import liquibase.change.custom.CustomTaskChange;
 import liquibase.database.Database;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.CustomChangeException;
-import liquibase.exception.DatabaseException;
 import liquibase.exception.SetupException;
 
-import liquibase.exception.ValidationErrors;
-import liquibase.resource.ResourceAccessor;
 import org.apache.commons.lang.StringUtils;
 import org.openmrs.api.context.Context;
 import org.openmrs.util.OpenmrsUtil;
@@ -42,9 +39,11 @@ import org.openmrs.util.OpenmrsUtil;
  * convention. Should be a pipe-separated list of key=value, where key is the name an id column
  * would have by convention, and value is the name it actually has. In this example the id of the
  * field_answer table is 'field_id' rather than 'field_answer_id', etc:
- * "field_answer_id=field_id|role_id=role|privilege_id=privilege"
+ * "field_answer_id=field_id|role_id=role|privilege_id=privilege" <br/>
+ * <br/>
+ * Tables with an integer id are processed in parallel chunks, see {@link ChunkedCustomTaskChange}.
  */
-public class GenerateUuid implements CustomTaskChange {
+public class GenerateUuid extends ChunkedCustomTaskChange {
 	
 	/**
 	 * The "tableNames" parameter defined in the liquibase xml changeSet element that is calling
@@ -76,15 +75,9 @@ public class GenerateUuid implements CustomTaskChange {
 	private String[] tableNamesArray = null;
 	
 	/**
-	 * The sql statement to select out the ids. Generated in the {@link #setUp()} method.
+	 * The id column of each table, set by {@link #execute(Database)}
 	 */
-	private String genericIdSql;
-	
-	/**
-	 * The sql statement to update the rows with the uuids. Generated in the {@link #setUp()}
-	 * method.
-	 */
-	private String genericUpdateSql;
+	private Map<String, String> idColumns = new HashMap<String, String>();
 	
 	/**
 	 * Does the work of adding UUIDs to all rows.
@@ -103,46 +96,23 @@ public class GenerateUuid implements CustomTaskChange {
 			throw new CustomChangeException("At least one table name in the 'tableNames' parameter is required", null);
 		}
 		
-		JdbcConnection connection = (JdbcConnection) database.getConnection();
+		Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
 		
 		// loop over all tables
 		for (String tableName : tableNamesArray) {
+			// deal with tables that don't follow the tableName_id convention
+			String idColumn = tableName + "_id";
+			if (idExceptionsMap.containsKey(idColumn)) {
+				idColumn = idExceptionsMap.get(idColumn);
+			}
+			idColumns.put(tableName, idColumn);
+			
 			try {
-				Statement idStatement = null;
-				PreparedStatement updateStatement = null;
-				try {
-					String idSql = genericIdSql.replaceAll("tablename", tableName);
-					String updateSql = genericUpdateSql.replaceAll("tablename", tableName);
-					
-					// hacky way to deal with tables that don't follow the tableNam_id convention
-					for (Map.Entry<String, String> idException : idExceptionsMap.entrySet()) {
-						idSql = idSql.replaceFirst(idException.getKey(), idException.getValue());
-						updateSql = updateSql.replaceFirst(idException.getKey(), idException.getValue());
-					}
-					idStatement = connection.createStatement();
-					updateStatement = connection.prepareStatement(updateSql);
-					
-					// Map<Integer, UUID> uuids = new HashMap<Integer, UUID>();
-					
-					ResultSet ids = idStatement.executeQuery(idSql);
-					while (ids.next()) {
-						updateStatement.setObject(2, ids.getObject(1)); // set the primary key number
-						updateStatement.setString(1, UUID.randomUUID().toString()); // set the uuid for this row
-						updateStatement.executeUpdate();
-					}
+				if (isIntegerColumn(connection, tableName, idColumn)) {
+					executeInChunks(database, tableName, idColumn);
+				} else {
+					generateUuids(connection, tableName, null, null);
 				}
-				finally {
-					if (idStatement != null) {
-						idStatement.close();
-					}
-					if (updateStatement != null) {
-						updateStatement.close();
-					}
-				}
-				
-			}
-			catch (DatabaseException e) {
-				throw new CustomChangeException("Unable to set uuid on table: " + tableName, e);
 			}
 			catch (SQLException e) {
 				throw new CustomChangeException("Unable to set uuid on table: " + tableName, e);
@@ -151,19 +121,59 @@ public class GenerateUuid implements CustomTaskChange {
 	}
 	
 	/**
-	 * @see liquibase.change.custom.CustomChange#getConfirmationMessage()
+	 * @see ChunkedCustomTaskChange#processChunk(Connection, String, long, long)
 	 */
 	@Override
-	public String getConfirmationMessage() {
-		return "Finished adding uuids to all rows in all tables";
+	protected void processChunk(Connection connection, String tableName, long fromKey, long toKey) throws SQLException {
+		generateUuids(connection, tableName, fromKey, toKey);
 	}
 	
 	/**
-	 * @see liquibase.change.custom.CustomChange#setFileOpener(liquibase.ResourceAccessor)
+	 * Sets a uuid on the rows of the table that have none, optionally only on the rows with ids in
+	 * the given range
 	 */
-	@Override
-	public void setFileOpener(ResourceAccessor fileOpener) {
+	private void generateUuids(Connection connection, String tableName, Long fromKey, Long toKey) throws SQLException {
+		String idColumn = idColumns.get(tableName);
+		String idSql = "select " + idColumn + " from " + tableName + " where " + columnName + " is null";
+		if (fromKey != null) {
+			idSql += " and " + idColumn + " between ? and ?";
+		}
+		String updateSql = "update " + tableName + " set " + columnName + " = ? where " + idColumn + " = ?";
 		
+		PreparedStatement idStatement = null;
+		PreparedStatement updateStatement = null;
+		try {
+			idStatement = connection.prepareStatement(idSql);
+			if (fromKey != null) {
+				idStatement.setLong(1, fromKey);
+				idStatement.setLong(2, toKey);
+			}
+			updateStatement = connection.prepareStatement(updateSql);
+			
+			ResultSet ids = idStatement.executeQuery();
+			while (ids.next()) {
+				updateStatement.setObject(2, ids.getObject(1)); // set the primary key number
+				updateStatement.setString(1, UUID.randomUUID().toString()); // set the uuid for this row
+				updateStatement.addBatch();
+			}
+			updateStatement.executeBatch();
+		}
+		finally {
+			if (idStatement != null) {
+				idStatement.close();
+			}
+			if (updateStatement != null) {
+				updateStatement.close();
+			}
+		}
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Finished adding uuids to all rows in all tables";
 	}
 	
 	/**
@@ -173,24 +183,13 @@ public class GenerateUuid implements CustomTaskChange {
 	 */
 	@Override
 	public void setUp() throws SetupException {
+		super.setUp();
 		
 		tableNamesArray = StringUtils.split(tableNames);
-		idExceptionsMap = OpenmrsUtil.parseParameterList(idExceptions);
-		
-		genericIdSql = "select tablename_id from tablename where columnName is null";
-		genericIdSql = genericIdSql.replace("columnName", columnName);
-		
-		genericUpdateSql = "update tablename set columnName = ? where tablename_id = ?";
-		genericUpdateSql = genericUpdateSql.replace("columnName", columnName);
-		
-	}
-	
-	/**
-	 * @see liquibase.change.custom.CustomChange#validate(liquibase.database.Database)
-	 */
-	@Override
-	public ValidationErrors validate(Database database) {
-		return new ValidationErrors();
+		idExceptionsMap = new HashMap<String, String>();
+		for (Map.Entry<String, String> idException : OpenmrsUtil.parseParameterList(idExceptions).entrySet()) {
+			idExceptionsMap.put(idException.getKey().trim(), idException.getValue().trim());
+		}
 	}
 	
 	/**
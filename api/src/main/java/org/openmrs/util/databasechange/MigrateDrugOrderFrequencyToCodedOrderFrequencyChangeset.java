@@ -9,25 +9,32 @@
  */
 package org.openmrs.util.databasechange;
 
-import liquibase.change.custom.CustomTaskChange;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 import liquibase.database.Database;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.CustomChangeException;
-import liquibase.exception.DatabaseException;
-import liquibase.exception.SetupException;
-import liquibase.exception.ValidationErrors;
-import liquibase.resource.ResourceAccessor;
 
 import org.apache.commons.lang3.StringUtils;
 import org.openmrs.util.DatabaseUtil;
 import org.openmrs.util.UpgradeUtil;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Types;
-import java.util.Set;
-
-public class MigrateDrugOrderFrequencyToCodedOrderFrequencyChangeset implements CustomTaskChange {
+/**
+ * Sets the coded order frequency of the drug orders from their frequency text. The drug orders are
+ * processed in parallel chunks, see {@link ChunkedCustomTaskChange}.
+ */
+public class MigrateDrugOrderFrequencyToCodedOrderFrequencyChangeset extends ChunkedCustomTaskChange {
+	
+	/**
+	 * The order frequency id of each frequency text, null for blank frequencies
+	 */
+	private Map<String, Integer> orderFrequencyIds;
 	
 	@Override
 	public void execute(Database database) throws CustomChangeException {
@@ -36,86 +43,66 @@ public class MigrateDrugOrderFrequencyToCodedOrderFrequencyChangeset implements
 		try {
 			Set<String> uniqueFrequencies = DatabaseUtil.getUniqueNonNullColumnValues("frequency_text", "drug_order",
 			    String.class, connection.getUnderlyingConnection());
-			migrateFrequenciesToCodedValue(connection, uniqueFrequencies);
+			orderFrequencyIds = getOrderFrequencyIds(connection.getUnderlyingConnection(), uniqueFrequencies);
+		}
+		catch (CustomChangeException e) {
+			throw e;
 		}
 		catch (Exception e) {
 			throw new CustomChangeException(e);
 		}
+		
+		if (!orderFrequencyIds.isEmpty()) {
+			executeInChunks(database, "drug_order", "order_id");
+		}
+	}
+	
+	private Map<String, Integer> getOrderFrequencyIds(Connection connection, Set<String> uniqueFrequencies)
+	        throws Exception {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (String frequency : uniqueFrequencies) {
+			if (StringUtils.isBlank(frequency)) {
+				ids.put(frequency, null);
+			} else {
+				Integer conceptIdForFrequency = UpgradeUtil.getConceptIdForUnits(frequency);
+				if (conceptIdForFrequency == null) {
+					throw new CustomChangeException("No concept mapping found for frequency: " + frequency);
+				}
+				Integer orderFrequencyId = UpgradeUtil.getOrderFrequencyIdForConceptId(connection, conceptIdForFrequency);
+				if (orderFrequencyId == null) {
+					throw new CustomChangeException("No order frequency found for concept " + conceptIdForFrequency);
+				}
+				ids.put(frequency, orderFrequencyId);
+			}
+		}
+		return ids;
 	}
 	
-	private void migrateFrequenciesToCodedValue(JdbcConnection connection, Set<String> uniqueFrequencies)
-	        throws CustomChangeException, SQLException, DatabaseException {
-		PreparedStatement updateDrugOrderStatement = null;
-		Boolean autoCommit = null;
+	@Override
+	protected void processChunk(Connection connection, String tableName, long fromKey, long toKey) throws SQLException {
+		PreparedStatement updateDrugOrderStatement = connection
+		        .prepareStatement("update drug_order set frequency = ? where frequency_text = ? and order_id between ? and ?");
 		try {
-			autoCommit = connection.getAutoCommit();
-			connection.setAutoCommit(false);
-			updateDrugOrderStatement = connection
-			        .prepareStatement("update drug_order set frequency = ? where frequency_text = ?");
-			
-			updateDrugOrderStatement.setNull(1, Types.INTEGER);
-			updateDrugOrderStatement.setNull(2, Types.VARCHAR);
-			updateDrugOrderStatement.executeUpdate();
-			updateDrugOrderStatement.clearParameters();
-			
-			for (String frequency : uniqueFrequencies) {
-				if (StringUtils.isBlank(frequency)) {
+			for (Map.Entry<String, Integer> frequency : orderFrequencyIds.entrySet()) {
+				if (frequency.getValue() == null) {
 					updateDrugOrderStatement.setNull(1, Types.INTEGER);
 				} else {
-					Integer conceptIdForFrequency = UpgradeUtil.getConceptIdForUnits(frequency);
-					if (conceptIdForFrequency == null) {
-						throw new CustomChangeException("No concept mapping found for frequency: " + frequency);
-					}
-					Integer orderFrequencyId = UpgradeUtil.getOrderFrequencyIdForConceptId(connection
-					        .getUnderlyingConnection(), conceptIdForFrequency);
-					if (orderFrequencyId == null) {
-						throw new CustomChangeException("No order frequency found for concept " + conceptIdForFrequency);
-					}
-					
-					updateDrugOrderStatement.setInt(1, orderFrequencyId);
+					updateDrugOrderStatement.setInt(1, frequency.getValue());
 				}
-				updateDrugOrderStatement.setString(2, frequency);
-				updateDrugOrderStatement.executeUpdate();
-				updateDrugOrderStatement.clearParameters();
+				updateDrugOrderStatement.setString(2, frequency.getKey());
+				updateDrugOrderStatement.setLong(3, fromKey);
+				updateDrugOrderStatement.setLong(4, toKey);
+				updateDrugOrderStatement.addBatch();
 			}
-			connection.commit();
-		}
-		catch (DatabaseException e) {
-			handleError(connection, e);
-		}
-		catch (SQLException e) {
-			handleError(connection, e);
+			updateDrugOrderStatement.executeBatch();
 		}
 		finally {
-			if (autoCommit != null) {
-				connection.setAutoCommit(autoCommit);
-			}
-			if (updateDrugOrderStatement != null) {
-				updateDrugOrderStatement.close();
-			}
+			updateDrugOrderStatement.close();
 		}
 	}
 	
-	private void handleError(JdbcConnection connection, Exception e) throws DatabaseException, CustomChangeException {
-		connection.rollback();
-		throw new CustomChangeException(e);
-	}
-	
 	@Override
 	public String getConfirmationMessage() {
 		return "Finished migrating drug order frequencies to coded order frequencies";
 	}
-	
-	@Override
-	public void setUp() throws SetupException {
-	}
-	
-	@Override
-	public void setFileOpener(ResourceAccessor resourceAccessor) {
-	}
-	
-	@Override
-	public ValidationErrors validate(Database database) {
-		return null;
-	}
 }
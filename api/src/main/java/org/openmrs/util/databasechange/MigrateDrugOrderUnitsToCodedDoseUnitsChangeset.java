@@ -9,27 +9,34 @@
  */
 package org.openmrs.util.databasechange;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import liquibase.change.custom.CustomTaskChange;
 import liquibase.database.Database;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.CustomChangeException;
-import liquibase.exception.DatabaseException;
-import liquibase.exception.SetupException;
-import liquibase.exception.ValidationErrors;
-import liquibase.resource.ResourceAccessor;
 
 import org.apache.commons.lang3.StringUtils;
 import org.openmrs.util.DatabaseUtil;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.UpgradeUtil;
 
-public class MigrateDrugOrderUnitsToCodedDoseUnitsChangeset implements CustomTaskChange {
+/**
+ * Sets the coded dose units of the drug orders from their units text. The drug orders are processed
+ * in parallel chunks, see {@link ChunkedCustomTaskChange}.
+ */
+public class MigrateDrugOrderUnitsToCodedDoseUnitsChangeset extends ChunkedCustomTaskChange {
+	
+	/**
+	 * The dose units concept id of each units text, null for blank units
+	 */
+	private Map<String, Integer> doseUnitsConceptIds;
 	
 	@Override
 	public void execute(Database database) throws CustomChangeException {
@@ -38,91 +45,72 @@ public class MigrateDrugOrderUnitsToCodedDoseUnitsChangeset implements CustomTas
 		try {
 			Set<String> uniqueUnits = DatabaseUtil.getUniqueNonNullColumnValues("units", "drug_order", String.class,
 			    connection.getUnderlyingConnection());
-			migrateUnitsToCodedValue(connection, uniqueUnits);
+			doseUnitsConceptIds = getDoseUnitsConceptIds(connection.getUnderlyingConnection(), uniqueUnits);
+		}
+		catch (CustomChangeException e) {
+			throw e;
 		}
 		catch (Exception e) {
 			throw new CustomChangeException(e);
 		}
+		
+		if (!doseUnitsConceptIds.isEmpty()) {
+			executeInChunks(database, "drug_order", "order_id");
+		}
+	}
+	
+	private Map<String, Integer> getDoseUnitsConceptIds(Connection connection, Set<String> uniqueUnits) throws Exception {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<Integer> dosingUnitsconceptIds = null;
+		for (String unit : uniqueUnits) {
+			if (StringUtils.isBlank(unit)) {
+				ids.put(unit, null);
+			} else {
+				Integer conceptIdForUnit = UpgradeUtil.getConceptIdForUnits(unit);
+				if (conceptIdForUnit == null) {
+					throw new CustomChangeException("No concept mapping found for unit: " + unit);
+				}
+				if (dosingUnitsconceptIds == null) {
+					String dosingUnitsConceptSetUuid = UpgradeUtil.getGlobalProperty(connection,
+					    OpenmrsConstants.GP_DRUG_DOSING_UNITS_CONCEPT_UUID);
+					dosingUnitsconceptIds = UpgradeUtil.getMemberSetIds(connection, dosingUnitsConceptSetUuid);
+				}
+				if (!dosingUnitsconceptIds.contains(conceptIdForUnit)) {
+					throw new CustomChangeException("Dosing unit '" + unit
+					        + "' is not among valid concepts defined in global property "
+					        + OpenmrsConstants.GP_DRUG_DOSING_UNITS_CONCEPT_UUID);
+				}
+				ids.put(unit, conceptIdForUnit);
+			}
+		}
+		return ids;
 	}
 	
-	private void migrateUnitsToCodedValue(JdbcConnection connection, Set<String> uniqueUnits) throws CustomChangeException,
-	        SQLException, DatabaseException {
-		PreparedStatement updateDrugOrderStatement = null;
-		Boolean autoCommit = null;
+	@Override
+	protected void processChunk(Connection connection, String tableName, long fromKey, long toKey) throws SQLException {
+		PreparedStatement updateDrugOrderStatement = connection
+		        .prepareStatement("update drug_order set dose_units = ? where units = ? and order_id between ? and ?");
 		try {
-			autoCommit = connection.getAutoCommit();
-			connection.setAutoCommit(false);
-			
-			updateDrugOrderStatement = connection.prepareStatement("update drug_order set dose_units = ? where units = ?");
-			
-			updateDrugOrderStatement.setNull(1, Types.INTEGER);
-			updateDrugOrderStatement.setNull(2, Types.VARCHAR);
-			updateDrugOrderStatement.executeUpdate();
-			updateDrugOrderStatement.clearParameters();
-			
-			for (String unit : uniqueUnits) {
-				if (StringUtils.isBlank(unit)) {
+			for (Map.Entry<String, Integer> unit : doseUnitsConceptIds.entrySet()) {
+				if (unit.getValue() == null) {
 					updateDrugOrderStatement.setNull(1, Types.INTEGER);
 				} else {
-					Integer conceptIdForUnit = UpgradeUtil.getConceptIdForUnits(unit);
-					if (conceptIdForUnit == null) {
-						throw new CustomChangeException("No concept mapping found for unit: " + unit);
-					}
-					String dosingUnitsConceptSetUuid = UpgradeUtil.getGlobalProperty(connection.getUnderlyingConnection(),
-					    OpenmrsConstants.GP_DRUG_DOSING_UNITS_CONCEPT_UUID);
-					List<Integer> dosingUnitsconceptIds = UpgradeUtil.getMemberSetIds(connection.getUnderlyingConnection(),
-					    dosingUnitsConceptSetUuid);
-					if (!dosingUnitsconceptIds.contains(conceptIdForUnit)) {
-						throw new CustomChangeException("Dosing unit '" + unit
-						        + "' is not among valid concepts defined in global property "
-						        + OpenmrsConstants.GP_DRUG_DOSING_UNITS_CONCEPT_UUID);
-					}
-					
-					updateDrugOrderStatement.setInt(1, conceptIdForUnit);
+					updateDrugOrderStatement.setInt(1, unit.getValue());
 				}
-				updateDrugOrderStatement.setString(2, unit);
-				updateDrugOrderStatement.executeUpdate();
-				updateDrugOrderStatement.clearParameters();
+				updateDrugOrderStatement.setString(2, unit.getKey());
+				updateDrugOrderStatement.setLong(3, fromKey);
+				updateDrugOrderStatement.setLong(4, toKey);
+				updateDrugOrderStatement.addBatch();
 			}
-			
-			connection.commit();
-		}
-		catch (DatabaseException e) {
-			handleError(connection, e);
-		}
-		catch (SQLException e) {
-			handleError(connection, e);
+			updateDrugOrderStatement.executeBatch();
 		}
 		finally {
-			if (autoCommit != null) {
-				connection.setAutoCommit(autoCommit);
-			}
-			if (updateDrugOrderStatement != null) {
-				updateDrugOrderStatement.close();
-			}
+			updateDrugOrderStatement.close();
 		}
 	}
 	
-	private void handleError(JdbcConnection connection, Exception e) throws DatabaseException, CustomChangeException {
-		connection.rollback();
-		throw new CustomChangeException(e);
-	}
-	
 	@Override
 	public String getConfirmationMessage() {
 		return "Finished migrating drug order units to coded dose units";
 	}
-	
-	@Override
-	public void setUp() throws SetupException {
-	}
-	
-	@Override
-	public void setFileOpener(ResourceAccessor resourceAccessor) {
-	}
-	
-	@Override
-	public ValidationErrors validate(Database database) {
-		return null;
-	}
 }
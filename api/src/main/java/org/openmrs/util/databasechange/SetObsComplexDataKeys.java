@@ -0,0 +1,87 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.util.databasechange;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import liquibase.database.Database;
+import liquibase.exception.CustomChangeException;
+
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+
+/**
+ * Copies the storage key of the complex data of every complex obs from obs.value_complex to
+ * obs.complex_data_key, as {@link Obs#setValueComplex(String)} does for new obs. The obs table is
+ * processed in chunks, see {@link ChunkedCustomTaskChange}.
+ *
+ * @since 1.12
+ */
+public class SetObsComplexDataKeys extends ChunkedCustomTaskChange {
+	
+	/**
+	 * @see liquibase.change.custom.CustomTaskChange#execute(liquibase.database.Database)
+	 */
+	@Override
+	public void execute(Database database) throws CustomChangeException {
+		// if we're in a "generate sql file" mode, quit early
+		if (Context.getRuntimeProperties().size() == 0) {
+			return;
+		}
+		
+		executeInChunks(database, "obs", "obs_id");
+	}
+	
+	/**
+	 * @see ChunkedCustomTaskChange#processChunk(Connection, String, long, long)
+	 */
+	@Override
+	protected void processChunk(Connection connection, String tableName, long fromKey, long toKey) throws SQLException {
+		PreparedStatement selectStatement = null;
+		PreparedStatement updateStatement = null;
+		try {
+			selectStatement = connection.prepareStatement("select obs_id, value_complex from obs"
+			        + " where obs_id between ? and ? and value_complex is not null and complex_data_key is null");
+			selectStatement.setLong(1, fromKey);
+			selectStatement.setLong(2, toKey);
+			updateStatement = connection.prepareStatement("update obs set complex_data_key = ? where obs_id = ?");
+			
+			Obs obs = new Obs();
+			ResultSet rs = selectStatement.executeQuery();
+			while (rs.next()) {
+				obs.setValueComplex(rs.getString(2));
+				updateStatement.setString(1, obs.getComplexDataKey());
+				updateStatement.setInt(2, rs.getInt(1));
+				updateStatement.addBatch();
+			}
+			updateStatement.executeBatch();
+		}
+		finally {
+			if (selectStatement != null) {
+				selectStatement.close();
+			}
+			if (updateStatement != null) {
+				updateStatement.close();
+			}
+		}
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Finished setting the complex data keys of all obs";
+	}
+	
+}
@@ -0,0 +1,76 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs;
+
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.openmrs.api.ConceptNameType;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.carrotsearch.junitbenchmarks.annotation.BenchmarkHistoryChart;
+
+/**
+ * Performance tests for the name lookups of {@link Concept} on a concept with many translations.
+ */
+@BenchmarkHistoryChart
+public class ConceptPT {
+	
+	private static final int LOOKUPS = 100000;
+	
+	@Rule
+	public TestRule benchmarkRule = new BenchmarkRule();
+	
+	private Concept concept;
+	
+	private Locale[] locales;
+	
+	@Before
+	public void createConcept() {
+		concept = new Concept(1);
+		locales = Locale.getAvailableLocales();
+		for (Locale locale : locales) {
+			ConceptName fullySpecifiedName = new ConceptName("name " + locale, locale);
+			fullySpecifiedName.setConceptNameType(ConceptNameType.FULLY_SPECIFIED);
+			concept.addName(fullySpecifiedName);
+			
+			ConceptName shortName = new ConceptName("short " + locale, locale);
+			shortName.setConceptNameType(ConceptNameType.SHORT);
+			concept.addName(shortName);
+			
+			concept.addName(new ConceptName("synonym " + locale, locale));
+		}
+	}
+	
+	@Test
+	public void shouldTestGetName() {
+		for (int i = 0; i < LOOKUPS; i++) {
+			Assert.assertNotNull(concept.getName(locales[i % locales.length]));
+		}
+	}
+	
+	@Test
+	public void shouldTestGetPreferredName() {
+		for (int i = 0; i < LOOKUPS; i++) {
+			Assert.assertNotNull(concept.getPreferredName(locales[i % locales.length]));
+		}
+	}
+	
+	@Test
+	public void shouldTestGetShortNameInLocale() {
+		for (int i = 0; i < LOOKUPS; i++) {
+			Assert.assertNotNull(concept.getShortNameInLocale(locales[i % locales.length]));
+		}
+	}
+}
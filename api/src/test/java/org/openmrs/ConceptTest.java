@@ -1089,4 +1089,38 @@ public class ConceptTest {
 		Assert.assertEquals((concept.getName(locale, false).toString()), (concept.getName(localeToSearch, false).toString()));
 	}
 	
+	/**
+	 * @see Concept#getPreferredName(Locale)
+	 * @verifies not return a name that was removed from the concept
+	 */
+	@Test
+	public void getPreferredName_shouldNotReturnANameThatWasRemovedFromTheConcept() throws Exception {
+		Concept concept = createMockConcept(1, Locale.US);
+		ConceptName preferredName = createMockConceptName(3, Locale.US, null, true);
+		concept.addName(preferredName);
+		Assert.assertEquals(preferredName, concept.getPreferredName(Locale.US));
+		
+		concept.removeName(preferredName);
+		
+		Assert.assertEquals(concept.getFullySpecifiedName(Locale.US), concept.getPreferredName(Locale.US));
+	}
+	
+	/**
+	 * @see Concept#getFullySpecifiedName(Locale)
+	 * @verifies look up a name in the locale it was moved to
+	 */
+	@Test
+	public void getFullySpecifiedName_shouldLookUpANameInTheLocaleItWasMovedTo() throws Exception {
+		Concept concept = createMockConcept(1, Locale.US);
+		ConceptName fullySpecifiedName = concept.getFullySpecifiedName(Locale.US);
+		Assert.assertNull(concept.getFullySpecifiedName(Locale.FRANCE));
+		
+		for (ConceptName name : concept.getNames()) {
+			name.setLocale(Locale.FRANCE);
+		}
+		
+		Assert.assertNull(concept.getFullySpecifiedName(Locale.US));
+		Assert.assertEquals(fullySpecifiedName, concept.getFullySpecifiedName(Locale.FRANCE));
+	}
+	
 }
@@ -554,4 +554,26 @@ public class ObsTest {
 		Obs obs = new Obs();
 		obs.setFormField("", path);
 	}
+	
+	/**
+	 * @see Obs#getComplexDataKey()
+	 * @verifies return the part of valueComplex after the last bar
+	 */
+	@Test
+	public void getComplexDataKey_shouldReturnThePartOfValueComplexAfterTheLastBar() throws Exception {
+		Obs obs = new Obs();
+		obs.setValueComplex("scan.jpg image |3f/a2/3fa2e1.jpg");
+		assertEquals("3f/a2/3fa2e1.jpg", obs.getComplexDataKey());
+	}
+	
+	/**
+	 * @see Obs#getComplexDataKey()
+	 * @verifies return the entire valueComplex if it has no bar
+	 */
+	@Test
+	public void getComplexDataKey_shouldReturnTheEntireValueComplexIfItHasNoBar() throws Exception {
+		Obs obs = new Obs();
+		obs.setValueComplex("scan.jpg");
+		assertEquals("scan.jpg", obs.getComplexDataKey());
+	}
 }
@@ -0,0 +1,141 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.aop;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Method;
+
+import javax.annotation.Resource;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+
+/**
+ * Tests {@link MemoizationAdvice}.
+ */
+public class MemoizationAdviceTest extends BaseContextSensitiveTest {
+	
+	@Resource(name = "memoizationInterceptor")
+	private MemoizationAdvice memoizationAdvice;
+	
+	@Before
+	public void clearMemo() {
+		MemoizationAdvice.clear();
+	}
+	
+	/**
+	 * @see MemoizationAdvice#invoke(MethodInvocation)
+	 * @verifies return the remembered result for a repeat call
+	 */
+	@Test
+	public void invoke_shouldReturnTheRememberedResultForARepeatCall() throws Throwable {
+		Location location = load(1);
+		MethodInvocation invocation = getLocation(1, location);
+		
+		Assert.assertSame(location, memoizationAdvice.invoke(invocation));
+		Assert.assertSame(location, memoizationAdvice.invoke(invocation));
+		verify(invocation, times(1)).proceed();
+	}
+	
+	/**
+	 * @see MemoizationAdvice#invoke(MethodInvocation)
+	 * @verifies not remember results for different arguments
+	 */
+	@Test
+	public void invoke_shouldNotRememberResultsForDifferentArguments() throws Throwable {
+		MethodInvocation first = getLocation(1, load(1));
+		MethodInvocation second = getLocation(2, load(2));
+		
+		memoizationAdvice.invoke(first);
+		Assert.assertEquals(load(2), memoizationAdvice.invoke(second));
+		verify(second, times(1)).proceed();
+	}
+	
+	/**
+	 * @see MemoizationAdvice#invoke(MethodInvocation)
+	 * @verifies forget remembered results when a non read only method is called
+	 */
+	@Test
+	public void invoke_shouldForgetRememberedResultsWhenANonReadOnlyMethodIsCalled() throws Throwable {
+		Location location = load(1);
+		MethodInvocation invocation = getLocation(1, location);
+		memoizationAdvice.invoke(invocation);
+		
+		MethodInvocation save = invocation(LocationService.class.getMethod("saveLocation", Location.class),
+		    new Object[] { location }, location);
+		memoizationAdvice.invoke(save);
+		
+		memoizationAdvice.invoke(invocation);
+		verify(invocation, times(2)).proceed();
+	}
+	
+	/**
+	 * @see MemoizationAdvice#invoke(MethodInvocation)
+	 * @verifies forget remembered results when the session is cleared
+	 */
+	@Test
+	public void invoke_shouldForgetRememberedResultsWhenTheSessionIsCleared() throws Throwable {
+		MethodInvocation invocation = getLocation(1, load(1));
+		memoizationAdvice.invoke(invocation);
+		
+		Context.clearSession();
+		Location reloaded = load(1);
+		when(invocation.proceed()).thenReturn(reloaded);
+		
+		Assert.assertSame(reloaded, memoizationAdvice.invoke(invocation));
+		verify(invocation, times(2)).proceed();
+	}
+	
+	/**
+	 * @see MemoizationAdvice#invoke(MethodInvocation)
+	 * @verifies not remember null results
+	 */
+	@Test
+	public void invoke_shouldNotRememberNullResults() throws Throwable {
+		MethodInvocation invocation = getLocation(9999, null);
+		
+		Assert.assertNull(memoizationAdvice.invoke(invocation));
+		Assert.assertNull(memoizationAdvice.invoke(invocation));
+		verify(invocation, times(2)).proceed();
+	}
+	
+	/**
+	 * Loads a location without leaving it in the memo of the current thread
+	 */
+	private Location load(Integer locationId) {
+		Location location = Context.getLocationService().getLocation(locationId);
+		MemoizationAdvice.clear();
+		return location;
+	}
+	
+	private MethodInvocation getLocation(Integer locationId, Location result) throws Throwable {
+		return invocation(LocationService.class.getMethod("getLocation", Integer.class), new Object[] { locationId },
+		    result);
+	}
+	
+	private MethodInvocation invocation(Method method, Object[] arguments, Object result) throws Throwable {
+		MethodInvocation invocation = mock(MethodInvocation.class);
+		when(invocation.getMethod()).thenReturn(method);
+		when(invocation.getArguments()).thenReturn(arguments);
+		when(invocation.getThis()).thenReturn(Context.getLocationService());
+		when(invocation.proceed()).thenReturn(result);
+		return invocation;
+	}
+}
@@ -535,6 +535,23 @@ public class RequiredDataAdviceTest extends BaseContextMockTest {
 		    Matchers.<Date> anyObject(), anyString());
 	}
 	
+	/**
+	 * @see RequiredDataAdvice#before(Method,Object[],Object)
+	 * @verifies not call handlers on methods that are not save, void or retire methods
+	 */
+	@Test
+	public void before_shouldNotCallHandlersOnMethodsThatAreNotSaveVoidOrRetireMethods() throws Throwable {
+		
+		Method m = WithAppropriatelyNamedMethod.class.getMethod("getSomeOpenmrsData", SomeOpenmrsData.class);
+		SomeOpenmrsData openmrsObject = new SomeOpenmrsData();
+		requiredDataAdvice.before(m, new Object[] { openmrsObject }, new WithAppropriatelyNamedMethod());
+		requiredDataAdvice.before(m, new Object[] { openmrsObject }, new WithAppropriatelyNamedMethod());
+		verify(saveHandler, never()).handle(eq(openmrsObject), Matchers.<User> anyObject(), Matchers.<Date> anyObject(),
+		    anyString());
+		verify(voidHandler, never()).handle(eq(openmrsObject), Matchers.<User> anyObject(), Matchers.<Date> anyObject(),
+		    anyString());
+	}
+	
 	@Test
 	public void before_shouldNotCallHandlerOnVoidWithNullOrNoArguments() throws Throwable {
 		
@@ -655,6 +672,10 @@ public class RequiredDataAdviceTest extends BaseContextMockTest {
 		public void voidSomeOpenmrsData(SomeOpenmrsData oo) {
 		}
 		
+		public SomeOpenmrsData getSomeOpenmrsData(SomeOpenmrsData oo) {
+			return oo;
+		}
+		
 		public void voidSomeOpenmrsDataButNotReally(SomeOpenmrsData oo) {
 		}
 		
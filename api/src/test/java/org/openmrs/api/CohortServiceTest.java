@@ -14,8 +14,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 
+import org.hibernate.Hibernate;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -525,4 +527,84 @@ public class CohortServiceTest extends BaseContextSensitiveTest {
 		service.removePatientFromCohort(service.getCohort(2), patientToAddThenRemove);
 		assertFalse(service.getCohort(2).contains(patientToAddThenRemove));
 	}
+	
+	/**
+	 * @see CohortService#addPatientToCohort(Cohort,Patient)
+	 * @verifies add a patient without loading the members of the cohort
+	 */
+	@Test
+	public void addPatientToCohort_shouldAddAPatientWithoutLoadingTheMembersOfTheCohort() throws Exception {
+		executeDataSet(COHORT_XML);
+		Cohort cohort = service.getCohort(2);
+		
+		service.addPatientToCohort(cohort, new Patient(4));
+		
+		assertTrue(cohort.contains(4));
+		assertEquals(3, cohort.size());
+		assertFalse(Hibernate.isInitialized(cohort.getMemberIds()));
+	}
+	
+	/**
+	 * @see CohortService#removePatientFromCohort(Cohort,Patient)
+	 * @verifies remove a patient without loading the members of the cohort
+	 */
+	@Test
+	public void removePatientFromCohort_shouldRemoveAPatientWithoutLoadingTheMembersOfTheCohort() throws Exception {
+		executeDataSet(COHORT_XML);
+		Cohort cohort = service.getCohort(2);
+		
+		service.removePatientFromCohort(cohort, new Patient(2));
+		
+		assertFalse(cohort.contains(2));
+		assertFalse(Hibernate.isInitialized(cohort.getMemberIds()));
+		assertEquals(Arrays.asList(3), service.getCohortMemberIds(cohort, null, 10));
+	}
+	
+	/**
+	 * @see CohortService#addPatientsToCohort(Cohort,java.util.Collection)
+	 * @verifies add the patients that are not in the cohort
+	 */
+	@Test
+	public void addPatientsToCohort_shouldAddThePatientsThatAreNotInTheCohort() throws Exception {
+		executeDataSet(COHORT_XML);
+		Cohort cohort = service.getCohort(2);
+		
+		assertEquals(2, service.addPatientsToCohort(cohort, Arrays.asList(2, 4, 5, 4)));
+		
+		assertEquals(Arrays.asList(2, 3, 4, 5), service.getCohortMemberIds(cohort, null, 10));
+		assertFalse(Hibernate.isInitialized(cohort.getMemberIds()));
+	}
+	
+	/**
+	 * @see CohortService#addPatientsToCohort(Cohort,java.util.Collection)
+	 * @verifies add the patients to a new cohort
+	 */
+	@Test
+	public void addPatientsToCohort_shouldAddThePatientsToANewCohort() throws Exception {
+		executeDataSet(COHORT_XML);
+		Cohort cohort = new Cohort();
+		cohort.setName("New cohort");
+		cohort.setDescription("A new cohort");
+		
+		assertEquals(2, service.addPatientsToCohort(cohort, Arrays.asList(2, 3)));
+		
+		assertNotNull(cohort.getCohortId());
+		assertEquals(Arrays.asList(2, 3), service.getCohortMemberIds(cohort, null, 10));
+	}
+	
+	/**
+	 * @see CohortService#getCohortMemberIds(Cohort,Integer,int)
+	 * @verifies return the member ids in pages
+	 */
+	@Test
+	public void getCohortMemberIds_shouldReturnTheMemberIdsInPages() throws Exception {
+		executeDataSet(COHORT_XML);
+		Cohort cohort = service.getCohort(2);
+		service.addPatientsToCohort(cohort, Arrays.asList(4, 5, 6));
+		
+		assertEquals(Arrays.asList(2, 3), service.getCohortMemberIds(cohort, null, 2));
+		assertEquals(Arrays.asList(4, 5), service.getCohortMemberIds(cohort, 3, 2));
+		assertEquals(Arrays.asList(6), service.getCohortMemberIds(cohort, 5, 2));
+		assertEquals(0, service.getCohortMemberIds(cohort, 6, 2).size());
+	}
 }
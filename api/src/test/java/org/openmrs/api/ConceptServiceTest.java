@@ -38,6 +38,7 @@ import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.dbunit.dataset.IDataSet;
+import org.hibernate.Hibernate;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -426,6 +427,51 @@ public class ConceptServiceTest extends BaseContextSensitiveTest {
 		Assert.assertEquals(numberofconcepts, iteratorCount);
 	}
 	
+	/**
+	 * @see {@link ConceptService#conceptIterator(int)}
+	 */
+	@Test
+	@Verifies(value = "should start with the smallest concept id", method = "conceptIterator(int)")
+	public void conceptIteratorWithBatchSize_shouldStartWithTheSmallestConceptId() throws Exception {
+		Iterator<Concept> iterator = Context.getConceptService().conceptIterator(2);
+		
+		Assert.assertTrue(iterator.hasNext());
+		Assert.assertEquals(3, iterator.next().getConceptId().intValue());
+	}
+	
+	/**
+	 * @see {@link ConceptService#conceptIterator(int)}
+	 */
+	@Test
+	@Verifies(value = "should iterate over all concepts", method = "conceptIterator(int)")
+	public void conceptIteratorWithBatchSize_shouldIterateOverAllConcepts() throws Exception {
+		List<Integer> expectedIds = new ArrayList<Integer>();
+		for (Concept concept : Context.getConceptService().getAllConcepts()) {
+			expectedIds.add(concept.getConceptId());
+		}
+		Collections.sort(expectedIds);
+		
+		List<Integer> actualIds = new ArrayList<Integer>();
+		Iterator<Concept> iterator = Context.getConceptService().conceptIterator(3);
+		while (iterator.hasNext() && actualIds.size() < expectedIds.size() + 5) {
+			Concept concept = iterator.next();
+			// the collections are prefetched with the batch
+			Assert.assertTrue(Hibernate.isInitialized(concept.getNames(true)));
+			actualIds.add(concept.getConceptId());
+		}
+		
+		Assert.assertEquals(expectedIds, actualIds);
+	}
+	
+	/**
+	 * @see {@link ConceptService#conceptIterator(int)}
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@Verifies(value = "should fail if batch size is less than one", method = "conceptIterator(int)")
+	public void conceptIteratorWithBatchSize_shouldFailIfBatchSizeIsLessThanOne() throws Exception {
+		Context.getConceptService().conceptIterator(0);
+	}
+	
 	/**
 	 * @see {@link ConceptService#saveConcept(Concept)}
 	 */
@@ -0,0 +1,107 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.api;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.SkipBaseSetup;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.carrotsearch.junitbenchmarks.annotation.BenchmarkHistoryChart;
+
+/**
+ * Performance tests for saving encounters with large obs trees through {@link EncounterService}.
+ */
+@SkipBaseSetup
+@BenchmarkHistoryChart
+public class EncounterServicePT extends BaseContextSensitiveTest {
+	
+	private static final int GROUPS = 50;
+	
+	private static final int MEMBERS_PER_GROUP = 10;
+	
+	@Rule
+	public TestRule benchmarkRule = new BenchmarkRule();
+	
+	static boolean dataLoaded = false;
+	
+	@Before
+	public void loadData() throws Exception {
+		if (!dataLoaded) {
+			initializeInMemoryDatabase();
+			
+			executeDataSet(EXAMPLE_XML_DATASET_PACKAGE_PATH);
+			
+			getConnection().commit();
+			
+			dataLoaded = true;
+		}
+		
+		authenticate();
+	}
+	
+	@Test
+	public void shouldTestSaveNewEncounterWithManyObs() {
+		Encounter encounter = Context.getEncounterService().saveEncounter(buildEncounter());
+		Context.flushSession();
+		
+		Assert.assertEquals(GROUPS * MEMBERS_PER_GROUP, encounter.getObs().size());
+	}
+	
+	@Test
+	public void shouldTestSaveChangedEncounterWithManyObs() {
+		EncounterService es = Context.getEncounterService();
+		Encounter encounter = es.saveEncounter(buildEncounter());
+		Context.flushSession();
+		
+		encounter.setLocation(Context.getLocationService().getLocation(2));
+		es.saveEncounter(encounter);
+		Context.flushSession();
+		
+		for (Obs obs : encounter.getAllObs(true)) {
+			Assert.assertEquals(encounter.getLocation(), obs.getLocation());
+		}
+	}
+	
+	private Encounter buildEncounter() {
+		Encounter encounter = new Encounter();
+		encounter.setLocation(Context.getLocationService().getLocation(1));
+		encounter.setEncounterType(Context.getEncounterService().getEncounterType(1));
+		encounter.setEncounterDatetime(new Date());
+		encounter.setPatient(Context.getPatientService().getPatient(7));
+		encounter.addProvider(Context.getEncounterService().getEncounterRole(1), Context.getProviderService()
+		        .getProvider(1));
+		
+		Concept groupConcept = Context.getConceptService().getConcept(23);
+		Concept memberConcept = Context.getConceptService().getConcept(5089);
+		for (int i = 0; i < GROUPS; i++) {
+			Obs group = new Obs();
+			group.setConcept(groupConcept);
+			for (int j = 0; j < MEMBERS_PER_GROUP; j++) {
+				Obs member = new Obs();
+				member.setConcept(memberConcept);
+				member.setValueNumeric((double) j);
+				group.addGroupMember(member);
+			}
+			encounter.addObs(group);
+		}
+		return encounter;
+	}
+}
@@ -2004,6 +2004,72 @@ public class EncounterServiceTest extends BaseContextSensitiveTest {
 		Assert.assertEquals(1, encounter.getAllObs().size());
 	}
 	
+	/**
+	 * @see EncounterService#saveEncounter(Encounter, String)
+	 * @verifies only create new versions of the obs whose values changed
+	 */
+	@Test
+	public void saveEncounter_shouldOnlyCreateNewVersionsOfTheObsWhoseValuesChanged() throws Exception {
+		EncounterService es = Context.getEncounterService();
+		Encounter encounter = es.saveEncounter(newEncounterWithObs(50d, 60d));
+		Obs[] obs = encounter.getAllObs().toArray(new Obs[] {});
+		Obs changed = obs[0];
+		Obs unchanged = obs[1];
+		int changedObsId = changed.getObsId();
+		int unchangedObsId = unchanged.getObsId();
+		
+		changed.setValueNumeric(100d);
+		es.saveEncounter(encounter, "correcting a value");
+		Context.flushSession();
+		
+		Assert.assertTrue(Context.getObsService().getObs(changedObsId).isVoided());
+		Assert.assertFalse(Context.getObsService().getObs(unchangedObsId).isVoided());
+		Assert.assertEquals(2, encounter.getAllObs().size());
+		for (Obs o : encounter.getAllObs()) {
+			if (o.getValueNumeric() == 100d) {
+				Assert.assertEquals(changedObsId, o.getPreviousVersion().getObsId().intValue());
+			} else {
+				Assert.assertEquals(unchangedObsId, o.getObsId().intValue());
+			}
+		}
+	}
+	
+	/**
+	 * @see EncounterService#saveEncounter(Encounter, String)
+	 * @verifies insert the new obs of the encounter
+	 */
+	@Test
+	public void saveEncounter_shouldInsertTheNewObsOfTheEncounter() throws Exception {
+		EncounterService es = Context.getEncounterService();
+		Encounter encounter = es.saveEncounter(newEncounterWithObs(50d));
+		int existingObsId = encounter.getAllObs().iterator().next().getObsId();
+		
+		Obs obs = new Obs();
+		obs.setConcept(Context.getConceptService().getConcept(5089));
+		obs.setValueNumeric(70d);
+		encounter.addObs(obs);
+		es.saveEncounter(encounter, "adding a value");
+		
+		Assert.assertNotNull(obs.getObsId());
+		Assert.assertEquals(2, encounter.getAllObs().size());
+		Assert.assertFalse(Context.getObsService().getObs(existingObsId).isVoided());
+	}
+	
+	private Encounter newEncounterWithObs(Double... values) {
+		Encounter encounter = new Encounter();
+		encounter.setLocation(new Location(1));
+		encounter.setEncounterType(new EncounterType(1));
+		encounter.setEncounterDatetime(new Date());
+		encounter.setPatient(new Patient(3));
+		for (Double value : values) {
+			Obs obs = new Obs();
+			obs.setConcept(Context.getConceptService().getConcept(5089));
+			obs.setValueNumeric(value);
+			encounter.addObs(obs);
+		}
+		return encounter;
+	}
+	
 	/**
 	 * @see {@link EncounterService#voidEncounter(Encounter, String)}
 	 */
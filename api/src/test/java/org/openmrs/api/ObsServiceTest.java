@@ -39,20 +39,28 @@ import java.util.Set;
 
 import javax.imageio.ImageIO;
 
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.ConceptName;
 import org.openmrs.Encounter;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
 import org.openmrs.Obs;
 import org.openmrs.Order;
 import org.openmrs.Patient;
 import org.openmrs.Person;
+import org.openmrs.api.ObsService.ObsCallback;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.db.hibernate.HibernateObsDAO;
 import org.openmrs.api.impl.ObsServiceImpl;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.ComplexObsStorage;
+import org.openmrs.obs.ObsTimeline;
+import org.openmrs.obs.storage.ContentAddressedComplexObsStorage;
 import org.openmrs.obs.handler.BinaryDataHandler;
 import org.openmrs.obs.handler.ImageHandler;
 import org.openmrs.obs.handler.TextHandler;
@@ -714,6 +722,97 @@ public class ObsServiceTest extends BaseContextSensitiveTest {
 		
 	}
 	
+	/**
+	 * @see ObsService#migrateComplexData(ComplexObsStorage)
+	 */
+	@Test
+	@Verifies(value = "should copy complex data into the given storage and update the obs", method = "migrateComplexData(ComplexObsStorage)")
+	public void migrateComplexData_shouldCopyComplexDataIntoTheGivenStorageAndUpdateTheObs() throws Exception {
+		executeDataSet(COMPLEX_OBS_XML);
+		ObsService os = Context.getObsService();
+		ContentAddressedComplexObsStorage storage = Context.getRegisteredComponent("contentAddressedComplexObsStorage",
+		    ContentAddressedComplexObsStorage.class);
+		
+		File originalFile = new File(storage.getDirectory(), "sometext.txt");
+		FileWriter writer = new FileWriter(originalFile);
+		writer.write("some text to migrate");
+		writer.close();
+		String key = storage.getKey(storage.hash(originalFile), "txt");
+		
+		try {
+			Assert.assertEquals(1, os.migrateComplexData(storage));
+			Context.clearSession();
+			
+			Assert.assertEquals("txt image |" + key, os.getObs(45).getValueComplex());
+			Assert.assertTrue(storage.getFile(key).isFile());
+			Assert.assertTrue(originalFile.exists());
+			
+			// running it again finds nothing left to move
+			Assert.assertEquals(0, os.migrateComplexData(storage));
+		}
+		finally {
+			originalFile.delete();
+			storage.getFile(key).delete();
+		}
+	}
+	
+	/**
+	 * @see ObsService#migrateComplexData(ComplexObsStorage)
+	 */
+	@Test
+	@Verifies(value = "should skip obs whose file does not exist", method = "migrateComplexData(ComplexObsStorage)")
+	public void migrateComplexData_shouldSkipObsWhoseFileDoesNotExist() throws Exception {
+		executeDataSet(COMPLEX_OBS_XML);
+		ObsService os = Context.getObsService();
+		ComplexObsStorage storage = Context.getRegisteredComponent("contentAddressedComplexObsStorage",
+		    ComplexObsStorage.class);
+		
+		Assert.assertEquals(0, os.migrateComplexData(storage));
+		Assert.assertEquals("gif image |openmrs_logo_small.gif", os.getObs(44).getValueComplex());
+	}
+	
+	/**
+	 * @see ObsService#migrateComplexData(ComplexObsStorage)
+	 */
+	@Test
+	@Verifies(value = "should keep deduplicated content that is still used after purging an obs", method = "migrateComplexData(ComplexObsStorage)")
+	public void migrateComplexData_shouldKeepDeduplicatedContentThatIsStillUsedAfterPurgingAnObs() throws Exception {
+		executeDataSet(COMPLEX_OBS_XML);
+		ObsService os = Context.getObsService();
+		AdministrationService as = Context.getAdministrationService();
+		ContentAddressedComplexObsStorage storage = Context.getRegisteredComponent("contentAddressedComplexObsStorage",
+		    ContentAddressedComplexObsStorage.class);
+		
+		File originalFile = new File(storage.getDirectory(), "sometext.txt");
+		File copiedFile = new File(storage.getDirectory(), "sometextcopy.txt");
+		for (File file : new File[] { originalFile, copiedFile }) {
+			FileWriter writer = new FileWriter(file);
+			writer.write("the same text in both files");
+			writer.close();
+		}
+		String key = storage.getKey(storage.hash(originalFile), "txt");
+		os.getObs(44).setValueComplex("txt image |sometextcopy.txt");
+		Context.flushSession();
+		
+		try {
+			Assert.assertEquals(2, os.migrateComplexData(storage));
+			Context.clearSession();
+			as.saveGlobalProperty(new GlobalProperty(OpenmrsConstants.GP_COMPLEX_OBS_STORAGE_BEAN_ID,
+			        "contentAddressedComplexObsStorage"));
+			
+			os.purgeObs(os.getObs(45));
+			
+			Assert.assertEquals("txt image |" + key, os.getObs(44).getValueComplex());
+			Assert.assertTrue(storage.getFile(key).isFile());
+		}
+		finally {
+			as.purgeGlobalProperty(as.getGlobalPropertyObject(OpenmrsConstants.GP_COMPLEX_OBS_STORAGE_BEAN_ID));
+			originalFile.delete();
+			copiedFile.delete();
+			storage.getFile(key).delete();
+		}
+	}
+	
 	/**
 	 * @see ObsService#setHandlers(Map<QString;QComplexObsHandler;>)}
 	 */
@@ -1546,6 +1645,71 @@ public class ObsServiceTest extends BaseContextSensitiveTest {
 		Assert.assertNotNull(groupMember.getObsId());
 	}
 	
+	/**
+	 * @see ObsService#saveObs(Obs,String)
+	 * @verifies not create a new version of an unchanged obs
+	 */
+	@Test
+	public void saveObs_shouldNotCreateANewVersionOfAnUnchangedObs() throws Exception {
+		ObsService obsService = Context.getObsService();
+		Obs obs = obsService.saveObs(newObs(1.0), null);
+		Context.flushSession();
+		int obsId = obs.getObsId();
+		
+		Obs obsSaved = obsService.saveObs(obs, "nothing changed");
+		
+		Assert.assertSame(obs, obsSaved);
+		Assert.assertEquals(obsId, obsSaved.getObsId().intValue());
+		Assert.assertFalse(obsSaved.isVoided());
+	}
+	
+	/**
+	 * @see ObsService#saveObs(Obs,String)
+	 * @verifies only create new versions of the changed members of an unchanged obs group
+	 */
+	@Test
+	public void saveObs_shouldOnlyCreateNewVersionsOfTheChangedMembersOfAnUnchangedObsGroup() throws Exception {
+		ObsService obsService = Context.getObsService();
+		Obs obsGroup = newObs(null);
+		Obs changed = newObs(1.0);
+		Obs unchanged = newObs(2.0);
+		obsGroup.addGroupMember(changed);
+		obsGroup.addGroupMember(unchanged);
+		obsService.saveObs(obsGroup, null);
+		Context.flushSession();
+		int groupId = obsGroup.getObsId();
+		int changedId = changed.getObsId();
+		int unchangedId = unchanged.getObsId();
+		
+		changed.setValueNumeric(10.0);
+		Obs obsSaved = obsService.saveObs(obsGroup, "correcting a member");
+		Context.flushSession();
+		
+		Assert.assertEquals(groupId, obsSaved.getObsId().intValue());
+		Assert.assertFalse(obsService.getObs(groupId).isVoided());
+		Assert.assertFalse(obsService.getObs(unchangedId).isVoided());
+		Assert.assertTrue(obsService.getObs(changedId).isVoided());
+		Assert.assertEquals(1.0, obsService.getObs(changedId).getValueNumeric(), 0);
+		Assert.assertEquals(2, obsSaved.getGroupMembers().size());
+		for (Obs member : obsSaved.getGroupMembers()) {
+			if (member.getValueNumeric() == 10.0) {
+				Assert.assertEquals(changedId, member.getPreviousVersion().getObsId().intValue());
+			} else {
+				Assert.assertEquals(unchangedId, member.getObsId().intValue());
+			}
+		}
+	}
+	
+	private Obs newObs(Double valueNumeric) {
+		Obs obs = new Obs();
+		obs.setConcept(Context.getConceptService().getConcept(3));
+		obs.setObsDatetime(new Date());
+		obs.setPerson(new Patient(2));
+		obs.setLocation(new Location(1));
+		obs.setValueNumeric(valueNumeric);
+		return obs;
+	}
+	
 	/**
 	 * @see ObsService#saveObs(Obs,String)
 	 */
@@ -1722,4 +1886,155 @@ public class ObsServiceTest extends BaseContextSensitiveTest {
 		assertEquals(obs.getPerson(), obsSaved.getEncounter().getPatient());
 	}
 	
+	/**
+	 * @see ObsService#getObsTimeline(Person,List,Date,Date)
+	 * @verifies return the non voided obs of the person in time order
+	 */
+	@Test
+	public void getObsTimeline_shouldReturnTheNonVoidedObsOfThePersonInTimeOrder() throws Exception {
+		ObsService os = Context.getObsService();
+		Person person = new Person(7);
+		os.voidObs(os.getObs(16), "testing");
+		
+		ObsTimeline timeline = os.getObsTimeline(person, null, null, null);
+		
+		assertEquals(os.getObservationsByPerson(person).size(), timeline.size());
+		for (int row = 1; row < timeline.size(); row++) {
+			assertFalse(timeline.getObsDatetime(row).before(timeline.getObsDatetime(row - 1)));
+			assertTrue(timeline.getObsId(row) != 16);
+		}
+		assertEquals(7, timeline.getObsId(0));
+		assertEquals(50.0, timeline.getValueNumeric(0), 0);
+	}
+	
+	/**
+	 * @see ObsService#getObsTimeline(Person,List,Date,Date)
+	 * @verifies only return obs of the given concepts
+	 */
+	@Test
+	public void getObsTimeline_shouldOnlyReturnObsOfTheGivenConcepts() throws Exception {
+		ConceptService cs = Context.getConceptService();
+		
+		ObsTimeline timeline = Context.getObsService().getObsTimeline(new Person(7),
+		    Arrays.asList(cs.getConcept(5089), cs.getConcept(18)), null, null);
+		
+		assertEquals(4, timeline.size());
+		int[] rows = timeline.getRows(5089);
+		assertEquals(3, rows.length);
+		assertEquals(7, timeline.getObsId(rows[0]));
+		assertEquals(10, timeline.getObsId(rows[1]));
+		assertEquals(16, timeline.getObsId(rows[2]));
+		assertEquals(61.0, timeline.getValueNumeric(rows[2]), 0);
+		int row = timeline.getRows(18)[0];
+		assertEquals(Integer.valueOf(7), timeline.getValueCodedId(row));
+		assertNull(timeline.getValueNumeric(row));
+	}
+	
+	/**
+	 * @see ObsService#getObsTimeline(Person,List,Date,Date)
+	 * @verifies only return obs within the date range
+	 */
+	@Test
+	public void getObsTimeline_shouldOnlyReturnObsWithinTheDateRange() throws Exception {
+		ConceptService cs = Context.getConceptService();
+		DateFormat ymd = new SimpleDateFormat("yyyy-MM-dd");
+		
+		ObsTimeline timeline = Context.getObsService().getObsTimeline(new Person(7),
+		    Arrays.asList(cs.getConcept(5089), cs.getConcept(5497)), ymd.parse("2008-08-01"), ymd.parse("2008-08-19"));
+		
+		assertEquals(3, timeline.size());
+		assertEquals(9, timeline.getObsId(0));
+		assertEquals(10, timeline.getObsId(1));
+		assertEquals(11, timeline.getObsId(2));
+	}
+	
+	/**
+	 * @see ObsService#getObsTimeline(Person,List,Date,Date)
+	 * @verifies return an empty timeline for a person without obs
+	 */
+	@Test
+	public void getObsTimeline_shouldReturnAnEmptyTimelineForAPersonWithoutObs() throws Exception {
+		assertEquals(0, Context.getObsService().getObsTimeline(new Person(502), null, null, null).size());
+	}
+	
+	/**
+	 * @see ObsService#processObservations(List,List,List,List,Date,Date,boolean,ObsCallback)
+	 * @verifies pass the matching observations to the callback in order
+	 */
+	@Test
+	public void processObservations_shouldPassTheMatchingObservationsToTheCallbackInOrder() throws Exception {
+		final List<Integer> obsIds = new ArrayList<Integer>();
+		
+		int count = Context.getObsService().processObservations(
+		    Collections.singletonList(Context.getConceptService().getConcept(5089)), null, null,
+		    Collections.singletonList("obsDatetime asc"), null, null, false, new ObsCallback() {
+			    
+			    @Override
+			    public boolean process(Obs obs) {
+				    obsIds.add(obs.getObsId());
+				    return true;
+			    }
+		    });
+		
+		assertEquals(obsIds.size(), count);
+		assertTrue(obsIds.size() >= 3);
+		assertTrue(obsIds.indexOf(7) < obsIds.indexOf(10));
+		assertTrue(obsIds.indexOf(10) < obsIds.indexOf(16));
+		assertTrue(obsIds.indexOf(7) >= 0);
+	}
+	
+	/**
+	 * @see ObsService#processObservations(List,List,List,List,Date,Date,boolean,ObsCallback)
+	 * @verifies stop when the callback returns false
+	 */
+	@Test
+	public void processObservations_shouldStopWhenTheCallbackReturnsFalse() throws Exception {
+		final List<Obs> processed = new ArrayList<Obs>();
+		
+		int count = Context.getObsService().processObservations(null, null, null, null, null, null, true,
+		    new ObsCallback() {
+			    
+			    @Override
+			    public boolean process(Obs obs) {
+				    processed.add(obs);
+				    return false;
+			    }
+		    });
+		
+		assertEquals(1, count);
+		assertEquals(1, processed.size());
+	}
+	
+	/**
+	 * @see ObsService#processObservations(List,List,List,List,Date,Date,boolean,ObsCallback)
+	 * @verifies keep the objects loaded before in the session
+	 */
+	@Test
+	public void processObservations_shouldKeepTheObjectsLoadedBeforeInTheSession() throws Exception {
+		HibernateObsDAO dao = Context.getRegisteredComponent("obsDAO", HibernateObsDAO.class);
+		Session session = Context.getRegisteredComponent("sessionFactory", SessionFactory.class).getCurrentSession();
+		Patient patient = Context.getPatientService().getPatient(2);
+		final List<Obs> processed = new ArrayList<Obs>();
+		
+		int batchSize = dao.getProcessBatchSize();
+		dao.setProcessBatchSize(1);
+		try {
+			Context.getObsService().processObservations(null, null, null, null, null, null, false, new ObsCallback() {
+				
+				@Override
+				public boolean process(Obs obs) {
+					processed.add(obs);
+					return true;
+				}
+			});
+		}
+		finally {
+			dao.setProcessBatchSize(batchSize);
+		}
+		
+		assertTrue(processed.size() > 1);
+		assertFalse(session.contains(processed.get(0)));
+		assertTrue(session.contains(patient));
+	}
+	
 }
@@ -31,8 +31,10 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -71,6 +73,7 @@ import org.openmrs.activelist.Problem;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.PatientServiceImpl;
 import org.openmrs.comparator.PatientIdentifierTypeDefaultComparator;
+import org.openmrs.patient.DuplicatePatientCandidate;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.person.PersonMergeLog;
 import org.openmrs.person.PersonMergeLogData;
@@ -112,6 +115,8 @@ public class PatientServiceTest extends BaseContextSensitiveTest {
 	
 	private static final String PATIENT_MERGE_XML = "org/openmrs/api/include/PatientServiceTest-mergePatients.xml";
 	
+	private static final String DUPLICATE_PATIENTS_XML = "org/openmrs/api/include/PatientServiceTest-duplicatePatients.xml";
+	
 	// Services
 	protected static PatientService patientService = null;
 	
@@ -3539,6 +3544,67 @@ public class PatientServiceTest extends BaseContextSensitiveTest {
 		ps.purgePatientIdentifierType(pit);
 	}
 	
+	/**
+	 * @verifies merge each not preferred patient into its preferred patient
+	 * @see PatientService#mergePatients(Map, PatientService.MergeCallback)
+	 */
+	@Test
+	public void mergePatients_shouldMergeEachNotPreferredPatientIntoItsPreferredPatient() throws Exception {
+		voidOrders(Arrays.asList(patientService.getPatient(2), patientService.getPatient(7)));
+		String encounterUuid = Context.getEncounterService().getEncounter(3).getUuid();
+		Map<Integer, Integer> pairs = new LinkedHashMap<Integer, Integer>();
+		pairs.put(2, 6);
+		pairs.put(7, 999);
+		
+		Assert.assertEquals(2, patientService.mergePatients(pairs, null));
+		
+		Assert.assertTrue(patientService.getPatient(2).isVoided());
+		Assert.assertTrue(patientService.getPatient(7).isVoided());
+		Encounter encounter = Context.getEncounterService().getEncounterByUuid(encounterUuid);
+		Assert.assertEquals(999, encounter.getPatient().getPatientId().intValue());
+		for (Obs obs : encounter.getAllObs(true)) {
+			Assert.assertEquals(999, obs.getPerson().getPersonId().intValue());
+		}
+	}
+	
+	/**
+	 * @verifies report the progress after each merge
+	 * @see PatientService#mergePatients(Map, PatientService.MergeCallback)
+	 */
+	@Test
+	public void mergePatients_shouldReportTheProgressAfterEachMerge() throws Exception {
+		voidOrders(Arrays.asList(patientService.getPatient(2), patientService.getPatient(7)));
+		Map<Integer, Integer> pairs = new LinkedHashMap<Integer, Integer>();
+		pairs.put(2, 6);
+		pairs.put(7, 999);
+		final List<String> progress = new ArrayList<String>();
+		
+		patientService.mergePatients(pairs, new PatientService.MergeCallback() {
+			
+			@Override
+			public void merged(Patient preferred, Patient notPreferred, int numMerged, int numToMerge) {
+				progress.add(notPreferred.getPatientId() + ">" + preferred.getPatientId() + " " + numMerged + "/"
+				        + numToMerge);
+			}
+		});
+		
+		Assert.assertEquals(Arrays.asList("2>6 1/2", "7>999 2/2"), progress);
+	}
+	
+	/**
+	 * @verifies fail if a preferred patient is merged away in the same batch
+	 * @see PatientService#mergePatients(Map, PatientService.MergeCallback)
+	 */
+	@Test
+	public void mergePatients_shouldFailIfAPreferredPatientIsMergedAwayInTheSameBatch() throws Exception {
+		Map<Integer, Integer> pairs = new LinkedHashMap<Integer, Integer>();
+		pairs.put(2, 6);
+		pairs.put(6, 999);
+		
+		expectedException.expect(APIException.class);
+		patientService.mergePatients(pairs, null);
+	}
+	
 	/**
 	 * @verifies fail if not preferred patient has unvoided orders
 	 * @see PatientService#mergePatients(org.openmrs.Patient, org.openmrs.Patient)
@@ -3551,4 +3617,178 @@ public class PatientServiceTest extends BaseContextSensitiveTest {
 		Patient notPreferredPatient = patientService.getPatient(7);
 		patientService.mergePatients(preferredPatient, notPreferredPatient);
 	}
+	
+	/**
+	 * @verifies fetch patients that exactly match on all given attributes
+	 * @see PatientService#getDuplicatePatientsByAttributes(List)
+	 */
+	@Test
+	public void getDuplicatePatientsByAttributes_shouldFetchPatientsThatExactlyMatchOnAllGivenAttributes()
+	        throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		
+		List<Patient> patients = patientService.getDuplicatePatientsByAttributes(Arrays.asList("gender", "birthdate",
+		    "givenName"));
+		
+		assertThat(patients, containsInAnyOrder(patientService.getPatient(2), patientService.getPatient(100)));
+	}
+	
+	/**
+	 * @verifies not return patients that exactly match on some but not all given attributes
+	 * @see PatientService#getDuplicatePatientsByAttributes(List)
+	 */
+	@Test
+	public void getDuplicatePatientsByAttributes_shouldNotReturnPatientsThatExactlyMatchOnSomeButNotAllGivenAttributes()
+	        throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		
+		List<Patient> patients = patientService.getDuplicatePatientsByAttributes(Arrays.asList("gender", "birthdate",
+		    "familyName"));
+		
+		assertFalse(patients.contains(patientService.getPatient(100)));
+	}
+	
+	/**
+	 * @verifies match text attributes regardless of case and surrounding spaces
+	 * @see PatientService#getDuplicatePatientsByAttributes(List)
+	 */
+	@Test
+	public void getDuplicatePatientsByAttributes_shouldMatchTextAttributesRegardlessOfCaseAndSurroundingSpaces()
+	        throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		Patient patient = patientService.getPatient(101);
+		patient.setGender("M");
+		patient.setBirthdate(patientService.getPatient(100).getBirthdate());
+		patient.getPersonName().setGivenName(" HORATIO ");
+		
+		List<Patient> patients = patientService.getDuplicatePatientsByAttributes(Arrays.asList("gender", "birthdate",
+		    "givenName"));
+		
+		assertThat(patients, containsInAnyOrder(patientService.getPatient(2), patientService.getPatient(100), patient));
+	}
+	
+	/**
+	 * @verifies save patients that share identifiers, names and birthdate as candidates
+	 * @see PatientService#detectDuplicatePatients(boolean)
+	 */
+	@Test
+	public void detectDuplicatePatients_shouldSavePatientsThatShareIdentifiersNamesAndBirthdateAsCandidates()
+	        throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		
+		assertTrue(patientService.detectDuplicatePatients(false) > 0);
+		
+		List<DuplicatePatientCandidate> candidates = patientService.getDuplicatePatientCandidates(patientService
+		        .getPatient(100), false, null, null);
+		assertEquals(1, candidates.size());
+		DuplicatePatientCandidate candidate = candidates.get(0);
+		assertEquals(Integer.valueOf(2), candidate.getPatient().getPatientId());
+		assertEquals(Integer.valueOf(100), candidate.getDuplicate().getPatientId());
+		assertTrue(candidate.getScore() > 0.9);
+		assertTrue(candidate.getMatchedOn().contains("identifier"));
+		assertTrue(patientService.getDuplicatePatientCandidates(patientService.getPatient(101), false, null, null)
+		        .isEmpty());
+	}
+	
+	/**
+	 * @verifies not save the same pair twice
+	 * @see PatientService#detectDuplicatePatients(boolean)
+	 */
+	@Test
+	public void detectDuplicatePatients_shouldNotSaveTheSamePairTwice() throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		
+		patientService.detectDuplicatePatients(false);
+		
+		assertEquals(0, patientService.detectDuplicatePatients(false));
+		assertEquals(1, patientService.getDuplicatePatientCandidates(patientService.getPatient(100), true, null, null)
+		        .size());
+	}
+	
+	/**
+	 * @verifies only compare patients changed since the last run if incremental
+	 * @see PatientService#detectDuplicatePatients(boolean)
+	 */
+	@Test
+	public void detectDuplicatePatients_shouldOnlyComparePatientsChangedSinceTheLastRunIfIncremental()
+	        throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		Patient patient = patientService.getPatient(100);
+		
+		adminService.saveGlobalProperty(new GlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_LAST_RUN,
+		        "2015-01-01 00:00:00.000"));
+		assertEquals(0, patientService.detectDuplicatePatients(true));
+		assertTrue(patientService.getDuplicatePatientCandidates(patient, false, null, null).isEmpty());
+		
+		adminService.saveGlobalProperty(new GlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_LAST_RUN,
+		        "2013-12-31 00:00:00.000"));
+		assertTrue(patientService.detectDuplicatePatients(true) > 0);
+		assertEquals(1, patientService.getDuplicatePatientCandidates(patient, false, null, null).size());
+	}
+	
+	/**
+	 * @verifies find the accented family names of unchanged patients if incremental
+	 * @see PatientService#detectDuplicatePatients(boolean)
+	 */
+	@Test
+	public void detectDuplicatePatients_shouldFindTheAccentedFamilyNamesOfUnchangedPatientsIfIncremental()
+	        throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		// only the family name, birth year and gender of patient 101 tell it apart from patient 100,
+		// so it is found by the initial of its family name
+		adminService.executeSQL("update person set gender = 'M', birthdate = '1975-06-01' where person_id = 101", false);
+		adminService.executeSQL("update person_name set given_name = 'Horatio', family_name = '\u00c9liot'"
+		        + " where person_id = 101", false);
+		adminService.executeSQL("update person_name set family_name = 'Eliot', date_changed = '2015-06-01'"
+		        + " where person_id = 100", false);
+		adminService.saveGlobalProperty(new GlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_MATCH_THRESHOLD, "0.5"));
+		adminService.saveGlobalProperty(new GlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_LAST_RUN,
+		        "2015-01-01 00:00:00.000"));
+		
+		patientService.detectDuplicatePatients(true);
+		
+		List<DuplicatePatientCandidate> candidates = patientService.getDuplicatePatientCandidates(patientService
+		        .getPatient(101), false, null, null);
+		assertEquals(1, candidates.size());
+		assertEquals(Integer.valueOf(100), candidates.get(0).getPatient().getPatientId());
+		assertTrue(candidates.get(0).getMatchedOn().contains("familyName"));
+	}
+	
+	/**
+	 * @verifies return the candidates of the given patient
+	 * @see PatientService#getDuplicatePatientCandidates(Patient, boolean, Integer, Integer)
+	 */
+	@Test
+	public void getDuplicatePatientCandidates_shouldReturnTheCandidatesOfTheGivenPatient() throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		patientService.detectDuplicatePatients(false);
+		
+		List<DuplicatePatientCandidate> candidates = patientService.getDuplicatePatientCandidates(patientService
+		        .getPatient(2), false, null, null);
+		
+		assertFalse(candidates.isEmpty());
+		for (DuplicatePatientCandidate candidate : candidates) {
+			assertTrue(candidate.getPatient().getPatientId() == 2 || candidate.getDuplicate().getPatientId() == 2);
+		}
+	}
+	
+	/**
+	 * @verifies void the candidate
+	 * @see PatientService#voidDuplicatePatientCandidate(DuplicatePatientCandidate, String)
+	 */
+	@Test
+	public void voidDuplicatePatientCandidate_shouldVoidTheCandidate() throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		patientService.detectDuplicatePatients(false);
+		Patient patient = patientService.getPatient(100);
+		DuplicatePatientCandidate candidate = patientService.getDuplicatePatientCandidates(patient, false, null, null)
+		        .get(0);
+		
+		patientService.voidDuplicatePatientCandidate(candidate, "not the same person");
+		
+		assertTrue(candidate.isVoided());
+		assertNotNull(candidate.getVoidedBy());
+		assertTrue(patientService.getDuplicatePatientCandidates(patient, false, null, null).isEmpty());
+		assertEquals(0, patientService.detectDuplicatePatients(false));
+	}
 }
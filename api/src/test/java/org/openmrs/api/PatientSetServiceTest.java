@@ -10,7 +10,9 @@
 package org.openmrs.api;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.text.DateFormat;
@@ -33,6 +35,7 @@ import org.openmrs.EncounterType;
 import org.openmrs.Form;
 import org.openmrs.Location;
 import org.openmrs.Obs;
+import org.openmrs.PatientIdentifierType;
 import org.openmrs.PatientProgram;
 import org.openmrs.PatientState;
 import org.openmrs.Person;
@@ -45,6 +48,10 @@ import org.openmrs.api.PatientSetService.GroupMethod;
 import org.openmrs.api.PatientSetService.Modifier;
 import org.openmrs.api.PatientSetService.TimeModifier;
 import org.openmrs.api.context.Context;
+import org.openmrs.cohort.CohortQuery;
+import org.openmrs.cohort.CohortQueryPlan;
+import org.openmrs.cohort.PatientColumn;
+import org.openmrs.cohort.PatientColumns;
 import org.openmrs.test.BaseContextSensitiveTest;
 import org.openmrs.test.TestUtil;
 import org.openmrs.test.Verifies;
@@ -394,4 +401,159 @@ public class PatientSetServiceTest extends BaseContextSensitiveTest {
 		Map<Integer, PatientState> results = Context.getPatientSetService().getCurrentStates(nobody, one);
 		Assert.assertEquals(results.size(), 0);
 	}
+
+	/**
+	 * @see PatientSetService#evaluateCohortQuery(CohortQuery)
+	 * @verifies match the intersection of the criteria for and
+	 */
+	@Test
+	public void evaluateCohortQuery_shouldMatchTheIntersectionOfTheCriteriaForAnd() throws Exception {
+		executeDataSet(EXTRA_DATA_XML);
+		Cohort inProgram = service.getPatientsByProgramAndState(null, null, null, null);
+		Cohort withEncounters = service.getPatientsHavingEncounters((EncounterType) null, null, null, null, null, null,
+		    null);
+		
+		Cohort actual = service.evaluateCohortQuery(CohortQuery.and(CohortQuery.inProgram(null, null, null, null),
+		    CohortQuery.havingEncounters(null, null, null, null, null, null, null)));
+		
+		Assert.assertEquals(Cohort.intersect(inProgram, withEncounters).getMemberIds(), actual.getMemberIds());
+	}
+	
+	/**
+	 * @see PatientSetService#evaluateCohortQuery(CohortQuery)
+	 * @verifies match the union of the criteria for or
+	 */
+	@Test
+	public void evaluateCohortQuery_shouldMatchTheUnionOfTheCriteriaForOr() throws Exception {
+		Cohort inProgram = service.getPatientsByProgramAndState(Context.getProgramWorkflowService().getProgram(1), null,
+		    null, null);
+		Cohort cohort = new Cohort("6,8");
+		
+		Cohort actual = service.evaluateCohortQuery(CohortQuery.or(CohortQuery.inProgram(Context
+		        .getProgramWorkflowService().getProgram(1), null, null, null), CohortQuery.members(cohort)));
+		
+		Assert.assertEquals(Cohort.union(inProgram, cohort).getMemberIds(), actual.getMemberIds());
+	}
+	
+	/**
+	 * @see PatientSetService#evaluateCohortQuery(CohortQuery)
+	 * @verifies match the inverse of the criterion for not
+	 */
+	@Test
+	public void evaluateCohortQuery_shouldMatchTheInverseOfTheCriterionForNot() throws Exception {
+		Cohort inProgram = service.getPatientsByProgramAndState(null, null, null, null);
+		
+		Cohort actual = service.evaluateCohortQuery(CohortQuery.not(CohortQuery.inProgram(null, null, null, null)));
+		
+		Assert.assertEquals(service.getInverseOfCohort(inProgram).getMemberIds(), actual.getMemberIds());
+	}
+	
+	/**
+	 * @see PatientSetService#evaluateCohortQuery(CohortQuery)
+	 * @verifies combine criteria that are evaluated separately
+	 */
+	@Test
+	public void evaluateCohortQuery_shouldCombineCriteriaThatAreEvaluatedSeparately() throws Exception {
+		Cohort inProgram = service.getPatientsByProgramAndState(null, null, null, null);
+		Cohort withDrugOrders = service.getPatientsHavingDrugOrder(null, null, null, null, null, null, null, null);
+		CohortQuery query = CohortQuery.and(CohortQuery.not(CohortQuery.inProgram(null, null, null, null)), CohortQuery
+		        .havingDrugOrder(null, null, null, null, null, null, null, null));
+		
+		Cohort actual = service.evaluateCohortQuery(query);
+		
+		Assert.assertEquals(CohortQueryPlan.Strategy.MEMORY, service.explainCohortQuery(query).getStrategy());
+		Assert.assertEquals(Cohort.subtract(withDrugOrders, inProgram).getMemberIds(), actual.getMemberIds());
+	}
+	
+	/**
+	 * @see PatientSetService#explainCohortQuery(CohortQuery)
+	 * @verifies combine sql criteria into a single query
+	 */
+	@Test
+	public void explainCohortQuery_shouldCombineSqlCriteriaIntoASingleQuery() throws Exception {
+		CohortQueryPlan plan = service.explainCohortQuery(CohortQuery.and(CohortQuery.inProgram(null, null, null, null),
+		    CohortQuery.or(CohortQuery.havingEncounters(null, null, null, null, null, 1, null), CohortQuery
+		            .not(CohortQuery.members(new Cohort("2,7"))))));
+		
+		Assert.assertEquals(CohortQueryPlan.Strategy.SQL, plan.getStrategy());
+		Assert.assertEquals(1, plan.getQueryCount());
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientColumns(Cohort,List)
+	 * @verifies fetch property values of the patients
+	 */
+	@Test
+	public void getPatientColumns_shouldFetchPropertyValuesOfThePatients() throws Exception {
+		PatientColumns columns = service.getPatientColumns(new Cohort("8,2,7,1000"), Arrays.asList(PatientColumn.property(
+		    "Person", "gender")));
+		
+		assertEquals(4, columns.size());
+		assertEquals(2, columns.getPatientId(0));
+		assertEquals(1000, columns.getPatientId(3));
+		assertEquals(Arrays.asList("M", "F", "F", null), Arrays.asList(columns.getColumn("Person.gender")));
+		assertFalse(columns.hasValue(3, 0));
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientColumns(Cohort,List)
+	 * @verifies fetch the preferred value if a patient has several
+	 */
+	@Test
+	public void getPatientColumns_shouldFetchThePreferredValueIfAPatientHasSeveral() throws Exception {
+		PatientColumns columns = service.getPatientColumns(new Cohort("2"), Arrays.asList(PatientColumn.property(
+		    "PatientIdentifier", "identifier")));
+		
+		assertEquals("101-6", columns.getValue(2, "PatientIdentifier.identifier"));
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientColumns(Cohort,List)
+	 * @verifies fetch person attribute values
+	 */
+	@Test
+	public void getPatientColumns_shouldFetchPersonAttributeValues() throws Exception {
+		PatientColumns columns = service.getPatientColumns(new Cohort("2,6,999"), Arrays.asList(PatientColumn
+		        .personAttribute("Civil Status")));
+		
+		assertEquals("6", columns.getValue(2, "Civil Status"));
+		assertEquals("5", columns.getValue(6, "Civil Status"));
+		assertNull(columns.getValue(999, "Civil Status"));
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientColumns(Cohort,List)
+	 * @verifies fetch identifiers of the given type
+	 */
+	@Test
+	public void getPatientColumns_shouldFetchIdentifiersOfTheGivenType() throws Exception {
+		PatientIdentifierType type = Context.getPatientService().getPatientIdentifierType(2);
+		PatientColumns columns = service.getPatientColumns(new Cohort("2,6,8"), Arrays.asList(PatientColumn
+		        .identifier(type)));
+		
+		assertEquals("101", columns.getValue(2, type.getName()));
+		assertEquals("12345K", columns.getValue(6, type.getName()));
+		// the identifier of this type is voided
+		assertNull(columns.getValue(8, type.getName()));
+	}
+	
+	/**
+	 * @see PatientSetService#getPatientColumns(Cohort,List)
+	 * @verifies fetch the values of cohorts larger than a chunk
+	 */
+	@Test
+	public void getPatientColumns_shouldFetchTheValuesOfCohortsLargerThanAChunk() throws Exception {
+		Cohort cohort = new Cohort();
+		for (int patientId = 1; patientId <= 2500; patientId++) {
+			cohort.addMember(patientId);
+		}
+		
+		PatientColumns columns = service.getPatientColumns(cohort, Arrays.asList(PatientColumn.property("Person",
+		    "gender"), PatientColumn.property("PersonName", "givenName")));
+		
+		assertEquals(2500, columns.size());
+		assertEquals("F", columns.getValue(7, "Person.gender"));
+		assertEquals("Johnny", columns.getValue(6, "PersonName.givenName"));
+		assertNull(columns.getValue(2000, "Person.gender"));
+	}
 }
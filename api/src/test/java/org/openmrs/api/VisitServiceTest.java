@@ -32,6 +32,7 @@ import org.openmrs.util.OpenmrsConstants;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
@@ -894,6 +895,40 @@ public class VisitServiceTest extends BaseContextSensitiveTest {
 		assertTrue("Not all active unvoided vists were closed", activeVisitCount == 0);
 	}
 	
+	/**
+	 * @see VisitService#stopVisits(Collection,Date)
+	 * @verifies stop the given active visits
+	 */
+	@Test
+	public void stopVisits_shouldStopTheGivenActiveVisits() throws Exception {
+		executeDataSet("org/openmrs/api/include/VisitServiceTest-includeVisitsAndTypeToAutoClose.xml");
+		Date stopDate = new Date();
+		
+		assertEquals(2, visitService.stopVisits(Arrays.asList(105, 106), stopDate));
+		
+		Visit visit = visitService.getVisit(105);
+		assertEquals(stopDate, visit.getStopDatetime());
+		// filled in by the interceptors when the session was flushed
+		assertEquals(Context.getAuthenticatedUser(), visit.getChangedBy());
+		assertNotNull(visit.getDateChanged());
+		assertNotNull(visitService.getVisit(106).getStopDatetime());
+	}
+	
+	/**
+	 * @see VisitService#stopVisits(Collection,Date)
+	 * @verifies not change visits that are already stopped
+	 */
+	@Test
+	public void stopVisits_shouldNotChangeVisitsThatAreAlreadyStopped() throws Exception {
+		executeDataSet("org/openmrs/api/include/VisitServiceTest-includeVisitsAndTypeToAutoClose.xml");
+		Date originalStopDate = visitService.getVisit(102).getStopDatetime();
+		
+		assertEquals(0, visitService.stopVisits(Arrays.asList(102), new Date()));
+		
+		assertEquals(originalStopDate, visitService.getVisit(102).getStopDatetime());
+		Assert.assertNull(visitService.getVisit(102).getChangedBy());
+	}
+	
 	/**
 	 * @see {@link VisitService#saveVisit(Visit)}
 	 */
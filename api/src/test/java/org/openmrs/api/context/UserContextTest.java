@@ -0,0 +1,62 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.api.context;
+
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.BaseContextSensitiveTest;
+
+/**
+ * Tests methods on the {@link UserContext} class.
+ */
+public class UserContextTest extends BaseContextSensitiveTest {
+
+	/**
+	 * @see UserContext#UserContext(UserContext)
+	 * @verifies copy the user, locale and location
+	 */
+	@Test
+	public void UserContext_shouldCopyTheUserLocaleAndLocation() throws Exception {
+		UserContext userContext = Context.getUserContext();
+		userContext.setLocale(Locale.FRENCH);
+		userContext.setLocationId(1);
+
+		UserContext copy = new UserContext(userContext);
+
+		Assert.assertEquals(userContext.getAuthenticatedUser(), copy.getAuthenticatedUser());
+		Assert.assertEquals(Locale.FRENCH, copy.getLocale());
+		Assert.assertEquals(Integer.valueOf(1), copy.getLocationId());
+	}
+
+	/**
+	 * @see UserContext#UserContext(UserContext)
+	 * @verifies not share proxy privileges with the given context
+	 */
+	@Test
+	public void UserContext_shouldNotShareProxyPrivilegesWithTheGivenContext() throws Exception {
+		Context.logout();
+		UserContext userContext = Context.getUserContext();
+		userContext.addProxyPrivilege("Some Privilege");
+		try {
+			UserContext copy = new UserContext(userContext);
+
+			Assert.assertTrue(userContext.hasPrivilege("Some Privilege"));
+			Assert.assertFalse(copy.hasPrivilege("Some Privilege"));
+
+			copy.addProxyPrivilege("Other Privilege");
+			Assert.assertFalse(userContext.hasPrivilege("Other Privilege"));
+		}
+		finally {
+			userContext.removeProxyPrivilege("Some Privilege");
+		}
+	}
+}
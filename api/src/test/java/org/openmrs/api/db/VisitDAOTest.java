@@ -10,13 +10,19 @@
 package org.openmrs.api.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.Visit;
 import org.openmrs.VisitType;
 import org.openmrs.api.VisitService;
+import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
 import org.openmrs.test.Verifies;
 
@@ -79,4 +85,52 @@ public class VisitDAOTest extends BaseContextSensitiveTest {
 		cal.set(Calendar.MILLISECOND, 999);
 		Assert.assertEquals(105, dao.getNextVisit(dao.getVisit(1), visitTypes, cal.getTime()).getVisitId().intValue());
 	}
+	
+	/**
+	 * @see VisitDAO#getNextVisitIds(Integer,Collection,Date,int)
+	 * @verifies return the ids of unvoided active visits matching the specified types and startDate
+	 */
+	@Test
+	public void getNextVisitIds_shouldReturnTheIdsOfUnvoidedActiveVisitsMatchingTheSpecifiedTypesAndStartDate()
+	        throws Exception {
+		executeDataSet(VISITS_INCLUDE_VISITS_TO_AUTO_CLOSE_XML);
+		
+		Assert.assertEquals(Arrays.asList(105, 106), dao.getNextVisitIds(1, Collections.singletonList(dao
+		        .getVisitType(4)), maximumStartDate(), 10));
+	}
+	
+	/**
+	 * @see VisitDAO#getNextVisitIds(Integer,Collection,Date,int)
+	 * @verifies return at most the given number of ids
+	 */
+	@Test
+	public void getNextVisitIds_shouldReturnAtMostTheGivenNumberOfIds() throws Exception {
+		executeDataSet(VISITS_INCLUDE_VISITS_TO_AUTO_CLOSE_XML);
+		List<VisitType> visitTypes = Collections.singletonList(dao.getVisitType(4));
+		
+		Assert.assertEquals(Arrays.asList(105), dao.getNextVisitIds(null, visitTypes, maximumStartDate(), 1));
+		Assert.assertEquals(Arrays.asList(106), dao.getNextVisitIds(105, visitTypes, maximumStartDate(), 1));
+	}
+	
+	/**
+	 * @see VisitDAO#getVisitsByIds(Collection)
+	 * @verifies return the visits with the given ids
+	 */
+	@Test
+	public void getVisitsByIds_shouldReturnTheVisitsWithTheGivenIds() throws Exception {
+		executeDataSet(VISITS_INCLUDE_VISITS_TO_AUTO_CLOSE_XML);
+		
+		List<Visit> visits = dao.getVisitsByIds(Arrays.asList(106, 105, 999));
+		
+		Assert.assertEquals(2, visits.size());
+		Assert.assertEquals(105, visits.get(0).getVisitId().intValue());
+		Assert.assertEquals(106, visits.get(1).getVisitId().intValue());
+	}
+	
+	private Date maximumStartDate() {
+		Calendar cal = Calendar.getInstance();
+		cal.set(2005, 0, 4, 23, 59, 59);
+		cal.set(Calendar.MILLISECOND, 999);
+		return cal.getTime();
+	}
 }
@@ -0,0 +1,86 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.api.db.hibernate;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.cohort.CohortQuery;
+import org.openmrs.cohort.CohortQueryPlan;
+import org.openmrs.cohort.CohortQueryPlan.Operator;
+import org.openmrs.cohort.CohortQueryPlan.Strategy;
+
+/**
+ * Tests methods on the {@link HibernateCohortQueryPlanner} class.
+ */
+public class HibernateCohortQueryPlannerTest {
+	
+	/**
+	 * @see HibernateCohortQueryPlanner#plan(CohortQuery)
+	 * @verifies combine sql criteria into one statement
+	 */
+	@Test
+	public void plan_shouldCombineSqlCriteriaIntoOneStatement() throws Exception {
+		CohortQueryPlan plan = new HibernateCohortQueryPlanner().plan(CohortQuery.and(CohortQuery.inProgram(null, null,
+		    null, null), CohortQuery.not(CohortQuery.havingEncounters(null, null, null, null, null, 2, null))));
+		
+		Assert.assertEquals(Strategy.SQL, plan.getStrategy());
+		Assert.assertTrue(plan.getSql().contains(" not in ("));
+		Assert.assertEquals(2, plan.getParameters().get("c2_minCount"));
+	}
+	
+	/**
+	 * @see HibernateCohortQueryPlanner#plan(CohortQuery)
+	 * @verifies evaluate criteria without sql separately
+	 */
+	@Test
+	public void plan_shouldEvaluateCriteriaWithoutSqlSeparately() throws Exception {
+		CohortQueryPlan plan = new HibernateCohortQueryPlanner().plan(CohortQuery.or(CohortQuery.inProgram(null, null,
+		    null, null), CohortQuery.havingDrugOrder(null, null, null, null, null, null, null, null)));
+		
+		Assert.assertEquals(Strategy.MEMORY, plan.getStrategy());
+		Assert.assertEquals(Operator.OR, plan.getOperator());
+		Assert.assertEquals(Strategy.SQL, plan.getChildren().get(0).getStrategy());
+		Assert.assertEquals(Strategy.SEPARATE, plan.getChildren().get(1).getStrategy());
+		Assert.assertEquals(2, plan.getQueryCount());
+	}
+	
+	/**
+	 * @see HibernateCohortQueryPlanner#plan(CohortQuery)
+	 * @verifies pass small cohorts as parameters
+	 */
+	@Test
+	public void plan_shouldPassSmallCohortsAsParameters() throws Exception {
+		Cohort large = new Cohort();
+		for (int i = 1; i <= HibernateCohortQueryPlanner.MAX_INLINE_MEMBERS + 1; i++) {
+			large.addMember(i);
+		}
+		
+		Assert.assertEquals(Strategy.SQL, new HibernateCohortQueryPlanner().plan(
+		    CohortQuery.members(new Cohort("2,7"))).getStrategy());
+		Assert.assertEquals(Strategy.SEPARATE, new HibernateCohortQueryPlanner().plan(CohortQuery.members(large))
+		        .getStrategy());
+	}
+	
+	/**
+	 * @see HibernateCohortQueryPlanner#plan(CohortQuery)
+	 * @verifies limit the encounter count to the maximum count
+	 */
+	@Test
+	public void plan_shouldLimitTheEncounterCountToTheMaximumCount() throws Exception {
+		CohortQueryPlan plan = new HibernateCohortQueryPlanner().plan(CohortQuery.havingEncounters(null, null, null,
+		    null, null, 2, 5));
+		
+		Assert.assertEquals(Strategy.SQL, plan.getStrategy());
+		Assert.assertTrue(plan.getSql().matches("(?s).*count\\(\\*\\) >= :\\w*minCount.*"));
+		Assert.assertTrue(plan.getSql().matches("(?s).*count\\(\\*\\) <= :\\w*maxCount.*"));
+		Assert.assertTrue(plan.getParameters().containsValue(5));
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.InExpression;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.Oracle10gDialect;
+import org.hibernate.dialect.PostgreSQL82Dialect;
+import org.hibernate.dialect.SQLServer2008Dialect;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Tests methods on the {@link IdSetRestrictions} class.
+ */
+public class IdSetRestrictionsTest extends BaseContextSensitiveTest {
+	
+	private Session session;
+	
+	@Before
+	public void before() throws Exception {
+		session = ((SessionFactory) applicationContext.getBean("sessionFactory")).getCurrentSession();
+	}
+	
+	@After
+	public void after() throws Exception {
+		// the threshold is cached beyond the rolled back transaction
+		new IdSetRestrictions().globalPropertyDeleted(OpenmrsConstants.GP_COHORT_TEMPORARY_TABLE_THRESHOLD);
+	}
+	
+	/**
+	 * @see IdSetRestrictions#in(Session, String, Collection)
+	 * @verifies list small sets of ids in the query
+	 */
+	@Test
+	public void in_shouldListSmallSetsOfIdsInTheQuery() throws Exception {
+		Criterion criterion = IdSetRestrictions.in(session, "patientId", Arrays.asList(2, 7));
+		
+		Assert.assertTrue(criterion instanceof InExpression);
+		Assert.assertEquals(Arrays.asList(2, 7), getPatientIds(criterion));
+	}
+	
+	/**
+	 * @see IdSetRestrictions#in(Session, String, Collection)
+	 * @verifies match the ids through a temporary table above the threshold
+	 */
+	@Test
+	public void in_shouldMatchTheIdsThroughATemporaryTableAboveTheThreshold() throws Exception {
+		setThreshold("2");
+		
+		Criterion criterion = IdSetRestrictions.in(session, "patientId", Arrays.asList(999, 2, 7, 12345, 2, null));
+		
+		Assert.assertFalse(criterion instanceof InExpression);
+		Assert.assertEquals(Arrays.asList(2, 7, 999), getPatientIds(criterion));
+		
+		// a second set replaces the first one
+		criterion = IdSetRestrictions.in(session, "patientId", Arrays.asList(6, 8, 9));
+		Assert.assertEquals(Arrays.asList(6, 8), getPatientIds(criterion));
+	}
+	
+	/**
+	 * @see IdSetRestrictions#in(Session, String, Collection)
+	 * @verifies match every id of a set larger than a list
+	 */
+	@Test
+	public void in_shouldMatchEveryIdOfASetLargerThanAList() throws Exception {
+		setThreshold("-1");
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 3; i <= 2500; i++) {
+			ids.add(i);
+		}
+		
+		Criterion criterion = IdSetRestrictions.in(session, "patientId", ids);
+		
+		Assert.assertTrue(criterion instanceof Disjunction);
+		Assert.assertEquals(Arrays.asList(6, 7, 8, 432, 999), getPatientIds(criterion));
+	}
+	
+	/**
+	 * @see IdSetRestrictions#supportsIdTable(Dialect)
+	 * @verifies only support dialects that create private temporary tables if not exists
+	 */
+	@Test
+	public void supportsIdTable_shouldOnlySupportDialectsThatCreatePrivateTemporaryTablesIfNotExists() throws Exception {
+		Assert.assertTrue(IdSetRestrictions.supportsIdTable(new MySQLDialect()));
+		Assert.assertTrue(IdSetRestrictions.supportsIdTable(new H2Dialect()));
+		Assert.assertFalse(IdSetRestrictions.supportsIdTable(new PostgreSQL82Dialect()));
+		Assert.assertFalse(IdSetRestrictions.supportsIdTable(new SQLServer2008Dialect()));
+		Assert.assertFalse(IdSetRestrictions.supportsIdTable(new Oracle10gDialect()));
+	}
+	
+	private void setThreshold(String threshold) {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GP_COHORT_TEMPORARY_TABLE_THRESHOLD, threshold));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<Integer> getPatientIds(Criterion criterion) {
+		Criteria criteria = session.createCriteria(Patient.class).add(criterion);
+		criteria.setProjection(Projections.property("patientId")).addOrder(Order.asc("patientId"));
+		return criteria.list();
+	}
+}
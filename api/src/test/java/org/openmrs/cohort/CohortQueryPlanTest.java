@@ -0,0 +1,64 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.cohort;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.cohort.CohortQueryPlan.Operator;
+
+/**
+ * Tests methods on the {@link CohortQueryPlan} class.
+ */
+public class CohortQueryPlanTest {
+	
+	/**
+	 * @see CohortQueryPlan#getQueryCount()
+	 * @verifies count sql and separate steps
+	 */
+	@Test
+	public void getQueryCount_shouldCountSqlAndSeparateSteps() throws Exception {
+		Assert.assertEquals(2, plan().getQueryCount());
+	}
+	
+	/**
+	 * @see CohortQueryPlan#explain()
+	 * @verifies show the statement of sql steps
+	 */
+	@Test
+	public void explain_shouldShowTheStatementOfSqlSteps() throws Exception {
+		String explain = CohortQueryPlan.sql("select 1", Collections.<String, Object> singletonMap("a", 2), "one").explain();
+		
+		Assert.assertEquals("SQL: one\n  select 1 {a=2}\n", explain);
+	}
+	
+	/**
+	 * @see CohortQueryPlan#explain()
+	 * @verifies indent child steps
+	 */
+	@Test
+	public void explain_shouldIndentChildSteps() throws Exception {
+		String[] lines = plan().explain().split("\n");
+		
+		Assert.assertEquals("MEMORY: AND", lines[0]);
+		Assert.assertTrue(lines[1].startsWith("  SQL: "));
+		Assert.assertTrue(lines[3].startsWith("  SEPARATE: "));
+	}
+	
+	private CohortQueryPlan plan() {
+		CohortQueryPlan sql = CohortQueryPlan.sql("select patient_id from patient", Collections.<String, Object> emptyMap(),
+		    "all patients");
+		CohortQueryPlan separate = CohortQueryPlan.separate(CohortQuery.havingDrugOrder(null, null, null, null, null, null,
+		    null, null));
+		return CohortQueryPlan.memory(Operator.AND, Arrays.asList(sql, separate));
+	}
+}
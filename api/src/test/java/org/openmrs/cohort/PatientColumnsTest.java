@@ -0,0 +1,69 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.cohort;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests methods on the {@link PatientColumns} class.
+ */
+public class PatientColumnsTest {
+	
+	/**
+	 * @see PatientColumns#getRow(int)
+	 * @verifies find the row of a patient
+	 */
+	@Test
+	public void getRow_shouldFindTheRowOfAPatient() throws Exception {
+		Assert.assertEquals(1, columns().getRow(7));
+	}
+	
+	/**
+	 * @see PatientColumns#getRow(int)
+	 * @verifies return a negative number for a patient that is not included
+	 */
+	@Test
+	public void getRow_shouldReturnANegativeNumberForAPatientThatIsNotIncluded() throws Exception {
+		Assert.assertTrue(columns().getRow(5) < 0);
+	}
+	
+	/**
+	 * @see PatientColumns#getValue(int, String)
+	 * @verifies return the value of a patient
+	 */
+	@Test
+	public void getValue_shouldReturnTheValueOfAPatient() throws Exception {
+		PatientColumns columns = columns();
+		columns.setValue(2, 0, "F");
+		
+		Assert.assertEquals("F", columns.getValue(8, "Person.gender"));
+		Assert.assertNull(columns.getValue(5, "Person.gender"));
+	}
+	
+	/**
+	 * @see PatientColumns#hasValue(int, int)
+	 * @verifies tell null values from missing ones
+	 */
+	@Test
+	public void hasValue_shouldTellNullValuesFromMissingOnes() throws Exception {
+		PatientColumns columns = columns();
+		columns.setValue(0, 0, null);
+		
+		Assert.assertTrue(columns.hasValue(0, 0));
+		Assert.assertFalse(columns.hasValue(1, 0));
+	}
+	
+	private PatientColumns columns() {
+		return new PatientColumns(Arrays.asList(PatientColumn.property("Person", "gender")), new int[] { 2, 7, 8 });
+	}
+}
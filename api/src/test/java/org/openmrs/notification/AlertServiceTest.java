@@ -9,8 +9,14 @@
  */
 package org.openmrs.notification;
 
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.openmrs.User;
+import org.openmrs.api.UserService;
 import org.openmrs.api.context.Context;
 import org.openmrs.notification.impl.AlertServiceImpl;
 import org.openmrs.test.BaseContextSensitiveTest;
@@ -65,4 +71,46 @@ public class AlertServiceTest extends BaseContextSensitiveTest {
 		//Test that alert contains the expected content
 		Assert.assertTrue(alertOne.getText().equals("Module.startupError.notification.message"));
 	}
+	
+	/**
+	 * @see AlertService#getUnreadAlertCounts()
+	 * @verifies count the unread alerts of each recipient
+	 */
+	@Test
+	public void getUnreadAlertCounts_shouldCountTheUnreadAlertsOfEachRecipient() throws Exception {
+		UserService us = Context.getUserService();
+		AlertService as = Context.getAlertService();
+		as.saveAlert(new Alert("first", Arrays.asList(us.getUser(1), us.getUser(501))));
+		as.saveAlert(new Alert("second", us.getUser(501)));
+		
+		Map<User, Integer> counts = as.getUnreadAlertCounts();
+		
+		Assert.assertEquals(2, counts.size());
+		Assert.assertEquals(1, counts.get(us.getUser(1)).intValue());
+		Assert.assertEquals(2, counts.get(us.getUser(501)).intValue());
+	}
+	
+	/**
+	 * @see AlertService#getUnreadAlertCounts()
+	 * @verifies not count read or expired alerts
+	 */
+	@Test
+	public void getUnreadAlertCounts_shouldNotCountReadOrExpiredAlerts() throws Exception {
+		UserService us = Context.getUserService();
+		AlertService as = Context.getAlertService();
+		Alert read = new Alert("read", Arrays.asList(us.getUser(1), us.getUser(501)));
+		read.getRecipient(us.getUser(1)).setAlertRead(true);
+		as.saveAlert(read);
+		Alert expired = new Alert("expired", us.getUser(1));
+		expired.setDateToExpire(new Date(System.currentTimeMillis() - 60000));
+		as.saveAlert(expired);
+		Alert readByAny = new Alert("read by any", us.getUser(501));
+		readByAny.setAlertRead(true);
+		as.saveAlert(readByAny);
+		
+		Map<User, Integer> counts = as.getUnreadAlertCounts();
+		
+		Assert.assertEquals(1, counts.size());
+		Assert.assertEquals(1, counts.get(us.getUser(501)).intValue());
+	}
 }
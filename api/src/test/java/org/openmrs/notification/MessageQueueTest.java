@@ -0,0 +1,143 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.notification;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests methods on the {@link MessageQueue} class.
+ */
+public class MessageQueueTest {
+	
+	/**
+	 * @see MessageQueue#add(Message)
+	 * @verifies send queued messages through the sender
+	 */
+	@Test
+	public void add_shouldSendQueuedMessagesThroughTheSender() throws Exception {
+		RecordingMessageSender sender = new RecordingMessageSender(0);
+		MessageQueue queue = new MessageQueue(sender);
+		
+		queue.add(message("one"));
+		queue.add(message("two"));
+		
+		Assert.assertTrue(queue.waitUntilEmpty(5000));
+		Assert.assertEquals(2, queue.getSentCount());
+		Assert.assertEquals("one", sender.sent.get(0).getSubject());
+		Assert.assertEquals("two", sender.sent.get(1).getSubject());
+	}
+	
+	/**
+	 * @see MessageQueue#add(Message)
+	 * @verifies try failed messages again
+	 */
+	@Test
+	public void add_shouldTryFailedMessagesAgain() throws Exception {
+		RecordingMessageSender sender = new RecordingMessageSender(2);
+		MessageQueue queue = new MessageQueue(sender);
+		queue.setRetryDelay(1);
+		
+		queue.add(message("one"));
+		
+		Assert.assertTrue(queue.waitUntilEmpty(5000));
+		Assert.assertEquals(1, queue.getSentCount());
+		Assert.assertEquals(0, queue.getFailedCount());
+		Assert.assertEquals(3, sender.attempts);
+	}
+	
+	/**
+	 * @see MessageQueue#add(Message)
+	 * @verifies drop messages after the maximum number of attempts
+	 */
+	@Test
+	public void add_shouldDropMessagesAfterTheMaximumNumberOfAttempts() throws Exception {
+		RecordingMessageSender sender = new RecordingMessageSender(Integer.MAX_VALUE);
+		MessageQueue queue = new MessageQueue(sender);
+		queue.setRetryDelay(1);
+		queue.setMaxAttempts(2);
+		
+		queue.add(message("one"));
+		
+		Assert.assertTrue(queue.waitUntilEmpty(5000));
+		Assert.assertEquals(0, queue.getSentCount());
+		Assert.assertEquals(1, queue.getFailedCount());
+		Assert.assertEquals(2, sender.attempts);
+	}
+	
+	/**
+	 * @see MessageQueue#shutdown()
+	 * @verifies return the messages that were not sent
+	 */
+	@Test
+	public void shutdown_shouldReturnTheMessagesThatWereNotSent() throws Exception {
+		RecordingMessageSender sender = new RecordingMessageSender(Integer.MAX_VALUE);
+		MessageQueue queue = new MessageQueue(sender);
+		queue.setRetryDelay(60000);
+		
+		queue.add(message("one"));
+		queue.add(message("two"));
+		for (int i = 0; i < 500 && sender.attempts < 2; i++) {
+			Thread.sleep(10);
+		}
+		List<Message> unsent = queue.shutdown();
+		
+		Assert.assertEquals(2, sender.attempts);
+		Assert.assertEquals(2, unsent.size());
+		Assert.assertEquals(0, queue.getPendingCount());
+		Assert.assertEquals(0, queue.getFailedCount());
+	}
+	
+	/**
+	 * @see MessageQueue#shutdown()
+	 * @verifies not accept messages after it has been shut down
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void shutdown_shouldNotAcceptMessagesAfterItHasBeenShutDown() throws Exception {
+		MessageQueue queue = new MessageQueue(new RecordingMessageSender(0));
+		queue.shutdown();
+		
+		queue.add(message("one"));
+	}
+	
+	private Message message(String subject) {
+		Message message = new Message();
+		message.setRecipients("recipient@example.com");
+		message.setSubject(subject);
+		return message;
+	}
+	
+	/**
+	 * Stands in for the mail server, failing the given number of times before accepting messages
+	 */
+	private static class RecordingMessageSender implements MessageSender {
+		
+		private final List<Message> sent = new CopyOnWriteArrayList<Message>();
+		
+		private final int failures;
+		
+		private volatile int attempts = 0;
+		
+		public RecordingMessageSender(int failures) {
+			this.failures = failures;
+		}
+		
+		@Override
+		public void send(Message message) throws MessageException {
+			if (attempts++ < failures) {
+				throw new MessageException("Could not connect to SMTP host");
+			}
+			sent.add(message);
+		}
+	}
+}
@@ -12,6 +12,9 @@ package org.openmrs.notification;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.api.context.Context;
@@ -114,4 +117,42 @@ public class MessageServiceTest extends BaseContextSensitiveTest {
 		}
 	}
 	
+	/**
+	 * @see MessageService#queueMessage(Message)
+	 * @verifies send the message through the message sender
+	 */
+	@Test
+	public void queueMessage_shouldSendTheMessageThroughTheMessageSender() throws Exception {
+		final List<Message> sent = new CopyOnWriteArrayList<Message>();
+		MessageSender original = ms.getMessageSender();
+		ms.setMessageSender(new MessageSender() {
+			
+			@Override
+			public void send(Message message) throws MessageException {
+				sent.add(message);
+			}
+		});
+		try {
+			ms.queueMessage(ms.createMessage("recipient@example.com", "sender@example.com", "subject", "content"));
+			
+			for (int i = 0; i < 500 && sent.isEmpty(); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, sent.size());
+			assertEquals("recipient@example.com", sent.get(0).getRecipients());
+		}
+		finally {
+			ms.setMessageSender(original);
+		}
+	}
+	
+	/**
+	 * @see MessageService#queueMessage(Message)
+	 * @verifies fail for a message without recipients
+	 */
+	@Test(expected = MessageException.class)
+	public void queueMessage_shouldFailForAMessageWithoutRecipients() throws Exception {
+		ms.queueMessage(ms.createMessage("subject", "content"));
+	}
+	
 }
@@ -0,0 +1,64 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests methods on the {@link ObsTimeline} class.
+ */
+public class ObsTimelineTest {
+	
+	private ObsTimeline timeline;
+	
+	@Before
+	public void before() throws Exception {
+		timeline = new ObsTimeline(4);
+		timeline.setRow(0, 10, 5089, new Date(1000), 50.0, null, null, null);
+		timeline.setRow(1, 11, 5497, new Date(2000), 150.0, null, null, null);
+		timeline.setRow(2, 12, 5089, new Date(2000), 55.0, null, null, null);
+		timeline.setRow(3, 13, 19, new Date(3000), null, null, null, "text");
+	}
+	
+	/**
+	 * @see ObsTimeline#getRows(int)
+	 * @verifies return the rows of a concept in time order
+	 */
+	@Test
+	public void getRows_shouldReturnTheRowsOfAConceptInTimeOrder() throws Exception {
+		Assert.assertArrayEquals(new int[] { 0, 2 }, timeline.getRows(5089));
+		Assert.assertEquals(55.0, timeline.getValueNumeric(2), 0);
+	}
+	
+	/**
+	 * @see ObsTimeline#getRows(int)
+	 * @verifies return no rows for a concept without obs
+	 */
+	@Test
+	public void getRows_shouldReturnNoRowsForAConceptWithoutObs() throws Exception {
+		Assert.assertEquals(0, timeline.getRows(1).length);
+	}
+	
+	/**
+	 * @see ObsTimeline#getFirstRow(Date)
+	 * @verifies find the first row at or after a datetime
+	 */
+	@Test
+	public void getFirstRow_shouldFindTheFirstRowAtOrAfterADatetime() throws Exception {
+		Assert.assertEquals(0, timeline.getFirstRow(new Date(0)));
+		Assert.assertEquals(1, timeline.getFirstRow(new Date(2000)));
+		Assert.assertEquals(3, timeline.getFirstRow(new Date(2500)));
+		Assert.assertEquals(4, timeline.getFirstRow(new Date(4000)));
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs.handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests methods on the {@link DerivedImageCache} class.
+ */
+public class DerivedImageCacheTest {
+	
+	private File directory;
+	
+	@Before
+	public void before() throws Exception {
+		directory = File.createTempFile("derivedImageCacheTest", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+	
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+	
+	/**
+	 * @see DerivedImageCache#get(String)
+	 * @verifies return null for a name that is not cached
+	 */
+	@Test
+	public void get_shouldReturnNullForANameThatIsNotCached() throws Exception {
+		Assert.assertNull(new DerivedImageCache(directory, 100).get("THUMBNAIL_VIEW/missing.png"));
+	}
+	
+	/**
+	 * @see DerivedImageCache#get(String)
+	 * @verifies return a cached file
+	 */
+	@Test
+	public void get_shouldReturnACachedFile() throws Exception {
+		DerivedImageCache cache = new DerivedImageCache(directory, 100);
+		File file = cache.put("THUMBNAIL_VIEW/ab/cd/image.png", write(cache, 10));
+		
+		Assert.assertEquals(file, cache.get("THUMBNAIL_VIEW/ab/cd/image.png"));
+		Assert.assertEquals(10, cache.getSize());
+		
+		// files that already exist are picked up by a new cache
+		Assert.assertEquals(file, new DerivedImageCache(directory, 100).get("THUMBNAIL_VIEW/ab/cd/image.png"));
+	}
+	
+	/**
+	 * @see DerivedImageCache#put(String,File)
+	 * @verifies evict the least recently used files when the maximum size is exceeded
+	 */
+	@Test
+	public void put_shouldEvictTheLeastRecentlyUsedFilesWhenTheMaximumSizeIsExceeded() throws Exception {
+		DerivedImageCache cache = new DerivedImageCache(directory, 25);
+		File first = cache.put("first.png", write(cache, 10));
+		File second = cache.put("second.png", write(cache, 10));
+		cache.get("first.png");
+		
+		File third = cache.put("third.png", write(cache, 10));
+		
+		Assert.assertTrue(first.exists());
+		Assert.assertFalse(second.exists());
+		Assert.assertTrue(third.exists());
+		Assert.assertNull(cache.get("second.png"));
+		Assert.assertEquals(20, cache.getSize());
+	}
+	
+	private File write(DerivedImageCache cache, int length) throws IOException {
+		File tempFile = cache.createTempFile();
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			out.write(new byte[length]);
+		}
+		finally {
+			out.close();
+		}
+		return tempFile;
+	}
+}
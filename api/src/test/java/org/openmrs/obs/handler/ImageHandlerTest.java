@@ -0,0 +1,123 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs.handler;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Obs;
+import org.openmrs.obs.ComplexData;
+import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.test.BaseContextSensitiveTest;
+
+/**
+ * Tests methods on the {@link ImageHandler} class.
+ */
+public class ImageHandlerTest extends BaseContextSensitiveTest {
+	
+	protected static final String COMPLEX_OBS_XML = "org/openmrs/api/include/ObsServiceTest-complex.xml";
+	
+	@Before
+	public void before() throws Exception {
+		executeDataSet(COMPLEX_OBS_XML);
+	}
+	
+	/**
+	 * @see ImageHandler#getObs(Obs,String)
+	 * @verifies return a scaled down copy of the image for the thumbnail view
+	 */
+	@Test
+	public void getObs_shouldReturnAScaledDownCopyOfTheImageForTheThumbnailView() throws Exception {
+		ImageHandler handler = new ImageHandler();
+		Obs obs = saveImage(handler, 600, 300);
+		File derived = null;
+		try {
+			Obs thumbnail = handler.getObs(obs, ComplexObsHandler.THUMBNAIL_VIEW);
+			ComplexData complexData = thumbnail.getComplexData();
+			Assert.assertEquals("image/png", complexData.getMimeType());
+			
+			InputStream in = (InputStream) complexData.getData();
+			BufferedImage img = ImageIO.read(in);
+			in.close();
+			Assert.assertEquals(128, img.getWidth());
+			Assert.assertEquals(64, img.getHeight());
+			
+			derived = new File(handler.getDerivedImageCache().getDirectory(), ComplexObsHandler.THUMBNAIL_VIEW + "/"
+			        + AbstractHandler.getComplexDataKey(obs) + ".png");
+			Assert.assertTrue(derived.exists());
+			Assert.assertEquals(derived.length(), complexData.getLength().longValue());
+		}
+		finally {
+			handler.purgeComplexData(obs);
+		}
+		Assert.assertFalse(derived.exists());
+	}
+	
+	/**
+	 * @see ImageHandler#getObs(Obs,String)
+	 * @verifies not scale up images smaller than the view
+	 */
+	@Test
+	public void getObs_shouldNotScaleUpImagesSmallerThanTheView() throws Exception {
+		ImageHandler handler = new ImageHandler();
+		Obs obs = saveImage(handler, 50, 40);
+		try {
+			InputStream in = (InputStream) handler.getObs(obs, ComplexObsHandler.PREVIEW_VIEW).getComplexData().getData();
+			BufferedImage img = ImageIO.read(in);
+			in.close();
+			Assert.assertEquals(50, img.getWidth());
+			Assert.assertEquals(40, img.getHeight());
+		}
+		finally {
+			handler.purgeComplexData(obs);
+		}
+	}
+	
+	/**
+	 * @see ImageHandler#getObs(Obs,String)
+	 * @verifies return the original file if the image cannot be read
+	 */
+	@Test
+	public void getObs_shouldReturnTheOriginalFileIfTheImageCannotBeRead() throws Exception {
+		ImageHandler handler = new ImageHandler();
+		Obs obs = new Obs();
+		obs.setValueComplex("png image |imageHandlerTest-corrupt.png");
+		File file = AbstractHandler.getComplexDataFile(obs);
+		file.getParentFile().mkdirs();
+		FileUtils.writeStringToFile(file, "not an image");
+		try {
+			ComplexData complexData = handler.getObs(obs, ComplexObsHandler.THUMBNAIL_VIEW).getComplexData();
+			Assert.assertEquals("image/png", complexData.getMimeType());
+			
+			InputStream in = (InputStream) complexData.getData();
+			Assert.assertEquals("not an image", IOUtils.toString(in));
+			in.close();
+		}
+		finally {
+			handler.purgeComplexData(obs);
+		}
+		Assert.assertFalse(file.exists());
+	}
+	
+	private Obs saveImage(ImageHandler handler, int width, int height) {
+		Obs obs = new Obs();
+		obs.setComplexData(new ComplexData("imageHandlerTest.png", new BufferedImage(width, height,
+		        BufferedImage.TYPE_INT_RGB)));
+		return handler.saveObs(obs);
+	}
+}
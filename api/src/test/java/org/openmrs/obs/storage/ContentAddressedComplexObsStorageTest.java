@@ -0,0 +1,127 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.obs.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.obs.ComplexData;
+import org.openmrs.test.BaseContextSensitiveTest;
+
+/**
+ * Tests methods on the {@link ContentAddressedComplexObsStorage} class.
+ */
+public class ContentAddressedComplexObsStorageTest extends BaseContextSensitiveTest {
+	
+	protected static final String COMPLEX_OBS_XML = "org/openmrs/api/include/ObsServiceTest-complex.xml";
+	
+	private ContentAddressedComplexObsStorage storage;
+	
+	@Before
+	public void before() throws Exception {
+		executeDataSet(COMPLEX_OBS_XML);
+		storage = Context.getRegisteredComponent("contentAddressedComplexObsStorage",
+		    ContentAddressedComplexObsStorage.class);
+	}
+	
+	/**
+	 * @see ContentAddressedComplexObsStorage#store(File,Obs)
+	 * @verifies store identical content only once
+	 */
+	@Test
+	public void store_shouldStoreIdenticalContentOnlyOnce() throws Exception {
+		File first = writeTempFile("same content");
+		File second = writeTempFile("same content");
+		
+		String firstKey = storage.store(first, newObs("first.txt"));
+		String secondKey = storage.store(second, newObs("second.txt"));
+		try {
+			Assert.assertEquals(firstKey, secondKey);
+			Assert.assertFalse(first.exists());
+			Assert.assertFalse(second.exists());
+			Assert.assertTrue(storage.getFile(firstKey).exists());
+		}
+		finally {
+			storage.getFile(firstKey).delete();
+		}
+	}
+	
+	/**
+	 * @see ContentAddressedComplexObsStorage#store(File,Obs)
+	 * @verifies shard files by the start of the hash
+	 */
+	@Test
+	public void store_shouldShardFilesByTheStartOfTheHash() throws Exception {
+		File tempFile = writeTempFile("some content");
+		String hash = storage.hash(tempFile);
+		
+		String key = storage.store(tempFile, newObs("picture.jpg"));
+		try {
+			Assert.assertEquals(hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".jpg", key);
+			Assert.assertEquals(new File(storage.getDirectory(), key), storage.getFile(key));
+			Assert.assertTrue(storage.getFile(key).isFile());
+		}
+		finally {
+			storage.getFile(key).delete();
+		}
+	}
+	
+	/**
+	 * @see ContentAddressedComplexObsStorage#delete(String)
+	 * @verifies not delete content that is used by another obs
+	 */
+	@Test
+	public void delete_shouldNotDeleteContentThatIsUsedByAnotherObs() throws Exception {
+		String key = storage.store(writeTempFile("shared content"), newObs("shared.txt"));
+		try {
+			Obs obs = Context.getObsService().getObs(44);
+			obs.setValueComplex("txt file |" + key);
+			Obs other = Context.getObsService().getObs(45);
+			other.setValueComplex("txt file |" + key);
+			Context.flushSession();
+			
+			Assert.assertTrue(storage.delete(key));
+			Assert.assertTrue(storage.getFile(key).exists());
+			
+			other.setValueComplex("txt file |other.txt");
+			Context.flushSession();
+			
+			Assert.assertTrue(storage.delete(key));
+			Assert.assertFalse(storage.getFile(key).exists());
+		}
+		finally {
+			storage.getFile(key).delete();
+		}
+	}
+	
+	private Obs newObs(String title) {
+		Obs obs = new Obs();
+		obs.setComplexData(new ComplexData(title, null));
+		return obs;
+	}
+	
+	private File writeTempFile(String content) throws IOException {
+		File tempFile = storage.createTempFile();
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+		return tempFile;
+	}
+}
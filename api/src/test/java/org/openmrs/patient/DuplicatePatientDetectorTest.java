@@ -0,0 +1,123 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.patient;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.patient.DuplicatePatientDetector.Match;
+import org.openmrs.patient.DuplicatePatientDetector.Record;
+
+/**
+ * Tests methods on the {@link DuplicatePatientDetector} class.
+ */
+public class DuplicatePatientDetectorTest {
+	
+	/**
+	 * @see DuplicatePatientDetector#soundex(String)
+	 * @verifies encode names that sound alike to the same code
+	 */
+	@Test
+	public void soundex_shouldEncodeNamesThatSoundAlikeToTheSameCode() throws Exception {
+		Assert.assertEquals("R163", DuplicatePatientDetector.soundex("ROBERT"));
+		Assert.assertEquals("R163", DuplicatePatientDetector.soundex("RUPERT"));
+		Assert.assertEquals("A261", DuplicatePatientDetector.soundex("ASHCRAFT"));
+		Assert.assertEquals("T522", DuplicatePatientDetector.soundex("TYMCZAK"));
+		Assert.assertEquals("P236", DuplicatePatientDetector.soundex("PFISTER"));
+		Assert.assertEquals("L000", DuplicatePatientDetector.soundex("LEE"));
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#soundex(String)
+	 * @verifies return null for a name without letters
+	 */
+	@Test
+	public void soundex_shouldReturnNullForANameWithoutLetters() throws Exception {
+		Assert.assertNull(DuplicatePatientDetector.soundex("123"));
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#compare(Record, Record)
+	 * @verifies score identical patients with one
+	 */
+	@Test
+	public void compare_shouldScoreIdenticalPatientsWithOne() throws Exception {
+		Match match = DuplicatePatientDetector.compare(record(2, "Horatio", "Hornblower", "101"), record(1, "Horatio",
+		    "Hornblower", "101"));
+		
+		Assert.assertEquals(1, match.patientId);
+		Assert.assertEquals(2, match.duplicateId);
+		Assert.assertEquals(1.0, match.score, 0.0001);
+		Assert.assertEquals("identifier,birthdate,gender,familyName,givenName", match.matchedOn);
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#compare(Record, Record)
+	 * @verifies score names that sound alike lower than equal names
+	 */
+	@Test
+	public void compare_shouldScoreNamesThatSoundAlikeLowerThanEqualNames() throws Exception {
+		Match equal = DuplicatePatientDetector.compare(record(1, "Jon", "Smith", null), record(2, "Jon", "Smith", null));
+		Match alike = DuplicatePatientDetector.compare(record(1, "Jon", "Smith", null), record(2, "John", "Smyth", null));
+		
+		Assert.assertTrue(alike.score < equal.score);
+		Assert.assertEquals("birthdate,gender,familyNamePhonetic,givenNamePhonetic", alike.matchedOn);
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#compare(Record, Record)
+	 * @verifies not score on missing values
+	 */
+	@Test
+	public void compare_shouldNotScoreOnMissingValues() throws Exception {
+		Record a = new Record(1);
+		Record b = new Record(2);
+		a.addIdentifier(" ");
+		
+		Match match = DuplicatePatientDetector.compare(a, b);
+		
+		Assert.assertEquals(0.0, match.score, 0.0001);
+		Assert.assertEquals("", match.matchedOn);
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#getSpellings()
+	 * @verifies map accented letters to their base letter
+	 */
+	@Test
+	public void getSpellings_shouldMapAccentedLettersToTheirBaseLetter() throws Exception {
+		Map<Character, Set<String>> spellings = DuplicatePatientDetector.getSpellings();
+		
+		Assert.assertEquals(26, spellings.size());
+		Assert.assertTrue(spellings.get('E').containsAll(Arrays.asList("E", "\u00c9", "\u00c8", "\u00ca", "\u0118")));
+		Assert.assertTrue(spellings.get('S').contains("\u0160"));
+		Assert.assertFalse(spellings.get('E').contains("\u00e9"));
+		Assert.assertFalse(spellings.get('A').contains("\u00c6"));
+	}
+	
+	private Record record(int patientId, String givenName, String familyName, String identifier) {
+		Record record = new Record(patientId);
+		record.gender = "M";
+		record.birthdate = birthdate();
+		record.addName(givenName, familyName);
+		record.addIdentifier(identifier);
+		return record;
+	}
+	
+	private Date birthdate() {
+		return new GregorianCalendar(1975, Calendar.APRIL, 8).getTime();
+	}
+}
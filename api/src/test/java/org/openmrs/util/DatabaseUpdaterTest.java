@@ -9,11 +9,26 @@
  */
 package org.openmrs.util;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import liquibase.database.Database;
+import liquibase.exception.CustomChangeException;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Assert;
 import org.junit.Test;
+import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
 import org.openmrs.test.Verifies;
+import org.openmrs.util.databasechange.ChunkedCustomTaskChange;
 
 /**
  * Tests methods on the {@link DatabaseUpdater} class. This class expects /metadata/model to be on
@@ -23,6 +38,26 @@ public class DatabaseUpdaterTest extends BaseContextSensitiveTest {
 	
 	private static Log log = LogFactory.getLog(DatabaseUpdaterTest.class);
 	
+	private static final String BACKFILL_URL = "jdbc:h2:mem:databaseUpdaterBackfillTest;DB_CLOSE_DELAY=-1";
+	
+	private static final String BACKFILL_CHANGE_LOG = "org/openmrs/util/DatabaseUpdaterTest-backfill.xml";
+	
+	private Properties runtimeProperties;
+	
+	private Connection connection;
+	
+	@After
+	public void stopBackfillsAndDropBackfillDatabase() throws Exception {
+		if (runtimeProperties != null) {
+			DatabaseUpdater.stopBackfills();
+			Context.setRuntimeProperties(runtimeProperties);
+			Statement statement = connection.createStatement();
+			statement.executeUpdate("drop all objects");
+			statement.close();
+			connection.close();
+		}
+	}
+	
 	/**
 	 * @see {@link DatabaseUpdater#updatesRequired()}
 	 */
@@ -39,4 +74,137 @@ public class DatabaseUpdaterTest extends BaseContextSensitiveTest {
 		}
 		// does not run DatabaseUpdater.update() because hsqldb doesn't like single quotes in strings
 	}
+	
+	/**
+	 * @see DatabaseUpdater#startBackfills()
+	 * @verifies run the backfill changesets
+	 */
+	@Test
+	public void startBackfills_shouldRunTheBackfillChangesets() throws Exception {
+		useBackfillDatabase(0);
+		Assert.assertTrue(DatabaseUpdater.backfillsRequired(BACKFILL_CHANGE_LOG));
+		
+		DatabaseUpdater.startBackfills(BACKFILL_CHANGE_LOG);
+		waitForBackfills();
+		
+		Assert.assertEquals(30, count("processed = 1"));
+		Assert.assertEquals(0, count("processed <> 1"));
+	}
+	
+	/**
+	 * @see DatabaseUpdater#startBackfills()
+	 * @verifies release the lock between the chunks
+	 */
+	@Test
+	public void startBackfills_shouldReleaseTheLockBetweenTheChunks() throws Exception {
+		useBackfillDatabase(20);
+		
+		DatabaseUpdater.startBackfills(BACKFILL_CHANGE_LOG);
+		waitForBackfills();
+		
+		// each of the three chunks was processed under a lock of its own
+		Assert.assertEquals(3, queryInt("select count(distinct lock_granted) from backfill_test"));
+		Assert.assertFalse(DatabaseUpdater.isLocked());
+	}
+	
+	/**
+	 * @see DatabaseUpdater#stopBackfills()
+	 * @verifies stop the backfill after the current chunk and keep its progress
+	 */
+	@Test
+	public void stopBackfills_shouldStopTheBackfillAfterTheCurrentChunkAndKeepItsProgress() throws Exception {
+		useBackfillDatabase(60000);
+		DatabaseUpdater.startBackfills(BACKFILL_CHANGE_LOG);
+		for (int i = 0; i < 300 && count("processed = 1") == 0; i++) {
+			Thread.sleep(100);
+		}
+		
+		DatabaseUpdater.stopBackfills();
+		
+		Assert.assertEquals(10, count("processed = 1"));
+		Assert.assertFalse(DatabaseUpdater.isLocked());
+		Assert.assertTrue(DatabaseUpdater.backfillsRequired(BACKFILL_CHANGE_LOG));
+		
+		useBackfillDatabase(0);
+		DatabaseUpdater.startBackfills(BACKFILL_CHANGE_LOG);
+		waitForBackfills();
+		Assert.assertEquals(30, count("processed = 1"));
+		Assert.assertEquals(0, count("processed <> 1"));
+	}
+	
+	/**
+	 * Points the database updater at an empty in memory database and creates the table of the
+	 * test backfill in it
+	 */
+	private void useBackfillDatabase(long pause) throws Exception {
+		if (runtimeProperties == null) {
+			runtimeProperties = Context.getRuntimeProperties();
+			connection = DriverManager.getConnection(BACKFILL_URL, "sa", "");
+		}
+		Properties props = new Properties();
+		props.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+		props.setProperty("hibernate.connection.url", BACKFILL_URL);
+		props.setProperty("hibernate.connection.username", "sa");
+		props.setProperty("hibernate.connection.password", "");
+		props.setProperty(OpenmrsConstants.DATABASE_BACKFILL_PAUSE_RUNTIME_PROPERTY, String.valueOf(pause));
+		Context.setRuntimeProperties(props);
+		DatabaseUpdater.executeChangelog(BACKFILL_CHANGE_LOG, "core", null, null);
+	}
+	
+	private void waitForBackfills() throws Exception {
+		for (int i = 0; i < 300 && DatabaseUpdater.backfillsRequired(BACKFILL_CHANGE_LOG); i++) {
+			Thread.sleep(100);
+		}
+		Assert.assertFalse(DatabaseUpdater.backfillsRequired(BACKFILL_CHANGE_LOG));
+		// wait for the thread to end
+		DatabaseUpdater.stopBackfills();
+	}
+	
+	private int count(String where) throws SQLException {
+		return queryInt("select count(*) from backfill_test where " + where);
+	}
+	
+	private int queryInt(String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery(sql);
+			rs.next();
+			return rs.getInt(1);
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Increments the processed column of the rows and records when the lock was granted
+	 */
+	public static class MarkProcessed extends ChunkedCustomTaskChange {
+		
+		@Override
+		public void execute(Database database) throws CustomChangeException {
+			executeInChunks(database, "backfill_test", "backfill_test_id");
+		}
+		
+		@Override
+		protected void processChunk(Connection connection, String tableName, long fromKey, long toKey)
+		        throws SQLException, CustomChangeException {
+			PreparedStatement update = connection.prepareStatement("update " + tableName
+			        + " set processed = processed + 1, lock_granted = (select lockgranted from liquibasechangeloglock"
+			        + " where id = 1) where backfill_test_id between ? and ?");
+			try {
+				update.setLong(1, fromKey);
+				update.setLong(2, toKey);
+				update.executeUpdate();
+			}
+			finally {
+				update.close();
+			}
+		}
+		
+		@Override
+		public String getConfirmationMessage() {
+			return "Marked the rows as processed";
+		}
+	}
 }
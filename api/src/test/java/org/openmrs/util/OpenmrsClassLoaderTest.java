@@ -11,6 +11,8 @@ package org.openmrs.util;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.lang.reflect.Field;
+import java.util.Collections;
 
 import junit.framework.Assert;
 
@@ -47,4 +49,78 @@ public class OpenmrsClassLoaderTest {
 		if (beforeDelete > 1)
 			Assert.assertTrue(beforeDelete > afterDelete);
 	}
+	
+	/**
+	 * @see OpenmrsClassLoader#loadClass(String, boolean)
+	 * @verifies not ask the parent again for a class it could not find
+	 */
+	@Test
+	public void loadClass_shouldNotAskTheParentAgainForAClassItCouldNotFind() throws Exception {
+		CountingClassLoader parent = new CountingClassLoader();
+		OpenmrsClassLoader previous = OpenmrsClassLoader.getInstance();
+		try {
+			OpenmrsClassLoader classLoader = new OpenmrsClassLoader(parent);
+			assertClassNotFound(classLoader, "org.openmrs.NoSuchClass");
+			assertClassNotFound(classLoader, "org.openmrs.NoSuchClass");
+			
+			Assert.assertEquals(1, parent.count);
+		}
+		finally {
+			setInstance(previous);
+		}
+	}
+	
+	/**
+	 * @see OpenmrsClassLoader#clearMissingClasses(java.util.Collection)
+	 * @verifies look up the class again after its package was cleared
+	 */
+	@Test
+	public void clearMissingClasses_shouldLookUpTheClassAgainAfterItsPackageWasCleared() throws Exception {
+		CountingClassLoader parent = new CountingClassLoader();
+		OpenmrsClassLoader previous = OpenmrsClassLoader.getInstance();
+		try {
+			OpenmrsClassLoader classLoader = new OpenmrsClassLoader(parent);
+			assertClassNotFound(classLoader, "org.openmrs.NoSuchClass");
+			OpenmrsClassLoader.clearMissingClasses(Collections.singleton("org.openmrs"));
+			assertClassNotFound(classLoader, "org.openmrs.NoSuchClass");
+			
+			Assert.assertEquals(2, parent.count);
+		}
+		finally {
+			setInstance(previous);
+		}
+	}
+	
+	private void assertClassNotFound(ClassLoader classLoader, String name) {
+		try {
+			classLoader.loadClass(name);
+			Assert.fail("expected a ClassNotFoundException for " + name);
+		}
+		catch (ClassNotFoundException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Puts back the shared instance that creating a class loader in a test replaced
+	 */
+	private void setInstance(OpenmrsClassLoader instance) throws Exception {
+		Field field = Class.forName(OpenmrsClassLoader.class.getName() + "$OpenmrsClassLoaderHolder").getDeclaredField(
+		    "INSTANCE");
+		field.setAccessible(true);
+		field.set(null, instance);
+	}
+	
+	private static class CountingClassLoader extends ClassLoader {
+		
+		private int count = 0;
+		
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("org.openmrs.NoSuch")) {
+				count++;
+			}
+			return super.loadClass(name, resolve);
+		}
+	}
 }
@@ -0,0 +1,180 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.util.databasechange;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests methods on the {@link ChunkedCustomTaskChange} class.
+ */
+public class ChunkedCustomTaskChangeTest {
+	
+	private static final String URL = "jdbc:h2:mem:chunkedCustomTaskChangeTest;DB_CLOSE_DELAY=-1";
+	
+	private Connection connection;
+	
+	private Database database;
+	
+	@Before
+	public void createTable() throws Exception {
+		connection = DriverManager.getConnection(URL, "sa", "");
+		Statement statement = connection.createStatement();
+		statement.executeUpdate("create table chunk_test (chunk_test_id int primary key, processed int)");
+		for (int id = 1; id <= 30; id++) {
+			// leave a gap in the ids
+			if (id < 12 || id > 14) {
+				statement.executeUpdate("insert into chunk_test values (" + id + ", 0)");
+			}
+		}
+		statement.close();
+		database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+	}
+	
+	@After
+	public void dropTables() throws Exception {
+		Statement statement = connection.createStatement();
+		statement.executeUpdate("drop table if exists chunk_test");
+		statement.executeUpdate("drop table if exists " + ChunkedCustomTaskChange.PROGRESS_TABLE);
+		statement.close();
+		connection.close();
+	}
+	
+	/**
+	 * @see ChunkedCustomTaskChange#executeInChunks(Database,String,String)
+	 * @verifies process every row once
+	 */
+	@Test
+	public void executeInChunks_shouldProcessEveryRowOnce() throws Exception {
+		MarkProcessed change = new MarkProcessed(null);
+		change.setChunkSize("5");
+		change.setThreads("3");
+		change.setUp();
+		
+		change.execute(database);
+		
+		Assert.assertEquals(27, count("processed = 1"));
+		Assert.assertEquals(0, count("processed <> 1"));
+		Assert.assertFalse(progressTableExists());
+	}
+	
+	/**
+	 * @see ChunkedCustomTaskChange#executeInChunks(Database,String,String)
+	 * @verifies only process the remaining chunks when run again after a failure
+	 */
+	@Test
+	public void executeInChunks_shouldOnlyProcessTheRemainingChunksWhenRunAgainAfterAFailure() throws Exception {
+		MarkProcessed failing = new MarkProcessed(21);
+		failing.setChunkSize("10");
+		failing.setThreads("1");
+		failing.setUp();
+		try {
+			failing.execute(database);
+			Assert.fail("the chunk with id 21 should have failed");
+		}
+		catch (CustomChangeException e) {
+			// expected
+		}
+		Assert.assertEquals(17, count("processed = 1"));
+		Assert.assertTrue(progressTableExists());
+		
+		MarkProcessed change = new MarkProcessed(null);
+		change.setChunkSize("10");
+		change.setThreads("1");
+		change.setUp();
+		change.execute(database);
+		
+		Assert.assertEquals(27, count("processed = 1"));
+		Assert.assertEquals(0, count("processed <> 1"));
+		Assert.assertFalse(progressTableExists());
+	}
+	
+	private int count(String where) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery("select count(*) from chunk_test where " + where);
+			rs.next();
+			return rs.getInt(1);
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	private boolean progressTableExists() throws SQLException {
+		ResultSet rs = connection.getMetaData().getTables(null, null,
+		    ChunkedCustomTaskChange.PROGRESS_TABLE.toUpperCase(), null);
+		try {
+			return rs.next();
+		}
+		finally {
+			rs.close();
+		}
+	}
+	
+	/**
+	 * Increments the processed column of the rows, failing on the chunk with the given id
+	 */
+	private static class MarkProcessed extends ChunkedCustomTaskChange {
+		
+		private final Integer failOnId;
+		
+		public MarkProcessed(Integer failOnId) {
+			this.failOnId = failOnId;
+		}
+		
+		@Override
+		public void execute(Database database) throws CustomChangeException {
+			executeInChunks(database, "chunk_test", "chunk_test_id");
+		}
+		
+		@Override
+		protected void processChunk(Connection connection, String tableName, long fromKey, long toKey)
+		        throws SQLException, CustomChangeException {
+			PreparedStatement update = connection.prepareStatement("update " + tableName
+			        + " set processed = processed + 1 where chunk_test_id between ? and ?");
+			try {
+				update.setLong(1, fromKey);
+				update.setLong(2, toKey);
+				update.executeUpdate();
+			}
+			finally {
+				update.close();
+			}
+			if (failOnId != null && fromKey <= failOnId && failOnId <= toKey) {
+				throw new CustomChangeException("failing on " + failOnId);
+			}
+		}
+		
+		@Override
+		protected Connection openWorkerConnection() throws Exception {
+			return DriverManager.getConnection(URL, "sa", "");
+		}
+		
+		@Override
+		public String getConfirmationMessage() {
+			return "Marked the rows as processed";
+		}
+	}
+}
@@ -12,64 +12,156 @@ package org.openmrs.module.web;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.Module;
 import org.openmrs.module.ModuleUtil;
-import org.openmrs.util.OpenmrsUtil;
+import org.openmrs.web.StreamingResponseUtil;
 
+/**
+ * Serves the files in the resources folder of the started modules.<br/>
+ * <br/>
+ * Responses carry an ETag and Last-Modified header so that browsers can revalidate their copy
+ * with a conditional request, which is answered with a 304 if the file has not changed. Requests
+ * whose {@value #VERSION_PARAMETER} parameter is the version of the module, e.g.
+ * /moduleResources/xyz/script.js?v=1.2 for version 1.2 of module xyz, are treated as fingerprinted
+ * and may be cached by the browser for a year without revalidating, so module pages should add the
+ * module version to the urls of their scripts and styles. Snapshot versions and other values, like
+ * the core version added by the htmlInclude tag, do not fingerprint the file, as it may change
+ * without them changing.<br/>
+ * <br/>
+ * Small files are kept in memory, larger ones are sent straight from the file channel without
+ * being copied through the heap.
+ */
 public class ModuleResourcesServlet extends HttpServlet {
 	
 	private static final String MODULE_PATH = "/WEB-INF/view/module/";
 	
+	/**
+	 * The request parameter marking a url as fingerprinted, if it holds the module version
+	 */
+	public static final String VERSION_PARAMETER = "v";
+	
+	/**
+	 * Sent for fingerprinted urls, whose content does not change
+	 */
+	private static final String CACHE_CONTROL_VERSIONED = "public, max-age=31536000";
+	
+	/**
+	 * Sent for other urls, browsers may keep the file but must check it is still current
+	 */
+	private static final String CACHE_CONTROL_UNVERSIONED = "public, max-age=0, must-revalidate";
+	
+	/**
+	 * Files up to this size are kept in memory
+	 */
+	private static final long MAX_CACHED_FILE_SIZE = 64 * 1024;
+	
+	/**
+	 * The maximum total size of the files kept in memory
+	 */
+	private static final long MAX_CACHE_SIZE = 4 * 1024 * 1024;
+	
 	private static final long serialVersionUID = 1239820102030344L;
 	
 	private Log log = LogFactory.getLog(this.getClass());
 	
+	private final transient ResourceCache cache = new ResourceCache();
+	
 	/**
-	 * Used for caching purposes
+	 * Conditional requests are handled by {@link #doGet(HttpServletRequest, HttpServletResponse)}
+	 * so that 304 responses carry the ETag and caching headers too
 	 *
 	 * @see javax.servlet.http.HttpServlet#getLastModified(javax.servlet.http.HttpServletRequest)
 	 */
 	@Override
 	protected long getLastModified(HttpServletRequest req) {
-		File f = getFile(req);
-		
-		if (f == null) {
-			return super.getLastModified(req);
-		}
-		
-		return f.lastModified();
+		return -1;
 	}
 	
+	/**
+	 * @should send the file with an etag and caching headers
+	 * @should return not modified if the etag matches
+	 * @should allow long caching of urls with the module version
+	 * @should not allow long caching of urls with another or a snapshot version
+	 * @should send the changed content of a cached file
+	 * @should return not found if there is no file
+	 */
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		log.debug("In service method for module servlet: " + request.getPathInfo());
 		
 		File f = getFile(request);
-		if (f == null) {
+		if (f == null || !f.isFile()) {
 			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
 			return;
 		}
 		
-		response.setDateHeader("Last-Modified", f.lastModified());
-		response.setContentLength(Long.valueOf(f.length()).intValue());
+		long length = f.length();
+		long lastModified = f.lastModified();
+		String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+		
+		response.setHeader("Cache-Control", isFingerprinted(request) ? CACHE_CONTROL_VERSIONED
+		        : CACHE_CONTROL_UNVERSIONED);
+		if (StreamingResponseUtil.checkNotModified(request, response, etag, lastModified)) {
+			return;
+		}
+		
 		String mimeType = getServletContext().getMimeType(f.getName());
-		response.setContentType(mimeType);
+		if (mimeType != null) {
+			response.setContentType(mimeType);
+		}
 		
-		FileInputStream is = new FileInputStream(f);
-		try {
-			OpenmrsUtil.copyFile(is, response.getOutputStream());
+		if (length <= MAX_CACHED_FILE_SIZE) {
+			StreamingResponseUtil.sendBytes(request, response, getContent(f, etag), etag);
+		} else {
+			FileInputStream is = new FileInputStream(f);
+			try {
+				StreamingResponseUtil.sendFile(request, response, is.getChannel(), etag);
+			}
+			finally {
+				is.close();
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether the url carries the version of the module, which changes whenever the file
+	 * can, unless it is a snapshot
+	 */
+	private boolean isFingerprinted(HttpServletRequest request) {
+		String version = request.getParameter(VERSION_PARAMETER);
+		if (version == null || version.toUpperCase().endsWith("SNAPSHOT")) {
+			return false;
 		}
-		finally {
-			OpenmrsUtil.closeStream(is);
+		Module module = getModule(request);
+		return module != null && version.equals(module.getVersion());
+	}
+	
+	/**
+	 * Gets the content of a small file from the cache, reading it if it is not cached or has
+	 * changed since it was cached
+	 */
+	private byte[] getContent(File f, String etag) throws IOException {
+		String key = f.getAbsolutePath();
+		CachedResource cached = cache.get(key);
+		if (cached != null && cached.etag.equals(etag)) {
+			return cached.content;
 		}
+		
+		byte[] content = FileUtils.readFileToByteArray(f);
+		cache.put(key, new CachedResource(etag, content));
+		return content;
 	}
 	
 	/**
@@ -82,7 +174,7 @@ public class ModuleResourcesServlet extends HttpServlet {
 		
 		String path = request.getPathInfo();
 		
-		Module module = ModuleUtil.getModuleForPath(path);
+		Module module = getModule(request);
 		if (module == null) {
 			log.warn("No module handles the path: " + path);
 			return null;
@@ -102,4 +194,56 @@ public class ModuleResourcesServlet extends HttpServlet {
 		return f;
 	}
 	
+	/**
+	 * @param request the current http request
+	 * @return the module serving the requested file or null if there is none
+	 */
+	protected Module getModule(HttpServletRequest request) {
+		return ModuleUtil.getModuleForPath(request.getPathInfo());
+	}
+	
+	/**
+	 * The content of a file along with the etag it had when it was read
+	 */
+	private static class CachedResource {
+		
+		private final String etag;
+		
+		private final byte[] content;
+		
+		public CachedResource(String etag, byte[] content) {
+			this.etag = etag;
+			this.content = content;
+		}
+	}
+	
+	/**
+	 * A least recently used cache of file contents that is limited by the total size of the
+	 * contents
+	 */
+	private static class ResourceCache {
+		
+		private final LinkedHashMap<String, CachedResource> resources = new LinkedHashMap<String, CachedResource>(16,
+		        0.75f, true);
+		
+		private long size = 0;
+		
+		public synchronized CachedResource get(String key) {
+			return resources.get(key);
+		}
+		
+		public synchronized void put(String key, CachedResource resource) {
+			CachedResource previous = resources.put(key, resource);
+			if (previous != null) {
+				size -= previous.content.length;
+			}
+			size += resource.content.length;
+			
+			Iterator<Map.Entry<String, CachedResource>> eldest = resources.entrySet().iterator();
+			while (size > MAX_CACHE_SIZE && eldest.hasNext()) {
+				size -= eldest.next().getValue().content.length;
+				eldest.remove();
+			}
+		}
+	}
 }
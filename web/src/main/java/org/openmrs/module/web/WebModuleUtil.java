@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -57,6 +58,7 @@ import org.openmrs.module.ModuleFactory;
 import org.openmrs.module.ModuleUtil;
 import org.openmrs.module.web.filter.ModuleFilterConfig;
 import org.openmrs.module.web.filter.ModuleFilterDefinition;
+import org.openmrs.module.web.filter.ModuleFilterDispatcher;
 import org.openmrs.module.web.filter.ModuleFilterMapping;
 import org.openmrs.scheduler.SchedulerException;
 import org.openmrs.scheduler.SchedulerService;
@@ -99,6 +101,9 @@ public class WebModuleUtil {
 	private static List<ModuleFilterMapping> moduleFilterMappings = Collections
 	        .synchronizedList(new Vector<ModuleFilterMapping>());
 	
+	// the filter mappings indexed by path, rebuilt whenever filters are loaded or unloaded
+	private static volatile ModuleFilterDispatcher moduleFilterDispatcher = null;
+	
 	/**
 	 * Performs the webapp specific startup needs for modules Normal startup is done in
 	 * {@link ModuleFactory#startModule(Module)} If delayContextRefresh is true, the spring context
@@ -645,6 +650,8 @@ public class WebModuleUtil {
 		List<ModuleFilterMapping> modMappings = ModuleFilterMapping.retrieveFilterMappings(module);
 		moduleFilterMappings.addAll(modMappings);
 		log.debug("Module: " + module.getModuleId() + " successfully loaded " + modMappings.size() + " filter mappings.");
+		
+		compileFilterMappings();
 	}
 	
 	/**
@@ -686,6 +693,24 @@ public class WebModuleUtil {
 				}
 			}
 		}
+		
+		compileFilterMappings();
+	}
+	
+	/**
+	 * Rebuilds the index {@link #getFiltersForRequest(ServletRequest)} uses to find the filters of
+	 * a request from the current filter mappings
+	 */
+	private static void compileFilterMappings() {
+		List<ModuleFilterMapping> mappings;
+		synchronized (moduleFilterMappings) {
+			mappings = new ArrayList<ModuleFilterMapping>(moduleFilterMappings);
+		}
+		Map<String, Filter> filters;
+		synchronized (moduleFiltersByName) {
+			filters = new HashMap<String, Filter>(moduleFiltersByName);
+		}
+		moduleFilterDispatcher = new ModuleFilterDispatcher(mappings, filters);
 	}
 	
 	/**
@@ -712,12 +737,13 @@ public class WebModuleUtil {
 	 * the passed request
 	 *
 	 * @param request - The request to check for matching {@link Filter}s
-	 * @return List of all {@link Filter}s that have filter mappings that match the passed request
+	 * @return List of all {@link Filter}s that have filter mappings that match the passed request,
+	 *         the list can't be modified
 	 */
 	public static List<Filter> getFiltersForRequest(ServletRequest request) {
 		
-		List<Filter> filters = new Vector<Filter>();
-		if (request != null) {
+		ModuleFilterDispatcher dispatcher = moduleFilterDispatcher;
+		if (request != null && dispatcher != null) {
 			HttpServletRequest httpRequest = (HttpServletRequest) request;
 			String requestPath = httpRequest.getRequestURI();
 			
@@ -725,20 +751,10 @@ public class WebModuleUtil {
 				if (requestPath.startsWith(httpRequest.getContextPath())) {
 					requestPath = requestPath.substring(httpRequest.getContextPath().length());
 				}
-				for (ModuleFilterMapping filterMapping : WebModuleUtil.getFilterMappings()) {
-					if (ModuleFilterMapping.filterMappingPasses(filterMapping, requestPath)) {
-						Filter passedFilter = moduleFiltersByName.get(filterMapping.getFilterName());
-						if (passedFilter != null) {
-							filters.add(passedFilter);
-						} else {
-							log.warn("Unable to retrieve filter that has a name of " + filterMapping.getFilterName()
-							        + " in filter mapping.");
-						}
-					}
-				}
+				return dispatcher.getFilters(requestPath);
 			}
 		}
-		return filters;
+		return Collections.emptyList();
 	}
 	
 	/**
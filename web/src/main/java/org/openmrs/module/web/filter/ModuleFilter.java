@@ -10,6 +10,7 @@
 package org.openmrs.module.web.filter;
 
 import java.io.IOException;
+import java.util.List;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -50,7 +51,12 @@ public class ModuleFilter implements Filter {
 	 */
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
 	        ServletException {
-		ModuleFilterChain moduleChain = ModuleFilterChain.getInstance(WebModuleUtil.getFiltersForRequest(request), chain);
+		List<Filter> filters = WebModuleUtil.getFiltersForRequest(request);
+		if (filters.isEmpty()) {
+			chain.doFilter(request, response);
+			return;
+		}
+		ModuleFilterChain moduleChain = ModuleFilterChain.getInstance(filters, chain);
 		moduleChain.doFilter(request, response);
 	}
 	
@@ -0,0 +1,176 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.web.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.Filter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An immutable index of the module filter mappings, built when modules start or stop, that finds
+ * the filters for a request path without checking every mapping. It gives the same filters in the
+ * same order as checking each mapping with
+ * {@link ModuleFilterMapping#filterMappingPasses(ModuleFilterMapping, String)}.<br/>
+ * <br/>
+ * Mappings are indexed by the exact paths, the path prefixes (from patterns ending in /*) and the
+ * extensions (from patterns starting with *.) they match, and the filters found for a path are
+ * remembered.
+ * 
+ * @since 1.12
+ */
+public class ModuleFilterDispatcher {
+	
+	private static final Log log = LogFactory.getLog(ModuleFilterDispatcher.class);
+	
+	/**
+	 * The maximum number of request paths whose filters are remembered, so that requests for
+	 * arbitrary paths can't use up memory
+	 */
+	private static final int MAX_REMEMBERED_PATHS = 2000;
+	
+	/**
+	 * The filter of each mapping, in mapping order, null if the filter isn't loaded
+	 */
+	private final Filter[] filters;
+	
+	/**
+	 * The mappings matching every path
+	 */
+	private final BitSet matchAll = new BitSet();
+	
+	private final Map<String, BitSet> exactPaths = new HashMap<String, BitSet>();
+	
+	/**
+	 * The mappings by the path a request path has to be or start with, followed by a /
+	 */
+	private final Map<String, BitSet> prefixes = new HashMap<String, BitSet>();
+	
+	private final Map<String, BitSet> extensions = new HashMap<String, BitSet>();
+	
+	private final Map<String, List<Filter>> filtersByPath = new ConcurrentHashMap<String, List<Filter>>();
+	
+	/**
+	 * @param mappings the filter mappings, in the order their filters should run
+	 * @param filtersByName the loaded filters by name
+	 */
+	public ModuleFilterDispatcher(List<ModuleFilterMapping> mappings, Map<String, Filter> filtersByName) {
+		filters = new Filter[mappings.size()];
+		for (int i = 0; i < mappings.size(); i++) {
+			ModuleFilterMapping mapping = mappings.get(i);
+			filters[i] = filtersByName.get(mapping.getFilterName());
+			if (filters[i] == null) {
+				log.warn("Unable to retrieve filter that has a name of " + mapping.getFilterName() + " in filter mapping.");
+				continue;
+			}
+			for (String pattern : mapping.getUrlPatterns()) {
+				addUrlPattern(pattern, i);
+			}
+			for (String servletName : mapping.getServletNames()) {
+				if ("*".equals(servletName)) {
+					matchAll.set(i);
+				} else if (servletName != null) {
+					add(exactPaths, servletName, i);
+				}
+			}
+		}
+	}
+	
+	private void addUrlPattern(String pattern, int mapping) {
+		if (pattern == null) {
+			return;
+		}
+		if (pattern.equals("*") || pattern.equals("/*")) {
+			matchAll.set(mapping);
+			return;
+		}
+		add(exactPaths, pattern, mapping);
+		if (pattern.endsWith("/*")) {
+			add(prefixes, pattern.substring(0, pattern.length() - 2), mapping);
+		} else if (pattern.startsWith("*.") && pattern.length() > 2) {
+			add(extensions, pattern.substring(2), mapping);
+		}
+	}
+	
+	private static void add(Map<String, BitSet> index, String key, int mapping) {
+		BitSet mappings = index.get(key);
+		if (mappings == null) {
+			mappings = new BitSet();
+			index.put(key, mappings);
+		}
+		mappings.set(mapping);
+	}
+	
+	/**
+	 * @param requestPath the request path without the context path
+	 * @return the filters of the mappings matching the path, in mapping order
+	 * @should return the filters of matching mappings in mapping order
+	 * @should match paths under a prefix pattern
+	 * @should match paths by extension
+	 * @should return an empty list if no mapping matches
+	 */
+	public List<Filter> getFilters(String requestPath) {
+		if (requestPath == null || filters.length == 0) {
+			return Collections.emptyList();
+		}
+		List<Filter> ret = filtersByPath.get(requestPath);
+		if (ret == null) {
+			ret = findFilters(requestPath);
+			if (filtersByPath.size() < MAX_REMEMBERED_PATHS) {
+				filtersByPath.put(requestPath, ret);
+			}
+		}
+		return ret;
+	}
+	
+	private List<Filter> findFilters(String requestPath) {
+		BitSet matches = (BitSet) matchAll.clone();
+		or(matches, exactPaths.get(requestPath));
+		
+		if (!prefixes.isEmpty()) {
+			for (int i = 0; i <= requestPath.length(); i++) {
+				if (i == requestPath.length() || requestPath.charAt(i) == '/') {
+					or(matches, prefixes.get(requestPath.substring(0, i)));
+				}
+			}
+		}
+		
+		if (!extensions.isEmpty()) {
+			int slash = requestPath.lastIndexOf('/');
+			int period = requestPath.lastIndexOf('.');
+			if (slash >= 0 && period > slash && period != requestPath.length() - 1) {
+				or(matches, extensions.get(requestPath.substring(period + 1)));
+			}
+		}
+		
+		if (matches.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Filter> ret = new ArrayList<Filter>(matches.cardinality());
+		for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			ret.add(filters[i]);
+		}
+		return Collections.unmodifiableList(ret);
+	}
+	
+	private static void or(BitSet matches, BitSet mappings) {
+		if (mappings != null) {
+			matches.or(mappings);
+		}
+	}
+}
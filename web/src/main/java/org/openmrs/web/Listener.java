@@ -242,6 +242,9 @@ public final class Listener extends ContextLoader implements ServletContextListe
 			
 			// start the scheduled tasks
 			SchedulerUtil.startup(getRuntimeProperties());
+			
+			// run the data backfills of the last update now that users can work again
+			DatabaseUpdater.startBackfills();
 		}
 		catch (Exception t) {
 			Context.shutdown();
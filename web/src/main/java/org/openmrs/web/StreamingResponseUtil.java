@@ -0,0 +1,335 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility methods for writing binary content to a response with support for conditional requests
+ * (ETag and Last-Modified) and single byte range requests. Content is copied in fixed size chunks,
+ * or with {@link FileChannel#transferTo(long, long, WritableByteChannel)} for files, so the memory
+ * used does not depend on the size of the content.
+ *
+ * @since 1.12
+ */
+public class StreamingResponseUtil {
+	
+	private static final Log log = LogFactory.getLog(StreamingResponseUtil.class);
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	/**
+	 * A range of bytes, inclusive at both ends, of an entity with a known length
+	 */
+	public static class ByteRange {
+		
+		private final long start;
+		
+		private final long end;
+		
+		public ByteRange(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+		
+		public long getStart() {
+			return start;
+		}
+		
+		public long getEnd() {
+			return end;
+		}
+		
+		public long getLength() {
+			return end - start + 1;
+		}
+	}
+	
+	/**
+	 * Returned by {@link #getRequestedRange(HttpServletRequest, long, String)} when the range
+	 * header cannot be satisfied
+	 */
+	public static final ByteRange UNSATISFIABLE_RANGE = new ByteRange(-1, -2);
+	
+	/**
+	 * Sets the ETag and Last-Modified headers and checks the If-None-Match and If-Modified-Since
+	 * headers of the request. If the client copy is still valid, the response status is set to
+	 * 304 and nothing else should be written.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param etag the entity tag of the content, may be null
+	 * @param lastModified the last modification time of the content, or a value less than one if
+	 *            not known
+	 * @return true if a 304 response was sent
+	 * @should return true if the etag matches
+	 * @should return false if the etag does not match
+	 * @should return true if not modified since the given date
+	 * @should ignore if modified since when if none match is present
+	 */
+	public static boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String etag,
+	        long lastModified) {
+		if (etag != null) {
+			response.setHeader("ETag", etag);
+		}
+		if (lastModified > 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			if (etag != null && etagMatches(ifNoneMatch, etag)) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return true;
+			}
+			return false;
+		}
+		
+		if (lastModified > 0) {
+			long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+			// http dates have a precision of one second
+			if (ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Parses the Range header of the request. Only a single range is supported, requests for
+	 * multiple ranges are answered with the whole content as allowed by RFC 7233. If the request
+	 * has an If-Range header that does not match the given etag the whole content is sent.
+	 *
+	 * @param request the request
+	 * @param length the length of the content
+	 * @param etag the entity tag of the content, may be null
+	 * @return the requested range, null if the whole content should be sent or
+	 *         {@link #UNSATISFIABLE_RANGE}
+	 * @should return null if there is no range header
+	 * @should parse a range with start and end
+	 * @should parse an open ended range
+	 * @should parse a suffix range
+	 * @should limit the end to the content length
+	 * @should return unsatisfiable if the start is after the content length
+	 * @should return null for multiple ranges
+	 * @should return null if the if range header does not match
+	 */
+	public static ByteRange getRequestedRange(HttpServletRequest request, long length, String etag) {
+		String range = request.getHeader("Range");
+		if (range == null || !range.startsWith("bytes=")) {
+			return null;
+		}
+		
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange != null && (etag == null || !ifRange.equals(etag))) {
+			return null;
+		}
+		
+		String spec = range.substring("bytes=".length()).trim();
+		if (spec.contains(",")) {
+			return null;
+		}
+		
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			long start;
+			long end;
+			if (first.length() == 0) {
+				// a suffix range, i.e. the last n bytes
+				long suffixLength = Long.parseLong(last);
+				if (suffixLength <= 0) {
+					return UNSATISFIABLE_RANGE;
+				}
+				start = Math.max(0, length - suffixLength);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(first);
+				end = (last.length() == 0) ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+			}
+			
+			if (start >= length || start > end) {
+				return UNSATISFIABLE_RANGE;
+			}
+			return new ByteRange(start, end);
+		}
+		catch (NumberFormatException e) {
+			log.debug("Ignoring invalid range header: " + range);
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes the content of the given file channel to the response honoring a range request.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param channel the file to write
+	 * @param etag the entity tag of the content, may be null
+	 * @throws IOException
+	 */
+	public static void sendFile(HttpServletRequest request, HttpServletResponse response, FileChannel channel,
+	        String etag) throws IOException {
+		long length = channel.size();
+		ByteRange range = prepareResponse(request, response, length, etag);
+		if (range == UNSATISFIABLE_RANGE || "HEAD".equals(request.getMethod())) {
+			return;
+		}
+		
+		long position = range == null ? 0 : range.getStart();
+		long remaining = range == null ? length : range.getLength();
+		WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+		while (remaining > 0) {
+			long transferred = channel.transferTo(position, remaining, out);
+			if (transferred <= 0) {
+				break;
+			}
+			position += transferred;
+			remaining -= transferred;
+		}
+	}
+	
+	/**
+	 * Writes the given bytes to the response honoring a range request.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param data the content to write
+	 * @param etag the entity tag of the content, may be null
+	 * @throws IOException
+	 */
+	public static void sendBytes(HttpServletRequest request, HttpServletResponse response, byte[] data, String etag)
+	        throws IOException {
+		ByteRange range = prepareResponse(request, response, data.length, etag);
+		if (range == UNSATISFIABLE_RANGE || "HEAD".equals(request.getMethod())) {
+			return;
+		}
+		
+		if (range == null) {
+			response.getOutputStream().write(data);
+		} else {
+			response.getOutputStream().write(data, (int) range.getStart(), (int) range.getLength());
+		}
+	}
+	
+	/**
+	 * Writes the given stream to the response. If the length of the stream is known, range
+	 * requests are honored by skipping to the start of the range. The stream is not closed.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param in the content to write
+	 * @param length the length of the content, may be null if unknown
+	 * @param etag the entity tag of the content, may be null
+	 * @throws IOException
+	 */
+	public static void sendStream(HttpServletRequest request, HttpServletResponse response, InputStream in, Long length,
+	        String etag) throws IOException {
+		long remaining = Long.MAX_VALUE;
+		if (length != null) {
+			ByteRange range = prepareResponse(request, response, length, etag);
+			if (range == UNSATISFIABLE_RANGE || "HEAD".equals(request.getMethod())) {
+				return;
+			}
+			if (range != null) {
+				skipFully(in, range.getStart());
+				remaining = range.getLength();
+			}
+		}
+		
+		OutputStream out = response.getOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (remaining > 0) {
+			int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (read == -1) {
+				break;
+			}
+			out.write(buffer, 0, read);
+			remaining -= read;
+		}
+	}
+	
+	/**
+	 * Sets the status and the length related headers of the response for the requested range
+	 */
+	private static ByteRange prepareResponse(HttpServletRequest request, HttpServletResponse response, long length,
+	        String etag) {
+		response.setHeader("Accept-Ranges", "bytes");
+		ByteRange range = getRequestedRange(request, length, etag);
+		if (range == UNSATISFIABLE_RANGE) {
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader("Content-Range", "bytes */" + length);
+		} else if (range != null) {
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + range.getStart() + "-" + range.getEnd() + "/" + length);
+			response.setHeader("Content-Length", String.valueOf(range.getLength()));
+		} else {
+			response.setHeader("Content-Length", String.valueOf(length));
+		}
+		
+		return range;
+	}
+	
+	private static boolean etagMatches(String header, String etag) {
+		if ("*".equals(header.trim())) {
+			return true;
+		}
+		// weak comparison, as required for If-None-Match
+		String tag = StringUtils.removeStart(etag, "W/");
+		for (String candidate : header.split(",")) {
+			if (StringUtils.removeStart(candidate.trim(), "W/").equals(tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		}
+		catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+	
+	private static void skipFully(InputStream in, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				if (in.read() == -1) {
+					throw new IOException("Unexpected end of stream while skipping " + count + " bytes");
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+}
@@ -11,11 +11,14 @@ package org.openmrs.web.dwr;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import org.apache.commons.lang.StringUtils;
@@ -46,6 +49,7 @@ import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientIdentifierException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
+import org.openmrs.patient.DuplicatePatientCandidate;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.patient.UnallowedIdentifierException;
 import org.openmrs.util.OpenmrsConstants;
@@ -60,6 +64,8 @@ public class DWRPatientService implements GlobalPropertyListener {
 	
 	private static final Log log = LogFactory.getLog(DWRPatientService.class);
 	
+	private static final int MAX_DUPLICATE_PATIENTS = 200;
+	
 	private static Integer maximumResults;
 	
 	/**
@@ -343,7 +349,9 @@ public class DWRPatientService implements GlobalPropertyListener {
 	}
 	
 	/**
-	 * find all patients with duplicate attributes (searchOn)
+	 * find all patients with duplicate attributes (searchOn). If searchOn contains "candidates" the
+	 * duplicate candidates found by {@link PatientService#detectDuplicatePatients(boolean)} are
+	 * returned instead, with the patients of each pair next to each other.
 	 *
 	 * @param searchOn
 	 * @return list of patientListItems
@@ -354,13 +362,26 @@ public class DWRPatientService implements GlobalPropertyListener {
 		try {
 			List<String> options = new Vector<String>(searchOn.length);
 			for (String s : searchOn) {
-				options.add(s);
+				if (s != null) {
+					options.add(s);
+				}
 			}
 			
-			List<Patient> patients = Context.getPatientService().getDuplicatePatientsByAttributes(options);
+			List<Patient> patients;
+			if (options.contains("candidates")) {
+				Set<Patient> candidatePatients = new LinkedHashSet<Patient>();
+				for (DuplicatePatientCandidate candidate : Context.getPatientService().getDuplicatePatientCandidates(null,
+				    false, 0, MAX_DUPLICATE_PATIENTS)) {
+					candidatePatients.add(candidate.getPatient());
+					candidatePatients.add(candidate.getDuplicate());
+				}
+				patients = new ArrayList<Patient>(candidatePatients);
+			} else {
+				patients = Context.getPatientService().getDuplicatePatientsByAttributes(options);
+			}
 			
-			if (patients.size() > 200) {
-				patients.subList(0, 200);
+			if (patients.size() > MAX_DUPLICATE_PATIENTS) {
+				patients = patients.subList(0, MAX_DUPLICATE_PATIENTS);
 			}
 			
 			for (Patient p : patients) {
@@ -9,6 +9,8 @@
  */
 package org.openmrs.web.filter;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 import javax.servlet.FilterChain;
@@ -16,11 +18,13 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.web.StreamingResponseUtil;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 /**
@@ -37,6 +41,21 @@ public class GZIPFilter extends OncePerRequestFilter {
 	
 	private String cachedGZipCompressedRequestForPathAccepted = null;
 	
+	private Integer cachedCompressionLevel = null;
+	
+	private Integer cachedMinimumSize = null;
+	
+	private PrecompressedResourceCache precompressedResourceCache = null;
+	
+	/**
+	 * The extensions of the static files that are served from a compressed copy
+	 */
+	private static final String[] PRECOMPRESSED_EXTENSIONS = { ".js", ".css" };
+	
+	private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+	
+	private static final int DEFAULT_MINIMUM_SIZE = 1024;
+	
 	/**
 	 * @see org.springframework.web.filter.OncePerRequestFilter#doFilterInternal(javax.servlet.http.HttpServletRequest,
 	 *      javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
@@ -53,7 +72,13 @@ public class GZIPFilter extends OncePerRequestFilter {
 		if (isGZIPSupported(request) && isGZIPEnabled()) {
 			log.debug("GZIP supported and enabled, compressing response");
 			
-			GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response);
+			response.addHeader("Vary", "Accept-Encoding");
+			if (sendPrecompressed(request, response)) {
+				return;
+			}
+			
+			GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response, getCompressionLevel(),
+			        getMinimumSize());
 			
 			chain.doFilter(request, wrappedResponse);
 			wrappedResponse.finishResponse();
@@ -64,6 +89,79 @@ public class GZIPFilter extends OncePerRequestFilter {
 		chain.doFilter(request, response);
 	}
 	
+	/**
+	 * Sends the compressed copy of a static javascript or css file of the webapp, if the request is
+	 * for one
+	 * 
+	 * @param request the request
+	 * @param response the response
+	 * @return true if the response was sent
+	 * @throws IOException
+	 */
+	protected boolean sendPrecompressed(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String method = request.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			return false;
+		}
+		
+		String path = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+		String upperCasePath = path.toUpperCase();
+		if (!isPrecompressedExtension(path) || path.contains("..") || upperCasePath.contains("WEB-INF")
+		        || upperCasePath.contains("META-INF")) {
+			return false;
+		}
+		
+		String realPath = getServletContext().getRealPath(path);
+		File source = realPath == null ? null : new File(realPath);
+		if (source == null || !source.isFile()) {
+			// e.g. generated, rewritten or module resources
+			return false;
+		}
+		
+		File compressed;
+		try {
+			compressed = getPrecompressedResourceCache().getCompressed(path, source);
+		}
+		catch (IOException e) {
+			log.warn("Unable to compress " + path + ", compressing it per request instead", e);
+			return false;
+		}
+		
+		String mimeType = getServletContext().getMimeType(path);
+		if (mimeType != null) {
+			response.setContentType(mimeType);
+		}
+		if (StreamingResponseUtil.checkNotModified(request, response, null, compressed.lastModified())) {
+			return true;
+		}
+		
+		response.setHeader("Content-Encoding", "gzip");
+		FileInputStream in = new FileInputStream(compressed);
+		try {
+			StreamingResponseUtil.sendFile(request, response, in.getChannel(), null);
+		}
+		finally {
+			in.close();
+		}
+		return true;
+	}
+	
+	private boolean isPrecompressedExtension(String path) {
+		for (String extension : PRECOMPRESSED_EXTENSIONS) {
+			if (path.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private synchronized PrecompressedResourceCache getPrecompressedResourceCache() {
+		if (precompressedResourceCache == null) {
+			precompressedResourceCache = new PrecompressedResourceCache(getCompressionLevel());
+		}
+		return precompressedResourceCache;
+	}
+	
 	/**
 	 * Supports GZIP requests
 	 * @param req request
@@ -143,6 +241,40 @@ public class GZIPFilter extends OncePerRequestFilter {
 		}
 	}
 	
+	/**
+	 * Returns global property gzip.compressionLevel, the default level if it is not a valid level
+	 */
+	private int getCompressionLevel() {
+		if (cachedCompressionLevel == null) {
+			int level = getIntegerGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_GZIP_COMPRESSION_LEVEL,
+			    DEFAULT_COMPRESSION_LEVEL);
+			cachedCompressionLevel = (level < 1 || level > 9) ? DEFAULT_COMPRESSION_LEVEL : level;
+		}
+		return cachedCompressionLevel;
+	}
+	
+	/**
+	 * Returns global property gzip.minimumSize
+	 */
+	private int getMinimumSize() {
+		if (cachedMinimumSize == null) {
+			cachedMinimumSize = Math.max(0, getIntegerGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE,
+			    DEFAULT_MINIMUM_SIZE));
+		}
+		return cachedMinimumSize;
+	}
+	
+	private int getIntegerGlobalProperty(String propertyName, int defaultValue) {
+		try {
+			String value = Context.getAdministrationService().getGlobalProperty(propertyName);
+			return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			log.warn("Invalid value for the global property: " + propertyName + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+	
 	/**
 	 * Returns true if path matches pattern in gzip.acceptCompressedRequestsForPaths property
 	 */
@@ -12,7 +12,7 @@ package org.openmrs.web.filter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -40,6 +40,12 @@ public class GZIPResponseStream extends ServletOutputStream {
 	// default size of the in-memory buffer
 	private int bufferSize = 50000;
 	
+	// the gzip compression level
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	
+	// content smaller than this is sent uncompressed
+	private int minimumSize = 0;
+	
 	public GZIPResponseStream(HttpServletResponse response) throws IOException {
 		super();
 		closed = false;
@@ -48,6 +54,21 @@ public class GZIPResponseStream extends ServletOutputStream {
 		bufferedOutput = new ByteArrayOutputStream();
 	}
 	
+	/**
+	 * @param response the response to compress
+	 * @param compressionLevel the gzip compression level
+	 * @param minimumSize the number of bytes below which content is sent uncompressed
+	 * @throws IOException
+	 * @since 1.12
+	 * @should send content smaller than the minimum size uncompressed
+	 * @should compress content at least as large as the minimum size
+	 */
+	public GZIPResponseStream(HttpServletResponse response, int compressionLevel, int minimumSize) throws IOException {
+		this(response);
+		this.compressionLevel = compressionLevel;
+		this.minimumSize = Math.min(minimumSize, bufferSize);
+	}
+	
 	public void close() throws IOException {
 		// verify the stream is yet to be closed
 		if (closed) {
@@ -58,11 +79,21 @@ public class GZIPResponseStream extends ServletOutputStream {
 		if (bufferedOutput instanceof ByteArrayOutputStream) {
 			// get the content
 			ByteArrayOutputStream baos = (ByteArrayOutputStream) bufferedOutput;
+			byte[] bytes = baos.toByteArray();
+			
+			// small content does not get any smaller, send it as it is
+			if (bytes.length < minimumSize) {
+				response.setContentLength(bytes.length);
+				output.write(bytes);
+				output.flush();
+				output.close();
+				closed = true;
+				return;
+			}
 			
 			// prepare a gzip stream
-			ByteArrayOutputStream compressedContent = new ByteArrayOutputStream();
-			GZIPOutputStream gzipstream = new GZIPOutputStream(compressedContent);
-			byte[] bytes = baos.toByteArray();
+			ByteArrayOutputStream compressedContent = new ByteArrayOutputStream(Math.max(32, bytes.length / 4));
+			PooledGZIPOutputStream gzipstream = new PooledGZIPOutputStream(compressedContent, compressionLevel);
 			gzipstream.write(bytes);
 			gzipstream.finish();
 			
@@ -78,9 +109,9 @@ public class GZIPResponseStream extends ServletOutputStream {
 			closed = true;
 		}
 		// if things were not buffered in memory, finish the GZIP stream and response
-		else if (bufferedOutput instanceof GZIPOutputStream) {
+		else if (bufferedOutput instanceof PooledGZIPOutputStream) {
 			// cast to appropriate type
-			GZIPOutputStream gzipstream = (GZIPOutputStream) bufferedOutput;
+			PooledGZIPOutputStream gzipstream = (PooledGZIPOutputStream) bufferedOutput;
 			
 			// finish the compression
 			gzipstream.finish();
@@ -125,7 +156,7 @@ public class GZIPResponseStream extends ServletOutputStream {
 				byte[] bytes = baos.toByteArray();
 				
 				// make new gzip stream using the response output stream
-				GZIPOutputStream gzipstream = new GZIPOutputStream(output);
+				PooledGZIPOutputStream gzipstream = new PooledGZIPOutputStream(output, compressionLevel);
 				gzipstream.write(bytes);
 				
 				// we are no longer buffering, send content via gzipstream
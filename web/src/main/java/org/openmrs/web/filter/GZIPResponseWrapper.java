@@ -12,6 +12,7 @@ package org.openmrs.web.filter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.zip.Deflater;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -37,13 +38,29 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	
 	protected int error = 0;
 	
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	
+	private int minimumSize = 0;
+	
 	public GZIPResponseWrapper(HttpServletResponse response) {
 		super(response);
 		origResponse = response;
 	}
 	
+	/**
+	 * @param response the response to compress
+	 * @param compressionLevel the gzip compression level
+	 * @param minimumSize the number of bytes below which content is sent uncompressed
+	 * @since 1.12
+	 */
+	public GZIPResponseWrapper(HttpServletResponse response, int compressionLevel, int minimumSize) {
+		this(response);
+		this.compressionLevel = compressionLevel;
+		this.minimumSize = minimumSize;
+	}
+	
 	public ServletOutputStream createOutputStream() throws IOException {
-		return (new GZIPResponseStream(origResponse));
+		return (new GZIPResponseStream(origResponse, compressionLevel, minimumSize));
 	}
 	
 	public void finishResponse() {
@@ -0,0 +1,130 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web.filter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes data in the gzip format like {@link java.util.zip.GZIPOutputStream}, but with a
+ * configurable compression level and with a {@link Deflater} taken from a pool. A new Deflater
+ * allocates native memory that is only freed when it is ended or finalized, so creating one for
+ * every response adds up under load. The Deflater is returned to the pool when the stream is
+ * finished.
+ * 
+ * @since 1.12
+ */
+public class PooledGZIPOutputStream extends DeflaterOutputStream {
+	
+	private static final int GZIP_MAGIC = 0x8b1f;
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	/**
+	 * The maximum number of idle deflaters kept for each compression level
+	 */
+	private static final int MAX_POOLED_DEFLATERS = 32;
+	
+	private static final ConcurrentMap<Integer, Queue<Deflater>> pools = new ConcurrentHashMap<Integer, Queue<Deflater>>();
+	
+	private final int level;
+	
+	private final CRC32 crc = new CRC32();
+	
+	private boolean finished = false;
+	
+	/**
+	 * @param out the stream to write the compressed data to
+	 * @param level the compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @throws IOException
+	 */
+	public PooledGZIPOutputStream(OutputStream out, int level) throws IOException {
+		super(out, acquire(level), BUFFER_SIZE);
+		this.level = level;
+		writeHeader();
+	}
+	
+	/**
+	 * @see java.util.zip.DeflaterOutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("write beyond end of stream");
+		}
+		super.write(b, off, len);
+		crc.update(b, off, len);
+	}
+	
+	/**
+	 * Writes the remaining compressed data and the gzip trailer and returns the deflater to the
+	 * pool, without closing the underlying stream
+	 * 
+	 * @see java.util.zip.DeflaterOutputStream#finish()
+	 */
+	@Override
+	public synchronized void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		try {
+			super.finish();
+			writeInt((int) crc.getValue());
+			writeInt((int) def.getBytesRead());
+		}
+		finally {
+			release(level, def);
+		}
+	}
+	
+	private void writeHeader() throws IOException {
+		out.write(new byte[] { (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 });
+	}
+	
+	private void writeInt(int i) throws IOException {
+		out.write(new byte[] { (byte) i, (byte) (i >> 8), (byte) (i >> 16), (byte) (i >> 24) });
+	}
+	
+	/**
+	 * Takes an idle deflater with the given level from the pool or creates a new one
+	 */
+	static Deflater acquire(int level) {
+		Queue<Deflater> pool = pools.get(level);
+		Deflater deflater = pool == null ? null : pool.poll();
+		return deflater != null ? deflater : new Deflater(level, true);
+	}
+	
+	/**
+	 * Resets the deflater and returns it to the pool, or ends it if the pool is full
+	 */
+	static void release(int level, Deflater deflater) {
+		Queue<Deflater> pool = pools.get(level);
+		if (pool == null) {
+			pools.putIfAbsent(level, new ConcurrentLinkedQueue<Deflater>());
+			pool = pools.get(level);
+		}
+		
+		// the size of a concurrent queue is not exact, the limit is only a guide
+		if (pool.size() < MAX_POOLED_DEFLATERS) {
+			deflater.reset();
+			pool.offer(deflater);
+		} else {
+			deflater.end();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web.filter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Keeps gzip compressed copies of static files so that they are compressed once instead of on
+ * every request. A copy is made the first time a file is requested and is made again whenever the
+ * modification time of the original changes, e.g. after the webapp is redeployed.
+ * 
+ * @since 1.12
+ */
+public class PrecompressedResourceCache {
+	
+	private static final Log log = LogFactory.getLog(PrecompressedResourceCache.class);
+	
+	/**
+	 * Name of the directory, in the application data directory, holding the compressed copies
+	 */
+	public static final String DIRECTORY_NAME = "precompressed";
+	
+	private final File directory;
+	
+	private final int compressionLevel;
+	
+	/**
+	 * Creates a cache in the application data directory
+	 * 
+	 * @param compressionLevel the gzip compression level of the copies
+	 */
+	public PrecompressedResourceCache(int compressionLevel) {
+		this(OpenmrsUtil.getDirectoryInApplicationDataDirectory(DIRECTORY_NAME), compressionLevel);
+	}
+	
+	/**
+	 * @param directory the directory to keep the compressed copies in
+	 * @param compressionLevel the gzip compression level of the copies
+	 */
+	public PrecompressedResourceCache(File directory, int compressionLevel) {
+		this.directory = directory;
+		this.compressionLevel = compressionLevel;
+	}
+	
+	/**
+	 * Gets the compressed copy of the given file, compressing it if there is no up to date copy
+	 * 
+	 * @param path the path the file is requested by, relative to the webapp
+	 * @param source the file
+	 * @return the compressed copy, with the same modification time as the file
+	 * @throws IOException
+	 * @should compress a file on first use
+	 * @should compress the file again if it was modified
+	 */
+	public File getCompressed(String path, File source) throws IOException {
+		File compressed = new File(directory, path + ".gz");
+		long lastModified = source.lastModified();
+		if (compressed.isFile() && compressed.lastModified() == lastModified) {
+			return compressed;
+		}
+		
+		File parent = compressed.getParentFile();
+		if (!parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create directory " + parent.getAbsolutePath());
+		}
+		
+		// concurrent requests may compress the same file, the copy is replaced in one step
+		File tempFile = File.createTempFile(compressed.getName(), ".part", parent);
+		try {
+			InputStream in = new FileInputStream(source);
+			try {
+				OutputStream out = new PooledGZIPOutputStream(new FileOutputStream(tempFile), compressionLevel);
+				try {
+					IOUtils.copy(in, out);
+				}
+				finally {
+					out.close();
+				}
+			}
+			finally {
+				in.close();
+			}
+			
+			if (!tempFile.setLastModified(lastModified)) {
+				log.debug("Unable to set the modification time of " + tempFile.getAbsolutePath());
+			}
+			try {
+				Files.move(tempFile.toPath(), compressed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), compressed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			if (tempFile.exists() && !tempFile.delete()) {
+				tempFile.deleteOnExit();
+			}
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Compressed " + path + " from " + source.length() + " to " + compressed.length() + " bytes");
+		}
+		
+		return compressed;
+	}
+	
+}
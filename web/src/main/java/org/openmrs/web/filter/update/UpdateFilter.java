@@ -269,7 +269,12 @@ public class UpdateFilter extends StartupFilter {
 				}
 				
 				result.put("updatesRequired", updatesRequired());
-				result.put("message", updateJob.getMessage());
+				String progress = DatabaseUpdater.getUpdateProgress();
+				if (progress == null) {
+					result.put("message", updateJob.getMessage());
+				} else {
+					result.put("message", updateJob.getMessage() + " (" + progress + ")");
+				}
 				result.put("changesetIds", updateJob.getChangesetIds());
 				result.put("executingChangesetId", updateJob.getExecutingChangesetId());
 				Appender appender = Logger.getRootLogger().getAppender("MEMORY_APPENDER");
@@ -10,7 +10,7 @@
 package org.openmrs.web.servlet;
 
 import java.awt.image.RenderedImage;
-import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -26,10 +26,15 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 import org.openmrs.obs.ComplexData;
-import org.openmrs.util.OpenmrsUtil;
 import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.web.StreamingResponseUtil;
 import org.openmrs.web.WebConstants;
 
+/**
+ * Writes the complex data of an obs to the response. Conditional requests are answered using an
+ * ETag and the creation date of the obs, and byte range requests are honored so that large media
+ * can be resumed and seeked.
+ */
 public class ComplexObsServlet extends HttpServlet {
 	
 	public static final long serialVersionUID = 1234432L;
@@ -60,7 +65,24 @@ public class ComplexObsServlet extends HttpServlet {
 			return;
 		}
 		
+		Obs obs = Context.getObsService().getObs(Integer.valueOf(obsId));
+		if (obs == null || obs.getValueComplex() == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		// the complex data of an obs never changes, edits create a new obs
+		String etag = "\"" + obsId + "-" + Integer.toHexString((obs.getValueComplex() + "|" + view).hashCode()) + "\"";
+		long lastModified = obs.getDateCreated() == null ? -1 : obs.getDateCreated().getTime();
+		if (StreamingResponseUtil.checkNotModified(request, response, etag, lastModified)) {
+			return;
+		}
+		
 		Obs complexObs = Context.getObsService().getComplexObs(Integer.valueOf(obsId), view);
+		if (complexObs == null || complexObs.getComplexData() == null || complexObs.getComplexData().getData() == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
 		ComplexData cd = complexObs.getComplexData();
 		Object data = cd.getData();
 		
@@ -75,15 +97,8 @@ public class ComplexObsServlet extends HttpServlet {
 			response.setHeader("Content-Type", mimeType);
 		}
 		
-		Long length = cd.getLength();
-		if (length != null) {
-			response.setHeader("Content-Length", String.valueOf(length));
-			response.setHeader("Accept-Ranges", "bytes");
-		}
-		
 		if (data instanceof byte[]) {
-			ByteArrayInputStream stream = new ByteArrayInputStream((byte[]) data);
-			OpenmrsUtil.copyFile(stream, response.getOutputStream());
+			StreamingResponseUtil.sendBytes(request, response, (byte[]) data, etag);
 		} else if (RenderedImage.class.isAssignableFrom(data.getClass())) {
 			RenderedImage img = (RenderedImage) data;
 			String[] parts = cd.getTitle().split("\\.");
@@ -93,10 +108,23 @@ public class ComplexObsServlet extends HttpServlet {
 			}
 			
 			ImageIO.write(img, extension, response.getOutputStream());
+		} else if (data instanceof FileInputStream) {
+			// file backed handlers, the file is sent without being copied through the heap
+			FileInputStream stream = (FileInputStream) data;
+			try {
+				StreamingResponseUtil.sendFile(request, response, stream.getChannel(), etag);
+			}
+			finally {
+				stream.close();
+			}
 		} else if (InputStream.class.isAssignableFrom(data.getClass())) {
 			InputStream stream = (InputStream) data;
-			OpenmrsUtil.copyFile(stream, response.getOutputStream());
-			stream.close();
+			try {
+				StreamingResponseUtil.sendStream(request, response, stream, cd.getLength(), etag);
+			}
+			finally {
+				stream.close();
+			}
 		} else {
 			throw new ServletException("Couldn't serialize complex obs data for obsId=" + obsId + " of type "
 			        + data.getClass());
@@ -0,0 +1,199 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptDescription;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptSet;
+
+/**
+ * Writes the non retired concepts of an iterator to a writer one concept at a time, either as
+ * comma delimited lines or as a json array. Nothing is kept in memory between concepts, so the
+ * export can be combined with {@link org.openmrs.api.ConceptService#conceptIterator(int)} to
+ * stream dictionaries of any size.
+ */
+public class ConceptDictionaryExporter {
+	
+	/**
+	 * The output formats supported by the exporter
+	 */
+	public enum Format {
+		CSV, JSON
+	}
+	
+	public static final String CSV_HEADER = "Concept Id,Name,Description,Synonyms,Answers,Set Members,Class,Datatype,Changed By,Creator\n";
+	
+	private final Writer writer;
+	
+	private final Format format;
+	
+	private final Locale locale;
+	
+	/**
+	 * @param writer the writer to export to, callers are expected to pass a buffered writer
+	 * @param format the output format
+	 * @param locale the locale used for concept names and descriptions
+	 */
+	public ConceptDictionaryExporter(Writer writer, Format format, Locale locale) {
+		this.writer = writer;
+		this.format = format;
+		this.locale = locale;
+	}
+	
+	/**
+	 * Writes all non retired concepts returned by the given iterator
+	 *
+	 * @param concepts the concepts to export
+	 * @return the number of concepts written
+	 * @throws IOException
+	 */
+	public int export(Iterator<Concept> concepts) throws IOException {
+		if (format == Format.JSON) {
+			return exportJson(concepts);
+		}
+		return exportCsv(concepts);
+	}
+	
+	private int exportCsv(Iterator<Concept> concepts) throws IOException {
+		int count = 0;
+		writer.write(CSV_HEADER);
+		while (concepts.hasNext()) {
+			Concept c = concepts.next();
+			if (c.isRetired()) {
+				continue;
+			}
+			
+			writer.write(String.valueOf(c.getConceptId()));
+			writer.write(',');
+			writeCsvColumn(getName(c), false);
+			writeCsvColumn(getDescription(c), false);
+			writeCsvColumn(join(getSynonyms(c)), false);
+			writeCsvColumn(join(getAnswers(c)), false);
+			writeCsvColumn(join(getSetMembers(c)), false);
+			writeCsvColumn(c.getConceptClass() == null ? "" : c.getConceptClass().getName(), false);
+			writeCsvColumn(c.getDatatype() == null ? "" : c.getDatatype().getName(), false);
+			writeCsvColumn(c.getChangedBy() == null ? "" : String.valueOf(c.getChangedBy().getPersonName()), false);
+			writeCsvColumn(c.getCreator() == null ? "" : String.valueOf(c.getCreator().getPersonName()), true);
+			count++;
+		}
+		writer.flush();
+		
+		return count;
+	}
+	
+	private int exportJson(Iterator<Concept> concepts) throws IOException {
+		int count = 0;
+		JsonGenerator json = new JsonFactory().createJsonGenerator(writer);
+		json.writeStartArray();
+		while (concepts.hasNext()) {
+			Concept c = concepts.next();
+			if (c.isRetired()) {
+				continue;
+			}
+			
+			json.writeStartObject();
+			json.writeNumberField("conceptId", c.getConceptId());
+			json.writeStringField("name", getName(c));
+			json.writeStringField("description", getDescription(c));
+			writeJsonArray(json, "synonyms", getSynonyms(c));
+			writeJsonArray(json, "answers", getAnswers(c));
+			writeJsonArray(json, "setMembers", getSetMembers(c));
+			json.writeStringField("class", c.getConceptClass() == null ? null : c.getConceptClass().getName());
+			json.writeStringField("datatype", c.getDatatype() == null ? null : c.getDatatype().getName());
+			json.writeStringField("changedBy", c.getChangedBy() == null ? null : String.valueOf(c.getChangedBy()
+			        .getPersonName()));
+			json.writeStringField("creator", c.getCreator() == null ? null : String.valueOf(c.getCreator()
+			        .getPersonName()));
+			json.writeEndObject();
+			count++;
+		}
+		json.writeEndArray();
+		json.flush();
+		
+		return count;
+	}
+	
+	private void writeCsvColumn(String value, boolean last) throws IOException {
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write(last ? "\"\n" : "\",");
+	}
+	
+	private void writeJsonArray(JsonGenerator json, String fieldName, List<String> values) throws IOException {
+		json.writeArrayFieldStart(fieldName);
+		for (String value : values) {
+			json.writeString(value);
+		}
+		json.writeEndArray();
+	}
+	
+	private String getName(Concept c) {
+		ConceptName cn = c.getName(locale);
+		return cn == null ? "" : cn.getName();
+	}
+	
+	private String getDescription(Concept c) {
+		ConceptDescription cd = c.getDescription(locale);
+		if (cd == null || cd.getDescription() == null) {
+			return "";
+		}
+		return cd.getDescription();
+	}
+	
+	private List<String> getSynonyms(Concept c) {
+		List<String> synonyms = new ArrayList<String>();
+		for (ConceptName syn : c.getNames()) {
+			synonyms.add(String.valueOf(syn));
+		}
+		return synonyms;
+	}
+	
+	private List<String> getAnswers(Concept c) {
+		List<String> answers = new ArrayList<String>();
+		for (ConceptAnswer answer : c.getAnswers(false)) {
+			if (answer.getAnswerConcept() != null) {
+				answers.add(String.valueOf(answer.getAnswerConcept().getName()));
+			} else if (answer.getAnswerDrug() != null) {
+				answers.add(answer.getAnswerDrug().getFullName(locale));
+			}
+		}
+		return answers;
+	}
+	
+	private List<String> getSetMembers(Concept c) {
+		List<String> members = new ArrayList<String>();
+		for (ConceptSet set : c.getConceptSets()) {
+			if (set.getConcept() != null) {
+				members.add(String.valueOf(set.getConcept().getName()));
+			}
+		}
+		return members;
+	}
+	
+	private String join(List<String> values) {
+		StringBuilder sb = new StringBuilder();
+		for (String value : values) {
+			sb.append(value).append("\n");
+		}
+		return sb.toString().trim();
+	}
+	
+}
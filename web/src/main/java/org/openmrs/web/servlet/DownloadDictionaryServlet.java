@@ -9,10 +9,11 @@
  */
 package org.openmrs.web.servlet;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.Locale;
 
 import javax.servlet.ServletException;
@@ -22,17 +23,14 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.Concept;
-import org.openmrs.ConceptAnswer;
-import org.openmrs.ConceptDescription;
-import org.openmrs.ConceptName;
-import org.openmrs.ConceptSet;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
+import org.openmrs.web.servlet.ConceptDictionaryExporter.Format;
 
 /**
- * This servlet will package all non retired concepts into a comma delimited file. Retired concepts
- * are ignored.
+ * This servlet will package all non retired concepts into a comma delimited file, or a json file if
+ * the format parameter is set to json. Retired concepts are ignored. Concepts are streamed to the
+ * response in batches so that the memory used does not grow with the size of the dictionary.
  */
 public class DownloadDictionaryServlet extends HttpServlet {
 	
@@ -41,11 +39,21 @@ public class DownloadDictionaryServlet extends HttpServlet {
 	private Log log = LogFactory.getLog(this.getClass());
 	
 	/**
-	 * Maximum size of query results, when retrieved in batches. ABKTODO: should probably be
+	 * Request parameter used to choose the output format, either csv (the default) or json
+	 */
+	public static final String FORMAT_PARAM = "format";
+	
+	/**
+	 * Number of concepts fetched from the database at a time. ABKTODO: should probably be
 	 * configurable somewhere
 	 */
 	public int batchSize = 1000;
 	
+	/**
+	 * Size of the buffer used for writing to the response
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
 	/**
 	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
 	 *      javax.servlet.http.HttpServletResponse)
@@ -58,107 +66,22 @@ public class DownloadDictionaryServlet extends HttpServlet {
 			ConceptService cs = Context.getConceptService();
 			String s = new SimpleDateFormat("dMy_Hm").format(new Date());
 			
-			response.setHeader("Content-Type", "text/csv;charset=UTF-8");
-			response.setHeader("Content-Disposition", "attachment; filename=conceptDictionary" + s + ".csv");
-			
-			String headerLine = "Concept Id,Name,Description,Synonyms,Answers,Set Members,Class,Datatype,Changed By,Creator\n";
-			response.getWriter().write(headerLine);
+			Format format = "json".equalsIgnoreCase(request.getParameter(FORMAT_PARAM)) ? Format.JSON : Format.CSV;
+			if (format == Format.JSON) {
+				response.setHeader("Content-Type", "application/json;charset=UTF-8");
+				response.setHeader("Content-Disposition", "attachment; filename=conceptDictionary" + s + ".json");
+			} else {
+				response.setHeader("Content-Type", "text/csv;charset=UTF-8");
+				response.setHeader("Content-Disposition", "attachment; filename=conceptDictionary" + s + ".csv");
+			}
 			
-			Iterator<Concept> conceptIterator = cs.conceptIterator();
-			while (conceptIterator.hasNext()) {
-				Concept c = conceptIterator.next();
-				if (!c.isRetired()) {
-					
-					StringBuilder line = new StringBuilder("");
-					line.append(c.getConceptId());
-					line.append(",");
-					String name, description;
-					ConceptName cn = c.getName(locale);
-					if (cn == null) {
-						name = "";
-					} else {
-						name = cn.getName();
-					}
-					
-					ConceptDescription cd = c.getDescription(locale);
-					if (cd == null) {
-						description = "";
-					} else {
-						description = cd.getDescription();
-					}
-					
-					line.append('"');
-					line.append(name.replace("\"", "\"\""));
-					line.append("\",");
-					
-					if (description == null) {
-						description = "";
-					}
-					line.append('"');
-					line.append(description.replace("\"", "\"\""));
-					line.append("\",");
-					
-					StringBuilder tmp = new StringBuilder("");
-					for (ConceptName syn : c.getNames()) {
-						tmp.append(syn).append("\n");
-					}
-					line.append('"');
-					line.append(tmp.toString().trim());
-					line.append("\",");
-					
-					tmp = new StringBuilder("");
-					for (ConceptAnswer answer : c.getAnswers(false)) {
-						if (answer.getAnswerConcept() != null) {
-							tmp.append(answer.getAnswerConcept().getName()).append("\n");
-						} else if (answer.getAnswerDrug() != null) {
-							tmp.append(answer.getAnswerDrug().getFullName(Context.getLocale())).append("\n");
-						}
-					}
-					line.append('"');
-					line.append(tmp.toString().trim());
-					line.append("\",");
-					
-					tmp = new StringBuilder("");
-					for (ConceptSet set : c.getConceptSets()) {
-						if (set.getConcept() != null) {
-							name = set.getConcept().getName().toString();
-							tmp.append(name.replace("\"", "\"\"")).append("\n");
-						}
-					}
-					line.append('"');
-					line.append(tmp.toString().trim());
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getConceptClass() != null) {
-						line.append(c.getConceptClass().getName());
-					}
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getDatatype() != null) {
-						line.append(c.getDatatype().getName());
-					}
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getChangedBy() != null) {
-						line.append(c.getChangedBy().getPersonName());
-					}
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getCreator() != null) {
-						line.append(c.getCreator().getPersonName());
-					}
-					line.append("\"\n");
-					
-					response.getWriter().write(line.toString());
-					
-				} //end if !c.isRetired()
-				
-			} //end while(conceptIterator.hasNext())
+			Writer writer = new BufferedWriter(response.getWriter(), BUFFER_SIZE);
+			int count = new ConceptDictionaryExporter(writer, format, locale).export(cs.conceptIterator(batchSize));
+			writer.flush();
 			
+			if (log.isDebugEnabled()) {
+				log.debug("Exported " + count + " concepts");
+			}
 		}
 		catch (Exception e) {
 			log.error("Error while downloading concepts.", e);
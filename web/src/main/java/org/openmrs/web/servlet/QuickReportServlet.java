@@ -9,15 +9,31 @@
  */
 package org.openmrs.web.servlet;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -28,33 +44,72 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
+import org.apache.velocity.runtime.RuntimeSingleton;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.Location;
 import org.openmrs.Obs;
-import org.openmrs.api.ConceptService;
-import org.openmrs.api.EncounterService;
-import org.openmrs.api.LocationService;
-import org.openmrs.api.ObsService;
+import org.openmrs.api.ObsService.ObsCallback;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.util.OpenmrsConstants.PERSON_TYPE;
 import org.openmrs.util.PrivilegeConstants;
 import org.openmrs.web.WebConstants;
 
+/**
+ * Renders simple reports. Each report is written to the response one row at a time while its
+ * data is read, so reports over long periods don't need to fit in memory. Several reports can be
+ * requested at once by repeating the reportType parameter, the first one is streamed to the
+ * response while the others are rendered in parallel to temporary files and copied after it.
+ */
 public class QuickReportServlet extends HttpServlet {
 	
 	public static final long serialVersionUID = 1231231L;
 	
+	/**
+	 * The number of rows written between flushes of the response
+	 */
+	private static final int FLUSH_INTERVAL = 100;
+	
+	/**
+	 * The most reports rendered in the background at the same time, over all requests
+	 */
+	private static final int MAX_PARALLEL_REPORTS = 4;
+	
 	private Log log = LogFactory.getLog(this.getClass());
 	
+	private transient ExecutorService executor;
+	
+	@Override
+	public void init() throws ServletException {
+		executor = Executors.newFixedThreadPool(MAX_PARALLEL_REPORTS, new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "OpenMRS quick report");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+	
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		response.setContentType("text/html");
 		
-		String reportType = request.getParameter("reportType");
+		String[] reportTypes = request.getParameterValues("reportType");
 		HttpSession session = request.getSession();
 		
-		if (reportType == null || reportType.length() == 0) {
+		if (reportTypes == null || reportTypes.length == 0 || StringUtils.isEmpty(reportTypes[0])) {
 			session.setAttribute(WebConstants.OPENMRS_ERROR_ATTR, "error.null");
 			return;
 		}
@@ -72,229 +127,172 @@ public class QuickReportServlet extends HttpServlet {
 		catch (Exception e) {
 			log.error("Error initializing Velocity engine", e);
 		}
-		VelocityContext velocityContext = new VelocityContext();
-		PrintWriter report = response.getWriter();
 		
-		report.append("Report: " + reportType + "<br/><br/>\n\n");
-		
-		if (reportType.equals("RETURN VISIT DATE THIS WEEK")) {
-			doReturnVisitDate(velocityContext, report, request);
+		List<Report> reports = new ArrayList<Report>();
+		for (String reportType : reportTypes) {
+			reports.add(new Report(reportType, request));
 		}
-		if (reportType.equals("ATTENDED CLINIC THIS WEEK")) {
-			doAttendedClinic(velocityContext, report, request);
-		} else if (reportType.equals("VOIDED OBS")) {
-			doVoidedObs(velocityContext, report, request);
+		
+		// the other reports are rendered in the background while the first one is streamed
+		List<Future<File>> rendered = new ArrayList<Future<File>>();
+		UserContext userContext = Context.getUserContext();
+		for (Report report : reports.subList(1, reports.size())) {
+			// each worker gets its own context, the request's one is not safe to share between threads
+			rendered.add(executor == null ? null : executor.submit(new RenderToFile(report, new UserContext(userContext))));
 		}
 		
+		Writer out = response.getWriter();
 		try {
-			Velocity.evaluate(velocityContext, report, this.getClass().getName(), getTemplate(reportType));
+			reports.get(0).render(out);
+			for (int i = 0; i < rendered.size(); i++) {
+				if (rendered.get(i) == null) {
+					reports.get(i + 1).render(out);
+				} else {
+					copy(getFile(rendered.get(i)), out);
+				}
+			}
 		}
-		catch (Exception e) {
-			log.error("Error evaluating report type " + reportType, e);
+		finally {
+			for (Future<File> future : rendered) {
+				if (future != null && !future.cancel(true) && future.isDone()) {
+					deleteFile(future);
+				}
+			}
 		}
-		
 	}
 	
-	private void doReturnVisitDate(VelocityContext velocityContext, PrintWriter report, HttpServletRequest request)
-	        throws ServletException {
-		ObsService os = Context.getObsService();
-		EncounterService es = Context.getEncounterService();
-		ConceptService cs = Context.getConceptService();
-		
-		DateFormat dateFormat = Context.getDateFormat();
-		
-		Concept c = cs.getConcept(Integer.valueOf("5096")); // RETURN VISIT DATE
-		Calendar cal = Calendar.getInstance();
-		
-		Date start;
-		Date end;
-		
-		String startDate = request.getParameter("startDate");
-		String endDate = request.getParameter("endDate");
-		String location = request.getParameter("location");
-		
-		if (startDate != null && startDate.length() != 0) {
-			try {
-				cal.setTime(dateFormat.parse(startDate));
-			}
-			catch (ParseException e) {
-				throw new ServletException("Error parsing 'Start Date'", e);
-			}
-		} else {
-			cal.setTime(new Date());
+	private File getFile(Future<File> future) throws ServletException {
+		try {
+			return future.get();
 		}
-		
-		// if they don't input an end date, assume they meant "this week"
-		if (endDate == null || "".equals(endDate)) {
-			while (cal.get(Calendar.DAY_OF_WEEK) != Calendar.SUNDAY) {
-				cal.add(Calendar.DAY_OF_MONTH, -1);
-			}
-			start = cal.getTime();
-			cal.add(Calendar.DAY_OF_MONTH, 7);
-			end = cal.getTime();
-		} else {
-			// they put in an end date, assume literal start and end
-			start = cal.getTime();
-			try {
-				cal.setTime(dateFormat.parse(endDate));
-			}
-			catch (ParseException e) {
-				throw new ServletException("Error parsing 'End Date'", e);
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServletException("Interrupted while waiting for a report", e);
+		}
+		catch (ExecutionException e) {
+			throw new ServletException("Error rendering report", e.getCause());
+		}
+	}
+	
+	private void deleteFile(Future<File> future) {
+		try {
+			File file = future.get();
+			if (!file.delete()) {
+				log.warn("Unable to delete " + file);
 			}
-			end = cal.getTime();
 		}
-		
-		List<Obs> allObs = null;
-		
-		if (location == null || "".equals(location)) {
-			allObs = os.getObservations(c, "location.locationId asc, obs.valueDatetime asc", ObsService.PATIENT, true);
-		} else {
-			Location locationObj = es.getLocation(Integer.valueOf(location));
-			allObs = os.getObservations(c, locationObj, "location.locationId asc, obs.valueDatetime asc",
-			    ObsService.PATIENT, true);
+		catch (Exception e) {
+			// the report failed before its file was returned
 		}
-		
-		List<Obs> obs = new Vector<Obs>();
-		
-		for (Obs o : allObs) {
-			if (o.getValueDatetime() != null && o.getValueDatetime().after(start) && o.getValueDatetime().before(end)) {
-				obs.add(o);
+	}
+	
+	private void copy(File file, Writer out) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
 			}
+			out.flush();
+		}
+		finally {
+			in.close();
 		}
-		
-		velocityContext.put("observations", obs);
 	}
 	
-	private void doAttendedClinic(VelocityContext velocityContext, PrintWriter report, HttpServletRequest request)
-	        throws ServletException {
-		EncounterService es = Context.getEncounterService();
-		LocationService ls = Context.getLocationService();
-		
-		DateFormat dateFormat = Context.getDateFormat();
-		velocityContext.put("date", dateFormat);
-		
-		Calendar cal = Calendar.getInstance();
+	/**
+	 * Renders a report to a temporary file in its own session and user context, as the user of the
+	 * request
+	 */
+	private static class RenderToFile implements Callable<File> {
 		
-		Date start;
-		Date end;
+		private final Report report;
 		
-		String startDate = request.getParameter("startDate");
-		String endDate = request.getParameter("endDate");
-		String location = request.getParameter("location");
+		private final UserContext userContext;
 		
-		if (startDate != null && startDate.length() != 0) {
-			try {
-				cal.setTime(dateFormat.parse(startDate));
-			}
-			catch (ParseException e) {
-				throw new ServletException("Error parsing 'Start Date'", e);
-			}
-		} else {
-			cal.setTime(new Date());
+		public RenderToFile(Report report, UserContext userContext) {
+			this.report = report;
+			this.userContext = userContext;
 		}
 		
-		// if they don't input an end date, assume they meant "this week"
-		if (endDate == null || "".equals(endDate)) {
-			while (cal.get(Calendar.DAY_OF_WEEK) != Calendar.SUNDAY) {
-				cal.add(Calendar.DAY_OF_MONTH, -1);
-			}
-			start = cal.getTime();
-			cal.add(Calendar.DAY_OF_MONTH, 7);
-			end = cal.getTime();
-		} else {
-			// they put in an end date, assume literal start and end
-			start = cal.getTime();
+		@Override
+		public File call() throws Exception {
+			Context.setUserContext(userContext);
+			Context.openSessionWithCurrentUser();
 			try {
-				cal.setTime(dateFormat.parse(endDate));
+				File file = File.createTempFile("quickreport", ".html");
+				Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+				try {
+					report.render(out);
+					if (Thread.interrupted()) {
+						throw new InterruptedException("The request no longer waits for the report");
+					}
+				}
+				catch (Exception e) {
+					out.close();
+					file.delete();
+					throw e;
+				}
+				out.close();
+				return file;
 			}
-			catch (ParseException e) {
-				throw new ServletException("Error parsing 'End Date'", e);
+			finally {
+				Context.closeSessionWithCurrentUser();
+				Context.clearUserContext();
 			}
-			end = cal.getTime();
-		}
-		
-		Collection<Encounter> encounters = null;
-		
-		if (location == null || "".equals(location)) {
-			encounters = es.getEncounters(null, null, start, end, null, null, null, true);
-		} else {
-			Location locationObj = ls.getLocation(Integer.valueOf(location));
-			encounters = es.getEncounters(null, locationObj, start, end, null, null, null, true);
-		}
-		
-		if (encounters != null) {
-			velocityContext.put("encounters", encounters);
-		} else {
-			report.append("No Encounters found");
 		}
 	}
 	
-	private void doVoidedObs(VelocityContext velocityContext, PrintWriter report, HttpServletRequest request)
-	        throws ServletException {
-		ObsService os = Context.getObsService();
+	/**
+	 * One report of a request, with the request parameters it needs
+	 */
+	private static class Report {
 		
-		DateFormat dateFormat = Context.getDateFormat();
-		velocityContext.put("date", dateFormat);
+		private final String reportType;
 		
-		Calendar cal = Calendar.getInstance();
+		private final String startDate;
 		
-		Date start;
-		Date end;
+		private final String endDate;
 		
-		String startDate = request.getParameter("startDate");
-		String endDate = request.getParameter("endDate");
+		private final String location;
 		
-		if (startDate != null && startDate.length() != 0) {
-			try {
-				cal.setTime(dateFormat.parse(startDate));
-			}
-			catch (ParseException e) {
-				throw new ServletException("Error parsing 'Start Date'", e);
-			}
-		} else {
-			cal.setTime(new Date());
+		public Report(String reportType, HttpServletRequest request) {
+			this.reportType = reportType;
+			this.startDate = request.getParameter("startDate");
+			this.endDate = request.getParameter("endDate");
+			this.location = request.getParameter("location");
 		}
 		
-		// if they don't input an end date, assume they meant "this week"
-		if (StringUtils.isEmpty(endDate)) {
-			while (cal.get(Calendar.DAY_OF_WEEK) != Calendar.SUNDAY) {
-				cal.add(Calendar.DAY_OF_MONTH, -1);
-			}
-			start = cal.getTime();
-			cal.add(Calendar.DAY_OF_MONTH, 7);
-			end = cal.getTime();
-		} else {
-			// they put in an end date, assume literal start and end
-			start = cal.getTime();
-			try {
-				cal.setTime(dateFormat.parse(endDate));
-			}
-			catch (ParseException e) {
-				throw new ServletException("Error parsing 'End Date'", e);
+		public void render(Writer out) throws ServletException, IOException {
+			out.append("Report: " + reportType + "<br/><br/>\n\n");
+			out.append("<table>\n");
+			
+			if (reportType.equals("RETURN VISIT DATE THIS WEEK")) {
+				doReturnVisitDate(out);
+			} else if (reportType.equals("ATTENDED CLINIC THIS WEEK")) {
+				doAttendedClinic(out);
+			} else if (reportType.equals("VOIDED OBS")) {
+				doVoidedObs(out);
 			}
-			end = cal.getTime();
+			
+			out.append("</table>\n");
+			out.flush();
 		}
 		
-		List<Obs> allObs = null;
-		allObs = os.getObservations(null, null, null, null, null, null, null, null, null, start, end, true);
-		
-		List<Obs> obs = new Vector<Obs>();
-		for (Obs o : allObs) {
-			if (o.getVoided()) {
-				obs.add(o);
+		private void doReturnVisitDate(Writer out) throws ServletException, IOException {
+			Concept c = Context.getConceptService().getConcept(Integer.valueOf("5096")); // RETURN VISIT DATE
+			
+			Date[] range = getDateRange();
+			final Date start = range[0];
+			final Date end = range[1];
+			
+			List<Location> locations = null;
+			if (StringUtils.isNotEmpty(location)) {
+				locations = Collections.singletonList(Context.getLocationService().getLocation(Integer.valueOf(location)));
 			}
-		}
-		
-		velocityContext.put("observations", obs);
-	}
-	
-	// TODO temporary placement of template string
-	private String getTemplate(String reportType) {
-		
-		String template = "<table>\n";
-		
-		if (reportType.equals("RETURN VISIT DATE THIS WEEK")) {
-			template += "#foreach($o in $observations)\n";
+			
+			String template = "";
 			template += " <tr>\n";
 			template += "  <td>$!{o.Patient.PersonName.GivenName} $!{o.Patient.PersonName.MiddleName} $!{o.Patient.PersonName.FamilyName}</td>\n";
 			template += "  <td>$!{o.Patient.PatientIdentifier}</td>\n";
@@ -302,40 +300,195 @@ public class QuickReportServlet extends HttpServlet {
 			template += "  <td>$!{date.format($!{o.Encounter.EncounterDatetime})}</td>\n";
 			template += "  <td>$!{date.format($o.ValueDatetime)}</td>\n";
 			template += " </tr>\n";
-			template += "#end\n";
+			final RowWriter rows = new RowWriter(out, reportType, template);
+			
+			Context.getObsService().processObservations(Collections.singletonList(c), locations,
+			    Collections.singletonList(PERSON_TYPE.PATIENT), Arrays.asList("location.locationId asc", "valueDatetime asc"),
+			    null, null, true, new ObsCallback() {
+				
+				    @Override
+				    public boolean process(Obs o) {
+					    if (o.getValueDatetime() != null && o.getValueDatetime().after(start)
+					            && o.getValueDatetime().before(end)) {
+						    return rows.write("o", o);
+					    }
+					    return true;
+				    }
+			    });
+			rows.finish();
 		}
-		if (reportType.equals("ATTENDED CLINIC THIS WEEK")) {
-			template += "#foreach($e in $encounters)\n";
+		
+		private void doAttendedClinic(Writer out) throws ServletException, IOException {
+			Date[] range = getDateRange();
+			
+			Location locationObj = null;
+			if (StringUtils.isNotEmpty(location)) {
+				locationObj = Context.getLocationService().getLocation(Integer.valueOf(location));
+			}
+			Collection<Encounter> encounters = Context.getEncounterService().getEncounters(null, locationObj, range[0],
+			    range[1], null, null, null, true);
+			
+			if (encounters == null) {
+				out.append("No Encounters found");
+				return;
+			}
+			
+			String template = "";
 			template += " <tr>\n";
 			template += "  <td>$!{e.Patient.PersonName.GivenName} $!{e.Patient.PersonName.MiddleName} $!{e.Patient.PersonName.FamilyName}</td>\n";
 			template += "  <td>$!{e.Patient.PatientIdentifier}</td>\n";
 			template += "  <td>$!{e.Location.Name}</td>\n";
 			template += "  <td>$!{date.format($e.encounterDatetime)}</td>\n";
 			template += " </tr>\n";
-			template += "#end\n";
-		} else if (reportType.equals("VOIDED OBS")) {
-			template += " <tr> \n";
-			template += "  <th>Id</th><th>Patient</th><th>Encounter</th>";
-			template += "  <th>Concept</th><th>Voided Answer</th>";
-			template += "  <th>Comment</th><th>Voided By</th><th>Void Reason</th> \n";
-			template += " </tr>\n";
+			RowWriter rows = new RowWriter(out, reportType, template);
+			
+			for (Encounter e : encounters) {
+				if (!rows.write("e", e)) {
+					break;
+				}
+			}
+			rows.finish();
+		}
+		
+		private void doVoidedObs(Writer out) throws ServletException, IOException {
+			Date[] range = getDateRange();
 			
-			template += "#foreach($o in $observations)\n";
+			out.append(" <tr> \n");
+			out.append("  <th>Id</th><th>Patient</th><th>Encounter</th>");
+			out.append("  <th>Concept</th><th>Voided Answer</th>");
+			out.append("  <th>Comment</th><th>Voided By</th><th>Void Reason</th> \n");
+			out.append(" </tr>\n");
+			
+			String template = "";
 			template += " <tr>\n";
 			template += "  <td><a href='admin/observations/obs.form?obsId=$!{o.ObsId}'>$!{o.ObsId}</a></td>\n";
 			template += "  <td><a href='admin/patients/patient.form?patientId=$!{o.Person.personId}'>$!{o.Person.personName}</a></td>\n";
 			template += "  <td><a href='admin/encounters/encounter.form?encounterId=$!{o.Encounter.EncounterId}'>$!{o.Encounter.EncounterId}</a></td>\n";
-			template += "  <td>$!{o.Concept.getName(locale)}</td>\n";
-			template += "  <td>$!{o.getValueAsString(locale)}</td>\n";
+			template += "  <td>$!{o.Concept.getName($locale)}</td>\n";
+			template += "  <td>$!{o.getValueAsString($locale)}</td>\n";
 			template += "  <td>$!{o.Comment}</td>\n";
 			template += "  <td>$!{o.VoidedBy.FirstName} $!{o.VoidedBy.LastName} $!{date.format($o.DateVoided)}</td>\n";
 			template += "  <td>$!{o.VoidReason}</td>\n";
 			template += " </tr>\n";
-			template += "#end\n";
+			final RowWriter rows = new RowWriter(out, reportType, template);
+			
+			Context.getObsService().processObservations(null, null, null, null, range[0], range[1], true,
+			    new ObsCallback() {
+				
+				    @Override
+				    public boolean process(Obs o) {
+					    return !o.getVoided() || rows.write("o", o);
+				    }
+			    });
+			rows.finish();
+		}
+		
+		/**
+		 * @return the start and end of the report, the week of the start date (or of today) if
+		 *         there is no end date
+		 */
+		private Date[] getDateRange() throws ServletException {
+			DateFormat dateFormat = Context.getDateFormat();
+			Calendar cal = Calendar.getInstance();
+			
+			Date start;
+			Date end;
+			
+			if (StringUtils.isNotEmpty(startDate)) {
+				try {
+					cal.setTime(dateFormat.parse(startDate));
+				}
+				catch (ParseException e) {
+					throw new ServletException("Error parsing 'Start Date'", e);
+				}
+			} else {
+				cal.setTime(new Date());
+			}
+			
+			// if they don't input an end date, assume they meant "this week"
+			if (StringUtils.isEmpty(endDate)) {
+				while (cal.get(Calendar.DAY_OF_WEEK) != Calendar.SUNDAY) {
+					cal.add(Calendar.DAY_OF_MONTH, -1);
+				}
+				start = cal.getTime();
+				cal.add(Calendar.DAY_OF_MONTH, 7);
+				end = cal.getTime();
+			} else {
+				// they put in an end date, assume literal start and end
+				start = cal.getTime();
+				try {
+					cal.setTime(dateFormat.parse(endDate));
+				}
+				catch (ParseException e) {
+					throw new ServletException("Error parsing 'End Date'", e);
+				}
+				end = cal.getTime();
+			}
+			
+			return new Date[] { start, end };
+		}
+	}
+	
+	/**
+	 * Writes the rows of a report through a template that is parsed once, flushing the output
+	 * regularly so the rows reach the client while the report is still being read
+	 */
+	private static class RowWriter {
+		
+		private final Writer out;
+		
+		private final Template template;
+		
+		private final VelocityContext context = new VelocityContext();
+		
+		private int count = 0;
+		
+		private IOException failure;
+		
+		public RowWriter(Writer out, String name, String rowTemplate) throws ServletException {
+			this.out = out;
+			try {
+				template = new Template();
+				template.setName(name);
+				template.setRuntimeServices(RuntimeSingleton.getRuntimeServices());
+				template.setData(RuntimeSingleton.parse(new StringReader(rowTemplate), name));
+				template.initDocument();
+			}
+			catch (Exception e) {
+				throw new ServletException("Error parsing the template of report type " + name, e);
+			}
+			context.put("date", Context.getDateFormat());
+			context.put("locale", Context.getLocale());
 		}
 		
-		template += "</table>\n";
+		/**
+		 * @param name the name of the row object in the template
+		 * @param value the row object
+		 * @return false if the row could not be written and the report should stop
+		 */
+		public boolean write(String name, Object value) {
+			context.put(name, value);
+			try {
+				template.merge(context, out);
+				if (++count % FLUSH_INTERVAL == 0) {
+					out.flush();
+				}
+				return true;
+			}
+			catch (IOException e) {
+				// most likely the client went away
+				failure = e;
+				return false;
+			}
+		}
 		
-		return template;
+		/**
+		 * @throws IOException if a row could not be written
+		 */
+		public void finish() throws IOException {
+			if (failure != null) {
+				throw failure;
+			}
+		}
 	}
 }
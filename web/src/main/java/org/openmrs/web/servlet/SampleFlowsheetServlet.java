@@ -11,8 +11,9 @@ package org.openmrs.web.servlet;
 
 import java.io.IOException;
 import java.util.Calendar;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -27,7 +28,9 @@ import org.openmrs.Concept;
 import org.openmrs.ConceptName;
 import org.openmrs.Obs;
 import org.openmrs.Patient;
+import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
+import org.openmrs.obs.ObsTimeline;
 import org.openmrs.util.PrivilegeConstants;
 import org.openmrs.web.WebConstants;
 
@@ -64,9 +67,9 @@ public class SampleFlowsheetServlet extends HttpServlet {
 		
 		Integer patientId = Integer.parseInt(pid);
 		Patient patient = Context.getPatientService().getPatient(patientId);
-		List<Obs> obsList = Context.getObsService().getObservationsByPerson(patient);
+		ObsTimeline timeline = Context.getObsService().getObsTimeline(patient, null, null, null);
 		
-		if (obsList == null || obsList.size() < 1) {
+		if (timeline.size() < 1) {
 			out.print("No observations found");
 			return;
 		}
@@ -82,27 +85,32 @@ public class SampleFlowsheetServlet extends HttpServlet {
 		Calendar date = Calendar.getInstance();
 		date.set(1900, Calendar.JANUARY, 1);
 		Calendar obsDate = Calendar.getInstance();
-		for (Obs obs : obsList) {
-			obsDate.setTime(obs.getObsDatetime());
+		ConceptService cs = Context.getConceptService();
+		Map<Integer, String> names = new HashMap<Integer, String>();
+		// the timeline is ordered oldest first, the flowsheet lists the newest obs first
+		for (int row = timeline.size() - 1; row >= 0; row--) {
+			obsDate.setTime(timeline.getObsDatetime(row));
 			if (Math.abs(obsDate.getTimeInMillis() - date.getTimeInMillis()) > 86400000) {
 				date = obsDate;
 				out.println("<tr><td class=header colspan=2>" + Context.getDateFormat().format(date.getTime())
 				        + "</td></tr>");
 			}
 			StringBuilder s = new StringBuilder("<tr><td class=label>");
-			s.append(getName(obs, locale));
+			Concept concept = cs.getConcept(timeline.getConceptId(row));
+			String name = names.get(concept.getConceptId());
+			if (name == null) {
+				name = getName(concept, locale);
+				names.put(concept.getConceptId(), name);
+			}
+			s.append(name);
 			s.append("</td><td class=value>");
-			s.append(getValue(obs, locale));
+			s.append(getValue(timeline, row, concept, locale));
 			s.append("</td></tr>");
 			out.println(s.toString());
 		}
 		out.println("</table>");
 	}
 	
-	private String getName(Obs obs, Locale locale) {
-		return getName(obs.getConcept(), locale);
-	}
-	
 	private String getName(Concept concept, Locale locale) {
 		String foundName = "";
 		ConceptName shortName = concept.getBestShortName(locale);
@@ -117,7 +125,19 @@ public class SampleFlowsheetServlet extends HttpServlet {
 		return foundName;
 	}
 	
-	private String getValue(Obs obs, Locale locale) {
+	/**
+	 * Formats the value of a timeline row like {@link Obs#getValueAsString(Locale)} would, using an
+	 * obs that is never saved
+	 */
+	private String getValue(ObsTimeline timeline, int row, Concept concept, Locale locale) {
+		Obs obs = new Obs();
+		obs.setConcept(concept);
+		obs.setValueNumeric(timeline.getValueNumeric(row));
+		if (timeline.getValueCodedId(row) != null) {
+			obs.setValueCoded(Context.getConceptService().getConcept(timeline.getValueCodedId(row)));
+		}
+		obs.setValueDatetime(timeline.getValueDatetime(row));
+		obs.setValueText(timeline.getValueText(row));
 		return obs.getValueAsString(locale);
 	}
 }
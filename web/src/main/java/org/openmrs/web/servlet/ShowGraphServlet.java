@@ -44,10 +44,10 @@ import org.jfree.data.time.TimeSeries;
 import org.jfree.data.time.TimeSeriesCollection;
 import org.openmrs.Concept;
 import org.openmrs.ConceptNumeric;
-import org.openmrs.Obs;
 import org.openmrs.Patient;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
+import org.openmrs.obs.ObsTimeline;
 
 /**
  * This servlet returns an image graphing the numeric values for given concept(s). <br/>
@@ -191,8 +191,7 @@ public class ShowGraphServlet extends HttpServlet {
 		boolean userSpecifiedMinRange = false;
 		
 		// Fetching obs
-		List<Obs> observations1 = new ArrayList<Obs>();
-		List<Obs> observations2 = new ArrayList<Obs>();
+		List<Concept> questions = new ArrayList<Concept>();
 		Concept concept1 = null, concept2 = null;
 		if (conceptId1 != null) {
 			concept1 = Context.getConceptService().getConcept(Integer.parseInt(conceptId1));
@@ -201,7 +200,7 @@ public class ShowGraphServlet extends HttpServlet {
 			concept2 = Context.getConceptService().getConcept(Integer.parseInt(conceptId2));
 		}
 		if (concept1 != null) {
-			observations1 = Context.getObsService().getObservationsByPersonAndConcept(patient, concept1);
+			questions.add(concept1);
 			chartTitle = concept1.getName().getName();
 			rangeAxisTitle = ((ConceptNumeric) concept1).getUnits();
 			minRange = ((ConceptNumeric) concept1).getLowAbsolute();
@@ -215,7 +214,7 @@ public class ShowGraphServlet extends HttpServlet {
 			if (concept2 != null) {
 				String concept2Units = ((ConceptNumeric) concept2).getUnits();
 				if (concept2Units != null && concept2Units.equals(rangeAxisTitle)) {
-					observations2 = Context.getObsService().getObservationsByPersonAndConcept(patient, concept2);
+					questions.add(concept2);
 					chartTitle += " + " + concept2.getName().getName();
 					if (((ConceptNumeric) concept2).getHiAbsolute() != null
 					        && ((ConceptNumeric) concept2).getHiAbsolute() > maxRange) {
@@ -290,43 +289,12 @@ public class ShowGraphServlet extends HttpServlet {
 			series2 = new TimeSeries(concept2.getName().getName(), timeScale);
 		}
 		
-		// Add data points for concept1
-		for (Obs obs : observations1) {
-			if (obs.getValueNumeric() != null && obs.getObsDatetime().getTime() >= fromDate.getTime()
-			        && obs.getObsDatetime().getTime() < toDate.getTime()) {
-				cal.setTime(obs.getObsDatetime());
-				if (timeScale == Minute.class) {
-					Minute min = new Minute(cal.get(Calendar.MINUTE), cal.get(Calendar.HOUR_OF_DAY), cal
-					        .get(Calendar.DAY_OF_MONTH), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
-					series1.addOrUpdate(min, obs.getValueNumeric());
-				} else if (timeScale == Hour.class) {
-					Hour hour = new Hour(cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.DAY_OF_MONTH), cal
-					        .get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
-					series1.addOrUpdate(hour, obs.getValueNumeric());
-				} else {
-					Day day = new Day(cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
-					series1.addOrUpdate(day, obs.getValueNumeric());
-				}
-			}
-		}
-		
-		// Add data points for concept2
-		for (Obs obs : observations2) {
-			if (obs.getValueNumeric() != null && obs.getObsDatetime().getTime() >= fromDate.getTime()
-			        && obs.getObsDatetime().getTime() < toDate.getTime()) {
-				cal.setTime(obs.getObsDatetime());
-				if (timeScale == Minute.class) {
-					Minute min = new Minute(cal.get(Calendar.MINUTE), cal.get(Calendar.HOUR_OF_DAY), cal
-					        .get(Calendar.DAY_OF_MONTH), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
-					series2.addOrUpdate(min, obs.getValueNumeric());
-				} else if (timeScale == Hour.class) {
-					Hour hour = new Hour(cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.DAY_OF_MONTH), cal
-					        .get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
-					series2.addOrUpdate(hour, obs.getValueNumeric());
-				} else {
-					Day day = new Day(cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
-					series2.addOrUpdate(day, obs.getValueNumeric());
-				}
+		// Add data points from a single read of both concepts
+		if (!questions.isEmpty()) {
+			ObsTimeline timeline = Context.getObsService().getObsTimeline(patient, questions, fromDate, toDate);
+			addDataPoints(series1, timeline, concept1, timeScale, cal);
+			if (concept2 != null) {
+				addDataPoints(series2, timeline, concept2, timeScale, cal);
 			}
 		}
 		
@@ -436,6 +404,32 @@ public class ShowGraphServlet extends HttpServlet {
 		return chart;
 	}
 	
+	/**
+	 * Adds the numeric values of a concept from the timeline to the series
+	 */
+	private void addDataPoints(TimeSeries series, ObsTimeline timeline, Concept concept,
+	        Class<? extends RegularTimePeriod> timeScale, Calendar cal) {
+		for (int row : timeline.getRows(concept.getConceptId())) {
+			Double value = timeline.getValueNumeric(row);
+			if (value == null) {
+				continue;
+			}
+			cal.setTime(timeline.getObsDatetime(row));
+			if (timeScale == Minute.class) {
+				Minute min = new Minute(cal.get(Calendar.MINUTE), cal.get(Calendar.HOUR_OF_DAY), cal
+				        .get(Calendar.DAY_OF_MONTH), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
+				series.addOrUpdate(min, value);
+			} else if (timeScale == Hour.class) {
+				Hour hour = new Hour(cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.DAY_OF_MONTH),
+				        cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
+				series.addOrUpdate(hour, value);
+			} else {
+				Day day = new Day(cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.YEAR));
+				series.addOrUpdate(day, value);
+			}
+		}
+	}
+	
 	/**
 	 * Get the FromDate object from the given string that is the time in milliseconds. If
 	 * dateFromRequest is null, return 1 year ago from today.
@@ -0,0 +1,169 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.web;
+
+import java.io.File;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.Module;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.mock.web.MockServletContext;
+
+/**
+ * Tests methods on the {@link ModuleResourcesServlet} class.
+ */
+public class ModuleResourcesServletTest {
+	
+	private File file;
+	
+	private ModuleResourcesServlet servlet;
+	
+	private Module module = new Module("Test", "test", "org.openmrs.module.test", "", "", "1.2");
+	
+	@Before
+	public void before() throws Exception {
+		file = File.createTempFile("moduleResource", ".js");
+		FileUtils.writeStringToFile(file, "var a = 1;");
+		
+		servlet = new ModuleResourcesServlet() {
+			
+			@Override
+			protected File getFile(HttpServletRequest request) {
+				return request.getPathInfo().equals("/test/script.js") ? file : null;
+			}
+			
+			@Override
+			protected Module getModule(HttpServletRequest request) {
+				return module;
+			}
+		};
+		servlet.init(new MockServletConfig(new MockServletContext()));
+	}
+	
+	@After
+	public void after() throws Exception {
+		file.delete();
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 * @verifies send the file with an etag and caching headers
+	 */
+	@Test
+	public void doGet_shouldSendTheFileWithAnEtagAndCachingHeaders() throws Exception {
+		MockHttpServletResponse response = get(null);
+		
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals("var a = 1;", response.getContentAsString());
+		Assert.assertNotNull(response.getHeader("ETag"));
+		Assert.assertNotNull(response.getHeader("Last-Modified"));
+		Assert.assertEquals("public, max-age=0, must-revalidate", response.getHeader("Cache-Control"));
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 * @verifies return not modified if the etag matches
+	 */
+	@Test
+	public void doGet_shouldReturnNotModifiedIfTheEtagMatches() throws Exception {
+		String etag = (String) get(null).getHeader("ETag");
+		
+		MockHttpServletResponse response = get(etag);
+		
+		Assert.assertEquals(304, response.getStatus());
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+		Assert.assertEquals(etag, response.getHeader("ETag"));
+		Assert.assertNotNull(response.getHeader("Cache-Control"));
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 * @verifies allow long caching of urls with the module version
+	 */
+	@Test
+	public void doGet_shouldAllowLongCachingOfUrlsWithTheModuleVersion() throws Exception {
+		Assert.assertEquals("public, max-age=31536000", getVersion("1.2").getHeader("Cache-Control"));
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 * @verifies not allow long caching of urls with another or a snapshot version
+	 */
+	@Test
+	public void doGet_shouldNotAllowLongCachingOfUrlsWithAnotherOrASnapshotVersion() throws Exception {
+		// the core version, as added by the htmlInclude tag
+		Assert.assertEquals("public, max-age=0, must-revalidate", getVersion("1.12.0").getHeader("Cache-Control"));
+		
+		module.setVersion("1.3-SNAPSHOT");
+		Assert.assertEquals("public, max-age=0, must-revalidate", getVersion("1.3-SNAPSHOT").getHeader("Cache-Control"));
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 * @verifies send the changed content of a cached file
+	 */
+	@Test
+	public void doGet_shouldSendTheChangedContentOfACachedFile() throws Exception {
+		String etag = (String) get(null).getHeader("ETag");
+		FileUtils.writeStringToFile(file, "var a = 22;");
+		file.setLastModified(file.lastModified() + 2000);
+		
+		MockHttpServletResponse response = get(etag);
+		
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals("var a = 22;", response.getContentAsString());
+		Assert.assertFalse(etag.equals(response.getHeader("ETag")));
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 * @verifies return not found if there is no file
+	 */
+	@Test
+	public void doGet_shouldReturnNotFoundIfThereIsNoFile() throws Exception {
+		MockHttpServletRequest request = request(null);
+		request.setPathInfo("/test/missing.js");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.service(request, response);
+		
+		Assert.assertEquals(404, response.getStatus());
+	}
+	
+	private MockHttpServletResponse getVersion(String version) throws Exception {
+		MockHttpServletRequest request = request(null);
+		request.addParameter(ModuleResourcesServlet.VERSION_PARAMETER, version);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.service(request, response);
+		return response;
+	}
+	
+	private MockHttpServletResponse get(String ifNoneMatch) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.service(request(ifNoneMatch), response);
+		return response;
+	}
+	
+	private MockHttpServletRequest request(String ifNoneMatch) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/moduleResources/test/script.js");
+		request.setPathInfo("/test/script.js");
+		if (ifNoneMatch != null) {
+			request.addHeader("If-None-Match", ifNoneMatch);
+		}
+		return request;
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * 
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.web.filter;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.Filter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests methods on the {@link ModuleFilterDispatcher} class.
+ */
+public class ModuleFilterDispatcherTest {
+	
+	private List<ModuleFilterMapping> mappings;
+	
+	private Map<String, Filter> filters;
+	
+	@Before
+	public void before() {
+		mappings = new ArrayList<ModuleFilterMapping>();
+		filters = new HashMap<String, Filter>();
+	}
+	
+	/**
+	 * @see ModuleFilterDispatcher#getFilters(String)
+	 * @verifies return the filters of matching mappings in mapping order
+	 */
+	@Test
+	public void getFilters_shouldReturnTheFiltersOfMatchingMappingsInMappingOrder() throws Exception {
+		Filter jsp = map("jsp", "*.jsp");
+		Filter all = map("all", "/*");
+		Filter exact = map("exact", "/index.htm");
+		
+		Assert.assertEquals(Arrays.asList(jsp, all), dispatcher().getFilters("/admin/index.jsp"));
+		Assert.assertEquals(Arrays.asList(all, exact), dispatcher().getFilters("/index.htm"));
+	}
+	
+	/**
+	 * @see ModuleFilterDispatcher#getFilters(String)
+	 * @verifies match paths under a prefix pattern
+	 */
+	@Test
+	public void getFilters_shouldMatchPathsUnderAPrefixPattern() throws Exception {
+		Filter admin = map("admin", "/admin/*");
+		ModuleFilterDispatcher dispatcher = dispatcher();
+		
+		Assert.assertEquals(Arrays.asList(admin), dispatcher.getFilters("/admin"));
+		Assert.assertEquals(Arrays.asList(admin), dispatcher.getFilters("/admin/users/user.form"));
+		Assert.assertTrue(dispatcher.getFilters("/administration").isEmpty());
+	}
+	
+	/**
+	 * @see ModuleFilterDispatcher#getFilters(String)
+	 * @verifies match paths by extension
+	 */
+	@Test
+	public void getFilters_shouldMatchPathsByExtension() throws Exception {
+		Filter form = map("form", "*.form");
+		ModuleFilterDispatcher dispatcher = dispatcher();
+		
+		Assert.assertEquals(Arrays.asList(form), dispatcher.getFilters("/admin/user.form"));
+		Assert.assertTrue(dispatcher.getFilters("/admin.form/user").isEmpty());
+		Assert.assertTrue(dispatcher.getFilters("/admin/user.formx").isEmpty());
+	}
+	
+	/**
+	 * @see ModuleFilterDispatcher#getFilters(String)
+	 * @verifies return an empty list if no mapping matches
+	 */
+	@Test
+	public void getFilters_shouldReturnAnEmptyListIfNoMappingMatches() throws Exception {
+		map("exact", "/index.htm");
+		
+		Assert.assertTrue(dispatcher().getFilters("/login.htm").isEmpty());
+		Assert.assertTrue(dispatcher().getFilters(null).isEmpty());
+	}
+	
+	private ModuleFilterDispatcher dispatcher() {
+		ModuleFilterDispatcher dispatcher = new ModuleFilterDispatcher(mappings, filters);
+		for (ModuleFilterMapping mapping : mappings) {
+			// the index has to agree with matching each mapping
+			for (String path : new String[] { "/admin", "/admin/index.jsp", "/index.htm", "/admin/user.form" }) {
+				Assert.assertEquals(ModuleFilterMapping.filterMappingPasses(mapping, path), dispatcher.getFilters(path)
+				        .contains(filters.get(mapping.getFilterName())));
+			}
+		}
+		return dispatcher;
+	}
+	
+	private Filter map(String name, String urlPattern) {
+		ModuleFilterMapping mapping = new ModuleFilterMapping(null);
+		mapping.setFilterName(name);
+		mapping.addUrlPattern(urlPattern);
+		mappings.add(mapping);
+		Filter filter = mock(Filter.class);
+		filters.put(name, filter);
+		return filter;
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.web.StreamingResponseUtil.ByteRange;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests methods on the {@link StreamingResponseUtil} class.
+ */
+public class StreamingResponseUtilTest {
+	
+	private static final String ETAG = "\"1-abc\"";
+	
+	/**
+	 * @see StreamingResponseUtil#checkNotModified(javax.servlet.http.HttpServletRequest,
+	 *      javax.servlet.http.HttpServletResponse, String, long)
+	 * @verifies return true if the etag matches
+	 */
+	@Test
+	public void checkNotModified_shouldReturnTrueIfTheEtagMatches() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", "\"other\", " + ETAG);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		Assert.assertTrue(StreamingResponseUtil.checkNotModified(request, response, ETAG, -1));
+		Assert.assertEquals(304, response.getStatus());
+		Assert.assertEquals(ETAG, response.getHeader("ETag"));
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#checkNotModified(javax.servlet.http.HttpServletRequest,
+	 *      javax.servlet.http.HttpServletResponse, String, long)
+	 * @verifies return false if the etag does not match
+	 */
+	@Test
+	public void checkNotModified_shouldReturnFalseIfTheEtagDoesNotMatch() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", "\"other\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		Assert.assertFalse(StreamingResponseUtil.checkNotModified(request, response, ETAG, -1));
+		Assert.assertEquals(200, response.getStatus());
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#checkNotModified(javax.servlet.http.HttpServletRequest,
+	 *      javax.servlet.http.HttpServletResponse, String, long)
+	 * @verifies return true if not modified since the given date
+	 */
+	@Test
+	public void checkNotModified_shouldReturnTrueIfNotModifiedSinceTheGivenDate() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-Modified-Since", 2000000L);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		Assert.assertTrue(StreamingResponseUtil.checkNotModified(request, response, ETAG, 1999999L));
+		Assert.assertEquals(304, response.getStatus());
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#checkNotModified(javax.servlet.http.HttpServletRequest,
+	 *      javax.servlet.http.HttpServletResponse, String, long)
+	 * @verifies ignore if modified since when if none match is present
+	 */
+	@Test
+	public void checkNotModified_shouldIgnoreIfModifiedSinceWhenIfNoneMatchIsPresent() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", "\"other\"");
+		request.addHeader("If-Modified-Since", 2000000L);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		Assert.assertFalse(StreamingResponseUtil.checkNotModified(request, response, ETAG, 1000000L));
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies return null if there is no range header
+	 */
+	@Test
+	public void getRequestedRange_shouldReturnNullIfThereIsNoRangeHeader() throws Exception {
+		Assert.assertNull(StreamingResponseUtil.getRequestedRange(new MockHttpServletRequest(), 100, ETAG));
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies parse a range with start and end
+	 */
+	@Test
+	public void getRequestedRange_shouldParseARangeWithStartAndEnd() throws Exception {
+		ByteRange range = StreamingResponseUtil.getRequestedRange(requestWithRange("bytes=10-19"), 100, ETAG);
+		Assert.assertEquals(10, range.getStart());
+		Assert.assertEquals(19, range.getEnd());
+		Assert.assertEquals(10, range.getLength());
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies parse an open ended range
+	 */
+	@Test
+	public void getRequestedRange_shouldParseAnOpenEndedRange() throws Exception {
+		ByteRange range = StreamingResponseUtil.getRequestedRange(requestWithRange("bytes=90-"), 100, ETAG);
+		Assert.assertEquals(90, range.getStart());
+		Assert.assertEquals(99, range.getEnd());
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies parse a suffix range
+	 */
+	@Test
+	public void getRequestedRange_shouldParseASuffixRange() throws Exception {
+		ByteRange range = StreamingResponseUtil.getRequestedRange(requestWithRange("bytes=-5"), 100, ETAG);
+		Assert.assertEquals(95, range.getStart());
+		Assert.assertEquals(99, range.getEnd());
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies limit the end to the content length
+	 */
+	@Test
+	public void getRequestedRange_shouldLimitTheEndToTheContentLength() throws Exception {
+		ByteRange range = StreamingResponseUtil.getRequestedRange(requestWithRange("bytes=50-500"), 100, ETAG);
+		Assert.assertEquals(99, range.getEnd());
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies return unsatisfiable if the start is after the content length
+	 */
+	@Test
+	public void getRequestedRange_shouldReturnUnsatisfiableIfTheStartIsAfterTheContentLength() throws Exception {
+		Assert.assertSame(StreamingResponseUtil.UNSATISFIABLE_RANGE, StreamingResponseUtil.getRequestedRange(
+		    requestWithRange("bytes=100-"), 100, ETAG));
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies return null for multiple ranges
+	 */
+	@Test
+	public void getRequestedRange_shouldReturnNullForMultipleRanges() throws Exception {
+		Assert.assertNull(StreamingResponseUtil.getRequestedRange(requestWithRange("bytes=0-1,5-6"), 100, ETAG));
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#getRequestedRange(javax.servlet.http.HttpServletRequest, long,
+	 *      String)
+	 * @verifies return null if the if range header does not match
+	 */
+	@Test
+	public void getRequestedRange_shouldReturnNullIfTheIfRangeHeaderDoesNotMatch() throws Exception {
+		MockHttpServletRequest request = requestWithRange("bytes=0-1");
+		request.addHeader("If-Range", "\"stale\"");
+		Assert.assertNull(StreamingResponseUtil.getRequestedRange(request, 100, ETAG));
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#sendFile(javax.servlet.http.HttpServletRequest,
+	 *      javax.servlet.http.HttpServletResponse, java.nio.channels.FileChannel, String)
+	 */
+	@Test
+	public void sendFile_shouldWriteTheRequestedRangeOfTheFile() throws Exception {
+		File file = File.createTempFile("streamingResponseUtilTest", ".txt");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("0123456789".getBytes("UTF-8"));
+		out.close();
+		
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			StreamingResponseUtil.sendFile(requestWithRange("bytes=2-5"), response, in.getChannel(), ETAG);
+		}
+		finally {
+			in.close();
+		}
+		
+		Assert.assertEquals(206, response.getStatus());
+		Assert.assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+		Assert.assertEquals("2345", response.getContentAsString());
+	}
+	
+	/**
+	 * @see StreamingResponseUtil#sendBytes(javax.servlet.http.HttpServletRequest,
+	 *      javax.servlet.http.HttpServletResponse, byte[], String)
+	 */
+	@Test
+	public void sendBytes_shouldSendTheWholeContentWithoutARange() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		StreamingResponseUtil.sendBytes(new MockHttpServletRequest("GET", "/"), response, "abc".getBytes("UTF-8"), ETAG);
+		
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals("3", response.getHeader("Content-Length"));
+		Assert.assertEquals("bytes", response.getHeader("Accept-Ranges"));
+		Assert.assertEquals("abc", response.getContentAsString());
+	}
+	
+	private MockHttpServletRequest requestWithRange(String range) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader("Range", range);
+		return request;
+	}
+}
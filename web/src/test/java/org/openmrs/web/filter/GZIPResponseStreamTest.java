@@ -0,0 +1,63 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web.filter;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests methods on the {@link GZIPResponseStream} class.
+ */
+public class GZIPResponseStreamTest {
+	
+	/**
+	 * @see GZIPResponseStream#GZIPResponseStream(javax.servlet.http.HttpServletResponse, int, int)
+	 * @verifies send content smaller than the minimum size uncompressed
+	 */
+	@Test
+	public void GZIPResponseStream_shouldSendContentSmallerThanTheMinimumSizeUncompressed() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		GZIPResponseStream stream = new GZIPResponseStream(response, 6, 100);
+		stream.write("small".getBytes("UTF-8"));
+		stream.close();
+		
+		Assert.assertNull(response.getHeader("Content-Encoding"));
+		Assert.assertEquals("small", response.getContentAsString());
+	}
+	
+	/**
+	 * @see GZIPResponseStream#GZIPResponseStream(javax.servlet.http.HttpServletResponse, int, int)
+	 * @verifies compress content at least as large as the minimum size
+	 */
+	@Test
+	public void GZIPResponseStream_shouldCompressContentAtLeastAsLargeAsTheMinimumSize() throws Exception {
+		// larger than the in-memory buffer so that the streaming path is used too
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			content.append("line ").append(i).append('\n');
+		}
+		
+		for (int run = 0; run < 2; run++) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			GZIPResponseStream stream = new GZIPResponseStream(response, 9, 100);
+			stream.write(content.toString().getBytes("UTF-8"));
+			stream.close();
+			
+			Assert.assertEquals("gzip", response.getHeader("Content-Encoding"));
+			GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()));
+			Assert.assertEquals(content.toString(), IOUtils.toString(in, "UTF-8"));
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web.filter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests methods on the {@link PrecompressedResourceCache} class.
+ */
+public class PrecompressedResourceCacheTest {
+	
+	private File directory;
+	
+	@Before
+	public void before() throws Exception {
+		directory = File.createTempFile("precompressedResourceCacheTest", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+	
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+	
+	/**
+	 * @see PrecompressedResourceCache#getCompressed(String,File)
+	 * @verifies compress a file on first use
+	 */
+	@Test
+	public void getCompressed_shouldCompressAFileOnFirstUse() throws Exception {
+		File source = new File(directory, "openmrs.js");
+		FileUtils.writeStringToFile(source, "var a = 1;\nvar b = 2;\n", "UTF-8");
+		PrecompressedResourceCache cache = new PrecompressedResourceCache(new File(directory, "cache"), 6);
+		
+		File compressed = cache.getCompressed("/scripts/openmrs.js", source);
+		
+		Assert.assertEquals(new File(directory, "cache/scripts/openmrs.js.gz"), compressed);
+		Assert.assertEquals(source.lastModified(), compressed.lastModified());
+		Assert.assertEquals("var a = 1;\nvar b = 2;\n", decompress(compressed));
+		Assert.assertEquals(compressed, cache.getCompressed("/scripts/openmrs.js", source));
+	}
+	
+	/**
+	 * @see PrecompressedResourceCache#getCompressed(String,File)
+	 * @verifies compress the file again if it was modified
+	 */
+	@Test
+	public void getCompressed_shouldCompressTheFileAgainIfItWasModified() throws Exception {
+		File source = new File(directory, "style.css");
+		FileUtils.writeStringToFile(source, "body {}", "UTF-8");
+		source.setLastModified(1000000000L);
+		PrecompressedResourceCache cache = new PrecompressedResourceCache(new File(directory, "cache"), 6);
+		cache.getCompressed("/style.css", source);
+		
+		FileUtils.writeStringToFile(source, "body { color: red; }", "UTF-8");
+		source.setLastModified(2000000000L);
+		
+		Assert.assertEquals("body { color: red; }", decompress(cache.getCompressed("/style.css", source)));
+	}
+	
+	private String decompress(File file) throws Exception {
+		GZIPInputStream in = new GZIPInputStream(new FileInputStream(file));
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		}
+		finally {
+			in.close();
+		}
+	}
+}
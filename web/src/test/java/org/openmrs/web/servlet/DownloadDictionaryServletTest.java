@@ -95,6 +95,26 @@ public class DownloadDictionaryServletTest extends BaseWebContextSensitiveTest {
 		Assert.assertEquals(expectedContent, actualContent);
 	}
 	
+	@Test
+	public void shouldPrintConceptsAsJsonWhenRequested() throws Exception {
+		String actualContent = runServletWithConceptsAsJson(conceptDAO.getConcept(3), conceptDAO.getConcept(5));
+		String expectedContent = "[{\"conceptId\":3,\"name\":\"COUGH SYRUP\",\"description\":\"This is used for coughs\","
+		        + "\"synonyms\":[\"COUGH SYRUP\"],\"answers\":[],\"setMembers\":[],\"class\":\"Drug\",\"datatype\":\"N/A\","
+		        + "\"changedBy\":null,\"creator\":\"Super User\"},"
+		        + "{\"conceptId\":5,\"name\":\"SINGLE\",\"description\":\"\",\"synonyms\":[\"SINGLE\"],\"answers\":[],"
+		        + "\"setMembers\":[],\"class\":\"Misc\",\"datatype\":\"N/A\",\"changedBy\":null,\"creator\":\"Super User\"}]";
+		Assert.assertEquals(expectedContent, actualContent);
+	}
+	
+	@Test
+	public void shouldSkipRetiredConcepts() throws Exception {
+		Concept retired = new Concept(2);
+		retired.setRetired(true);
+		String actualContent = runServletWithConcepts(retired, new Concept(1));
+		String expectedContent = EXPECTED_HEADER + "1,\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\"\n";
+		Assert.assertEquals(expectedContent, actualContent);
+	}
+	
 	private String runServletWithConcepts(Concept... concepts) throws Exception {
 		DownloadDictionaryServlet downloadServlet = new DownloadDictionaryServlet();
 		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/downloadDictionary.csv");
@@ -102,9 +122,23 @@ public class DownloadDictionaryServletTest extends BaseWebContextSensitiveTest {
 		MockHttpServletResponse response = new MockHttpServletResponse();
 		
 		List<Concept> conceptList = Arrays.asList(concepts);
-		Mockito.when(conceptService.conceptIterator()).thenReturn(conceptList.iterator());
+		Mockito.when(conceptService.conceptIterator(Mockito.anyInt())).thenReturn(conceptList.iterator());
+		
+		downloadServlet.service(request, response);
+		return response.getContentAsString();
+	}
+	
+	private String runServletWithConceptsAsJson(Concept... concepts) throws Exception {
+		DownloadDictionaryServlet downloadServlet = new DownloadDictionaryServlet();
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/downloadDictionary.csv");
+		request.setParameter(DownloadDictionaryServlet.FORMAT_PARAM, "json");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		List<Concept> conceptList = Arrays.asList(concepts);
+		Mockito.when(conceptService.conceptIterator(Mockito.anyInt())).thenReturn(conceptList.iterator());
 		
 		downloadServlet.service(request, response);
+		Assert.assertEquals("application/json;charset=UTF-8", response.getHeader("Content-Type"));
 		return response.getContentAsString();
 	}
 	
@@ -0,0 +1,98 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.web.servlet;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.ObsService;
+import org.openmrs.api.context.Context;
+import org.openmrs.web.test.BaseWebContextSensitiveTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests for the {@link QuickReportServlet} class.
+ */
+public class QuickReportServletTest extends BaseWebContextSensitiveTest {
+	
+	/**
+	 * @see QuickReportServlet#doGet(HttpServletRequest, HttpServletResponse)
+	 */
+	@Test
+	public void doGet_shouldWriteARowForEachVoidedObs() throws Exception {
+		ObsService os = Context.getObsService();
+		os.voidObs(os.getObs(7), "testing");
+		
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		new QuickReportServlet().doGet(newRequest("VOIDED OBS"), response);
+		
+		String report = response.getContentAsString();
+		Assert.assertTrue(report.startsWith("Report: VOIDED OBS"));
+		Assert.assertTrue(report.contains("obsId=7'"));
+		Assert.assertFalse(report.contains("obsId=9'"));
+		Assert.assertTrue(report.contains("testing"));
+		Assert.assertTrue(report.endsWith("</table>\n"));
+	}
+	
+	/**
+	 * @see QuickReportServlet#doGet(HttpServletRequest, HttpServletResponse)
+	 */
+	@Test
+	public void doGet_shouldWriteEveryRequestedReportInOrder() throws Exception {
+		Set<String> tempFiles = getTempFiles();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		QuickReportServlet servlet = new QuickReportServlet();
+		servlet.init();
+		try {
+			servlet.doGet(newRequest("ATTENDED CLINIC THIS WEEK", "VOIDED OBS", "RETURN VISIT DATE THIS WEEK"), response);
+		}
+		finally {
+			servlet.destroy();
+		}
+		
+		String report = response.getContentAsString();
+		int attended = report.indexOf("Report: ATTENDED CLINIC THIS WEEK");
+		int voided = report.indexOf("Report: VOIDED OBS");
+		int returnVisit = report.indexOf("Report: RETURN VISIT DATE THIS WEEK");
+		Assert.assertTrue(attended >= 0);
+		Assert.assertTrue(voided > attended);
+		Assert.assertTrue(returnVisit > voided);
+		Assert.assertTrue(report.endsWith("</table>\n"));
+		Assert.assertEquals(tempFiles, getTempFiles());
+	}
+	
+	private Set<String> getTempFiles() {
+		Set<String> names = new HashSet<String>();
+		for (String name : new File(System.getProperty("java.io.tmpdir")).list()) {
+			if (name.startsWith("quickreport")) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+	
+	private MockHttpServletRequest newRequest(String... reportTypes) throws Exception {
+		DateFormat ymd = new SimpleDateFormat("yyyy-MM-dd");
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setParameter("reportType", reportTypes);
+		request.setParameter("startDate", Context.getDateFormat().format(ymd.parse("2008-06-01")));
+		request.setParameter("endDate", Context.getDateFormat().format(ymd.parse("2008-12-31")));
+		return request;
+	}
+}